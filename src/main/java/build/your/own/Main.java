@@ -1,10 +1,18 @@
 package build.your.own;
 
+import build.your.own.cluster.ClusterManager;
 import build.your.own.configurations.SystemConfig;
 import build.your.own.database.DbMap;
+import build.your.own.persist.AppendFsync;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SaveRule;
 import build.your.own.persist.SerializeProtocol;
 import build.your.own.persist.Snapshot;
+import build.your.own.replication.ReplicationManager;
 import build.your.own.tcp.Client;
+import build.your.own.tcp.Process;
+import build.your.own.tcp.ServerMode;
+import build.your.own.tcp.nio.EventLoopServer;
 import build.your.own.logger.Logger;
 import build.your.own.tcp.cmd.CommandRegistry;
 import build.your.own.utils.ArgumentsUtils;
@@ -12,6 +20,7 @@ import build.your.own.utils.ArgumentsUtils;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
 
 public class Main {
   private static final Logger logger = Logger.getInstance(Main.class);
@@ -19,27 +28,74 @@ public class Main {
 
   public static void main(String[] args) {
     final SystemConfig config = new SystemConfig();
-    final DbMap inMemoryDb = new DbMap();
-    final SerializeProtocol serializeProtocol = new SerializeProtocol(config, inMemoryDb);
-    final CommandRegistry commandRegistry = new CommandRegistry(config, serializeProtocol);
 
     logger.info("Starting Redis Server");
     logger.info("Process System Args: ");
     try{
       ArgumentsUtils.loadSystemArgs(args, config);
+    }catch (IllegalArgumentException stop){
+      return;
+    }
+
+    //The storage engine is an argument, so the keyspace can only be built once they are loaded
+    final DbMap inMemoryDb = new DbMap(config);
+    final SerializeProtocol serializeProtocol = new SerializeProtocol(config, inMemoryDb);
+    final Snapshot snapshot = new Snapshot(serializeProtocol, SaveRule.parse(config.getConfig().get("save")));
+    final AppendOnlyFile appendOnlyFile = ArgumentsUtils.isEnabled(config, "appendonly")
+        ? new AppendOnlyFile(Path.of(config.getConfig().get("aofPath")),
+            AppendFsync.fromConfig(config.getConfig().get("appendfsync")),
+            inMemoryDb,
+            Long.parseLong(config.getConfig().get("auto-aof-rewrite-percentage")),
+            ArgumentsUtils.parseMemory(config.getConfig().get("auto-aof-rewrite-min-size")))
+        : null;
+    final ReplicationManager replication = new ReplicationManager(config, serializeProtocol, snapshot, appendOnlyFile);
+    final ClusterManager cluster = ArgumentsUtils.isEnabled(config, "cluster-enabled")
+        ? new ClusterManager(config, inMemoryDb)
+        : null;
+    final CommandRegistry commandRegistry = new CommandRegistry(config, serializeProtocol, snapshot, appendOnlyFile,
+        replication, cluster);
+
+    try{
+      logger.info("Initialize active expiry cycle");
+      inMemoryDb.getActiveExpiry().start();
+
+      //Reload SystemArgs after restart, from the AOF when there is one as it is the more recent copy
+      if (appendOnlyFile != null && appendOnlyFile.exists()) {
+        try {
+          appendOnlyFile.replay(commandRegistry);
+        } catch (IOException e) {
+          logger.error(String.format("Failed to replay the append only file, refusing to start: %s", e.getMessage()));
+          return;
+        }
+      } else {
+        try {
+          serializeProtocol.writeHeadersToCache();
+          serializeProtocol.loadDbMapFromCacheFile();
+        }catch (FileNotFoundException e){
+          logger.info(String.format("No cache file to reload %s", e.getMessage()));
+        }catch (IOException e){
+          //starting with part of the data and overwriting the file on the next save would lose the rest
+          logger.error(String.format("Failed to reload from cache, refusing to start: %s", e.getMessage()));
+          return;
+        }
+      }
+      if (appendOnlyFile != null) {
+        try {
+          if (!appendOnlyFile.exists()) appendOnlyFile.create();
+          appendOnlyFile.open();
+        } catch (IOException e) {
+          logger.error(String.format("Failed to open the append only file %s", e.getMessage()));
+          return;
+        }
+        //only now, the replay above must not be logged again
+        commandRegistry.addWriteListener(appendOnlyFile);
+      }
+      //what was just loaded is already on disk
+      inMemoryDb.markSaved(inMemoryDb.changesSinceSave());
+
       logger.info("Initialize Snapshot CRON");
-      Snapshot snapshot = new Snapshot(serializeProtocol);
       //FOR DISASTER BACKUP
       snapshot.start();
-
-      //Reload SystemArgs after restart
-      try {
-        serializeProtocol.writeHeadersToCache();
-        serializeProtocol.loadDbMapFromCacheFile();
-      }catch (IOException e){
-        e.printStackTrace();
-        logger.error(String.format("Failed to reload from cache %s", e.getMessage()));
-      }
     }catch (IllegalArgumentException stop){
       return;
     }catch (RuntimeException e){
@@ -52,6 +108,27 @@ public class Main {
     //This will never fail as reverse integer parsing has been already tested
     int port = Integer.parseInt(config.getConfig().get("port"));
 
+    if (cluster != null) {
+      try {
+        cluster.start();
+      } catch (IOException e) {
+        logger.error(String.format("Failed to load the cluster config, refusing to start: %s", e.getMessage()));
+        return;
+      }
+    }
+
+    //a replica follows its primary from here on, a primary starts feeding the replication backlog
+    replication.start(commandRegistry);
+
+    ServerMode mode = ServerMode.fromConfig(config.getConfig().get("server-mode"));
+    logger.info("Server mode: " + mode);
+    switch (mode) {
+      case NIO -> startEventLoop(port, config, commandRegistry);
+      case THREAD, VIRTUAL -> startThreadPerConnection(port, mode, commandRegistry);
+    }
+  }
+
+  private static void startThreadPerConnection(int port, ServerMode mode, CommandRegistry commandRegistry) {
     try (ServerSocket serverSocket = new ServerSocket(port)) {
       serverSocket.setReuseAddress(true);
       logger.info("Server started successfully on port " + port);
@@ -60,7 +137,14 @@ public class Main {
         try {
           Socket newClient = serverSocket.accept();
           logger.info("New client connected from: " + newClient.getRemoteSocketAddress());
-          new Thread(new Client(newClient, commandRegistry)).start();
+          if (mode == ServerMode.VIRTUAL) {
+            //Single hop: the Process loop runs on a virtual thread that unmounts while blocked on the socket
+            Thread.ofVirtual()
+                .name("process-" + newClient.getPort())
+                .start(new Process(new Client(newClient, commandRegistry), commandRegistry));
+          } else {
+            new Thread(new Client(newClient, commandRegistry)).start();
+          }
         } catch (IOException e) {
           logger.error("Failed to accept client connection: " + e.getMessage());
         }
@@ -70,4 +154,16 @@ public class Main {
       e.printStackTrace();
     }
   }
+
+  private static void startEventLoop(int port, SystemConfig config, CommandRegistry commandRegistry) {
+    //one reactor per core unless overridden, the acceptor runs on the main thread
+    int reactors = Integer.parseInt(config.getConfig().getOrDefault("reactors",
+        String.valueOf(Runtime.getRuntime().availableProcessors())));
+    try {
+      new EventLoopServer(port, reactors, commandRegistry).start();
+    } catch (IOException e) {
+      logger.error("Server startup failed: " + e.getMessage());
+      e.printStackTrace();
+    }
+  }
 }
@@ -0,0 +1,118 @@
+package build.your.own.bench;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.Eviction;
+import build.your.own.database.EvictionPolicy;
+import build.your.own.database.HeapStorage;
+import build.your.own.database.StorageFullException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Hit ratio of each {@code --maxmemory-policy} under a Zipfian workload, no server or JMH involved.
+ *
+ * <p>A {@link DbMap} whose {@code maxmemory} holds a fraction of the keyspace is used as a cache aside:
+ * every request is a {@code GET}, and a miss is followed by the {@code SET} that loads the key, which is
+ * what evicts. Key popularity follows a Zipf distribution of exponent {@value #ZIPF_EXPONENT}, the YCSB
+ * default, and the first half of the requests only warms the cache up. Every run replays the same
+ * requests. volatile-ttl gives each key a random far expiry, unrelated to its popularity, so it stands
+ * for random eviction.
+ *
+ * <pre>
+ *   java -cp ... build.your.own.bench.HitRatioBenchmark [keys] [requests] [cached fraction] [samples]
+ * </pre>
+ */
+public class HitRatioBenchmark {
+  private static final double ZIPF_EXPONENT = 0.99;
+  private static final int VALUE_SIZE = 100;
+  private static final long SEED = 42;
+
+  public static void main(String[] args) {
+    int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    double cached = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+    int samples = args.length > 3 ? Integer.parseInt(args[3]) : Eviction.DEFAULT_SAMPLES;
+
+    int[] trace = zipfTrace(keys, requests, new Random(SEED));
+    long maxMemory = (long) (footprint(keys) * cached);
+    System.out.printf("%d keys of %d bytes, %d requests, zipf %.2f, maxmemory %d bytes (%.0f%% of the keys), %d samples%n",
+        keys, VALUE_SIZE, requests, ZIPF_EXPONENT, maxMemory, cached * 100, samples);
+
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      run(policy, keys, trace, maxMemory, samples);
+    }
+  }
+
+  private static void run(EvictionPolicy policy, int keys, int[] trace, long maxMemory, int samples) {
+    HeapStorage storage = new HeapStorage();
+    Eviction eviction = new Eviction(storage, policy, maxMemory, samples);
+    DbMap map = new DbMap(storage, eviction);
+    Random random = new Random(SEED);
+    long farExpiry = System.currentTimeMillis() + 3_600_000;
+    ByteKey[] names = keyNames(keys);
+    byte[] value = new byte[VALUE_SIZE];
+
+    long hits = 0;
+    long refused = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < trace.length; i++) {
+      ByteKey key = names[trace[i]];
+      if (map.get(key) != null) {
+        if (i >= trace.length / 2) hits++;
+        continue;
+      }
+      long expiry = policy == EvictionPolicy.VOLATILE_TTL ? farExpiry + random.nextInt(3_600_000) : DbMap.NO_EXPIRY;
+      try {
+        map.put(key, value, expiry);
+      } catch (StorageFullException e) {
+        refused++;
+      }
+    }
+    long millis = (System.nanoTime() - start) / 1_000_000;
+
+    long measured = trace.length - trace.length / 2;
+    System.out.printf("%-13s hit ratio %5.1f%%  evicted %8d  refused %8d  %5d ms%n",
+        policy.getConfigName(), 100.0 * hits / measured, eviction.evictedKeys(), refused, millis);
+  }
+
+  /**
+   * @return bytes of {@link HeapStorage#usedMemory()} with every key loaded
+   */
+  private static long footprint(int keys) {
+    DbMap map = new DbMap();
+    byte[] value = new byte[VALUE_SIZE];
+    for (ByteKey key : keyNames(keys)) {
+      map.put(key, value, DbMap.NO_EXPIRY);
+    }
+    return map.getStorage().usedMemory();
+  }
+
+  private static ByteKey[] keyNames(int keys) {
+    ByteKey[] names = new ByteKey[keys];
+    for (int i = 0; i < keys; i++) {
+      names[i] = ByteKey.of("key:" + i);
+    }
+    return names;
+  }
+
+  /**
+   * @return {@code requests} key indexes, index {@code i} drawn with probability proportional to
+   * {@code 1 / (i + 1)^s}, through the inverse of the cumulative distribution
+   */
+  private static int[] zipfTrace(int keys, int requests, Random random) {
+    double[] cumulative = new double[keys];
+    double sum = 0;
+    for (int i = 0; i < keys; i++) {
+      sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+      cumulative[i] = sum;
+    }
+    int[] trace = new int[requests];
+    for (int i = 0; i < requests; i++) {
+      int at = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+      trace[i] = at >= 0 ? at : Math.min(-at - 1, keys - 1);
+    }
+    return trace;
+  }
+}
@@ -0,0 +1,124 @@
+package build.your.own.cluster;
+
+import build.your.own.logger.Logger;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code cluster-gossip} thread: once a second pulls {@code CLUSTER NODES} from every known node over
+ * a connection kept open to it, and hands the answer to {@link ClusterManager#merge}. A peer that does not
+ * list this node yet is sent {@code CLUSTER MEET} back, so meeting one node is enough in both directions.
+ */
+final class ClusterGossip implements Runnable {
+  private static final Logger logger = Logger.getInstance(ClusterGossip.class);
+  private static final long PERIOD_MILLIS = 1000;
+  private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+  private static final int READ_TIMEOUT_MILLIS = 2000;
+  private static final int MAX_REPLY_LENGTH = 64 * 1024 * 1024;
+
+  private final ClusterManager manager;
+  private final ClusterNode myself;
+  private final Map<ClusterNode, Link> links = new HashMap<>();
+
+  private record Link(Socket socket, InputStream in) {
+  }
+
+  ClusterGossip(ClusterManager manager, ClusterNode myself) {
+    this.manager = manager;
+    this.myself = myself;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      List<ClusterNode> peers = manager.peers();
+      //links of forgotten nodes
+      links.keySet().removeIf(node -> {
+        if (peers.contains(node)) return false;
+        closeQuietly(links.get(node));
+        return true;
+      });
+      for (ClusterNode peer : peers) {
+        exchange(peer);
+      }
+      try {
+        Thread.sleep(PERIOD_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void exchange(ClusterNode peer) {
+    Link link = links.get(peer);
+    try {
+      if (link == null) {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(peer.host(), peer.port()), CONNECT_TIMEOUT_MILLIS);
+        socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        link = new Link(socket, new BufferedInputStream(socket.getInputStream()));
+        links.put(peer, link);
+      }
+      send(link, List.of("CLUSTER", "NODES"));
+      String view = readBulk(link.in());
+      peer.linkUp = true;
+      peer.lastPongMillis = System.currentTimeMillis();
+      if (!manager.merge(peer, view)) {
+        send(link, List.of("CLUSTER", "MEET", myself.host(), String.valueOf(myself.port())));
+        String reply = readLine(link.in());
+        if (reply.startsWith("-")) logger.warn(String.format("Node %s refused to meet us: %s", peer, reply));
+      }
+    } catch (IOException | NumberFormatException e) {
+      if (peer.linkUp) logger.warn(String.format("Cluster link to %s lost: %s", peer, e.getMessage()));
+      peer.linkUp = false;
+      links.remove(peer);
+      closeQuietly(link);
+    }
+  }
+
+  private static void send(Link link, List<String> command) throws IOException {
+    new RespBuffer().putCommand(command).writeTo(link.socket().getOutputStream());
+  }
+
+  private static String readBulk(InputStream in) throws IOException {
+    String header = readLine(in);
+    if (!header.startsWith("$")) throw new IOException("unexpected reply " + header);
+    int length = Integer.parseInt(header.substring(1));
+    if (length < 0 || length > MAX_REPLY_LENGTH) throw new IOException("bad reply length " + length);
+    byte[] body = in.readNBytes(length + 2);
+    if (body.length != length + 2) throw new EOFException("node closed the link");
+    return new String(body, 0, length, RESP.CHARSET);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) throw new EOFException("node closed the link");
+      line.write(b);
+    }
+    String text = line.toString(RESP.CHARSET);
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+
+  private static void closeQuietly(Link link) {
+    if (link == null) return;
+    try {
+      link.socket().close();
+    } catch (IOException ignored) {
+      //already closing
+    }
+  }
+}
@@ -0,0 +1,520 @@
+package build.your.own.cluster;
+
+import build.your.own.configurations.SystemConfig;
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.logger.Logger;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.AskError;
+import build.your.own.resp.error.ClusterDownError;
+import build.your.own.resp.error.CrossSlotError;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.MovedError;
+import build.your.own.resp.error.TryAgainError;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h1>Cluster mode</h1>
+ * Started with {@code --cluster-enabled yes} the node serves a part of the 16384 {@link HashSlot}s, like a
+ * Redis Cluster primary: a command whose keys hash to a slot served elsewhere gets
+ * {@code -MOVED <slot> <host>:<port>}, so cluster aware clients learn the slot map ({@code CLUSTER SLOTS},
+ * {@code CLUSTER NODES}) and go straight to the right node.
+ *
+ * <p>The cluster is built the way {@code redis-cli --cluster} builds one: {@code CLUSTER MEET} the other
+ * nodes, {@code CLUSTER ADDSLOTS} on each. A slot moves with {@code CLUSTER SETSLOT <slot> IMPORTING <source>}
+ * on the target, {@code SETSLOT <slot> MIGRATING <target>} on the source, {@code MIGRATE} of the keys from
+ * {@code CLUSTER GETKEYSINSLOT}, then {@code SETSLOT <slot> NODE <target>}. Meanwhile the source answers
+ * {@code -ASK} for keys it no longer has, and the target serves them to clients sending {@code ASKING} first.
+ *
+ * <p>There is no separate cluster bus: each node pulls {@code CLUSTER NODES} from every peer once a second
+ * over the regular port ({@link ClusterGossip}) and merges it. A node is believed about the slots it claims
+ * for itself when its config epoch is higher than the current owner's, which is how a migrated slot reaches
+ * every node once the target bumped its epoch. Equal epochs of two primaries are resolved like redis, the
+ * node with the smaller id bumps. Failover is not implemented, a failed primary's slots stay unserved.
+ * The view is saved to {@code --cluster-config-file} (default {@value #DEFAULT_CONFIG_FILE}) on every
+ * change and reloaded at start.
+ */
+public class ClusterManager {
+  private static final Logger logger = Logger.getInstance(ClusterManager.class);
+  public static final String DEFAULT_CONFIG_FILE = "nodes.conf";
+  public static final String DEFAULT_NODE_TIMEOUT = "15000";
+  private static final String DEFAULT_ANNOUNCE_IP = "127.0.0.1";
+  //a forgotten node is not re-added from gossip for this long, as redis
+  private static final long FORGET_BAN_MILLIS = 60_000;
+
+  private final DbMap map;
+  private final SlotIndexedStorage index;
+  private final Path configPath;
+  private final long nodeTimeoutMillis;
+  private final String announceHost;
+  private final SystemConfig systemConfig;
+
+  //all below guarded by this, except the slot tables which are also read lock free by redirect()
+  private final Map<String, ClusterNode> nodes = new LinkedHashMap<>();
+  private final Map<String, Long> forgotten = new HashMap<>();
+  private long currentEpoch;
+  private volatile ClusterNode myself;
+  private final AtomicReferenceArray<ClusterNode> owners = new AtomicReferenceArray<>(HashSlot.SLOTS);
+  private final AtomicReferenceArray<ClusterNode> migrating = new AtomicReferenceArray<>(HashSlot.SLOTS);
+  private final AtomicReferenceArray<ClusterNode> importing = new AtomicReferenceArray<>(HashSlot.SLOTS);
+
+  public ClusterManager(SystemConfig systemConfig, DbMap map) {
+    if (!(map.getStorage() instanceof SlotIndexedStorage slotIndex)) {
+      throw new IllegalStateException("cluster mode needs the keyspace indexed by slot");
+    }
+    this.systemConfig = systemConfig;
+    this.map = map;
+    this.index = slotIndex;
+    String dir = systemConfig.getConfig().get("dir");
+    String file = systemConfig.getConfig().getOrDefault("cluster-config-file", DEFAULT_CONFIG_FILE);
+    this.configPath = dir != null ? Path.of(dir, file) : Path.of(file);
+    this.nodeTimeoutMillis = Long.parseLong(systemConfig.getConfig().getOrDefault("cluster-node-timeout", DEFAULT_NODE_TIMEOUT));
+    this.announceHost = systemConfig.getConfig().getOrDefault("cluster-announce-ip", DEFAULT_ANNOUNCE_IP);
+  }
+
+  /**
+   * Loads or creates the node's identity and view and starts gossiping. Called once the port is known.
+   */
+  public void start() throws IOException {
+    int port = Integer.parseInt(systemConfig.getConfig().get("port"));
+    synchronized (this) {
+      if (!load(port)) {
+        myself = new ClusterNode(randomId(), announceHost, port);
+        nodes.put(myself.id(), myself);
+        save();
+      }
+    }
+    logger.info(String.format("Cluster node %s, %d known nodes, config %s", myself.id(), nodes.size(), configPath));
+    Thread thread = new Thread(new ClusterGossip(this, myself), "cluster-gossip");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Decides where a command with {@code keys} runs.
+   *
+   * @param asking whether the client sent {@code ASKING} right before
+   * @return {@code null} to run it here, otherwise the redirect or error to reply with
+   */
+  public RespData redirect(List<String> keys, boolean asking) {
+    ClusterNode self = myself;
+    if (keys.isEmpty() || self == null) return null;
+    int slot = HashSlot.of(keys.getFirst().getBytes(RESP.CHARSET));
+    for (int i = 1; i < keys.size(); i++) {
+      if (HashSlot.of(keys.get(i).getBytes(RESP.CHARSET)) != slot) {
+        return new CrossSlotError("Keys in request don't hash to the same slot");
+      }
+    }
+
+    ClusterNode owner = owners.get(slot);
+    if (owner == self) {
+      ClusterNode target = migrating.get(slot);
+      if (target == null) return null;
+      int missing = 0;
+      for (String key : keys) {
+        if (!map.exists(ByteKey.of(key))) missing++;
+      }
+      if (missing == 0) return null;
+      if (missing < keys.size()) {
+        return new TryAgainError("Multiple keys request during rehashing of slot");
+      }
+      return new AskError(slot, target.host(), target.port());
+    }
+    if (asking && importing.get(slot) != null) return null;
+    if (owner == null) return new ClusterDownError("Hash slot not served");
+    return new MovedError(slot, owner.host(), owner.port());
+  }
+
+  /* CLUSTER subcommands */
+
+  public synchronized RespData info() {
+    int assigned = 0;
+    List<ClusterNode> serving = new ArrayList<>();
+    for (int slot = 0; slot < HashSlot.SLOTS; slot++) {
+      ClusterNode owner = owners.get(slot);
+      if (owner == null) continue;
+      assigned++;
+      if (!serving.contains(owner)) serving.add(owner);
+    }
+    long now = System.currentTimeMillis();
+    int pfail = 0;
+    for (int slot = 0; slot < HashSlot.SLOTS; slot++) {
+      ClusterNode owner = owners.get(slot);
+      if (owner != null && owner != myself && isSuspected(owner, now)) pfail++;
+    }
+    return new BulkString("cluster_enabled:1\r\n"
+        + "cluster_state:" + (assigned == HashSlot.SLOTS ? "ok" : "fail") + "\r\n"
+        + "cluster_slots_assigned:" + assigned + "\r\n"
+        + "cluster_slots_ok:" + (assigned - pfail) + "\r\n"
+        + "cluster_slots_pfail:" + pfail + "\r\n"
+        + "cluster_slots_fail:0\r\n"
+        + "cluster_known_nodes:" + nodes.size() + "\r\n"
+        + "cluster_size:" + serving.size() + "\r\n"
+        + "cluster_current_epoch:" + currentEpoch + "\r\n"
+        + "cluster_my_epoch:" + myself.configEpoch + "\r\n");
+  }
+
+  public RespData myId() {
+    return new BulkString(myself.id());
+  }
+
+  public synchronized RespData nodes() {
+    return new BulkString(describeNodes());
+  }
+
+  /**
+   * @return {@code CLUSTER SLOTS}: one {@code [start, end, [host, port, id]]} per range of slots served by the same node
+   */
+  public synchronized RespData slots() {
+    Arrays<RespData> ranges = new Arrays<>();
+    int slot = 0;
+    while (slot < HashSlot.SLOTS) {
+      ClusterNode owner = owners.get(slot);
+      int start = slot;
+      while (slot + 1 < HashSlot.SLOTS && owners.get(slot + 1) == owner) slot++;
+      if (owner != null) {
+        Arrays<RespData> node = new Arrays<>();
+        node.add(new BulkString(owner.host()));
+        node.add(new RespInteger(owner.port()));
+        node.add(new BulkString(owner.id()));
+        Arrays<RespData> range = new Arrays<>();
+        range.add(new RespInteger(start));
+        range.add(new RespInteger(slot));
+        range.add(node);
+        ranges.add(range);
+      }
+      slot++;
+    }
+    return ranges;
+  }
+
+  public RespData keySlot(String key) {
+    return new RespInteger(HashSlot.of(key.getBytes(RESP.CHARSET)));
+  }
+
+  public RespData countKeysInSlot(int slot) {
+    return new RespInteger(index.countKeysInSlot(slot));
+  }
+
+  public RespData getKeysInSlot(int slot, int count) {
+    Arrays<BulkString> keys = new Arrays<>();
+    for (ByteKey key : index.keysInSlot(slot, count)) {
+      keys.add(new BulkString(key.bytes()));
+    }
+    return keys;
+  }
+
+  public synchronized RespData addSlots(List<Integer> slots) {
+    for (int slot : slots) {
+      if (owners.get(slot) != null) return new IllegalArgumentError("Slot " + slot + " is already busy");
+    }
+    //a primary needs an epoch of its own to ever win a slot over another one
+    if (myself.configEpoch == 0) myself.configEpoch = ++currentEpoch;
+    for (int slot : slots) {
+      owners.set(slot, myself);
+      importing.set(slot, null);
+    }
+    return saved();
+  }
+
+  public synchronized RespData delSlots(List<Integer> slots) {
+    for (int slot : slots) {
+      if (owners.get(slot) == null) return new IllegalArgumentError("Slot " + slot + " is already unassigned");
+    }
+    for (int slot : slots) {
+      owners.set(slot, null);
+      migrating.set(slot, null);
+      importing.set(slot, null);
+    }
+    return saved();
+  }
+
+  public synchronized RespData meet(String host, int port) {
+    for (ClusterNode node : nodes.values()) {
+      if (node.hasAddress(host, port)) return RESP.OK;
+    }
+    ClusterNode node = new ClusterNode(randomId(), host, port);
+    node.handshake = true;
+    nodes.put(node.id(), node);
+    logger.info(String.format("Meeting cluster node %s:%d", host, port));
+    return RESP.OK;
+  }
+
+  public synchronized RespData forget(String id) {
+    ClusterNode node = nodes.get(id);
+    if (node == null) return new IllegalArgumentError("Unknown node " + id);
+    if (node == myself) return new IllegalArgumentError("I tried hard but I can't forget myself...");
+    nodes.remove(id);
+    forgotten.put(id, System.currentTimeMillis() + FORGET_BAN_MILLIS);
+    for (int slot = 0; slot < HashSlot.SLOTS; slot++) {
+      owners.compareAndSet(slot, node, null);
+      migrating.compareAndSet(slot, node, null);
+      importing.compareAndSet(slot, node, null);
+    }
+    return saved();
+  }
+
+  /**
+   * {@code CLUSTER SETSLOT <slot> IMPORTING <source-id> | MIGRATING <target-id> | NODE <id> | STABLE}
+   */
+  public synchronized RespData setSlot(int slot, String action, String id) {
+    ClusterNode node = null;
+    if (id != null) {
+      node = nodes.get(id);
+      if (node == null) return new IllegalArgumentError("I don't know about node " + id);
+    }
+    switch (action) {
+      case "IMPORTING" -> {
+        if (node == null) return new IllegalArgumentError("IMPORTING needs a source node");
+        if (owners.get(slot) == myself) return new IllegalArgumentError("I'm already the owner of hash slot " + slot);
+        importing.set(slot, node);
+      }
+      case "MIGRATING" -> {
+        if (node == null) return new IllegalArgumentError("MIGRATING needs a target node");
+        if (owners.get(slot) != myself) return new IllegalArgumentError("I'm not the owner of hash slot " + slot);
+        migrating.set(slot, node);
+      }
+      case "STABLE" -> {
+        migrating.set(slot, null);
+        importing.set(slot, null);
+      }
+      case "NODE" -> {
+        if (node == null) return new IllegalArgumentError("NODE needs a node id");
+        if (owners.get(slot) == myself && node != myself && index.countKeysInSlot(slot) > 0) {
+          return new IllegalArgumentError("Can't assign hashslot " + slot + " to a different node while I still hold keys for this hash slot.");
+        }
+        if (node == myself && importing.get(slot) != null) {
+          //the end of an import: claim the slot with an epoch nobody has, so every node believes us
+          myself.configEpoch = ++currentEpoch;
+          logger.info(String.format("Imported slot %d, config epoch now %d", slot, myself.configEpoch));
+        }
+        if (node != myself) migrating.set(slot, null);
+        importing.set(slot, null);
+        owners.set(slot, node);
+      }
+      default -> {
+        return new IllegalArgumentError("Invalid CLUSTER SETSLOT action or number of arguments");
+      }
+    }
+    return saved();
+  }
+
+  public synchronized RespData saveConfig() {
+    return saved();
+  }
+
+  private RespData saved() {
+    try {
+      save();
+      return RESP.OK;
+    } catch (IOException e) {
+      logger.error(String.format("Failed to save the cluster config %s: %s", configPath, e.getMessage()));
+      return new IllegalArgumentError("error saving the cluster node config: " + e.getMessage());
+    }
+  }
+
+  /* Gossip */
+
+  /**
+   * @return the nodes to pull a view from, every known node but this one
+   */
+  synchronized List<ClusterNode> peers() {
+    List<ClusterNode> peers = new ArrayList<>(nodes.values());
+    peers.remove(myself);
+    return peers;
+  }
+
+  /**
+   * Merges the {@code CLUSTER NODES} output of {@code peer}.
+   *
+   * @return whether the peer knows this node already
+   */
+  synchronized boolean merge(ClusterNode peer, String view) {
+    List<NodeLine> lines = NodeLine.parseAll(view);
+    NodeLine self = null;
+    for (NodeLine line : lines) {
+      if (line.flags().contains("myself")) self = line;
+    }
+    if (self == null || !nodes.containsValue(peer)) return true;
+    boolean changed = false;
+
+    if (!self.id().equals(peer.id())) {
+      ClusterNode known = nodes.get(self.id());
+      nodes.remove(peer.id());
+      if (known == myself) {
+        //met ourselves under another address
+        saved();
+        return true;
+      }
+      if (known != null) {
+        //met twice, or under another address
+        peer = known;
+      } else {
+        logger.info(String.format("Cluster node %s:%d is %s", peer.host(), peer.port(), self.id()));
+        peer.setId(self.id());
+        nodes.put(self.id(), peer);
+      }
+      changed = true;
+    }
+    peer.handshake = false;
+    if (peer.configEpoch != self.configEpoch()) {
+      peer.configEpoch = self.configEpoch();
+      changed = true;
+    }
+    currentEpoch = Math.max(currentEpoch, peer.configEpoch);
+    if (peer.configEpoch == myself.configEpoch && myself.configEpoch > 0
+        && myself.id().compareTo(peer.id()) < 0) {
+      myself.configEpoch = ++currentEpoch;
+      logger.info(String.format("Config epoch collision with %s, mine is now %d", peer.id(), myself.configEpoch));
+      changed = true;
+    }
+
+    for (int slot : self.slots()) {
+      ClusterNode owner = owners.get(slot);
+      if (owner == peer || (owner != null && owner.configEpoch >= peer.configEpoch)) continue;
+      if (owner == myself) {
+        logger.info(String.format("Slot %d is now served by %s", slot, peer.id()));
+        migrating.set(slot, null);
+      }
+      importing.set(slot, null);
+      owners.set(slot, peer);
+      changed = true;
+    }
+
+    long now = System.currentTimeMillis();
+    forgotten.values().removeIf(until -> until < now);
+    for (NodeLine line : lines) {
+      if (line == self || nodes.containsKey(line.id()) || forgotten.containsKey(line.id())
+          || line.flags().contains("handshake")) continue;
+      boolean addressKnown = false;
+      for (ClusterNode node : nodes.values()) {
+        addressKnown |= node.hasAddress(line.host(), line.port());
+      }
+      if (addressKnown) continue;
+      ClusterNode learned = new ClusterNode(line.id(), line.host(), line.port());
+      learned.configEpoch = line.configEpoch();
+      nodes.put(learned.id(), learned);
+      logger.info(String.format("Learned about cluster node %s from %s", learned, peer.id()));
+      changed = true;
+    }
+
+    if (changed) saved();
+    return view.contains(myself.id());
+  }
+
+  private boolean isSuspected(ClusterNode node, long now) {
+    return now - node.lastPongMillis > nodeTimeoutMillis;
+  }
+
+  /* Config file, the CLUSTER NODES format plus a vars line */
+
+  private String describeNodes() {
+    StringBuilder out = new StringBuilder();
+    long now = System.currentTimeMillis();
+    for (ClusterNode node : nodes.values()) {
+      boolean self = node == myself;
+      StringBuilder flags = new StringBuilder(self ? "myself,master" : "master");
+      if (!self && node.handshake) flags.append(",handshake");
+      if (!self && !node.handshake && isSuspected(node, now)) flags.append(",fail?");
+      out.append(node.id()).append(' ')
+          .append(node.host()).append(':').append(node.port()).append('@').append(node.port()).append(' ')
+          .append(flags).append(" - 0 ")
+          .append(self ? 0 : node.lastPongMillis).append(' ')
+          .append(node.configEpoch).append(' ')
+          .append(self || node.linkUp ? "connected" : "disconnected");
+      int slot = 0;
+      while (slot < HashSlot.SLOTS) {
+        if (owners.get(slot) != node) {
+          slot++;
+          continue;
+        }
+        int start = slot;
+        while (slot + 1 < HashSlot.SLOTS && owners.get(slot + 1) == node) slot++;
+        out.append(' ').append(start);
+        if (slot > start) out.append('-').append(slot);
+        slot++;
+      }
+      if (self) {
+        for (slot = 0; slot < HashSlot.SLOTS; slot++) {
+          ClusterNode target = migrating.get(slot);
+          if (target != null) out.append(" [").append(slot).append("->-").append(target.id()).append(']');
+          ClusterNode source = importing.get(slot);
+          if (source != null) out.append(" [").append(slot).append("-<-").append(source.id()).append(']');
+        }
+      }
+      out.append('\n');
+    }
+    return out.toString();
+  }
+
+  private void save() throws IOException {
+    Path temp = configPath.resolveSibling(configPath.getFileName() + ".tmp");
+    Files.writeString(temp, describeNodes() + "vars currentEpoch " + currentEpoch + " lastVoteEpoch 0\n", RESP.CHARSET);
+    Files.move(temp, configPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return {@code false} if there is no config file yet
+   */
+  private boolean load(int port) throws IOException {
+    String text;
+    try {
+      text = Files.readString(configPath, RESP.CHARSET);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    List<NodeLine> lines = NodeLine.parseAll(text);
+    for (NodeLine line : lines) {
+      boolean self = line.flags().contains("myself");
+      //our own address comes from the arguments, it may have changed since
+      ClusterNode node = self ? new ClusterNode(line.id(), announceHost, port)
+          : new ClusterNode(line.id(), line.host(), line.port());
+      node.configEpoch = line.configEpoch();
+      node.handshake = line.flags().contains("handshake");
+      nodes.put(node.id(), node);
+      if (self) myself = node;
+      for (int slot : line.slots()) {
+        owners.set(slot, node);
+      }
+    }
+    if (myself == null) throw new IOException("cluster config " + configPath + " has no myself line");
+    for (NodeLine line : lines) {
+      for (Map.Entry<Integer, String> entry : line.migrating().entrySet()) {
+        migrating.set(entry.getKey(), nodes.get(entry.getValue()));
+      }
+      for (Map.Entry<Integer, String> entry : line.importing().entrySet()) {
+        importing.set(entry.getKey(), nodes.get(entry.getValue()));
+      }
+    }
+    for (String row : text.split("\n")) {
+      String[] parts = row.trim().split(" ");
+      if (parts.length >= 3 && parts[0].equals("vars") && parts[1].equals("currentEpoch")) {
+        currentEpoch = Long.parseLong(parts[2]);
+      }
+    }
+    return true;
+  }
+
+  private static String randomId() {
+    byte[] id = new byte[20];
+    ThreadLocalRandom.current().nextBytes(id);
+    return HexFormat.of().formatHex(id);
+  }
+}
@@ -0,0 +1,49 @@
+package build.your.own.cluster;
+
+/**
+ * A primary of the cluster as this node knows it. The address is fixed, the rest is guarded by the
+ * {@link ClusterManager}.
+ */
+final class ClusterNode {
+  private final String host;
+  private final int port;
+  private volatile String id;
+  long configEpoch;
+  //met through CLUSTER MEET, its id is a placeholder until it answered once
+  boolean handshake;
+  //written by the gossip thread
+  volatile boolean linkUp;
+  volatile long lastPongMillis;
+
+  ClusterNode(String id, String host, int port) {
+    this.id = id;
+    this.host = host;
+    this.port = port;
+    this.lastPongMillis = System.currentTimeMillis();
+  }
+
+  String id() {
+    return id;
+  }
+
+  void setId(String id) {
+    this.id = id;
+  }
+
+  String host() {
+    return host;
+  }
+
+  int port() {
+    return port;
+  }
+
+  boolean hasAddress(String host, int port) {
+    return this.port == port && this.host.equals(host);
+  }
+
+  @Override
+  public String toString() {
+    return id + " " + host + ":" + port;
+  }
+}
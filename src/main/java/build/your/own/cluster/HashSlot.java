@@ -0,0 +1,55 @@
+package build.your.own.cluster;
+
+/**
+ * Redis Cluster's key to slot mapping: {@code CRC16(key) mod 16384}, CRC16-CCITT (XMODEM) as in redis'
+ * {@code crc16.c}. When the key contains a non empty {@code {...}} hash tag only the tag is hashed, so
+ * {@code {user1000}.following} and {@code {user1000}.followers} land in the same slot.
+ */
+public final class HashSlot {
+  public static final int SLOTS = 16384;
+
+  private static final int[] TABLE = new int[256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      int crc = i << 8;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+      }
+      TABLE[i] = crc & 0xffff;
+    }
+  }
+
+  private HashSlot() {
+  }
+
+  /**
+   * @return the slot of {@code key}, in {@code [0, 16384)}
+   */
+  public static int of(byte[] key) {
+    int start = 0;
+    int end = key.length;
+    for (int open = 0; open < key.length; open++) {
+      if (key[open] != '{') continue;
+      for (int close = open + 1; close < key.length; close++) {
+        if (key[close] != '}') continue;
+        //an empty tag hashes the whole key, like redis
+        if (close > open + 1) {
+          start = open + 1;
+          end = close;
+        }
+        break;
+      }
+      break;
+    }
+    return crc16(key, start, end) & (SLOTS - 1);
+  }
+
+  static int crc16(byte[] bytes, int from, int to) {
+    int crc = 0;
+    for (int i = from; i < to; i++) {
+      crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ bytes[i]) & 0xff]) & 0xffff;
+    }
+    return crc;
+  }
+}
@@ -0,0 +1,67 @@
+package build.your.own.cluster;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One line of {@code CLUSTER NODES}, as sent by peers and stored in the cluster config file:
+ * {@code <id> <host:port@cport> <flags> <primary> <ping-sent> <pong-recv> <config-epoch> <link-state> <slot>...},
+ * a slot being {@code n}, {@code start-end}, {@code [n->-target]} or {@code [n-<-source]}.
+ */
+record NodeLine(String id, String host, int port, Set<String> flags, long configEpoch, List<Integer> slots,
+                Map<Integer, String> migrating, Map<Integer, String> importing) {
+
+  /**
+   * Parses every well formed line, skipping the others and the {@code vars} line of the config file.
+   */
+  static List<NodeLine> parseAll(String text) {
+    List<NodeLine> lines = new ArrayList<>();
+    for (String row : text.split("\n")) {
+      NodeLine line = parse(row.trim());
+      if (line != null) lines.add(line);
+    }
+    return lines;
+  }
+
+  private static NodeLine parse(String row) {
+    String[] parts = row.split(" ");
+    if (parts.length < 8 || parts[0].equals("vars")) return null;
+    try {
+      String address = parts[1];
+      int at = address.indexOf('@');
+      if (at >= 0) address = address.substring(0, at);
+      int colon = address.lastIndexOf(':');
+      if (colon < 0) return null;
+      List<Integer> slots = new ArrayList<>();
+      Map<Integer, String> migrating = new LinkedHashMap<>();
+      Map<Integer, String> importing = new LinkedHashMap<>();
+      for (int i = 8; i < parts.length; i++) {
+        String slot = parts[i];
+        if (slot.startsWith("[")) {
+          String body = slot.substring(1, slot.length() - 1);
+          int arrow = body.indexOf("->-");
+          if (arrow > 0) {
+            migrating.put(Integer.parseInt(body.substring(0, arrow)), body.substring(arrow + 3));
+          } else if ((arrow = body.indexOf("-<-")) > 0) {
+            importing.put(Integer.parseInt(body.substring(0, arrow)), body.substring(arrow + 3));
+          }
+          continue;
+        }
+        int dash = slot.indexOf('-');
+        int start = Integer.parseInt(dash < 0 ? slot : slot.substring(0, dash));
+        int end = dash < 0 ? start : Integer.parseInt(slot.substring(dash + 1));
+        if (start < 0 || end >= HashSlot.SLOTS) return null;
+        for (int s = start; s <= end; s++) {
+          slots.add(s);
+        }
+      }
+      return new NodeLine(parts[0], address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)),
+          Set.of(parts[2].split(",")), Long.parseLong(parts[6]), slots, migrating, importing);
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package build.your.own.cluster;
+
+import build.your.own.database.AccessTracker;
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.Storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * {@link Storage} decorator used in cluster mode: keeps the keys of each {@link HashSlot}, so
+ * {@code CLUSTER GETKEYSINSLOT} and {@code COUNTKEYSINSLOT} do not scan the keyspace while a slot is
+ * migrated, as redis keeps a dict per slot.
+ *
+ * <p>The index is updated after the backend, without a lock around both: a put racing a removal of the
+ * same key could leave the index without a key the backend has, so a removal re-adds the key if the
+ * backend still holds it once the index is updated. The index may hold keys that are gone; they are
+ * dropped when a lookup finds them missing.
+ */
+public class SlotIndexedStorage implements Storage {
+  private final Storage delegate;
+  //created on first use, most nodes serve a fraction of the slots
+  private final AtomicReferenceArray<Set<ByteKey>> slots = new AtomicReferenceArray<>(HashSlot.SLOTS);
+
+  public SlotIndexedStorage(Storage delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public DbMap.Data get(ByteKey key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  public void put(ByteKey key, DbMap.Data data) {
+    delegate.put(key, data);
+    keys(HashSlot.of(key.bytes())).add(key);
+  }
+
+  @Override
+  public boolean remove(ByteKey key) {
+    if (!delegate.remove(key)) return false;
+    unindex(key);
+    return true;
+  }
+
+  @Override
+  public boolean removeIfExpired(ByteKey key, long now) {
+    if (!delegate.removeIfExpired(key, now)) return false;
+    unindex(key);
+    return true;
+  }
+
+  private void unindex(ByteKey key) {
+    Set<ByteKey> keys = keys(HashSlot.of(key.bytes()));
+    keys.remove(key);
+    //a put of the same key may have been indexed right before the removal above
+    if (delegate.get(key) != null) keys.add(key);
+  }
+
+  /**
+   * @return up to {@code count} keys stored in {@code slot}
+   */
+  public List<ByteKey> keysInSlot(int slot, int count) {
+    List<ByteKey> found = new ArrayList<>(Math.min(count, 1024));
+    Iterator<ByteKey> keys = keys(slot).iterator();
+    while (found.size() < count && keys.hasNext()) {
+      ByteKey key = keys.next();
+      if (delegate.get(key) != null) {
+        found.add(key);
+      } else {
+        keys.remove();
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return keys stored in {@code slot}
+   */
+  public int countKeysInSlot(int slot) {
+    return keysInSlot(slot, Integer.MAX_VALUE).size();
+  }
+
+  private Set<ByteKey> keys(int slot) {
+    Set<ByteKey> keys = slots.get(slot);
+    if (keys == null) {
+      slots.compareAndSet(slot, null, ConcurrentHashMap.newKeySet());
+      keys = slots.get(slot);
+    }
+    return keys;
+  }
+
+  @Override
+  public long size() {
+    return delegate.size();
+  }
+
+  @Override
+  public long usedMemory() {
+    return delegate.usedMemory();
+  }
+
+  @Override
+  public void setAccessTracker(AccessTracker tracker) {
+    delegate.setAccessTracker(tracker);
+  }
+
+  @Override
+  public void sample(int count, SampleVisitor visitor) {
+    delegate.sample(count, visitor);
+  }
+
+  @Override
+  public long scan(long cursor, int count, SampleVisitor visitor) {
+    return delegate.scan(cursor, count, visitor);
+  }
+
+  @Override
+  public int partitions() {
+    return delegate.partitions();
+  }
+
+  @Override
+  public int partitionOf(ByteKey key) {
+    return delegate.partitionOf(key);
+  }
+
+  @Override
+  public long usedMemory(int partition) {
+    return delegate.usedMemory(partition);
+  }
+
+  @Override
+  public void sample(int partition, int count, SampleVisitor visitor) {
+    delegate.sample(partition, count, visitor);
+  }
+
+  @Override
+  public <T> T execute(ByteKey key, Supplier<T> task) {
+    return delegate.execute(key, task);
+  }
+
+  @Override
+  public Iterator<Map.Entry<ByteKey, DbMap.Data>> iterator() {
+    return delegate.iterator();
+  }
+}
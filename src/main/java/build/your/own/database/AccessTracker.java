@@ -0,0 +1,29 @@
+package build.your.own.database;
+
+/**
+ * Maintains the per entry access word a {@link Storage} keeps for eviction, see {@link Eviction}.
+ */
+public interface AccessTracker {
+  /** Tracker of a map without eviction: the access word is never looked at. */
+  AccessTracker NONE = new AccessTracker() {
+    @Override
+    public int initial() {
+      return 0;
+    }
+
+    @Override
+    public int touch(int access) {
+      return access;
+    }
+  };
+
+  /**
+   * @return access word of a newly written entry
+   */
+  int initial();
+
+  /**
+   * @return access word after a read of an entry whose word was {@code access}
+   */
+  int touch(int access);
+}
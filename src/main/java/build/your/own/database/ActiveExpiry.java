@@ -0,0 +1,145 @@
+package build.your.own.database;
+
+import build.your.own.logger.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Active expiry</h1>
+ * Background reclamation of expired keys, so TTL'd keys that are never read again do not leak.
+ *
+ * <p>Every {@value #CYCLE_MILLIS} ms a cycle drains due slots of the {@link ExpiryIndex} on a dedicated
+ * scheduler thread, for at most {@value #CYCLE_BUDGET_MILLIS} ms (a quarter of the period, as redis'
+ * {@code activeExpireCycle}); a slot larger than the budget is resumed by the next cycle. Removals go
+ * through {@link Storage#removeIfExpired(ByteKey, long)}, the same atomic path as lazy expiry, so
+ * request threads are never blocked by the cycle, within the map's {@link DbMap.RemovalBarrier} which
+ * passes them on as {@code DEL}s. A key still alive is registered again at its live
+ * expiry, see {@link ExpiryIndex}.
+ */
+public class ActiveExpiry {
+  private static final Logger logger = Logger.getInstance(ActiveExpiry.class);
+  private static final long CYCLE_MILLIS = 100;
+  private static final long CYCLE_BUDGET_MILLIS = 25;
+  //check the clock every this many keys, not every key
+  private static final int CLOCK_CHECK_INTERVAL = 64;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "active-expiry");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Storage storage;
+  private final ExpiryIndex index;
+  private volatile DbMap.RemovalBarrier removalBarrier = (key, wait, removal) -> removal.getAsBoolean();
+
+  //slot left unfinished by the previous cycle
+  private ExpiryIndex.Slot draining;
+
+  private final AtomicLong expiredKeys = new AtomicLong();
+  private final AtomicLong cycles = new AtomicLong();
+  private volatile long lastCycleExpired;
+  private volatile long lastCycleMicros;
+
+  public ActiveExpiry(Storage storage, ExpiryIndex index) {
+    this.storage = storage;
+    this.index = index;
+  }
+
+  public void start() {
+    scheduler.scheduleWithFixedDelay(this::runCycleSafely, CYCLE_MILLIS, CYCLE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  void setRemovalBarrier(DbMap.RemovalBarrier removalBarrier) {
+    this.removalBarrier = removalBarrier;
+  }
+
+  /**
+   * Counts a key removed lazily by a read, so {@link #expiredKeys()} covers both paths.
+   */
+  void recordLazyExpiry() {
+    expiredKeys.incrementAndGet();
+  }
+
+  /**
+   * Runs one bounded cycle on the calling thread.
+   *
+   * @return keys removed by this cycle
+   */
+  long runCycle() {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(CYCLE_BUDGET_MILLIS);
+    long now = System.currentTimeMillis();
+    long expired = 0;
+    int visited = 0;
+
+    outer:
+    while (true) {
+      if (draining == null) {
+        draining = index.pollDue(now);
+        if (draining == null) break;
+      }
+      //a writer that added before the slot closed may be missed by one pass, not by the next
+      while (!draining.keys.isEmpty()) {
+        for (ByteKey key : draining.keys) {
+          if (!index.take(draining, key)) continue;
+          visited++;
+          if (expire(key, now)) {
+            expired++;
+          } else {
+            //rewritten with a later expiry since its hint was registered, which may have been the last one
+            DbMap.Data live = storage.get(key);
+            if (live != null && live.hasExpiry()) index.register(key, live.expiry());
+          }
+          if (visited % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) break outer;
+        }
+      }
+      draining = null;
+    }
+
+    expiredKeys.addAndGet(expired);
+    cycles.incrementAndGet();
+    lastCycleExpired = expired;
+    lastCycleMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    if (expired > 0) {
+      logger.debug(String.format("Active expiry cycle removed %d of %d visited keys in %d us",
+          expired, visited, lastCycleMicros));
+    }
+    return expired;
+  }
+
+  private boolean expire(ByteKey key, long now) {
+    return removalBarrier.remove(key, true, () -> storage.removeIfExpired(key, now));
+  }
+
+  public long expiredKeys() {
+    return expiredKeys.get();
+  }
+
+  public long cycles() {
+    return cycles.get();
+  }
+
+  public long lastCycleExpired() {
+    return lastCycleExpired;
+  }
+
+  public long lastCycleMicros() {
+    return lastCycleMicros;
+  }
+
+  public long pendingKeys() {
+    return index.pending();
+  }
+
+  private void runCycleSafely() {
+    try {
+      runCycle();
+    } catch (RuntimeException e) {
+      //an exception would cancel the schedule for good
+      logger.error("Active expiry cycle failed: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package build.your.own.database;
+
+import build.your.own.resp.RESP;
+
+import java.util.Arrays;
+
+/**
+ * Binary safe map key: the raw key bytes plus their hash, computed once.
+ *
+ * <p>Same footprint as a compact Latin-1 {@code String} (one small object and one {@code byte[]}),
+ * but comparisons never depend on a charset and the bytes go to disk and to the wire unchanged.
+ */
+public final class ByteKey {
+  private final byte[] bytes;
+  private final int hash;
+
+  public ByteKey(byte[] bytes) {
+    this.bytes = bytes;
+    this.hash = Arrays.hashCode(bytes);
+  }
+
+  /**
+   * @param key a key as decoded by the request parser, one char per byte
+   */
+  public static ByteKey of(String key) {
+    return new ByteKey(key.getBytes(RESP.CHARSET));
+  }
+
+  /**
+   * @return the key bytes, callers must not modify them
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  public int length() {
+    return bytes.length;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ByteKey other)) return false;
+    return hash == other.hash && Arrays.equals(bytes, other.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * @return the key as the command layer sees it, one char per byte
+   */
+  @Override
+  public String toString() {
+    return new String(bytes, RESP.CHARSET);
+  }
+}
@@ -1,14 +1,22 @@
 package build.your.own.database;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
+import build.your.own.cluster.SlotIndexedStorage;
+import build.your.own.configurations.SystemConfig;
+import build.your.own.database.offheap.OffHeapStorage;
+import build.your.own.database.shard.ShardedStorage;
+import build.your.own.database.type.Encodings;
+import build.your.own.database.type.Value;
+import build.your.own.resp.RESP;
+import build.your.own.utils.ArgumentsUtils;
+
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The {@code DbMap} class acts as an in-memory key-value store similar to a simplified Redis.
@@ -16,37 +24,124 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <p>This class stores key-value pairs in memory, where each value is wrapped in an {@link Data}
  * object that can optionally have an expiration timestamp.
  *
+ * <p>Keys and values are kept as raw bytes ({@link ByteKey}, {@code byte[]}), binary safe like Redis,
+ * and expiry is a primitive epoch-millis {@code long}. Per entry that is the map node, the key
+ * wrapper, one 24 byte {@link Data} and the two arrays; the previous {@code String} +
+ * {@code LocalDateTime} layout paid for two more objects, plus three more (~72 bytes) for any key with a TTL.
+ *
+ * <p>Where entries live is up to the {@link Storage} backend chosen with {@code --storage-engine}:
+ * {@link HeapStorage} by default, {@link OffHeapStorage} ({@code --offheap-size}) to keep a large
+ * keyspace out of the GC's reach, or {@link ShardedStorage} ({@code --shards}) to partition it between
+ * single threaded owners.
+ *
  * <p>It follows the Singleton pattern to ensure a single shared instance across the application.
  *
  * <h2>Features</h2>
  * <ul>
  *   <li>Supports setting and retrieving values with optional expiry.</li>
  *   <li>Automatically removes expired keys during retrieval.</li>
+ *   <li>Reclaims expired keys nobody reads through {@link ActiveExpiry}.</li>
+ *   <li>Stays under {@code --maxmemory} through {@link Eviction}.</li>
  *   <li>Can be persisted using {@code SerializeProtocol} to a file.</li>
  * </ul>
  */
 public class DbMap {
-  private final ConcurrentMap<String, Data> inMemoryMap;
-  /* ReentrantReadWriteLock Notes
-    Allows concurrent readers to access shared data
-    Allows only one writer at a time
-    Writer blocks all readers and writers
-    Readers block writers but don't block other readers
-
-    Through these points we can intuitively understand the chronology of placing read and write locks
-    This gives better performance than synchronized because it allows multiple threads to read the data concurrently and not locks the resource completely and unfairly
-    This is useful when we have a lot of reads and few writes
+  /** {@link Data#expiry()} of a key without TTL. */
+  public static final long NO_EXPIRY = 0L;
+
+  private static final String DEFAULT_OFFHEAP_SIZE = "1gb";
+  private static final int VALUE_LOCK_STRIPES = 256;
+
+  private final Storage inMemoryMap;
+  private final ExpiryIndex expiryIndex = new ExpiryIndex();
+  private final ActiveExpiry activeExpiry;
+  private final Eviction eviction;
+  //writes since the last snapshot, a LongAdder so SETs on different cores do not contend on one counter
+  private final LongAdder changes = new LongAdder();
+  private static final SnapshotView[] NO_VIEWS = new SnapshotView[0];
+
+  //open point-in-time views, see openSnapshot(); replaced as a whole, never changed in place
+  private volatile SnapshotView[] snapshotViews = NO_VIEWS;
+  //pauses write commands while a view opens, see setWriteBarrier()
+  private volatile Consumer<Runnable> writeBarrier = Runnable::run;
+  //runs evictions and active expiries, see setRemovalBarrier()
+  private volatile RemovalBarrier removalBarrier = (key, wait, removal) -> removal.getAsBoolean();
+  //writers in flight per parity of writeEpoch, drained by openSnapshot()
+  private final LongAdder[] activeWriters = {new LongAdder(), new LongAdder()};
+  private volatile int writeEpoch;
+  //held while a key is written, and while a Value is read or copied, see valueLock()
+  private final ReentrantLock[] valueLocks = new ReentrantLock[VALUE_LOCK_STRIPES];
+  /* Concurrency notes
+    There is no map wide lock: every operation is a single atomic call on the Storage
+    (ConcurrentHashMap bins for the heap, per stripe locks off heap), so GETs and SETs on
+    different keys never wait on each other.
+    Lazy expiry removes with remove(key, expected) semantics: if another client rewrote the key
+    between our read and the removal, the fresh value survives.
+    Eviction runs on the writing thread before the put, serialized by its own lock; readers never
+    take it. The memory limit is soft: concurrent writers may overshoot it by their own values.
+    Evictions and active expiries go through the removalBarrier, the command layer's write lock of the
+    victim, so their DEL is ordered with the writes to it: a write to the victim is either removed and
+    followed by the DEL, or applied after it.
+    With a ShardedStorage there are no concurrent writers per key at all: the map of each shard is
+    only touched by its thread, and put() runs there as a whole.
+    Snapshots: a writer registers in activeWriters before reading snapshotViews (both volatile, so
+    either openSnapshot sees the writer or the writer sees the view). openSnapshot flips the epoch and
+    waits for the writers of the previous one, which may have missed the view, so every write not
+    captured by the view is in the map before the view is walked.
+    Values: a Value is mutated in place, so unlike a string it cannot be read without the key's value
+    lock. Writers take it after eviction made room, never before: eviction takes the locks of its
+    victims. With a ShardedStorage it is only taken on the shard thread, or by a thread that does not
+    call into a shard while holding it.
   */
-  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-  private final Lock readLock = lock.readLock();
-  private final Lock writeLock = lock.writeLock();
 
   /**
-   * Private constructor for singleton pattern.
-   *
+   * Creates a heap backed map.
    */
   public DbMap() {
-    this.inMemoryMap = new ConcurrentHashMap<>();
+    this(new HeapStorage());
+  }
+
+  public DbMap(Storage storage) {
+    this(storage, new Eviction(storage, EvictionPolicy.NOEVICTION, 0, Eviction.DEFAULT_SAMPLES));
+  }
+
+  public DbMap(Storage storage, Eviction eviction) {
+    this.inMemoryMap = storage;
+    this.activeExpiry = new ActiveExpiry(storage, expiryIndex);
+    this.eviction = eviction;
+    eviction.setExpiryIndex(expiryIndex);
+    storage.setAccessTracker(eviction);
+    for (int i = 0; i < valueLocks.length; i++) {
+      valueLocks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Creates the map with the backend selected by {@code --storage-engine} and the
+   * {@code --maxmemory} / {@code --maxmemory-policy} / {@code --maxmemory-samples} eviction settings.
+   */
+  public DbMap(SystemConfig config) {
+    this(createStorage(config), config);
+  }
+
+  private DbMap(Storage storage, SystemConfig config) {
+    this(storage, Eviction.fromConfig(storage,
+        config.getConfig().get("maxmemory"),
+        config.getConfig().get("maxmemory-policy"),
+        config.getConfig().get("maxmemory-samples")));
+    Encodings.configure(config);
+  }
+
+  private static Storage createStorage(SystemConfig config) {
+    Storage storage = switch (StorageEngine.fromConfig(config.getConfig().get("storage-engine"))) {
+      case HEAP -> new HeapStorage();
+      case OFFHEAP -> new OffHeapStorage(ArgumentsUtils.parseMemory(
+          config.getConfig().getOrDefault("offheap-size", DEFAULT_OFFHEAP_SIZE)));
+      case SHARDED -> new ShardedStorage(Integer.parseInt(config.getConfig().getOrDefault("shards",
+          String.valueOf(Runtime.getRuntime().availableProcessors()))));
+    };
+    //a cluster node looks keys up by hash slot while resharding
+    return ArgumentsUtils.isEnabled(config, "cluster-enabled") ? new SlotIndexedStorage(storage) : storage;
   }
 
   /**
@@ -57,88 +152,509 @@ public class DbMap {
    * If the key doesn't exist, {@code null} is returned.
    *
    * @param key the key to look up
-   * @return the value if present and not expired, otherwise {@code null}
+   * @return the value bytes if present and not expired, otherwise {@code null}
+   * @throws WrongTypeException if the key holds a {@link Value}
    */
-  public String getValue(String key){
-    readLock.lock();
-
-    try{
-      Data data = inMemoryMap.get(key);
-      if (data == null) return null;
-
-      if(data.expiry !=null && data.expiry.isBefore(LocalDateTime.now())){
-        //Upgrade to write lock to remove expired key
-        //This upgrade is okay, vice versa is not true (from write to read)
-        readLock.unlock();
-        writeLock.lock();
-        try{
-          Data doubleCheck = inMemoryMap.get(key);
-          if(doubleCheck != null && doubleCheck.expiry != null && doubleCheck.expiry.isBefore(LocalDateTime.now())){
-            //Remove expired key
+  public byte[] get(ByteKey key){
+    Data data = live(key);
+    if (data == null) return null;
+    if (data.value() != null) throw new WrongTypeException();
+    return data.data();
+  }
+
+  /**
+   * @return {@code true} if {@code key} exists and is not expired, whatever its type
+   */
+  public boolean exists(ByteKey key){
+    return live(key) != null;
+  }
+
+  /**
+   * @return the entry of {@code key} unless absent or expired
+   */
+  private Data live(ByteKey key){
+    Data data = inMemoryMap.get(key);
+    if (data == null) return null;
+
+    long now = System.currentTimeMillis();
+    if(data.isExpired(now)){
+      //Remove expired key, unless it was rewritten meanwhile
+      if (inMemoryMap.removeIfExpired(key, now)) activeExpiry.recordLazyExpiry();
+      return null;
+    }
+    return data;
+  }
+
+  /**
+   * Reads the {@link Value} of {@code key} under its lock.
+   *
+   * @param reader gets the value, {@code null} if the key does not exist
+   * @throws WrongTypeException if the key holds something else than a {@code type}
+   */
+  public <V extends Value, T> T read(ByteKey key, Class<V> type, Function<V, T> reader){
+    return inspect(key, data -> reader.apply(data != null ? typed(data, type) : null));
+  }
+
+  /**
+   * Looks at the entry of {@code key} under its lock, whatever its type, e.g. for {@code TYPE}.
+   *
+   * @param inspector gets the live entry, {@code null} if the key does not exist
+   */
+  public <T> T inspect(ByteKey key, Function<Data, T> inspector){
+    return inMemoryMap.execute(key, () -> {
+      ReentrantLock lock = valueLock(key);
+      lock.lock();
+      try {
+        return inspector.apply(live(key));
+      } finally {
+        lock.unlock();
+      }
+    });
+  }
+
+  /**
+   * Changes the {@link Value} of {@code key} in place under its lock, creating it first if needed. A
+   * value left empty removes the key.
+   *
+   * @param creator  makes the value of a new key, {@code null} to leave a missing key alone: then
+   *                 {@code mutator} gets {@code null} and nothing is written
+   * @param incoming bytes the change may add, room {@code maxmemory} has to make for it
+   * @throws WrongTypeException   if the key holds something else than a {@code type}
+   * @throws StorageFullException as {@link #put}
+   */
+  public <V extends Value, T> T update(ByteKey key, Class<V> type, Supplier<V> creator, long incoming,
+                                       Function<V, T> mutator){
+    return inMemoryMap.execute(key, () -> {
+      T result;
+      LongAdder writers = activeWriters[writeEpoch & 1];
+      writers.increment();
+      try {
+        SnapshotView[] views = snapshotViews;
+        eviction.makeRoom(key, incoming, victim -> evict(victim, views));
+        ReentrantLock lock = valueLock(key);
+        lock.lock();
+        try {
+          Data data = live(key);
+          V value = data != null ? typed(data, type) : creator != null ? creator.get() : null;
+          if (value == null) return mutator.apply(null);
+          preserve(views, key, data);
+          result = mutator.apply(value);
+          if (!value.isEmpty()) {
+            //put again even if unchanged: the storage recounts its memory, off heap encodes it anew
+            inMemoryMap.put(key, data != null ? data : new Data(NO_EXPIRY, value));
+          } else if (data != null) {
             inMemoryMap.remove(key);
           }
-        }finally {
-          //downgrade again
-          writeLock.unlock();
-          readLock.lock();
+        } finally {
+          lock.unlock();
         }
-        return null;
+      } finally {
+        writers.decrement();
       }
+      changes.increment();
+      return result;
+    });
+  }
 
-      return data.data;
-    }
-    finally {
-      //release read lock
-      readLock.unlock();
+  @SuppressWarnings("unchecked")
+  private static <V extends Value> V typed(Data data, Class<V> type){
+    if (!type.isInstance(data.value())) throw new WrongTypeException();
+    return (V) data.value();
+  }
+
+  /**
+   * @return {@code data}, the entry of {@code key}, if it is a string, else a copy of it taken under the
+   * key's lock, for a reader working on the entry outside of it, e.g. an AOF rewrite
+   */
+  public Data detached(ByteKey key, Data data){
+    if (data.value() == null) return data;
+    ReentrantLock lock = valueLock(key);
+    lock.lock();
+    try {
+      return data.copy();
+    } finally {
+      lock.unlock();
     }
   }
 
+  ReentrantLock valueLock(ByteKey key){
+    return valueLocks[ScanCursor.segmentOf(key) & (VALUE_LOCK_STRIPES - 1)];
+  }
 
   /**
    * Stores a key-value pair into the map with an optional expiration time.
    *
+   * @param key      the key to store
+   * @param value    the value bytes to store
+   * @param expireAt epoch millis after which the key is gone, {@link #NO_EXPIRY} to keep it forever
+   * @throws StorageFullException if the backend has no room left, or maxmemory is reached and
+   *                              nothing can be evicted
+   */
+  public void put(ByteKey key, byte[] value, long expireAt){
+    put(key, new Data(expireAt, value));
+  }
+
+  /**
+   * {@link #put(ByteKey, byte[], long)} for a value of another type, e.g. when a snapshot is loaded.
+   */
+  public void put(ByteKey key, Value value, long expireAt){
+    put(key, new Data(expireAt, value));
+  }
+
+  private void put(ByteKey key, Data data){
+    //a sharded storage runs the whole write, eviction included, on the shard owning the key
+    inMemoryMap.execute(key, () -> {
+      store(key, data);
+      return null;
+    });
+  }
+
+  private void store(ByteKey key, Data data){
+    LongAdder writers = activeWriters[writeEpoch & 1];
+    writers.increment();
+    try {
+      SnapshotView[] views = snapshotViews;
+      eviction.makeRoom(key, key.length() + data.memoryUsage(), victim -> evict(victim, views));
+      boolean indexed;
+      ReentrantLock lock = valueLock(key);
+      lock.lock();
+      try {
+        Data previous = views.length != 0 || data.hasExpiry() ? inMemoryMap.get(key) : null;
+        if (views.length != 0) preserve(views, key, previous);
+        inMemoryMap.put(key, data);
+        indexed = !data.hasExpiry() || isIndexedBy(previous, data.expiry());
+      } finally {
+        lock.unlock();
+      }
+      if (!indexed) expiryIndex.register(key, data.expiry());
+    } finally {
+      writers.decrement();
+    }
+    changes.increment();
+  }
+
+  /**
+   * Removes every key, e.g. before a replica loads the dataset of its primary. Keys written meanwhile may
+   * survive.
+   */
+  public void clear() {
+    LongAdder writers = activeWriters[writeEpoch & 1];
+    writers.increment();
+    try {
+      SnapshotView[] views = snapshotViews;
+      for (Map.Entry<ByteKey, Data> entry : entries()) {
+        ByteKey key = entry.getKey();
+        inMemoryMap.execute(key, () -> remove(key, views));
+      }
+    } finally {
+      writers.decrement();
+    }
+    changes.increment();
+  }
+
+  /**
+   * Removes {@code key}, e.g. for {@code DEL}.
+   *
+   * @return {@code true} if the key existed, expired or not
+   */
+  public boolean delete(ByteKey key) {
+    boolean removed = inMemoryMap.execute(key, () -> {
+      LongAdder writers = activeWriters[writeEpoch & 1];
+      writers.increment();
+      try {
+        return remove(key, snapshotViews);
+      } finally {
+        writers.decrement();
+      }
+    });
+    if (removed) changes.increment();
+    return removed;
+  }
+
+  private boolean evict(ByteKey victim, SnapshotView[] views) {
+    //a writer holding its own write locks, maybe on a shard thread: it must not wait for others
+    return removalBarrier.remove(victim, false, () -> remove(victim, views));
+  }
+
+  private boolean remove(ByteKey key, SnapshotView[] views) {
+    ReentrantLock lock = valueLock(key);
+    lock.lock();
+    try {
+      if (views.length != 0) preserve(views, key, inMemoryMap.get(key));
+      return inMemoryMap.remove(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * A live entry with an expiry always has a hint in the {@link ExpiryIndex} no later than that expiry, and
+   * {@link ActiveExpiry} registers a key again when it finds it due later. So a write pushing the expiry
+   * of a live key back, say a session refreshed on every request, needs no new hint: only one moving it
+   * earlier or giving a TTL to a key without one does, and the index stays at a hint or two per key.
+   */
+  private static boolean isIndexedBy(Data previous, long expireAt) {
+    return previous != null && previous.hasExpiry() && !previous.isExpired(System.currentTimeMillis())
+        && previous.expiry() <= expireAt;
+  }
+
+  private static void preserve(SnapshotView[] views, ByteKey key, Data current) {
+    for (SnapshotView view : views) {
+      view.preserve(key, current);
+    }
+  }
+
+  /**
+   * Opens a point-in-time view of the map for a snapshot, see {@link SnapshotView}. Writers are not
+   * blocked; the call itself waits for the writes already in flight. Several views may be open at once,
+   * e.g. a save and an AOF rewrite, each costing the copies of the keys written meanwhile.
+   */
+  public SnapshotView openSnapshot() {
+    return open();
+  }
+
+  /**
+   * {@link #openSnapshot()} for a view a stream of write commands continues from, like an AOF rewrite or
+   * a replica's full sync: {@code atOpen} runs as the view opens, inside the write barrier, so every
+   * write command is either in the view and propagated before {@code atOpen}, or in neither.
+   *
+   * @param atOpen e.g. notes the replication offset the view stands at
+   */
+  public SnapshotView openSnapshot(Runnable atOpen) {
+    SnapshotView[] opened = new SnapshotView[1];
+    writeBarrier.accept(() -> {
+      opened[0] = open();
+      try {
+        atOpen.run();
+      } catch (RuntimeException e) {
+        opened[0].close();
+        throw e;
+      }
+    });
+    return opened[0];
+  }
+
+  private synchronized SnapshotView open() {
+    SnapshotView view = new SnapshotView(this, inMemoryMap);
+    SnapshotView[] views = Arrays.copyOf(snapshotViews, snapshotViews.length + 1);
+    views[views.length - 1] = view;
+    snapshotViews = views;
+    int previous = writeEpoch;
+    writeEpoch = previous + 1;
+    LongAdder stragglers = activeWriters[previous & 1];
+    while (stragglers.sum() != 0) {
+      Thread.onSpinWait();
+    }
+    return view;
+  }
+
+  synchronized void closeSnapshot(SnapshotView view) {
+    SnapshotView[] views = snapshotViews;
+    for (int i = 0; i < views.length; i++) {
+      if (views[i] != view) continue;
+      SnapshotView[] remaining = new SnapshotView[views.length - 1];
+      System.arraycopy(views, 0, remaining, 0, i);
+      System.arraycopy(views, i + 1, remaining, i, views.length - i - 1);
+      snapshotViews = remaining;
+      return;
+    }
+  }
+
+  /**
+   * Installs what {@link #openSnapshot(Runnable)} runs in to stop write commands between their execution
+   * and their propagation, the command layer's write locks.
+   */
+  public void setWriteBarrier(Consumer<Runnable> writeBarrier) {
+    this.writeBarrier = writeBarrier;
+  }
+
+  /**
+   * Installs what evictions and active expiries run in, for the command layer to order them with the
+   * writes to their key and pass them on, as no command ever asked for them.
+   */
+  public void setRemovalBarrier(RemovalBarrier removalBarrier) {
+    this.removalBarrier = removalBarrier;
+    activeExpiry.setRemovalBarrier(removalBarrier);
+  }
+
+  /**
+   * @return writes since the last successful snapshot, what the {@code save} rules compare against
+   */
+  public long changesSinceSave() {
+    return changes.sum();
+  }
+
+  /**
+   * Called after a snapshot succeeded.
+   *
+   * @param saved value of {@link #changesSinceSave()} when the snapshot started; writes made while it
+   *              ran stay counted for the next one
+   */
+  public void markSaved(long saved) {
+    changes.add(-saved);
+  }
+
+  /**
+   * {@link #get(ByteKey)} for keys and values as the command layer sees them, one char per byte.
+   */
+  public String getValue(String key){
+    byte[] value = get(ByteKey.of(key));
+    return value != null ? new String(value, RESP.CHARSET) : null;
+  }
+
+  /**
+   * Stores a key-value pair into the map without expiry.
+   *
    * @param key the key to store
    */
   public void putValue(String key, String value){
-    putValue(key, value, null);
+    putValue(key, value, NO_EXPIRY);
   }
 
   /**
-   * Stores a key-value pair into the map with an optional expiration time.
+   * {@link #put(ByteKey, byte[], long)} for keys and values as the command layer sees them.
    *
-   * @param key the key to store
-   * @param val the value to store
-   * @param exp the expiration time (can be {@code null} if no expiry is desired)
+   * @param key      the key to store
+   * @param val      the value to store
+   * @param expireAt epoch millis expiry, {@link #NO_EXPIRY} if no expiry is desired
    */
-  public void putValue(String key, String val, LocalDateTime exp){
-    writeLock.lock();
-    try{
-      inMemoryMap.put(key, new Data(exp, val));
-    }finally {
-      //release write lock
-      writeLock.unlock();
-    }
+  public void putValue(String key, String val, long expireAt){
+    put(ByteKey.of(key), val.getBytes(RESP.CHARSET), expireAt);
+  }
+
 
+  /**
+   * One step of {@code SCAN}, see {@link Storage#scan}: passes the live keys to {@code visitor}, expired
+   * ones are skipped.
+   *
+   * @return the cursor to continue from, {@code 0} when the scan is complete
+   */
+  public long scan(long cursor, int count, Consumer<ByteKey> visitor){
+    long now = System.currentTimeMillis();
+    return inMemoryMap.scan(cursor, count, (key, expiry, access) -> {
+      if (expiry == NO_EXPIRY || expiry > now) visitor.accept(key);
+    });
   }
 
+  /**
+   * @return weakly consistent view of all entries, including expired ones not yet removed
+   */
+  public Iterable<Map.Entry<ByteKey, Data>> entries(){
+    return this.inMemoryMap::iterator;
+  }
 
-  public Set<Map.Entry<String, Data>> getEntrySet(){
-    return this.inMemoryMap.entrySet();
+  public long size() {
+    return inMemoryMap.size();
   }
 
-  public ConcurrentMap<String, Data> getInMemoryMap() {
+  public Storage getStorage() {
     return inMemoryMap;
   }
 
   /**
-   * TODO: IMPLEMENT SUPPORT FOR MULTIPLY DATA TYPES \n
-   * Represents a single entry in the {@code DbMap}, holding the value and optional expiry timestamp.
+   * @return the background expiry cycle, started by {@code Main}
+   */
+  public ActiveExpiry getActiveExpiry() {
+    return activeExpiry;
+  }
+
+  /**
+   * @return the maxmemory enforcement, also the {@link AccessTracker} of the storage
+   */
+  public Eviction getEviction() {
+    return eviction;
+  }
+
+  /**
+   * Represents a single entry in the {@code DbMap}, holding the value and optional expiry timestamp. The
+   * value is either a string, {@link #data()}, or any other type, {@link #value()}.
    *
-   * @param expiry {@link LocalDateTime} the expiration time (can be null)
-   * @param data   the actual string value
+   * <p>Immutable apart from {@link #access}, the LRU clock / LFU counter maintained by {@link Eviction},
+   * {@link #charged} and the contents of a {@link Value}. Equality is identity, which is what
+   * {@code remove(key, expected)} needs.
+   */
+  /**
+   * Wraps a removal the map decides on by itself, see {@link #setRemovalBarrier(RemovalBarrier)}.
    */
-  public record Data(
-          LocalDateTime expiry,
-          String data
-  ){}
+  @FunctionalInterface
+  public interface RemovalBarrier {
+    /**
+     * Runs {@code removal} of {@code key}.
+     *
+     * @param wait whether to wait for writes to {@code key} in progress, else give up if there are
+     * @return what {@code removal} returned, {@code false} if it was not run
+     */
+    boolean remove(ByteKey key, boolean wait, BooleanSupplier removal);
+  }
+
+  public static final class Data {
+    private final long expiry;
+    private final byte[] data;
+    private final Value value;
+    //Racy updates are fine, eviction is an approximation either way
+    int access;
+    //bytes HeapStorage counted for the entry when last put, a Value changes size in place
+    long charged;
+
+    /**
+     * @param expiry epoch millis expiration time, {@link #NO_EXPIRY} if none
+     * @param data   the raw value bytes
+     */
+    public Data(long expiry, byte[] data) {
+      this.expiry = expiry;
+      this.data = data;
+      this.value = null;
+    }
+
+    /**
+     * @param expiry epoch millis expiration time, {@link #NO_EXPIRY} if none
+     * @param value  a value other than a string
+     */
+    public Data(long expiry, Value value) {
+      this.expiry = expiry;
+      this.data = null;
+      this.value = value;
+    }
+
+    public long expiry() {
+      return expiry;
+    }
+
+    /**
+     * @return the string value, {@code null} if the entry holds a {@link #value()}
+     */
+    public byte[] data() {
+      return data;
+    }
+
+    /**
+     * @return the value if not a string, {@code null} otherwise
+     */
+    public Value value() {
+      return value;
+    }
+
+    /**
+     * @return approximate bytes held by the value
+     */
+    public long memoryUsage() {
+      return value != null ? value.memoryUsage() : data.length;
+    }
+
+    /**
+     * @return this entry if it is a string, else one with a deep copy of its value; callers hold the
+     * key's lock
+     */
+    Data copy() {
+      return value != null ? new Data(expiry, value.copy()) : this;
+    }
+
+    public boolean hasExpiry() {
+      return expiry != NO_EXPIRY;
+    }
+
+    public boolean isExpired(long now) {
+      return expiry != NO_EXPIRY && expiry <= now;
+    }
+  }
 }
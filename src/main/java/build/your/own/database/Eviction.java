@@ -0,0 +1,333 @@
+package build.your.own.database;
+
+import build.your.own.logger.Logger;
+import build.your.own.utils.ArgumentsUtils;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * <h1>Eviction</h1>
+ * Keeps {@link Storage#usedMemory()} under {@code --maxmemory} by removing keys picked by the
+ * {@code --maxmemory-policy}, before a write is applied.
+ *
+ * <p>As in redis there is no global LRU list or LFU heap to maintain on every read: each entry carries a
+ * 32 bit access word (see {@link AccessTracker}) and eviction samples {@code --maxmemory-samples} keys
+ * per round into a small pool of the best candidates seen so far, then evicts the best one.
+ * <ul>
+ *   <li>LRU: the word is a 24 bit clock in seconds of the last access.</li>
+ *   <li>LFU: the high 24 bits are the minute of the last decrement, the low 8 bits a logarithmic
+ *   counter: incremented with probability {@code 1 / ((counter - 5) * 10 + 1)} on access and
+ *   decremented by one per idle minute, so new keys get a chance before being outranked.</li>
+ *   <li>volatile-ttl: only keys with a TTL are candidates, the one expiring first goes. Rather than
+ *   sampling the keyspace, where TTL keys may be too rare to ever be drawn, it walks the
+ *   {@link ExpiryIndex} in expiry order, as redis samples its {@code expires} dict, checking each hint
+ *   against the live entry. A write is refused only once a whole walk of the index found no TTL key of
+ *   the partition.</li>
+ * </ul>
+ * Keys already expired are always the best candidates. A partitioned storage ({@link Storage#partitions()})
+ * gets a pool per partition, and each partition is held to its share of the limit.
+ */
+public class Eviction implements AccessTracker {
+  private static final Logger logger = Logger.getInstance(Eviction.class);
+  /** {@code --maxmemory-samples} when not configured, as redis. */
+  public static final int DEFAULT_SAMPLES = 5;
+  private static final int POOL_SIZE = 16;
+  private static final int CLOCK_MASK = (1 << 24) - 1;
+  private static final int LFU_INIT_VAL = 5;
+  private static final int LFU_LOG_FACTOR = 10;
+  private static final int LFU_MAX = 255;
+  //rounds without any candidate before giving up on a write
+  private static final int MAX_EMPTY_ROUNDS = 16;
+  //victims in a row that could not be removed before giving up on a write, see makeRoom()
+  private static final int MAX_MISSES = 1024;
+
+  private final Storage storage;
+  private final EvictionPolicy policy;
+  private final long maxMemory;
+  private final int samples;
+
+  //one per storage partition, each evicting only its own keys
+  private final Pool[] pools;
+  private final long partitionMaxMemory;
+
+  private final AtomicLong evictedKeys = new AtomicLong();
+  //where volatile-ttl finds the keys with a TTL, installed by the DbMap
+  private ExpiryIndex expiryIndex = new ExpiryIndex();
+  //set on a replica, which drops keys when its primary does
+  private volatile boolean ignoreMaxMemory;
+
+  /**
+   * @param maxMemory bytes of {@link Storage#usedMemory()} allowed, {@code 0} for no limit
+   */
+  public Eviction(Storage storage, EvictionPolicy policy, long maxMemory, int samples) {
+    this.storage = storage;
+    this.policy = policy;
+    this.maxMemory = maxMemory;
+    this.samples = samples;
+    this.pools = new Pool[storage.partitions()];
+    for (int i = 0; i < pools.length; i++) {
+      pools[i] = new Pool(i);
+    }
+    this.partitionMaxMemory = maxMemory / pools.length;
+  }
+
+  @Override
+  public int initial() {
+    return switch (policy) {
+      case ALLKEYS_LRU -> lruClock();
+      case ALLKEYS_LFU -> (lfuMinutes() << 8) | LFU_INIT_VAL;
+      default -> 0;
+    };
+  }
+
+  @Override
+  public int touch(int access) {
+    return switch (policy) {
+      case ALLKEYS_LRU -> lruClock();
+      case ALLKEYS_LFU -> (lfuMinutes() << 8) | logIncrement(lfuDecay(access));
+      default -> access;
+    };
+  }
+
+  /**
+   * Stops evicting, on a replica: keys evicted by the primary reach it as {@code DEL}s, and evicting on
+   * its own would leave it with a different dataset.
+   */
+  public void setIgnoreMaxMemory(boolean ignoreMaxMemory) {
+    this.ignoreMaxMemory = ignoreMaxMemory;
+  }
+
+  void setExpiryIndex(ExpiryIndex expiryIndex) {
+    this.expiryIndex = expiryIndex;
+  }
+
+  /**
+   * Evicts until a write of about {@code incoming} bytes to {@code key} fits, called by {@link DbMap}
+   * before every put. With a partitioned storage only the partition of {@code key} is considered, against
+   * its share of {@code maxmemory}.
+   *
+   * @param remover removes a victim, {@code false} if it was gone already or could not be removed now
+   * @throws StorageFullException under {@code noeviction}, or when no key can be evicted
+   */
+  public void makeRoom(ByteKey key, long incoming, Predicate<ByteKey> remover) {
+    if (maxMemory == 0 || ignoreMaxMemory) return;
+    int partition = storage.partitionOf(key);
+    if (storage.usedMemory(partition) + incoming <= partitionMaxMemory) return;
+    if (policy == EvictionPolicy.NOEVICTION) {
+      throw new StorageFullException("used memory above maxmemory");
+    }
+    pools[partition].makeRoom(incoming, remover);
+  }
+
+  /**
+   * Candidates of one partition, sorted by ascending score, the best one last.
+   */
+  private final class Pool {
+    private final int partition;
+    //a single writer evicts from the partition at a time
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteKey[] keys = new ByteKey[POOL_SIZE];
+    private final long[] scores = new long[POOL_SIZE];
+    private int size;
+    //volatile-ttl: position in the expiry index, resumed by the next round
+    private long cursorSlotId = Long.MIN_VALUE;
+    private ExpiryIndex.Slot cursorSlot;
+    private Iterator<ByteKey> cursor = Collections.emptyIterator();
+
+    private Pool(int partition) {
+      this.partition = partition;
+    }
+
+    private void makeRoom(long incoming, Predicate<ByteKey> remover) {
+      lock.lock();
+      try {
+        int emptyRounds = 0;
+        //bounded: a victim locked by a writer that waits for this one is never removable
+        int misses = 0;
+        while (storage.usedMemory(partition) + incoming > partitionMaxMemory) {
+          if (policy == EvictionPolicy.VOLATILE_TTL) {
+            //a round finding nothing has walked the whole index, then keys are taken from any hint
+            if (sampleVolatile(true) == 0 && size == 0 && sampleVolatile(false) == 0) {
+              throw new StorageFullException("used memory above maxmemory and no key with a TTL to evict");
+            }
+          } else {
+            storage.sample(partition, samples, this::offer);
+          }
+          if (size == 0) {
+            if (++emptyRounds == MAX_EMPTY_ROUNDS) {
+              throw new StorageFullException("used memory above maxmemory and no key to evict");
+            }
+            continue;
+          }
+          emptyRounds = 0;
+          //candidates may be gone or rewritten since sampled, remove() simply misses then
+          ByteKey victim = keys[--size];
+          keys[size] = null;
+          if (remover.test(victim)) {
+            evictedKeys.incrementAndGet();
+            misses = 0;
+          } else if (++misses == MAX_MISSES) {
+            throw new StorageFullException("used memory above maxmemory and no key could be evicted");
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Offers the next {@code samples} keys of the partition that have a TTL, walking the expiry index in
+     * expiry order from where the previous round stopped and starting over past its end. Hints are
+     * checked against the live entry, stale ones skipped.
+     *
+     * <p>A key evicted and written again keeps the hints of its earlier lives, so a popular key would be
+     * met, and evicted, once per hint. Hence an {@code exact} walk only takes a key from the hint in the
+     * slot of its live expiry, as one entry per key in redis' {@code expires} dict. The few keys whose
+     * only hint is earlier, their expiry pushed back since (see {@link ExpiryIndex}), are taken by a
+     * loose walk before giving up.
+     *
+     * <p>Hints proven stale, of a key gone, without a TTL or expiring before the hint's slot, are dropped
+     * on the way, and slots left empty with them, else the hints of evicted keys would be walked over
+     * until their slot is due.
+     *
+     * @return keys offered, {@code 0} only if the walk went over the whole index
+     */
+    private int sampleVolatile(boolean exact) {
+      int offered = 0;
+      int restarts = 0;
+      while (offered < samples) {
+        if (!cursor.hasNext()) {
+          if (cursorSlot != null) expiryIndex.retire(cursorSlotId, cursorSlot);
+          Map.Entry<Long, ExpiryIndex.Slot> next = expiryIndex.slotAfter(cursorSlotId);
+          if (next == null) {
+            //past the end twice: a whole walk from the first slot found nothing
+            if (++restarts == 2) break;
+            cursorSlotId = Long.MIN_VALUE;
+            cursorSlot = null;
+          } else {
+            cursorSlotId = next.getKey();
+            cursorSlot = next.getValue();
+            cursor = cursorSlot.keys.iterator();
+          }
+          continue;
+        }
+        ByteKey key = cursor.next();
+        //another partition's keys are read on its own thread only
+        if (storage.partitionOf(key) != partition) continue;
+        DbMap.Data live = storage.get(key);
+        long liveSlotId = live != null && live.hasExpiry() ? live.expiry() / ExpiryIndex.SLOT_MILLIS : Long.MIN_VALUE;
+        if (liveSlotId < cursorSlotId) {
+          //not the hint keeping the key in the index, if any: a key expiring earlier has one earlier
+          if (expiryIndex.take(cursorSlot, key)) {
+            //unless a writer rewrote the key since, finding this hint in place of the one it would add
+            DbMap.Data now = storage.get(key);
+            if (now != null && now.hasExpiry() && now.expiry() / ExpiryIndex.SLOT_MILLIS >= cursorSlotId) {
+              expiryIndex.register(key, now.expiry());
+            }
+          }
+          continue;
+        }
+        if (exact && liveSlotId != cursorSlotId) continue;
+        offer(key, live.expiry(), live.access);
+        offered++;
+      }
+      return offered;
+    }
+
+    /**
+     * Inserts a sampled entry into the pool if it is better than the worst candidate held.
+     */
+    private void offer(ByteKey key, long expiry, int access) {
+      long score = score(expiry, access);
+      if (score < 0) return;
+      for (int i = 0; i < size; i++) {
+        if (keys[i].equals(key)) return;
+      }
+      if (size == POOL_SIZE) {
+        if (score <= scores[0]) return;
+        //drop the worst candidate
+        System.arraycopy(keys, 1, keys, 0, POOL_SIZE - 1);
+        System.arraycopy(scores, 1, scores, 0, POOL_SIZE - 1);
+        size--;
+      }
+      int at = size;
+      while (at > 0 && scores[at - 1] > score) {
+        keys[at] = keys[at - 1];
+        scores[at] = scores[at - 1];
+        at--;
+      }
+      keys[at] = key;
+      scores[at] = score;
+      size++;
+    }
+  }
+
+  /**
+   * @return how good an eviction candidate the entry is, higher is better, negative if not a candidate
+   */
+  private long score(long expiry, int access) {
+    long now = System.currentTimeMillis();
+    if (expiry != DbMap.NO_EXPIRY && expiry <= now) return Long.MAX_VALUE;
+    return switch (policy) {
+      case ALLKEYS_LRU -> (lruClock() - access) & CLOCK_MASK;
+      case ALLKEYS_LFU -> LFU_MAX - lfuDecay(access);
+      case VOLATILE_TTL -> expiry == DbMap.NO_EXPIRY ? -1 : Long.MAX_VALUE - 1 - expiry;
+      case NOEVICTION -> -1;
+    };
+  }
+
+  private static int lruClock() {
+    return (int) (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) & CLOCK_MASK);
+  }
+
+  private static int lfuMinutes() {
+    return (int) (TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) & CLOCK_MASK);
+  }
+
+  /**
+   * @return the counter of {@code access} decremented once per minute elapsed since its last update
+   */
+  private static int lfuDecay(int access) {
+    int counter = access & LFU_MAX;
+    int elapsed = (lfuMinutes() - (access >>> 8)) & CLOCK_MASK;
+    return Math.max(0, counter - elapsed);
+  }
+
+  private static int logIncrement(int counter) {
+    if (counter == LFU_MAX) return counter;
+    int base = Math.max(0, counter - LFU_INIT_VAL);
+    double probability = 1.0 / (base * LFU_LOG_FACTOR + 1);
+    return ThreadLocalRandom.current().nextDouble() < probability ? counter + 1 : counter;
+  }
+
+  public EvictionPolicy getPolicy() {
+    return policy;
+  }
+
+  public long getMaxMemory() {
+    return maxMemory;
+  }
+
+  public long evictedKeys() {
+    return evictedKeys.get();
+  }
+
+  public static Eviction fromConfig(Storage storage, String maxMemory, String policy, String samples) {
+    Eviction eviction = new Eviction(storage,
+        EvictionPolicy.fromConfig(policy),
+        maxMemory == null ? 0 : ArgumentsUtils.parseMemory(maxMemory),
+        samples == null ? DEFAULT_SAMPLES : Integer.parseInt(samples.trim()));
+    if (eviction.maxMemory > 0) {
+      logger.info(String.format("maxmemory %d bytes, policy %s, %d samples",
+          eviction.maxMemory, eviction.policy.getConfigName(), eviction.samples));
+    }
+    return eviction;
+  }
+}
@@ -0,0 +1,35 @@
+package build.your.own.database;
+
+import java.util.Locale;
+
+/**
+ * What {@link Eviction} removes once {@code maxmemory} is reached, selected with {@code --maxmemory-policy}.
+ */
+public enum EvictionPolicy {
+  /** Reject writes with an OOM error (default). */
+  NOEVICTION("noeviction"),
+  /** Evict the least recently used key among a sample of all keys. */
+  ALLKEYS_LRU("allkeys-lru"),
+  /** Evict the least frequently used key among a sample of all keys. */
+  ALLKEYS_LFU("allkeys-lfu"),
+  /** Evict the key closest to expiring among a sample of keys with a TTL. */
+  VOLATILE_TTL("volatile-ttl");
+
+  private final String configName;
+
+  EvictionPolicy(String configName) {
+    this.configName = configName;
+  }
+
+  public String getConfigName() {
+    return configName;
+  }
+
+  public static EvictionPolicy fromConfig(String value) {
+    if (value == null) return NOEVICTION;
+    for (EvictionPolicy policy : values()) {
+      if (policy.configName.equals(value.trim().toLowerCase(Locale.ROOT))) return policy;
+    }
+    throw new IllegalArgumentException("Unknown maxmemory-policy " + value);
+  }
+}
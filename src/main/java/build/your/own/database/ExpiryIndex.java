@@ -0,0 +1,103 @@
+package build.your.own.database;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of keys by expiry time, so expired keys can be found without scanning the keyspace.
+ *
+ * <p>Keys are grouped into slots of {@value #SLOT_MILLIS} ms of expiry time, kept sorted in a skip list;
+ * the expiry cycle only ever looks at the earliest slots. An entry is a hint, not a promise: a key that
+ * was rewritten, persisted or already removed lazily stays in its slot until the slot is drained, and
+ * the removal itself re-checks the live entry. A key whose live expiry turns out later is registered
+ * again then, which lets a write that only pushes the expiry back skip registering (see
+ * {@code DbMap.store}), so a key refreshed on every request holds a hint or two, not one per write.
+ *
+ * <p>Registration is lock free. A slot being drained is closed first; a writer that raced into a closed
+ * slot registers again, so no key is ever dropped. Every hint leaves its slot through
+ * {@link #take(Slot, ByteKey)}, a set removal only one caller wins, so {@link #pending()} counts each
+ * one out exactly once whoever drains, prunes or retires the slot.
+ */
+public class ExpiryIndex {
+  static final long SLOT_MILLIS = 100;
+
+  private final ConcurrentSkipListMap<Long, Slot> slots = new ConcurrentSkipListMap<>();
+  private final AtomicLong pending = new AtomicLong();
+
+  /**
+   * Records that {@code key} is due at {@code expireAt} epoch millis.
+   */
+  public void register(ByteKey key, long expireAt) {
+    long slotId = expireAt / SLOT_MILLIS;
+    while (true) {
+      Slot slot = slots.computeIfAbsent(slotId, id -> new Slot());
+      if (slot.keys.add(key)) pending.incrementAndGet();
+      if (!slot.closed) return;
+      //closed after our add: the drainer may already be past it, take the hint back unless it was
+      //drained and register again (duplicates are harmless)
+      take(slot, key);
+    }
+  }
+
+  /**
+   * Detaches the earliest slot whose whole time range is before {@code now}.
+   *
+   * @return the slot, or {@code null} if nothing is due yet
+   */
+  Slot pollDue(long now) {
+    Map.Entry<Long, Slot> first = slots.firstEntry();
+    if (first == null || first.getKey() >= now / SLOT_MILLIS) return null;
+    Slot slot = first.getValue();
+    slot.closed = true;
+    slots.remove(first.getKey(), slot);
+    return slot;
+  }
+
+  /**
+   * @return the earliest slot after {@code slotId}, {@code null} if there is none
+   */
+  Map.Entry<Long, Slot> slotAfter(long slotId) {
+    return slots.higherEntry(slotId);
+  }
+
+  /**
+   * Removes the hint of {@code key} from {@code slot}, for the drainer or a walk that found it stale.
+   *
+   * @return {@code false} if someone else took it first
+   */
+  boolean take(Slot slot, ByteKey key) {
+    if (!slot.keys.remove(key)) return false;
+    pending.decrementAndGet();
+    return true;
+  }
+
+  /**
+   * Drops {@code slot}, found empty by a walk, so later walks do not step over it. A key registered in it
+   * meanwhile is moved to a fresh slot of the same time range.
+   */
+  void retire(long slotId, Slot slot) {
+    if (!slot.keys.isEmpty()) return;
+    slot.closed = true;
+    slots.remove(slotId, slot);
+    while (!slot.keys.isEmpty()) {
+      for (ByteKey key : slot.keys) {
+        if (take(slot, key)) register(key, slotId * SLOT_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * @return keys registered and not yet drained, including stale hints
+   */
+  public long pending() {
+    return pending.get();
+  }
+
+  static final class Slot {
+    final Set<ByteKey> keys = ConcurrentHashMap.newKeySet();
+    volatile boolean closed;
+  }
+}
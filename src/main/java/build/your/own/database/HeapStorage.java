@@ -0,0 +1,162 @@
+package build.your.own.database;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link Storage}: {@code ConcurrentHashMap}s on the Java heap, one per {@link ScanCursor}
+ * segment so {@code SCAN} can walk the keyspace a segment at a time.
+ */
+public class HeapStorage implements Storage {
+  /*
+    Fixed per entry cost on a 64 bit JVM with compressed oops: map node (32), ByteKey (24),
+    Data (32) and two array headers (2 x 16); a Value counts its own
+  */
+  private static final int ENTRY_OVERHEAD = 120;
+
+  private final ConcurrentMap<ByteKey, DbMap.Data>[] segments = newSegments();
+  private final AtomicLong usedMemory = new AtomicLong();
+  private volatile AccessTracker accessTracker = AccessTracker.NONE;
+  private Iterator<Map.Entry<ByteKey, DbMap.Data>> sampleCursor = Collections.emptyIterator();
+
+  @SuppressWarnings("unchecked")
+  private static ConcurrentMap<ByteKey, DbMap.Data>[] newSegments() {
+    ConcurrentMap<ByteKey, DbMap.Data>[] segments =
+        (ConcurrentMap<ByteKey, DbMap.Data>[]) new ConcurrentMap<?, ?>[ScanCursor.SEGMENTS];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new ConcurrentHashMap<>();
+    }
+    return segments;
+  }
+
+  private ConcurrentMap<ByteKey, DbMap.Data> segment(ByteKey key) {
+    return segments[ScanCursor.segmentOf(key)];
+  }
+
+  @Override
+  public DbMap.Data get(ByteKey key) {
+    DbMap.Data data = segment(key).get(key);
+    if (data != null) data.access = accessTracker.touch(data.access);
+    return data;
+  }
+
+  @Override
+  public void put(ByteKey key, DbMap.Data data) {
+    data.access = accessTracker.initial();
+    //set before the put publishes it; previous may be data itself, put again after its Value changed
+    long recharged = data.charged;
+    long charged = footprint(key, data);
+    data.charged = charged;
+    DbMap.Data previous = segment(key).put(key, data);
+    long released = previous == data ? recharged : previous != null ? previous.charged : 0;
+    usedMemory.addAndGet(charged - released);
+  }
+
+  @Override
+  public boolean remove(ByteKey key) {
+    DbMap.Data removed = segment(key).remove(key);
+    if (removed == null) return false;
+    usedMemory.addAndGet(-removed.charged);
+    return true;
+  }
+
+  @Override
+  public boolean removeIfExpired(ByteKey key, long now) {
+    ConcurrentMap<ByteKey, DbMap.Data> segment = segment(key);
+    DbMap.Data data = segment.get(key);
+    //remove(key, value) only succeeds if nobody replaced the entry in between
+    if (data == null || !data.isExpired(now) || !segment.remove(key, data)) return false;
+    usedMemory.addAndGet(-data.charged);
+    return true;
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (ConcurrentMap<ByteKey, DbMap.Data> segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  @Override
+  public long usedMemory() {
+    return usedMemory.get();
+  }
+
+  @Override
+  public void setAccessTracker(AccessTracker tracker) {
+    this.accessTracker = tracker;
+  }
+
+  /**
+   * Walks a long lived map iterator instead of picking random buckets, which the map does not expose;
+   * over successive calls every key gets sampled equally often.
+   */
+  @Override
+  public void sample(int count, SampleVisitor visitor) {
+    boolean restarted = false;
+    for (int sampled = 0; sampled < count; ) {
+      if (!sampleCursor.hasNext()) {
+        if (restarted) return;
+        sampleCursor = iterator();
+        restarted = true;
+        continue;
+      }
+      Map.Entry<ByteKey, DbMap.Data> entry = sampleCursor.next();
+      visitor.visit(entry.getKey(), entry.getValue().expiry(), entry.getValue().access);
+      sampled++;
+    }
+  }
+
+  /**
+   * Visits whole segments, the segment count is fixed so the cursor is simply the next segment in
+   * reverse binary order.
+   */
+  @Override
+  public long scan(long cursor, int count, SampleVisitor visitor) {
+    int visited = 0;
+    do {
+      for (Map.Entry<ByteKey, DbMap.Data> entry : segments[(int) cursor & ScanCursor.SEGMENT_MASK].entrySet()) {
+        visitor.visit(entry.getKey(), entry.getValue().expiry(), entry.getValue().access);
+        visited++;
+      }
+      cursor = ScanCursor.next(cursor, ScanCursor.SEGMENT_MASK);
+    } while (cursor != 0 && visited < count);
+    return cursor;
+  }
+
+  /**
+   * Walks the segments one after the other, each weakly consistent like a single {@code ConcurrentHashMap}.
+   */
+  @Override
+  public Iterator<Map.Entry<ByteKey, DbMap.Data>> iterator() {
+    return new Iterator<>() {
+      private int nextSegment;
+      private Iterator<Map.Entry<ByteKey, DbMap.Data>> current = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext() && nextSegment < segments.length) {
+          current = segments[nextSegment++].entrySet().iterator();
+        }
+        return current.hasNext();
+      }
+
+      @Override
+      public Map.Entry<ByteKey, DbMap.Data> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+      }
+    };
+  }
+
+  private static long footprint(ByteKey key, DbMap.Data data) {
+    return ENTRY_OVERHEAD + key.length() + data.memoryUsage();
+  }
+}
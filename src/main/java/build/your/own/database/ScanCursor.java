@@ -0,0 +1,46 @@
+package build.your.own.database;
+
+/**
+ * The {@code SCAN} cursor of redis' {@code dictScan}: the bucket index with its bits reversed is
+ * incremented, so buckets are visited in reverse binary order.
+ *
+ * <p>Visiting bucket {@code cursor & mask} covers every key whose hash has the same low bits, and the
+ * reversed increment moves on to the next range of low bits. Whatever mask the next call uses, because
+ * the table grew, shrank or another table is walked, the ranges visited stay contiguous: every key
+ * present for the whole scan is returned at least once, some may be returned twice.
+ *
+ * <p>Backends keeping a {@code HashMap} per key do not expose buckets; they split their keys into
+ * {@value #SEGMENTS} maps by {@link #segmentOf(ByteKey)} and use those as buckets.
+ */
+public final class ScanCursor {
+  public static final int SEGMENTS = 4096;
+  public static final int SEGMENT_MASK = SEGMENTS - 1;
+
+  private ScanCursor() {
+  }
+
+  /**
+   * @param cursor the cursor of the bucket just visited, its low 32 bits
+   * @param mask   {@code 2^n - 1} for a table of {@code 2^n} buckets
+   * @return the cursor of the next bucket, {@code 0} once every bucket was visited
+   */
+  public static long next(long cursor, int mask) {
+    int v = (int) cursor | ~mask;
+    v = Integer.reverse(Integer.reverse(v) + 1);
+    return v & 0xffffffffL;
+  }
+
+  /**
+   * @return the segment of {@code key}, in {@code [0, SEGMENTS)}
+   */
+  public static int segmentOf(ByteKey key) {
+    //murmur3 finalizer, decorrelated from the bits a sharded storage partitions by
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h & SEGMENT_MASK;
+  }
+}
@@ -0,0 +1,110 @@
+package build.your.own.database;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A frozen, point-in-time view of a {@link DbMap}, opened with {@link DbMap#openSnapshot()} while writers
+ * keep going at full speed.
+ *
+ * <p>Copy-on-write per key: while the view is open, a writer about to replace or remove a key first
+ * records the value it is about to overwrite with {@code putIfAbsent}, so only the value from before the
+ * view was opened is kept, and a key created afterwards is recorded as {@link #ABSENT}. {@link #forEach}
+ * walks the live storage and, per key, claims it by swapping in {@link #EMITTED}: a key with a recorded
+ * value is emitted with that value, one without is emitted as read (it was not written since). Keys
+ * removed before the walk reached them are emitted from the recorded values at the end. Every key is
+ * emitted exactly once, and only the keys touched during the snapshot cost memory.
+ *
+ * <p>A {@link build.your.own.database.type.Value} changes in place rather than being replaced, so it is
+ * recorded as a copy, and claimed and copied under the key's lock by the walk.
+ */
+public final class SnapshotView implements AutoCloseable {
+  //markers, compared by identity
+  private static final DbMap.Data ABSENT = new DbMap.Data(DbMap.NO_EXPIRY, new byte[0]);
+  private static final DbMap.Data EMITTED = new DbMap.Data(DbMap.NO_EXPIRY, new byte[0]);
+
+  @FunctionalInterface
+  public interface EntryWriter {
+    void write(ByteKey key, DbMap.Data data) throws IOException;
+  }
+
+  private final DbMap map;
+  private final Storage storage;
+  private final ConcurrentHashMap<ByteKey, DbMap.Data> preserved = new ConcurrentHashMap<>();
+
+  SnapshotView(DbMap map, Storage storage) {
+    this.map = map;
+    this.storage = storage;
+  }
+
+  /**
+   * Records the value of {@code key} a writer is about to replace or change, {@code null} if the key does
+   * not exist. The writer holds the key's value lock.
+   */
+  void preserve(ByteKey key, DbMap.Data current) {
+    if (current == null) {
+      preserved.putIfAbsent(key, ABSENT);
+    } else if (current.value() == null) {
+      preserved.putIfAbsent(key, current);
+    } else if (!preserved.containsKey(key)) {
+      //copied only once per key, other writers of the key wait for the lock
+      preserved.putIfAbsent(key, current.copy());
+    }
+  }
+
+  /**
+   * Passes every entry of the frozen view to {@code writer} once, expired ones included.
+   *
+   * @return entries written
+   */
+  public long forEach(EntryWriter writer) throws IOException {
+    long written = 0;
+    for (Map.Entry<ByteKey, DbMap.Data> entry : (Iterable<Map.Entry<ByteKey, DbMap.Data>>) storage::iterator) {
+      ByteKey key = entry.getKey();
+      DbMap.Data data = entry.getValue();
+      DbMap.Data recorded;
+      if (data.value() == null) {
+        recorded = preserved.putIfAbsent(key, EMITTED);
+      } else {
+        ReentrantLock lock = map.valueLock(key);
+        lock.lock();
+        try {
+          recorded = preserved.putIfAbsent(key, EMITTED);
+          if (recorded == null) data = data.copy();
+        } finally {
+          lock.unlock();
+        }
+      }
+      if (recorded == null) {
+        writer.write(key, data);
+        written++;
+      } else if (recorded != ABSENT && recorded != EMITTED && preserved.replace(key, recorded, EMITTED)) {
+        writer.write(key, recorded);
+        written++;
+      }
+    }
+    //keys removed before the walk got to them
+    for (Map.Entry<ByteKey, DbMap.Data> entry : preserved.entrySet()) {
+      DbMap.Data recorded = entry.getValue();
+      if (recorded != ABSENT && recorded != EMITTED && preserved.replace(entry.getKey(), recorded, EMITTED)) {
+        writer.write(entry.getKey(), recorded);
+        written++;
+      }
+    }
+    return written;
+  }
+
+  /**
+   * @return keys copied so far because they were written while the view is open
+   */
+  public int preservedKeys() {
+    return preserved.size();
+  }
+
+  @Override
+  public void close() {
+    map.closeSnapshot(this);
+  }
+}
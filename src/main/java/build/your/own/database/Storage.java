@@ -0,0 +1,118 @@
+package build.your.own.database;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Backend holding the entries of a {@link DbMap}, selected with {@code --storage-engine}.
+ *
+ * <p>Implementations are thread safe. {@link DbMap} layers expiry semantics on top, a backend only
+ * stores and returns {@link DbMap.Data} as given.
+ */
+public interface Storage {
+  /**
+   * Looks up {@code key} and records the access with the {@link AccessTracker}.
+   *
+   * @return the entry for {@code key}, possibly already expired, {@code null} if absent
+   */
+  DbMap.Data get(ByteKey key);
+
+  /**
+   * Inserts or replaces the entry for {@code key}.
+   *
+   * @throws StorageFullException if the backend has no room left for the entry
+   */
+  void put(ByteKey key, DbMap.Data data);
+
+  /**
+   * Removes the entry for {@code key}.
+   *
+   * @return {@code true} if an entry was removed
+   */
+  boolean remove(ByteKey key);
+
+  /**
+   * Atomically removes the entry for {@code key} if it is expired at {@code now}.
+   *
+   * @return {@code true} if an entry was removed
+   */
+  boolean removeIfExpired(ByteKey key, long now);
+
+  long size();
+
+  /**
+   * @return approximate bytes held by entries, what {@code maxmemory} is compared against
+   */
+  long usedMemory();
+
+  /**
+   * Sets how {@link #get(ByteKey)} and {@link #put(ByteKey, DbMap.Data)} maintain the access word.
+   */
+  void setAccessTracker(AccessTracker tracker);
+
+  /**
+   * Visits up to {@code count} entries for eviction, continuing from where the previous call stopped
+   * and wrapping around, so successive calls sweep the whole keyspace. Not thread safe, callers serialize.
+   */
+  void sample(int count, SampleVisitor visitor);
+
+  /**
+   * One step of {@code SCAN}: visits the keys of the bucket at {@code cursor} and of the following
+   * ones, see {@link ScanCursor}, until at least {@code count} keys were visited or the keyspace was
+   * covered. Keys present during the whole scan are visited at least once, whatever is written between
+   * the steps.
+   *
+   * @param cursor {@code 0} to start, otherwise what the previous step returned
+   * @return the cursor to continue from, {@code 0} when the scan is complete
+   */
+  long scan(long cursor, int count, SampleVisitor visitor);
+
+  /**
+   * Eviction keeps each partition under its share of {@code maxmemory} on its own, sampling and evicting
+   * only keys of the partition being written to. A single partition unless the backend is sharded.
+   */
+  default int partitions() {
+    return 1;
+  }
+
+  /**
+   * @return the partition {@code key} belongs to, in {@code [0, partitions())}
+   */
+  default int partitionOf(ByteKey key) {
+    return 0;
+  }
+
+  /**
+   * @return {@link #usedMemory()} of one partition
+   */
+  default long usedMemory(int partition) {
+    return usedMemory();
+  }
+
+  /**
+   * {@link #sample(int, SampleVisitor)} limited to one partition. Not thread safe per partition, callers serialize.
+   */
+  default void sample(int partition, int count, SampleVisitor visitor) {
+    sample(count, visitor);
+  }
+
+  /**
+   * Runs {@code task}, which only touches {@code key}, where that key may be accessed cheapest: inline,
+   * unless the backend confines keys to owner threads, then on the owner of {@code key}, waiting for it.
+   */
+  default <T> T execute(ByteKey key, Supplier<T> task) {
+    return task.get();
+  }
+
+  /**
+   * Weakly consistent iteration, the way {@code ConcurrentHashMap} iterates: never throws on
+   * concurrent modification, may or may not reflect writes made during the iteration.
+   */
+  Iterator<Map.Entry<ByteKey, DbMap.Data>> iterator();
+
+  @FunctionalInterface
+  interface SampleVisitor {
+    void visit(ByteKey key, long expiry, int access);
+  }
+}
@@ -0,0 +1,24 @@
+package build.your.own.database;
+
+import java.util.Locale;
+
+/**
+ * Where {@link DbMap} keeps its entries, selected with {@code --storage-engine}.
+ */
+public enum StorageEngine {
+  /** {@link HeapStorage}, entries are regular Java objects (default). */
+  HEAP,
+  /** {@link build.your.own.database.offheap.OffHeapStorage}, entries live outside the GC heap. */
+  OFFHEAP,
+  /** {@link build.your.own.database.shard.ShardedStorage}, {@code --shards} single threaded partitions. */
+  SHARDED;
+
+  public static StorageEngine fromConfig(String value) {
+    if (value == null) return HEAP;
+    try {
+      return StorageEngine.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown storage-engine " + value);
+    }
+  }
+}
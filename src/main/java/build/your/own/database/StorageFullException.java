@@ -0,0 +1,10 @@
+package build.your.own.database;
+
+/**
+ * Thrown by a {@link Storage} that cannot take another entry.
+ */
+public class StorageFullException extends IllegalStateException {
+  public StorageFullException(String message) {
+    super(message);
+  }
+}
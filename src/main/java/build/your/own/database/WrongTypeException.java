@@ -0,0 +1,11 @@
+package build.your.own.database;
+
+/**
+ * Thrown when a command meets a key holding another type than the one it works on, e.g. {@code GET} on a
+ * hash.
+ */
+public class WrongTypeException extends IllegalStateException {
+  public WrongTypeException() {
+    super("Operation against a key holding the wrong kind of value");
+  }
+}
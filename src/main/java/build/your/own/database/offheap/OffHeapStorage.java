@@ -0,0 +1,415 @@
+package build.your.own.database.offheap;
+
+import build.your.own.database.AccessTracker;
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.ScanCursor;
+import build.your.own.database.Storage;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.type.Values;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h1>Off-heap storage</h1>
+ * {@link Storage} whose entries live in memory allocated by a {@link SlabAllocator}, outside the GC heap.
+ *
+ * <p>The heap only holds the index: the key space is split into {@value #STRIPES} stripes by hash, each
+ * an open addressing table (linear probing, backward shift deletion) of three primitive arrays — the
+ * spread hash, the chunk address and the eviction access word — guarded by its own read/write lock. A lookup compares hashes on
+ * heap and touches off-heap memory only for candidates.
+ *
+ * <p>{@code SCAN} sees the hash rotated so the stripe bits come first: a cursor names a stripe in its
+ * low {@code 10} bits and a home slot of that stripe's table above them, and each step walks the probe
+ * run of one home slot, see {@link #scan}.
+ *
+ * <p>A value other than a string is kept encoded the way snapshots write it ({@link Values}), tagged
+ * with its type: reading or changing it decodes and encodes the whole value, fine for small ones only.
+ *
+ * <h2>Chunk layout</h2>
+ * <pre>
+ * [ EXPIRY: 8 bytes (long, epoch millis, 0 = none) ]
+ * [ KEY_LENGTH: 4 bytes (int) ]
+ * [ VALUE_LENGTH: 4 bytes (int) ]
+ * [ TYPE: 4 bytes (int, a {@link Values} tag) ]
+ * [ KEY_BYTES ]
+ * [ VALUE_BYTES ]
+ * </pre>
+ */
+public class OffHeapStorage implements Storage, AutoCloseable {
+  private static final int STRIPES = 1024;
+  private static final int STRIPE_SHIFT = Integer.numberOfLeadingZeros(STRIPES - 1);
+  private static final int STRIPE_BITS = Integer.SIZE - STRIPE_SHIFT;
+  private static final int INITIAL_SLOTS = 16;
+  private static final int HEADER = 20;
+  private static final int EXPIRY_OFFSET = 0;
+  private static final int KEY_LENGTH_OFFSET = 8;
+  private static final int VALUE_LENGTH_OFFSET = 12;
+  private static final int TYPE_OFFSET = 16;
+
+  private final SlabAllocator allocator;
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private volatile AccessTracker accessTracker = AccessTracker.NONE;
+  //position of the eviction sampler, see sample()
+  private int sampleStripe;
+  private int sampleSlot;
+
+  public OffHeapStorage(long capacity) {
+    this.allocator = new SlabAllocator(capacity);
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  @Override
+  public DbMap.Data get(ByteKey key) {
+    int hash = spread(key.hashCode());
+    Stripe stripe = stripeFor(hash);
+    stripe.lock.readLock().lock();
+    try {
+      int slot = stripe.find(hash, key.bytes());
+      if (slot == -1) return null;
+      //a racy write under the read lock, a lost update only makes eviction slightly less precise
+      stripe.access[slot] = accessTracker.touch(stripe.access[slot]);
+      return readData(stripe.addresses[slot]);
+    } finally {
+      stripe.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(ByteKey key, DbMap.Data data) {
+    byte[] keyBytes = key.bytes();
+    byte type = data.value() != null ? Values.tagOf(data.value()) : Values.STRING;
+    byte[] value = data.value() != null ? Values.encode(data.value()) : data.data();
+    //copy the entry out before taking the stripe lock, the lock only covers the index update
+    long address = allocator.allocate(HEADER + keyBytes.length + value.length);
+    if (address == SlabAllocator.NULL) {
+      throw new StorageFullException(String.format("off-heap storage is full (%d of %d bytes used)",
+          allocator.usedBytes(), allocator.capacity()));
+    }
+    allocator.setLong(address, EXPIRY_OFFSET, data.expiry());
+    allocator.setInt(address, KEY_LENGTH_OFFSET, keyBytes.length);
+    allocator.setInt(address, VALUE_LENGTH_OFFSET, value.length);
+    allocator.setInt(address, TYPE_OFFSET, type);
+    allocator.write(address, HEADER, keyBytes);
+    allocator.write(address, HEADER + keyBytes.length, value);
+
+    int hash = spread(key.hashCode());
+    Stripe stripe = stripeFor(hash);
+    long replaced;
+    stripe.lock.writeLock().lock();
+    try {
+      replaced = stripe.put(hash, keyBytes, address, accessTracker.initial());
+    } finally {
+      stripe.lock.writeLock().unlock();
+    }
+    if (replaced != SlabAllocator.NULL) free(replaced);
+  }
+
+  @Override
+  public boolean remove(ByteKey key) {
+    int hash = spread(key.hashCode());
+    Stripe stripe = stripeFor(hash);
+    long removed;
+    stripe.lock.writeLock().lock();
+    try {
+      int slot = stripe.find(hash, key.bytes());
+      if (slot == -1) return false;
+      removed = stripe.addresses[slot];
+      stripe.delete(slot);
+    } finally {
+      stripe.lock.writeLock().unlock();
+    }
+    free(removed);
+    return true;
+  }
+
+  @Override
+  public boolean removeIfExpired(ByteKey key, long now) {
+    int hash = spread(key.hashCode());
+    Stripe stripe = stripeFor(hash);
+    long removed;
+    stripe.lock.writeLock().lock();
+    try {
+      int slot = stripe.find(hash, key.bytes());
+      if (slot == -1) return false;
+      long expiry = allocator.getLong(stripe.addresses[slot], EXPIRY_OFFSET);
+      if (expiry == DbMap.NO_EXPIRY || expiry > now) return false;
+      removed = stripe.addresses[slot];
+      stripe.delete(slot);
+    } finally {
+      stripe.lock.writeLock().unlock();
+    }
+    free(removed);
+    return true;
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.readLock().lock();
+      try {
+        size += stripe.size;
+      } finally {
+        stripe.lock.readLock().unlock();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public long usedMemory() {
+    return allocator.usedBytes();
+  }
+
+  @Override
+  public void setAccessTracker(AccessTracker tracker) {
+    this.accessTracker = tracker;
+  }
+
+  @Override
+  public void sample(int count, SampleVisitor visitor) {
+    int sampled = 0;
+    for (int visitedStripes = 0; sampled < count && visitedStripes <= STRIPES; visitedStripes++) {
+      Stripe stripe = stripes[sampleStripe];
+      stripe.lock.readLock().lock();
+      try {
+        for (; sampleSlot < stripe.addresses.length && sampled < count; sampleSlot++) {
+          long address = stripe.addresses[sampleSlot];
+          if (address == SlabAllocator.NULL) continue;
+          int keyLength = allocator.getInt(address, KEY_LENGTH_OFFSET);
+          visitor.visit(new ByteKey(allocator.read(address, HEADER, keyLength)),
+              allocator.getLong(address, EXPIRY_OFFSET), stripe.access[sampleSlot]);
+          sampled++;
+        }
+        if (sampleSlot < stripe.addresses.length) return;
+      } finally {
+        stripe.lock.readLock().unlock();
+      }
+      sampleStripe = (sampleStripe + 1) % STRIPES;
+      sampleSlot = 0;
+    }
+  }
+
+  /**
+   * Visits the entries whose home slot is the cursor's, stripe by stripe in {@link ScanCursor} order.
+   * The mask follows the current size of each stripe's table, so resizes between steps are covered like
+   * redis covers its rehashing.
+   */
+  @Override
+  public long scan(long cursor, int count, SampleVisitor visitor) {
+    int visited = 0;
+    do {
+      Stripe stripe = stripes[(int) cursor & (STRIPES - 1)];
+      int mask;
+      stripe.lock.readLock().lock();
+      try {
+        int slotMask = stripe.addresses.length - 1;
+        int home = (int) (cursor >>> STRIPE_BITS) & slotMask;
+        //entries of one home slot all sit in the probe run starting there
+        for (int slot = home; stripe.addresses[slot] != SlabAllocator.NULL; slot = (slot + 1) & slotMask) {
+          if ((stripe.hashes[slot] & slotMask) != home) continue;
+          long address = stripe.addresses[slot];
+          int keyLength = allocator.getInt(address, KEY_LENGTH_OFFSET);
+          visitor.visit(new ByteKey(allocator.read(address, HEADER, keyLength)),
+              allocator.getLong(address, EXPIRY_OFFSET), stripe.access[slot]);
+          visited++;
+        }
+        mask = (slotMask << STRIPE_BITS) | (STRIPES - 1);
+      } finally {
+        stripe.lock.readLock().unlock();
+      }
+      cursor = ScanCursor.next(cursor, mask);
+    } while (cursor != 0 && visited < count);
+    return cursor;
+  }
+
+  /**
+   * Copies one stripe at a time onto the heap, so each stripe is seen consistently and the
+   * stripe lock is never held while the caller works on the entries.
+   */
+  @Override
+  public Iterator<Map.Entry<ByteKey, DbMap.Data>> iterator() {
+    return new Iterator<>() {
+      private int nextStripe;
+      private Iterator<Map.Entry<ByteKey, DbMap.Data>> current = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext() && nextStripe < STRIPES) {
+          current = copyStripe(stripes[nextStripe++]).iterator();
+        }
+        return current.hasNext();
+      }
+
+      @Override
+      public Map.Entry<ByteKey, DbMap.Data> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+      }
+    };
+  }
+
+  /**
+   * @return bytes of off-heap memory held by entries
+   */
+  public long usedBytes() {
+    return allocator.usedBytes();
+  }
+
+  @Override
+  public void close() {
+    allocator.close();
+  }
+
+  private List<Map.Entry<ByteKey, DbMap.Data>> copyStripe(Stripe stripe) {
+    stripe.lock.readLock().lock();
+    try {
+      List<Map.Entry<ByteKey, DbMap.Data>> entries = new ArrayList<>(stripe.size);
+      for (long address : stripe.addresses) {
+        if (address == SlabAllocator.NULL) continue;
+        int keyLength = allocator.getInt(address, KEY_LENGTH_OFFSET);
+        ByteKey key = new ByteKey(allocator.read(address, HEADER, keyLength));
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(key, readData(address)));
+      }
+      return entries;
+    } finally {
+      stripe.lock.readLock().unlock();
+    }
+  }
+
+  private DbMap.Data readData(long address) {
+    int keyLength = allocator.getInt(address, KEY_LENGTH_OFFSET);
+    int valueLength = allocator.getInt(address, VALUE_LENGTH_OFFSET);
+    long expiry = allocator.getLong(address, EXPIRY_OFFSET);
+    byte[] value = allocator.read(address, HEADER + keyLength, valueLength);
+    byte type = (byte) allocator.getInt(address, TYPE_OFFSET);
+    return type == Values.STRING
+        ? new DbMap.Data(expiry, value)
+        : new DbMap.Data(expiry, Values.read(type, ByteBuffer.wrap(value)));
+  }
+
+  private void free(long address) {
+    int size = HEADER + allocator.getInt(address, KEY_LENGTH_OFFSET) + allocator.getInt(address, VALUE_LENGTH_OFFSET);
+    allocator.free(address, size);
+  }
+
+  private Stripe stripeFor(int hash) {
+    return stripes[hash >>> STRIPE_SHIFT];
+  }
+
+  /**
+   * murmur3 finalizer, {@code Arrays.hashCode} alone clusters badly in the low bits
+   */
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private final class Stripe {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] hashes = new int[INITIAL_SLOTS];
+    private long[] addresses = emptySlots(INITIAL_SLOTS);
+    private int[] access = new int[INITIAL_SLOTS];
+    private int size;
+
+    private int find(int hash, byte[] key) {
+      int mask = addresses.length - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        long address = addresses[slot];
+        if (address == SlabAllocator.NULL) return -1;
+        if (hashes[slot] == hash && matches(address, key)) return slot;
+      }
+    }
+
+    /**
+     * @return address of the entry replaced, {@link SlabAllocator#NULL} for a new key
+     */
+    private long put(int hash, byte[] key, long address, int accessWord) {
+      int slot = find(hash, key);
+      if (slot != -1) {
+        long replaced = addresses[slot];
+        addresses[slot] = address;
+        access[slot] = accessWord;
+        return replaced;
+      }
+      if ((size + 1) * 4 > addresses.length * 3) {
+        resize();
+      }
+      insert(hash, address, accessWord);
+      size++;
+      return SlabAllocator.NULL;
+    }
+
+    private void insert(int hash, long address, int accessWord) {
+      int mask = addresses.length - 1;
+      int slot = hash & mask;
+      while (addresses[slot] != SlabAllocator.NULL) {
+        slot = (slot + 1) & mask;
+      }
+      hashes[slot] = hash;
+      addresses[slot] = address;
+      access[slot] = accessWord;
+    }
+
+    /**
+     * Backward shift deletion: pulls later entries of the probe run into the hole so lookups
+     * never need tombstones.
+     */
+    private void delete(int slot) {
+      int mask = addresses.length - 1;
+      int hole = slot;
+      for (int next = (hole + 1) & mask; addresses[next] != SlabAllocator.NULL; next = (next + 1) & mask) {
+        int home = hashes[next] & mask;
+        //move if the entry's home is not cyclically within (hole, next]
+        boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+        if (movable) {
+          hashes[hole] = hashes[next];
+          addresses[hole] = addresses[next];
+          access[hole] = access[next];
+          hole = next;
+        }
+      }
+      addresses[hole] = SlabAllocator.NULL;
+      size--;
+    }
+
+    private void resize() {
+      int[] oldHashes = hashes;
+      long[] oldAddresses = addresses;
+      int[] oldAccess = access;
+      hashes = new int[oldAddresses.length * 2];
+      addresses = emptySlots(oldAddresses.length * 2);
+      access = new int[oldAddresses.length * 2];
+      for (int i = 0; i < oldAddresses.length; i++) {
+        if (oldAddresses[i] != SlabAllocator.NULL) insert(oldHashes[i], oldAddresses[i], oldAccess[i]);
+      }
+    }
+
+    private boolean matches(long address, byte[] key) {
+      return allocator.getInt(address, KEY_LENGTH_OFFSET) == key.length
+          && allocator.contentEquals(address, HEADER, key);
+    }
+  }
+
+  private static long[] emptySlots(int size) {
+    long[] slots = new long[size];
+    Arrays.fill(slots, SlabAllocator.NULL);
+    return slots;
+  }
+}
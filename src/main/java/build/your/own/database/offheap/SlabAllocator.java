@@ -0,0 +1,243 @@
+package build.your.own.database.offheap;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Slab allocator</h1>
+ * memcached style allocator for off-heap entries.
+ *
+ * <p>Memory is handed out in 1 MiB pages, committed lazily as they are first needed, up to the
+ * configured capacity. Each page belongs to one size class and is cut into equal chunks; chunk sizes
+ * grow by a factor of 1.25 from 32 bytes to a full page. Freed chunks go on an intrusive free list of
+ * their class (the first 8 bytes of a free chunk hold the next free address), so the heap holds no
+ * per-chunk bookkeeping. Pages are never returned to the pool, a workload whose value sizes shift a lot
+ * strands memory in the old classes, as in memcached.
+ *
+ * <p>Chunks larger than a page get their own {@link Arena}, released on free.
+ *
+ * <p>An address is a {@code long}: {@code page << PAGE_SHIFT | offset} for slab chunks, a negative
+ * handle for large chunks. {@link #NULL} is never a valid address.
+ */
+public class SlabAllocator implements AutoCloseable {
+  public static final long NULL = -1;
+
+  private static final int PAGE_SHIFT = 20;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int MIN_CHUNK = 32;
+  private static final double GROWTH_FACTOR = 1.25;
+  private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+  private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+
+  private final Arena arena = Arena.ofShared();
+  private final MemorySegment[] pages;
+  private final ReentrantLock pageLock = new ReentrantLock();
+  private int pagesInUse;
+
+  private final int[] chunkSizes;
+  private final SizeClass[] classes;
+
+  private final ConcurrentMap<Long, LargeChunk> largeChunks = new ConcurrentHashMap<>();
+  private final AtomicLong largeHandles = new AtomicLong(1);
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final long capacity;
+
+  public SlabAllocator(long capacity) {
+    this.capacity = capacity;
+    this.pages = new MemorySegment[(int) Math.max(1, capacity >>> PAGE_SHIFT)];
+
+    List<Integer> sizes = new ArrayList<>();
+    for (double size = MIN_CHUNK; size < PAGE_SIZE; size *= GROWTH_FACTOR) {
+      //8 byte aligned so longs at chunk start never straddle cache lines needlessly
+      int aligned = ((int) size + 7) & ~7;
+      if (sizes.isEmpty() || sizes.getLast() != aligned) sizes.add(aligned);
+    }
+    sizes.add(PAGE_SIZE);
+    this.chunkSizes = sizes.stream().mapToInt(Integer::intValue).toArray();
+    this.classes = new SizeClass[chunkSizes.length];
+    for (int i = 0; i < classes.length; i++) {
+      classes[i] = new SizeClass(chunkSizes[i]);
+    }
+  }
+
+  /**
+   * @return address of a chunk of at least {@code size} bytes, {@link #NULL} if the capacity is exhausted
+   */
+  public long allocate(int size) {
+    if (size > PAGE_SIZE) {
+      return allocateLarge(size);
+    }
+    long address = classes[classFor(size)].allocate();
+    if (address != NULL) usedBytes.addAndGet(chunkSizes[classFor(size)]);
+    return address;
+  }
+
+  /**
+   * Returns a chunk obtained from {@link #allocate(int)} with the same {@code size}.
+   */
+  public void free(long address, int size) {
+    if (address < NULL) {
+      LargeChunk chunk = largeChunks.remove(address);
+      if (chunk != null) {
+        usedBytes.addAndGet(-chunk.segment.byteSize());
+        chunk.arena.close();
+      }
+      return;
+    }
+    int sizeClass = classFor(size);
+    classes[sizeClass].free(address);
+    usedBytes.addAndGet(-chunkSizes[sizeClass]);
+  }
+
+  /**
+   * @return bytes held by live chunks, including their size class rounding
+   */
+  public long usedBytes() {
+    return usedBytes.get();
+  }
+
+  public long capacity() {
+    return capacity;
+  }
+
+  public long getLong(long address, long offset) {
+    return segment(address).get(LONG, offset(address) + offset);
+  }
+
+  public void setLong(long address, long offset, long value) {
+    segment(address).set(LONG, offset(address) + offset, value);
+  }
+
+  public int getInt(long address, long offset) {
+    return segment(address).get(INT, offset(address) + offset);
+  }
+
+  public void setInt(long address, long offset, int value) {
+    segment(address).set(INT, offset(address) + offset, value);
+  }
+
+  public void write(long address, long offset, byte[] src) {
+    MemorySegment.copy(src, 0, segment(address), ValueLayout.JAVA_BYTE, offset(address) + offset, src.length);
+  }
+
+  public byte[] read(long address, long offset, int length) {
+    byte[] dst = new byte[length];
+    MemorySegment.copy(segment(address), ValueLayout.JAVA_BYTE, offset(address) + offset, dst, 0, length);
+    return dst;
+  }
+
+  /**
+   * @return whether the {@code expected.length} bytes at {@code address + offset} equal {@code expected}
+   */
+  public boolean contentEquals(long address, long offset, byte[] expected) {
+    long start = offset(address) + offset;
+    return MemorySegment.mismatch(segment(address), start, start + expected.length,
+        MemorySegment.ofArray(expected), 0, expected.length) == -1;
+  }
+
+  @Override
+  public void close() {
+    largeChunks.values().forEach(chunk -> chunk.arena.close());
+    largeChunks.clear();
+    arena.close();
+  }
+
+  private int classFor(int size) {
+    //binary search for the smallest class that fits
+    int low = 0;
+    int high = chunkSizes.length - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (chunkSizes[mid] >= size) high = mid;
+      else low = mid + 1;
+    }
+    return low;
+  }
+
+  private MemorySegment segment(long address) {
+    if (address < NULL) return largeChunks.get(address).segment;
+    return pages[(int) (address >>> PAGE_SHIFT)];
+  }
+
+  private static long offset(long address) {
+    return address < NULL ? 0 : address & (PAGE_SIZE - 1);
+  }
+
+  private long allocateLarge(int size) {
+    if (usedBytes.get() + size > capacity) return NULL;
+    Arena chunkArena = Arena.ofShared();
+    long handle = -1 - largeHandles.getAndIncrement();
+    largeChunks.put(handle, new LargeChunk(chunkArena, chunkArena.allocate(size, 8)));
+    usedBytes.addAndGet(size);
+    return handle;
+  }
+
+  /**
+   * @return index of a fresh page, {@code -1} once the capacity is used up
+   */
+  private int newPage() {
+    pageLock.lock();
+    try {
+      if (pagesInUse == pages.length) return -1;
+      pages[pagesInUse] = arena.allocate(PAGE_SIZE, 8);
+      return pagesInUse++;
+    } finally {
+      pageLock.unlock();
+    }
+  }
+
+  private final class SizeClass {
+    private final int chunkSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long freeHead = NULL;
+    //next uncut chunk of the page currently being carved
+    private long carve = NULL;
+    private long carveEnd = NULL;
+
+    private SizeClass(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    private long allocate() {
+      lock.lock();
+      try {
+        if (freeHead != NULL) {
+          long address = freeHead;
+          freeHead = getLong(address, 0);
+          return address;
+        }
+        if (carve == NULL || carve + chunkSize > carveEnd) {
+          int page = newPage();
+          if (page == -1) return NULL;
+          carve = (long) page << PAGE_SHIFT;
+          carveEnd = carve + PAGE_SIZE;
+        }
+        long address = carve;
+        carve += chunkSize;
+        return address;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void free(long address) {
+      lock.lock();
+      try {
+        setLong(address, 0, freeHead);
+        freeHead = address;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private record LargeChunk(Arena arena, MemorySegment segment) {
+  }
+}
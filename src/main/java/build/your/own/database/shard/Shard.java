@@ -0,0 +1,258 @@
+package build.your.own.database.shard;
+
+import build.your.own.database.AccessTracker;
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.ScanCursor;
+import build.your.own.database.Storage;
+import build.your.own.logger.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * One partition of a {@link ShardedStorage}: plain {@code HashMap}s, one per {@link ScanCursor} segment,
+ * only ever touched by the shard's own thread, which runs the tasks other threads post to its queue one
+ * at a time.
+ *
+ * <p>The queue is a lock free {@code ConcurrentLinkedQueue}; the thread parks when it is empty and a
+ * producer unparks it only if it announced it was going to sleep, so a busy shard costs its producers a
+ * single CAS per task.
+ */
+final class Shard implements Runnable {
+  private static final Logger logger = Logger.getInstance(Shard.class);
+  /*
+    Same per entry estimate as HeapStorage (node 32, ByteKey 24, Data 32, two array headers 2 x 16),
+    plus the Slot (24) and its reference in the key array (4)
+  */
+  private static final int ENTRY_OVERHEAD = 148;
+
+  private final int id;
+  private final Thread thread;
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  //set by the shard right before it parks, see post()
+  private volatile boolean sleeping;
+
+  //owned by the shard thread
+  private final Map<ByteKey, Slot>[] segments = newSegments();
+  //every key at its Slot.index, so sampling picks uniformly at random like redis does from its buckets
+  private ByteKey[] keys = new ByteKey[16];
+  private AccessTracker accessTracker = AccessTracker.NONE;
+  //written by the shard thread only, read by anyone
+  private volatile int size;
+  private volatile long usedMemory;
+
+  //the access word lives here, like the off heap stripes keep it next to the address
+  private static final class Slot {
+    private DbMap.Data data;
+    private int index;
+    private int access;
+    //footprint counted when data was last put, a Value changes size in place
+    private long charged;
+
+    private Slot(DbMap.Data data, int index) {
+      this.data = data;
+      this.index = index;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<ByteKey, Slot>[] newSegments() {
+    Map<ByteKey, Slot>[] segments = (Map<ByteKey, Slot>[]) new Map<?, ?>[ScanCursor.SEGMENTS];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new HashMap<>();
+    }
+    return segments;
+  }
+
+  Shard(int id) {
+    this.id = id;
+    this.thread = new Thread(this, "shard-" + id);
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    logger.info(String.format("Shard %d started", id));
+    while (true) {
+      Runnable task = tasks.poll();
+      if (task != null) {
+        task.run();
+        continue;
+      }
+      sleeping = true;
+      //a task posted before the flag was visible is seen here, one posted after unparks us
+      if (tasks.isEmpty()) LockSupport.park(this);
+      sleeping = false;
+    }
+  }
+
+  boolean isOwner() {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Runs {@code task} on the shard thread, inline when already on it, and waits for its result.
+   * Runtime exceptions thrown by the task are rethrown as is.
+   */
+  <T> T call(Supplier<T> task) {
+    if (isOwner()) return task.get();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    post(() -> {
+      try {
+        result.complete(task.get());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) throw cause;
+      if (e.getCause() instanceof Error cause) throw cause;
+      throw e;
+    }
+  }
+
+  private void post(Runnable task) {
+    tasks.add(task);
+    if (sleeping) LockSupport.unpark(thread);
+  }
+
+  /* Map operations, shard thread only */
+
+  private Map<ByteKey, Slot> segment(ByteKey key) {
+    return segments[ScanCursor.segmentOf(key)];
+  }
+
+  private Slot slot(ByteKey key) {
+    return segment(key).get(key);
+  }
+
+  DbMap.Data get(ByteKey key) {
+    Slot slot = slot(key);
+    if (slot == null) return null;
+    slot.access = accessTracker.touch(slot.access);
+    return slot.data;
+  }
+
+  void put(ByteKey key, DbMap.Data data) {
+    Slot slot = slot(key);
+    if (slot == null) {
+      if (size == keys.length) {
+        ByteKey[] grown = new ByteKey[keys.length * 2];
+        System.arraycopy(keys, 0, grown, 0, size);
+        keys = grown;
+      }
+      keys[size] = key;
+      Slot created = new Slot(data, size);
+      created.access = accessTracker.initial();
+      created.charged = footprint(key, data);
+      segment(key).put(key, created);
+      size = size + 1;
+      usedMemory = usedMemory + created.charged;
+      return;
+    }
+    long charged = footprint(key, data);
+    usedMemory = usedMemory + charged - slot.charged;
+    slot.charged = charged;
+    slot.data = data;
+    slot.access = accessTracker.initial();
+  }
+
+  boolean remove(ByteKey key) {
+    Slot slot = segment(key).remove(key);
+    if (slot == null) return false;
+    //move the last key into the hole
+    int last = size - 1;
+    if (slot.index != last) {
+      ByteKey moved = keys[last];
+      keys[slot.index] = moved;
+      slot(moved).index = slot.index;
+    }
+    keys[last] = null;
+    size = last;
+    usedMemory = usedMemory - slot.charged;
+    return true;
+  }
+
+  boolean removeIfExpired(ByteKey key, long now) {
+    Slot slot = slot(key);
+    return slot != null && slot.data.isExpired(now) && remove(key);
+  }
+
+  /**
+   * Visits {@code count} entries picked at random, fewer if the shard has fewer.
+   */
+  void sample(int count, Storage.SampleVisitor visitor) {
+    int available = size;
+    if (available == 0) return;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0, visits = Math.min(count, available); i < visits; i++) {
+      ByteKey key = keys[random.nextInt(available)];
+      Slot slot = slot(key);
+      visitor.visit(key, slot.data.expiry(), slot.access);
+    }
+  }
+
+  /**
+   * {@link Storage#scan} over this shard's segments.
+   */
+  long scan(long cursor, int count, Storage.SampleVisitor visitor) {
+    int visited = 0;
+    do {
+      for (Map.Entry<ByteKey, Slot> entry : segments[(int) cursor & ScanCursor.SEGMENT_MASK].entrySet()) {
+        visitor.visit(entry.getKey(), entry.getValue().data.expiry(), entry.getValue().access);
+        visited++;
+      }
+      cursor = ScanCursor.next(cursor, ScanCursor.SEGMENT_MASK);
+    } while (cursor != 0 && visited < count);
+    return cursor;
+  }
+
+  /**
+   * @return the entries as of now, two arrays of references
+   */
+  Copy copy() {
+    ByteKey[] copiedKeys = new ByteKey[size];
+    DbMap.Data[] copiedData = new DbMap.Data[size];
+    System.arraycopy(keys, 0, copiedKeys, 0, size);
+    for (int i = 0; i < copiedKeys.length; i++) {
+      copiedData[i] = slot(copiedKeys[i]).data;
+    }
+    return new Copy(copiedKeys, copiedData);
+  }
+
+  /**
+   * Entries of a shard at one point, {@code data[i]} belongs to {@code keys[i]}.
+   */
+  record Copy(ByteKey[] keys, DbMap.Data[] data) {
+  }
+
+  void setAccessTracker(AccessTracker tracker) {
+    this.accessTracker = tracker;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long usedMemory() {
+    return usedMemory;
+  }
+
+  private static long footprint(ByteKey key, DbMap.Data data) {
+    return ENTRY_OVERHEAD + key.length() + data.memoryUsage();
+  }
+}
@@ -0,0 +1,203 @@
+package build.your.own.database.shard;
+
+import build.your.own.database.AccessTracker;
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.ScanCursor;
+import build.your.own.database.Storage;
+import build.your.own.logger.Logger;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Shared nothing {@link Storage}: the keyspace is split by key hash into {@code --shards} {@link Shard}s
+ * (one per core by default), each a plain {@code HashMap} owned by a single thread. Nothing on the data
+ * path is locked or CAS'd: the command layer runs single key commands on the owning shard through
+ * {@link #execute(ByteKey, Supplier)}, so their storage calls are plain map operations; a call from any
+ * other thread is posted to the owner's queue and waits for the answer.
+ *
+ * <p>Whole keyspace operations fan out: {@link #iterator()} (snapshots, {@code KEYS}, AOF rewrites)
+ * copies one shard at a time on its thread, two arrays of references, and walks the copy while the shard
+ * goes on; {@link #scan} walks the shards in turn. Eviction works per shard ({@link #partitions()}), each keeping its share of
+ * {@code maxmemory} by evicting its own keys, on its own thread.
+ *
+ * <p>A shard thread must never call into another shard, both could end up waiting for each other: only
+ * commands touching a single key are routed, everything else runs on the network thread.
+ */
+public class ShardedStorage implements Storage {
+  private static final Logger logger = Logger.getInstance(ShardedStorage.class);
+
+  private final Shard[] shards;
+
+  public ShardedStorage(int shardCount) {
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(i);
+      shards[i].start();
+    }
+    logger.info(String.format("Keyspace split into %d shards", shardCount));
+  }
+
+  @Override
+  public DbMap.Data get(ByteKey key) {
+    Shard shard = shardOf(key);
+    return shard.isOwner() ? shard.get(key) : shard.call(() -> shard.get(key));
+  }
+
+  @Override
+  public void put(ByteKey key, DbMap.Data data) {
+    Shard shard = shardOf(key);
+    if (shard.isOwner()) {
+      shard.put(key, data);
+      return;
+    }
+    shard.call(() -> {
+      shard.put(key, data);
+      return null;
+    });
+  }
+
+  @Override
+  public boolean remove(ByteKey key) {
+    Shard shard = shardOf(key);
+    return shard.isOwner() ? shard.remove(key) : shard.call(() -> shard.remove(key));
+  }
+
+  @Override
+  public boolean removeIfExpired(ByteKey key, long now) {
+    Shard shard = shardOf(key);
+    return shard.isOwner() ? shard.removeIfExpired(key, now) : shard.call(() -> shard.removeIfExpired(key, now));
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (Shard shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  @Override
+  public long usedMemory() {
+    long used = 0;
+    for (Shard shard : shards) {
+      used += shard.usedMemory();
+    }
+    return used;
+  }
+
+  @Override
+  public long usedMemory(int partition) {
+    return shards[partition].usedMemory();
+  }
+
+  @Override
+  public void setAccessTracker(AccessTracker tracker) {
+    for (Shard shard : shards) {
+      shard.call(() -> {
+        shard.setAccessTracker(tracker);
+        return null;
+      });
+    }
+  }
+
+  @Override
+  public int partitions() {
+    return shards.length;
+  }
+
+  @Override
+  public int partitionOf(ByteKey key) {
+    int hash = key.hashCode();
+    //the low bits also pick the HashMap bucket inside the shard, spread the high ones in
+    return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+  }
+
+  /**
+   * Samples every shard in turn, mostly for completeness: eviction samples per partition.
+   */
+  @Override
+  public void sample(int count, SampleVisitor visitor) {
+    for (int partition = 0; partition < shards.length; partition++) {
+      sample(partition, Math.max(1, count / shards.length), visitor);
+    }
+  }
+
+  @Override
+  public void sample(int partition, int count, SampleVisitor visitor) {
+    Shard shard = shards[partition];
+    shard.call(() -> {
+      shard.sample(count, visitor);
+      return null;
+    });
+  }
+
+  /**
+   * Scans the shards one after the other, each on its own thread: the shard index is kept in the high
+   * half of the cursor, the shard's own {@link ScanCursor} in the low half.
+   */
+  @Override
+  public long scan(long cursor, int count, SampleVisitor visitor) {
+    int shardIndex = (int) (cursor >>> 32);
+    long shardCursor = cursor & 0xffffffffL;
+    int[] visited = new int[1];
+    SampleVisitor counting = (key, expiry, access) -> {
+      visited[0]++;
+      visitor.visit(key, expiry, access);
+    };
+    while (shardIndex < shards.length) {
+      Shard shard = shards[shardIndex];
+      long start = shardCursor;
+      shardCursor = shard.call(() -> shard.scan(start, count - visited[0], counting));
+      if (shardCursor == 0) shardIndex++;
+      if (visited[0] >= count) break;
+    }
+    return shardIndex >= shards.length ? 0 : ((long) shardIndex << 32) | shardCursor;
+  }
+
+  @Override
+  public <T> T execute(ByteKey key, Supplier<T> task) {
+    return shardOf(key).call(task);
+  }
+
+  /**
+   * Walks a copy of each shard in turn, taken when the walk reaches it: keys written to a shard before
+   * its copy are seen, later writes are not.
+   */
+  @Override
+  public Iterator<Map.Entry<ByteKey, DbMap.Data>> iterator() {
+    return new Iterator<>() {
+      private int next;
+      private Shard.Copy copy = new Shard.Copy(new ByteKey[0], new DbMap.Data[0]);
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        while (index == copy.keys().length) {
+          if (next == shards.length) return false;
+          Shard shard = shards[next++];
+          copy = shard.call(shard::copy);
+          index = 0;
+        }
+        return true;
+      }
+
+      @Override
+      public Map.Entry<ByteKey, DbMap.Data> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Map.Entry<ByteKey, DbMap.Data> entry = new AbstractMap.SimpleImmutableEntry<>(copy.keys()[index], copy.data()[index]);
+        index++;
+        return entry;
+      }
+    };
+  }
+
+  private Shard shardOf(ByteKey key) {
+    return shards[partitionOf(key)];
+  }
+}
@@ -0,0 +1,70 @@
+package build.your.own.database.type;
+
+import build.your.own.configurations.SystemConfig;
+
+/**
+ * Size limits of the compact encodings, past which a value converts to its general one for good, like
+ * redis' {@code *-max-listpack-*} settings. Read when a value grows, set once at startup.
+ */
+public final class Encodings {
+  public static final String DEFAULT_HASH_MAX_LISTPACK_ENTRIES = "128";
+  public static final String DEFAULT_HASH_MAX_LISTPACK_VALUE = "64";
+  public static final String DEFAULT_LIST_MAX_LISTPACK_SIZE = "128";
+  public static final String DEFAULT_ZSET_MAX_LISTPACK_ENTRIES = "128";
+  public static final String DEFAULT_ZSET_MAX_LISTPACK_VALUE = "64";
+  public static final String DEFAULT_SET_MAX_INTSET_ENTRIES = "512";
+
+  private static volatile int hashMaxListpackEntries = Integer.parseInt(DEFAULT_HASH_MAX_LISTPACK_ENTRIES);
+  private static volatile int hashMaxListpackValue = Integer.parseInt(DEFAULT_HASH_MAX_LISTPACK_VALUE);
+  private static volatile int listMaxListpackSize = Integer.parseInt(DEFAULT_LIST_MAX_LISTPACK_SIZE);
+  private static volatile int zsetMaxListpackEntries = Integer.parseInt(DEFAULT_ZSET_MAX_LISTPACK_ENTRIES);
+  private static volatile int zsetMaxListpackValue = Integer.parseInt(DEFAULT_ZSET_MAX_LISTPACK_VALUE);
+  private static volatile int setMaxIntsetEntries = Integer.parseInt(DEFAULT_SET_MAX_INTSET_ENTRIES);
+
+  private Encodings() {
+  }
+
+  /**
+   * Applies {@code --hash-max-listpack-entries}, {@code --hash-max-listpack-value},
+   * {@code --list-max-listpack-size}, {@code --zset-max-listpack-entries},
+   * {@code --zset-max-listpack-value} and {@code --set-max-intset-entries}.
+   */
+  public static void configure(SystemConfig config) {
+    hashMaxListpackEntries = Integer.parseInt(config.getConfig()
+        .getOrDefault("hash-max-listpack-entries", DEFAULT_HASH_MAX_LISTPACK_ENTRIES));
+    hashMaxListpackValue = Integer.parseInt(config.getConfig()
+        .getOrDefault("hash-max-listpack-value", DEFAULT_HASH_MAX_LISTPACK_VALUE));
+    listMaxListpackSize = Integer.parseInt(config.getConfig()
+        .getOrDefault("list-max-listpack-size", DEFAULT_LIST_MAX_LISTPACK_SIZE));
+    zsetMaxListpackEntries = Integer.parseInt(config.getConfig()
+        .getOrDefault("zset-max-listpack-entries", DEFAULT_ZSET_MAX_LISTPACK_ENTRIES));
+    zsetMaxListpackValue = Integer.parseInt(config.getConfig()
+        .getOrDefault("zset-max-listpack-value", DEFAULT_ZSET_MAX_LISTPACK_VALUE));
+    setMaxIntsetEntries = Integer.parseInt(config.getConfig()
+        .getOrDefault("set-max-intset-entries", DEFAULT_SET_MAX_INTSET_ENTRIES));
+  }
+
+  static int hashMaxListpackEntries() {
+    return hashMaxListpackEntries;
+  }
+
+  static int hashMaxListpackValue() {
+    return hashMaxListpackValue;
+  }
+
+  static int listMaxListpackSize() {
+    return listMaxListpackSize;
+  }
+
+  static int zsetMaxListpackEntries() {
+    return zsetMaxListpackEntries;
+  }
+
+  static int zsetMaxListpackValue() {
+    return zsetMaxListpackValue;
+  }
+
+  static int setMaxIntsetEntries() {
+    return setMaxIntsetEntries;
+  }
+}
@@ -0,0 +1,308 @@
+package build.your.own.database.type;
+
+import build.your.own.database.ByteKey;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The hash type, in one of two encodings as in redis:
+ * <ul>
+ *   <li>{@code listpack}: every field and value packed back to back in one {@code byte[]}, each prefixed
+ *   with its length as a varint. A lookup is a linear scan, cheap at this size, and a small hash costs one
+ *   array instead of a map node, key object and two arrays per field.</li>
+ *   <li>{@code hashtable}: a {@code HashMap}, once the hash holds more than
+ *   {@code --hash-max-listpack-entries} fields or a field or value longer than
+ *   {@code --hash-max-listpack-value} bytes. The conversion is one way.</li>
+ * </ul>
+ */
+public final class HashValue implements Value {
+  //the HashValue and the packed array header
+  private static final int OBJECT_OVERHEAD = 48;
+  //HashMap node (32), ByteKey (24), two array headers (2 x 16), its table slot (8)
+  private static final int TABLE_ENTRY_OVERHEAD = 96;
+  private static final int INITIAL_PACKED = 16;
+
+  //the listpack encoding, null once converted
+  private byte[] packed = new byte[INITIAL_PACKED];
+  private int used;
+  private int packedSize;
+  //the hashtable encoding, null while compact
+  private HashMap<ByteKey, byte[]> table;
+  private long tableMemory;
+
+  /**
+   * @return the value of {@code field}, {@code null} if absent
+   */
+  public byte[] get(byte[] field) {
+    if (table != null) return table.get(new ByteKey(field));
+    int at = find(field);
+    if (at == -1) return null;
+    int valueAt = skip(at);
+    int length = readLength(valueAt);
+    int start = valueAt + lengthSize(length);
+    return Arrays.copyOfRange(packed, start, start + length);
+  }
+
+  /**
+   * Sets {@code field}, converting to a hash table first if the hash outgrows the compact encoding.
+   *
+   * @return {@code true} if the field is new
+   */
+  public boolean put(byte[] field, byte[] value) {
+    int maxValue = Encodings.hashMaxListpackValue();
+    if (table == null && (field.length > maxValue || value.length > maxValue)) convert();
+    if (table != null) return tablePut(field, value);
+
+    int at = find(field);
+    if (at != -1) {
+      int valueAt = skip(at);
+      int length = readLength(valueAt);
+      if (length == value.length) {
+        //same length, overwrite in place
+        System.arraycopy(value, 0, packed, valueAt + lengthSize(length), length);
+      } else {
+        removeAt(at);
+        append(field, value);
+      }
+      return false;
+    }
+    if (packedSize + 1 > Encodings.hashMaxListpackEntries()) {
+      convert();
+      return tablePut(field, value);
+    }
+    append(field, value);
+    packedSize++;
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the field existed
+   */
+  public boolean remove(byte[] field) {
+    if (table != null) {
+      byte[] removed = table.remove(new ByteKey(field));
+      if (removed == null) return false;
+      tableMemory -= TABLE_ENTRY_OVERHEAD + field.length + removed.length;
+      return true;
+    }
+    int at = find(field);
+    if (at == -1) return false;
+    removeAt(at);
+    packedSize--;
+    if (packed.length > INITIAL_PACKED && used * 4 < packed.length) {
+      packed = Arrays.copyOf(packed, Math.max(INITIAL_PACKED, used * 2));
+    }
+    return true;
+  }
+
+  public int size() {
+    return table != null ? table.size() : packedSize;
+  }
+
+  /**
+   * Visits every field and its value, in insertion order while compact.
+   */
+  public void forEach(BiConsumer<byte[], byte[]> visitor) {
+    if (table != null) {
+      for (Map.Entry<ByteKey, byte[]> entry : table.entrySet()) {
+        visitor.accept(entry.getKey().bytes(), entry.getValue());
+      }
+      return;
+    }
+    for (int at = 0; at < used; ) {
+      int fieldLength = readLength(at);
+      int fieldStart = at + lengthSize(fieldLength);
+      int valueAt = fieldStart + fieldLength;
+      int valueLength = readLength(valueAt);
+      int valueStart = valueAt + lengthSize(valueLength);
+      visitor.accept(Arrays.copyOfRange(packed, fieldStart, valueAt),
+          Arrays.copyOfRange(packed, valueStart, valueStart + valueLength));
+      at = valueStart + valueLength;
+    }
+  }
+
+  @Override
+  public String type() {
+    return "hash";
+  }
+
+  @Override
+  public String encoding() {
+    return table != null ? "hashtable" : "listpack";
+  }
+
+  @Override
+  public long memoryUsage() {
+    return OBJECT_OVERHEAD + (table != null ? tableMemory : packed.length);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public HashValue copy() {
+    HashValue copy = new HashValue();
+    if (table != null) {
+      //values are never changed in place in the table, sharing them is safe
+      copy.table = new HashMap<>(table);
+      copy.tableMemory = tableMemory;
+      copy.packed = null;
+    } else {
+      copy.packed = Arrays.copyOf(packed, used);
+      copy.used = used;
+      copy.packedSize = packedSize;
+    }
+    return copy;
+  }
+
+  /**
+   * {@code FIELDS: 4 bytes (int)}, then per field {@code LENGTH: 4 bytes (int), BYTES} for the field and
+   * for its value.
+   */
+  @Override
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size());
+    if (table != null) {
+      for (Map.Entry<ByteKey, byte[]> entry : table.entrySet()) {
+        writeBytes(out, entry.getKey().bytes());
+        writeBytes(out, entry.getValue());
+      }
+      return;
+    }
+    for (int at = 0; at < used; ) {
+      for (int part = 0; part < 2; part++) {
+        int length = readLength(at);
+        int start = at + lengthSize(length);
+        out.writeInt(length);
+        out.write(packed, start, length);
+        at = start + length;
+      }
+    }
+  }
+
+  /**
+   * Restores what {@link #writeTo} wrote, in the encoding its size calls for.
+   */
+  static HashValue readFrom(ByteBuffer in) {
+    HashValue hash = new HashValue();
+    for (int fields = in.getInt(); fields > 0; fields--) {
+      hash.put(readBytes(in), readBytes(in));
+    }
+    return hash;
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return bytes;
+  }
+
+  private boolean tablePut(byte[] field, byte[] value) {
+    byte[] previous = table.put(new ByteKey(field), value);
+    tableMemory += previous == null
+        ? TABLE_ENTRY_OVERHEAD + field.length + value.length
+        : value.length - previous.length;
+    return previous == null;
+  }
+
+  private void convert() {
+    HashMap<ByteKey, byte[]> converted = new HashMap<>(Math.max(16, packedSize * 2));
+    tableMemory = 0;
+    forEach((field, value) -> {
+      converted.put(new ByteKey(field), value);
+      tableMemory += TABLE_ENTRY_OVERHEAD + field.length + value.length;
+    });
+    table = converted;
+    packed = null;
+    used = 0;
+    packedSize = 0;
+  }
+
+  /* listpack layout */
+
+  /**
+   * @return offset of the entry holding {@code field}, {@code -1} if absent
+   */
+  private int find(byte[] field) {
+    for (int at = 0; at < used; ) {
+      int fieldLength = readLength(at);
+      int fieldStart = at + lengthSize(fieldLength);
+      if (fieldLength == field.length
+          && Arrays.equals(packed, fieldStart, fieldStart + fieldLength, field, 0, field.length)) {
+        return at;
+      }
+      at = skip(skip(at));
+    }
+    return -1;
+  }
+
+  /**
+   * @return offset right after the length prefixed bytes at {@code at}
+   */
+  private int skip(int at) {
+    int length = readLength(at);
+    return at + lengthSize(length) + length;
+  }
+
+  private void removeAt(int at) {
+    int end = skip(skip(at));
+    System.arraycopy(packed, end, packed, at, used - end);
+    used -= end - at;
+  }
+
+  private void append(byte[] field, byte[] value) {
+    int needed = lengthSize(field.length) + field.length + lengthSize(value.length) + value.length;
+    if (used + needed > packed.length) {
+      packed = Arrays.copyOf(packed, Math.max(used + needed, packed.length + (packed.length >> 1)));
+    }
+    used = writeLength(used, field.length);
+    System.arraycopy(field, 0, packed, used, field.length);
+    used += field.length;
+    used = writeLength(used, value.length);
+    System.arraycopy(value, 0, packed, used, value.length);
+    used += value.length;
+  }
+
+  private int readLength(int at) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = packed[at++];
+      length |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return length;
+  }
+
+  private int writeLength(int at, int length) {
+    while (length >= 0x80) {
+      packed[at++] = (byte) (length | 0x80);
+      length >>>= 7;
+    }
+    packed[at++] = (byte) length;
+    return at;
+  }
+
+  private static int lengthSize(int length) {
+    int size = 1;
+    while (length >= 0x80) {
+      length >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,358 @@
+package build.your.own.database.type;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The list type, a quicklist as in redis: a doubly linked list of nodes, each a {@code byte[]} holding up to
+ * {@code --list-max-listpack-size} elements back to back. A million element queue costs a few thousand
+ * nodes rather than a million {@code LinkedList} nodes and {@code String}s, and a push or pop at either end
+ * only touches the end node.
+ *
+ * <p>Every element is stored as {@code [length varint][bytes][length varint, reversed]}, so a node can be
+ * read from both ends. An end node keeps its free room on its outer side, where pushes and pops happen, and
+ * is trimmed to size once full, so a long list is made of tightly packed nodes. A list of one node reports the {@code listpack} encoding, a longer one {@code quicklist}.
+ */
+public final class ListValue implements Value {
+  //the ListValue and its fields
+  private static final int OBJECT_OVERHEAD = 32;
+  //Node object, its fields and the array header
+  private static final int NODE_OVERHEAD = 56;
+  //a node past this many bytes takes no more elements, a bigger element gets a node of its own
+  private static final int NODE_MAX_BYTES = 8192;
+  private static final int INITIAL_NODE_BYTES = 64;
+
+  private Node head;
+  private Node tail;
+  private int size;
+  private int nodes;
+  private long nodeBytes;
+
+  private static final class Node {
+    private byte[] bytes;
+    //elements live in [start, end)
+    private int start;
+    private int end;
+    private int count;
+    private Node prev;
+    private Node next;
+
+    private int used() {
+      return end - start;
+    }
+  }
+
+  /**
+   * Adds {@code element} at the head or the tail.
+   */
+  public void push(byte[] element, boolean atHead) {
+    int needed = entrySize(element.length);
+    Node node = atHead ? head : tail;
+    if (node == null || !fits(node, needed)) {
+      if (node != null) trim(node);
+      node = newNode(needed, atHead);
+    } else if ((atHead ? node.start : node.bytes.length - node.end) < needed) {
+      resize(node, needed, atHead);
+    }
+
+    int at = atHead ? node.start - needed : node.end;
+    writeEntry(node.bytes, at, element);
+    if (atHead) {
+      node.start = at;
+    } else {
+      node.end = at + needed;
+    }
+    node.count++;
+    size++;
+  }
+
+  /**
+   * Removes the element at the head or the tail.
+   *
+   * @return the element, {@code null} if the list is empty
+   */
+  public byte[] pop(boolean atHead) {
+    Node node = atHead ? head : tail;
+    if (node == null) return null;
+
+    byte[] element;
+    if (atHead) {
+      int length = readLength(node.bytes, node.start);
+      int from = node.start + lengthSize(length);
+      element = Arrays.copyOfRange(node.bytes, from, from + length);
+      node.start += entrySize(length);
+    } else {
+      int length = readLengthBackward(node.bytes, node.end);
+      int to = node.end - lengthSize(length);
+      element = Arrays.copyOfRange(node.bytes, to - length, to);
+      node.end -= entrySize(length);
+    }
+    node.count--;
+    size--;
+
+    if (node.count == 0) {
+      unlink(node);
+    } else if (node.bytes.length > INITIAL_NODE_BYTES && node.used() * 4 < node.bytes.length) {
+      resize(node, 0, atHead);
+    }
+    return element;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Visits the elements from index {@code from} to {@code to}, both inclusive and within
+   * {@code [0, size)}, starting the walk from the nearer end.
+   */
+  public void range(int from, int to, Consumer<byte[]> visitor) {
+    if (from > to) return;
+    Node node;
+    int index;
+    if (from < size - to) {
+      node = head;
+      index = 0;
+      while (index + node.count <= from) {
+        index += node.count;
+        node = node.next;
+      }
+    } else {
+      node = tail;
+      index = size - node.count;
+      while (index > from) {
+        node = node.prev;
+        index -= node.count;
+      }
+    }
+
+    int at = node.start;
+    while (index < from) {
+      at = skip(node.bytes, at);
+      index++;
+    }
+    for (; index <= to; index++) {
+      if (at == node.end) {
+        node = node.next;
+        at = node.start;
+      }
+      int length = readLength(node.bytes, at);
+      int start = at + lengthSize(length);
+      visitor.accept(Arrays.copyOfRange(node.bytes, start, start + length));
+      at = start + length + lengthSize(length);
+    }
+  }
+
+  /**
+   * Visits every element, head to tail.
+   */
+  public void forEach(Consumer<byte[]> visitor) {
+    range(0, size - 1, visitor);
+  }
+
+  @Override
+  public String type() {
+    return "list";
+  }
+
+  @Override
+  public String encoding() {
+    return nodes > 1 ? "quicklist" : "listpack";
+  }
+
+  @Override
+  public long memoryUsage() {
+    return OBJECT_OVERHEAD + (long) nodes * NODE_OVERHEAD + nodeBytes;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public ListValue copy() {
+    ListValue copy = new ListValue();
+    for (Node node = head; node != null; node = node.next) {
+      Node copied = new Node();
+      copied.bytes = Arrays.copyOfRange(node.bytes, node.start, node.end);
+      copied.end = copied.bytes.length;
+      copied.count = node.count;
+      copy.link(copied, false);
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  /**
+   * {@code ELEMENTS: 4 bytes (int)}, then per element, head to tail, {@code LENGTH: 4 bytes (int), BYTES}.
+   */
+  @Override
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size);
+    for (Node node = head; node != null; node = node.next) {
+      for (int at = node.start; at < node.end; ) {
+        int length = readLength(node.bytes, at);
+        int start = at + lengthSize(length);
+        out.writeInt(length);
+        out.write(node.bytes, start, length);
+        at = start + length + lengthSize(length);
+      }
+    }
+  }
+
+  /**
+   * Restores what {@link #writeTo} wrote.
+   */
+  static ListValue readFrom(ByteBuffer in) {
+    ListValue list = new ListValue();
+    for (int elements = in.getInt(); elements > 0; elements--) {
+      byte[] element = new byte[in.getInt()];
+      in.get(element);
+      list.push(element, false);
+    }
+    return list;
+  }
+
+  /* nodes */
+
+  private static boolean fits(Node node, int needed) {
+    return node.count < Encodings.listMaxListpackSize() && node.used() + needed <= NODE_MAX_BYTES;
+  }
+
+  private Node newNode(int needed, boolean atHead) {
+    Node node = new Node();
+    node.bytes = new byte[Math.max(INITIAL_NODE_BYTES, needed)];
+    //an end node grows away from the rest of the list
+    node.start = node.end = atHead ? node.bytes.length : 0;
+    link(node, atHead);
+    return node;
+  }
+
+  private void trim(Node node) {
+    if (node.used() == node.bytes.length) return;
+    nodeBytes -= node.bytes.length - node.used();
+    node.bytes = Arrays.copyOfRange(node.bytes, node.start, node.end);
+    node.start = 0;
+    node.end = node.bytes.length;
+  }
+
+  private void link(Node node, boolean atHead) {
+    if (head == null) {
+      head = tail = node;
+    } else if (atHead) {
+      node.next = head;
+      head.prev = node;
+      head = node;
+    } else {
+      node.prev = tail;
+      tail.next = node;
+      tail = node;
+    }
+    nodes++;
+    nodeBytes += node.bytes.length;
+  }
+
+  private void unlink(Node node) {
+    if (node.prev != null) node.prev.next = node.next;
+    else head = node.next;
+    if (node.next != null) node.next.prev = node.prev;
+    else tail = node.prev;
+    nodes--;
+    nodeBytes -= node.bytes.length;
+  }
+
+  /**
+   * Makes room for {@code needed} more bytes on one side of {@code node}: grows the array if it is three
+   * quarters full, otherwise moves the elements in place, which also shrinks an array mostly emptied by
+   * pops. Either moves at most {@link #NODE_MAX_BYTES}, so a push stays O(1).
+   */
+  private void resize(Node node, int needed, boolean atHead) {
+    int used = node.used();
+    int capacity = node.bytes.length;
+    int length;
+    if (used + needed > capacity * 3 / 4) {
+      length = Math.max(used + needed, Math.min(capacity * 2, NODE_MAX_BYTES));
+    } else if (needed == 0) {
+      length = Math.max(INITIAL_NODE_BYTES, used * 2);
+    } else {
+      length = capacity;
+    }
+
+    //an end node only changes on its outer side, give it all the free room; a lone node changes on both
+    int free = length - used - needed;
+    int start = head == tail ? free / 2 + (atHead ? needed : 0) : atHead ? free + needed : 0;
+    byte[] bytes = length == capacity ? node.bytes : new byte[length];
+    System.arraycopy(node.bytes, node.start, bytes, start, used);
+    nodeBytes += length - capacity;
+    node.bytes = bytes;
+    node.start = start;
+    node.end = start + used;
+  }
+
+  /* element layout */
+
+  private static int entrySize(int length) {
+    return 2 * lengthSize(length) + length;
+  }
+
+  private static void writeEntry(byte[] bytes, int at, byte[] element) {
+    int lengthSize = lengthSize(element.length);
+    int end = at + 2 * lengthSize + element.length;
+    int length = element.length;
+    for (int i = 0; i < lengthSize; i++) {
+      byte b = (byte) (i == lengthSize - 1 ? length : length | 0x80);
+      bytes[at + i] = b;
+      //the same bytes mirrored, so reading back from the end meets the low bits first
+      bytes[end - 1 - i] = b;
+      length >>>= 7;
+    }
+    System.arraycopy(element, 0, bytes, at + lengthSize, element.length);
+  }
+
+  /**
+   * @return offset right after the element at {@code at}
+   */
+  private static int skip(byte[] bytes, int at) {
+    return at + entrySize(readLength(bytes, at));
+  }
+
+  private static int readLength(byte[] bytes, int at) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bytes[at++];
+      length |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return length;
+  }
+
+  /**
+   * @return length of the element ending right before {@code end}
+   */
+  private static int readLengthBackward(byte[] bytes, int end) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bytes[--end];
+      length |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return length;
+  }
+
+  private static int lengthSize(int length) {
+    int size = 1;
+    while (length >= 0x80) {
+      length >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,262 @@
+package build.your.own.database.type;
+
+import build.your.own.database.ByteKey;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.function.Consumer;
+
+/**
+ * The set type, in one of two encodings as in redis:
+ * <ul>
+ *   <li>{@code intset}: while every member is an integer, written the canonical way ({@code 12}, not
+ *   {@code 012} or {@code +12}), the members as a sorted {@code int[]}, widened to a {@code long[]} once one
+ *   needs 64 bits. A lookup is a binary search and a set of a thousand ids costs 4 or 8 bytes per id instead
+ *   of a map node, key object and array each.</li>
+ *   <li>{@code hashtable}: a {@code HashSet}, once a member is not an integer or the set holds more than
+ *   {@code --set-max-intset-entries} members. The conversion is one way.</li>
+ * </ul>
+ */
+public final class SetValue implements Value {
+  //the SetValue and the array header
+  private static final int OBJECT_OVERHEAD = 48;
+  //HashMap node (32), ByteKey (24), the member's array header (16), its table slot (8)
+  private static final int TABLE_ENTRY_OVERHEAD = 80;
+  private static final int INITIAL_INTS = 8;
+
+  //the intset encoding, ints until a member needs 64 bits then longs, both null once converted
+  private int[] ints = new int[INITIAL_INTS];
+  private long[] longs;
+  private int count;
+  //the hashtable encoding, null while an intset
+  private HashSet<ByteKey> table;
+  private long tableMemory;
+
+  /**
+   * Adds {@code member}, converting to a hash table first if it does not fit the intset.
+   *
+   * @return {@code true} if the member is new
+   */
+  public boolean add(byte[] member) {
+    if (table == null) {
+      Long value = integerOf(member);
+      if (value != null) {
+        int at = search(value);
+        if (at >= 0) return false;
+        if (count < Encodings.setMaxIntsetEntries()) {
+          insert(-at - 1, value);
+          return true;
+        }
+      }
+      convert();
+    }
+    if (!table.add(new ByteKey(member))) return false;
+    tableMemory += TABLE_ENTRY_OVERHEAD + member.length;
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the member existed
+   */
+  public boolean remove(byte[] member) {
+    if (table != null) {
+      if (!table.remove(new ByteKey(member))) return false;
+      tableMemory -= TABLE_ENTRY_OVERHEAD + member.length;
+      return true;
+    }
+    Long value = integerOf(member);
+    int at = value != null ? search(value) : -1;
+    if (at < 0) return false;
+    if (longs != null) {
+      System.arraycopy(longs, at + 1, longs, at, count - at - 1);
+    } else {
+      System.arraycopy(ints, at + 1, ints, at, count - at - 1);
+    }
+    count--;
+    if (capacity() > INITIAL_INTS && count * 4 < capacity()) resize(Math.max(INITIAL_INTS, count * 2));
+    return true;
+  }
+
+  public boolean contains(byte[] member) {
+    if (table != null) return table.contains(new ByteKey(member));
+    Long value = integerOf(member);
+    return value != null && search(value) >= 0;
+  }
+
+  public int size() {
+    return table != null ? table.size() : count;
+  }
+
+  /**
+   * Visits every member, in ascending order while an intset.
+   */
+  public void forEach(Consumer<byte[]> visitor) {
+    if (table != null) {
+      for (ByteKey member : table) {
+        visitor.accept(member.bytes());
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      visitor.accept(Long.toString(at(i)).getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Override
+  public String type() {
+    return "set";
+  }
+
+  @Override
+  public String encoding() {
+    return table != null ? "hashtable" : "intset";
+  }
+
+  @Override
+  public long memoryUsage() {
+    if (table != null) return OBJECT_OVERHEAD + tableMemory;
+    return OBJECT_OVERHEAD + (long) capacity() * (longs != null ? Long.BYTES : Integer.BYTES);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public SetValue copy() {
+    SetValue copy = new SetValue();
+    if (table != null) {
+      copy.table = new HashSet<>(table);
+      copy.tableMemory = tableMemory;
+      copy.ints = null;
+    } else {
+      copy.ints = ints != null ? Arrays.copyOf(ints, Math.max(INITIAL_INTS, count)) : null;
+      copy.longs = longs != null ? Arrays.copyOf(longs, Math.max(INITIAL_INTS, count)) : null;
+      copy.count = count;
+    }
+    return copy;
+  }
+
+  /**
+   * {@code MEMBERS: 4 bytes (int)}, then per member {@code LENGTH: 4 bytes (int), BYTES}.
+   */
+  @Override
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size());
+    if (table != null) {
+      for (ByteKey member : table) {
+        writeBytes(out, member.bytes());
+      }
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      writeBytes(out, Long.toString(at(i)).getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  /**
+   * Restores what {@link #writeTo} wrote, in the encoding its members call for.
+   */
+  static SetValue readFrom(ByteBuffer in) {
+    SetValue set = new SetValue();
+    for (int members = in.getInt(); members > 0; members--) {
+      byte[] member = new byte[in.getInt()];
+      in.get(member);
+      set.add(member);
+    }
+    return set;
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * @return {@code member} as a long if it is one written the canonical way, the form it is replied in,
+   * else {@code null}
+   */
+  static Long integerOf(byte[] member) {
+    if (member.length == 0 || member.length > 20) return null;
+    boolean negative = member[0] == '-';
+    int i = negative ? 1 : 0;
+    if (i == member.length) return null;
+    //no leading zeros, no "-0"
+    if (member[i] == '0' && member.length > 1) return null;
+    //accumulated below zero, where the long range goes one further
+    long value = 0;
+    for (; i < member.length; i++) {
+      int digit = member[i] - '0';
+      if (digit < 0 || digit > 9) return null;
+      if (value < (Long.MIN_VALUE + digit) / 10) return null;
+      value = value * 10 - digit;
+    }
+    if (negative) return value;
+    return value != Long.MIN_VALUE ? -value : null;
+  }
+
+  /* intset layout */
+
+  private long at(int i) {
+    return longs != null ? longs[i] : ints[i];
+  }
+
+  private int capacity() {
+    return longs != null ? longs.length : ints.length;
+  }
+
+  /**
+   * @return index of {@code value}, else {@code -(insertion point) - 1}
+   */
+  private int search(long value) {
+    if (longs != null) return Arrays.binarySearch(longs, 0, count, value);
+    if (value == (int) value) return Arrays.binarySearch(ints, 0, count, (int) value);
+    //beyond every int held
+    return value < 0 ? -1 : -count - 1;
+  }
+
+  private void insert(int at, long value) {
+    if (longs == null && value != (int) value) {
+      longs = new long[ints.length];
+      for (int i = 0; i < count; i++) {
+        longs[i] = ints[i];
+      }
+      ints = null;
+    }
+    if (count == capacity()) resize(capacity() + (capacity() >> 1));
+    if (longs != null) {
+      System.arraycopy(longs, at, longs, at + 1, count - at);
+      longs[at] = value;
+    } else {
+      System.arraycopy(ints, at, ints, at + 1, count - at);
+      ints[at] = (int) value;
+    }
+    count++;
+  }
+
+  private void resize(int length) {
+    if (longs != null) {
+      longs = Arrays.copyOf(longs, length);
+    } else {
+      ints = Arrays.copyOf(ints, length);
+    }
+  }
+
+  private void convert() {
+    HashSet<ByteKey> converted = new HashSet<>(Math.max(16, count * 2));
+    tableMemory = 0;
+    forEach(member -> {
+      converted.add(new ByteKey(member));
+      tableMemory += TABLE_ENTRY_OVERHEAD + member.length;
+    });
+    table = converted;
+    ints = null;
+    longs = null;
+    count = 0;
+  }
+}
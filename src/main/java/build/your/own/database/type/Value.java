@@ -0,0 +1,43 @@
+package build.your.own.database.type;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A value other than a string, held in {@link build.your.own.database.DbMap.Data#value()} and changed in
+ * place by its commands through {@link build.your.own.database.DbMap#update}.
+ *
+ * <p>Not thread safe: {@link build.your.own.database.DbMap} only hands a value out under the lock of its
+ * key.
+ */
+public interface Value {
+  /**
+   * @return the name {@code TYPE} reports, e.g. {@code hash}
+   */
+  String type();
+
+  /**
+   * @return the name {@code OBJECT ENCODING} reports, e.g. {@code listpack}
+   */
+  String encoding();
+
+  /**
+   * @return approximate bytes held, what {@code maxmemory} is compared against
+   */
+  long memoryUsage();
+
+  /**
+   * A key whose value became empty is removed, like redis does.
+   */
+  boolean isEmpty();
+
+  /**
+   * @return a deep copy, what a snapshot keeps of a value written while it runs
+   */
+  Value copy();
+
+  /**
+   * Writes the payload {@link Values#read} restores, see {@link Values}.
+   */
+  void writeTo(DataOutput out) throws IOException;
+}
@@ -0,0 +1,57 @@
+package build.your.own.database.type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The one byte tag of every value type, shared by the snapshot format and off heap storage, and the codec
+ * of the non string ones over {@link Value#writeTo}.
+ */
+public final class Values {
+  public static final byte STRING = 0;
+  public static final byte HASH = 1;
+  public static final byte LIST = 2;
+  public static final byte ZSET = 3;
+  public static final byte SET = 4;
+
+  private Values() {
+  }
+
+  public static byte tagOf(Value value) {
+    if (value instanceof HashValue) return HASH;
+    if (value instanceof ListValue) return LIST;
+    if (value instanceof ZSetValue) return ZSET;
+    if (value instanceof SetValue) return SET;
+    throw new IllegalArgumentException("Unknown value type " + value.getClass().getName());
+  }
+
+  /**
+   * @return {@code true} if values tagged {@code tag} can be read back by {@link #read}
+   */
+  public static boolean isKnown(byte tag) {
+    return tag == HASH || tag == LIST || tag == ZSET || tag == SET;
+  }
+
+  public static Value read(byte tag, ByteBuffer in) {
+    return switch (tag) {
+      case HASH -> HashValue.readFrom(in);
+      case LIST -> ListValue.readFrom(in);
+      case ZSET -> ZSetValue.readFrom(in);
+      case SET -> SetValue.readFrom(in);
+      default -> throw new IllegalArgumentException("Unknown value type " + tag);
+    };
+  }
+
+  public static byte[] encode(Value value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      value.writeTo(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,609 @@
+package build.your.own.database.type;
+
+import build.your.own.database.ByteKey;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * The sorted set type, members ordered by score then by their bytes, in one of two encodings as in redis:
+ * <ul>
+ *   <li>{@code listpack}: every member and its score packed back to back in order in one {@code byte[]},
+ *   each member prefixed with its length as a varint, each score its 8 bytes. Every operation is a linear
+ *   scan, cheap at this size.</li>
+ *   <li>{@code skiplist}: a skip list whose links count the nodes they skip, so the rank of a member and
+ *   the member at a rank are found in O(log n), next to a hash from member to its node for O(1) score
+ *   lookups; once the set holds more than {@code --zset-max-listpack-entries} members or a member longer
+ *   than {@code --zset-max-listpack-value} bytes. The conversion is one way.</li>
+ * </ul>
+ */
+public final class ZSetValue implements Value {
+  //the ZSetValue and the packed array header
+  private static final int OBJECT_OVERHEAD = 48;
+  //skip list node (40), its two arrays' headers (2 x 16), the member's array header (16)
+  private static final int NODE_OVERHEAD = 72;
+  //per level of a node: a forward link (8) and its span (4)
+  private static final int LEVEL_OVERHEAD = 12;
+  //HashMap node (32), ByteKey (24), its table slot (8)
+  private static final int DICT_ENTRY_OVERHEAD = 64;
+  private static final int INITIAL_PACKED = 32;
+  private static final int SCORE_BYTES = 8;
+  private static final int MAX_LEVEL = 32;
+
+  //the listpack encoding, null once converted
+  private byte[] packed = new byte[INITIAL_PACKED];
+  private int used;
+  private int packedSize;
+  //the skiplist encoding, null while compact
+  private SkipList skipList;
+  private HashMap<ByteKey, SkipNode> dict;
+  private long skipMemory;
+
+  /**
+   * Scores between {@code min} and {@code max}, each bound inclusive unless flagged exclusive.
+   */
+  public record ScoreRange(double min, boolean minExclusive, double max, boolean maxExclusive) {
+    boolean aboveMin(double score) {
+      return minExclusive ? score > min : score >= min;
+    }
+
+    boolean belowMax(double score) {
+      return maxExclusive ? score < max : score <= max;
+    }
+
+    boolean isEmpty() {
+      return min > max || (min == max && (minExclusive || maxExclusive));
+    }
+  }
+
+  /**
+   * @return the score of {@code member}, {@code null} if absent
+   */
+  public Double score(byte[] member) {
+    if (dict != null) {
+      SkipNode node = dict.get(new ByteKey(member));
+      return node != null ? node.score : null;
+    }
+    int at = find(member);
+    return at != -1 ? readScore(packed, skip(packed, at) - SCORE_BYTES) : null;
+  }
+
+  /**
+   * Sets the score of {@code member}, converting to a skip list first if the set outgrows the compact
+   * encoding.
+   *
+   * @return {@code true} if the member is new
+   */
+  public boolean put(byte[] member, double score) {
+    //-0 and 0 are the same score
+    score += 0.0;
+    if (dict == null && member.length > Encodings.zsetMaxListpackValue()) convert();
+    if (dict != null) return skipPut(member, score);
+
+    int at = find(member);
+    if (at != -1) {
+      if (readScore(packed, skip(packed, at) - SCORE_BYTES) != score) {
+        removeAt(at);
+        insert(member, score);
+      }
+      return false;
+    }
+    if (packedSize + 1 > Encodings.zsetMaxListpackEntries()) {
+      convert();
+      return skipPut(member, score);
+    }
+    insert(member, score);
+    packedSize++;
+    return true;
+  }
+
+  /**
+   * @return {@code true} if the member existed
+   */
+  public boolean remove(byte[] member) {
+    if (dict != null) {
+      SkipNode node = dict.remove(new ByteKey(member));
+      if (node == null) return false;
+      skipList.delete(node.score, node.member);
+      skipMemory -= nodeMemory(node) + DICT_ENTRY_OVERHEAD;
+      return true;
+    }
+    int at = find(member);
+    if (at == -1) return false;
+    removeAt(at);
+    packedSize--;
+    if (packed.length > INITIAL_PACKED && used * 4 < packed.length) {
+      packed = Arrays.copyOf(packed, Math.max(INITIAL_PACKED, used * 2));
+    }
+    return true;
+  }
+
+  public int size() {
+    return dict != null ? dict.size() : packedSize;
+  }
+
+  /**
+   * @return the 0 based rank of {@code member}, lowest score first, {@code -1} if absent
+   */
+  public int rank(byte[] member) {
+    if (dict != null) {
+      SkipNode node = dict.get(new ByteKey(member));
+      return node != null ? skipList.rank(node.score, node.member) - 1 : -1;
+    }
+    int rank = 0;
+    for (int at = 0; at < used; at = skip(packed, at), rank++) {
+      if (memberEquals(packed, at, member)) return rank;
+    }
+    return -1;
+  }
+
+  /**
+   * Visits the members ranked {@code from} to {@code to}, both inclusive and within {@code [0, size)},
+   * lowest score first.
+   */
+  public void range(int from, int to, ObjDoubleConsumer<byte[]> visitor) {
+    if (from > to) return;
+    if (dict != null) {
+      SkipNode node = skipList.byRank(from + 1);
+      for (int rank = from; rank <= to; rank++, node = node.forward[0]) {
+        visitor.accept(node.member, node.score);
+      }
+      return;
+    }
+    int rank = 0;
+    for (int at = 0; at < used && rank <= to; at = skip(packed, at), rank++) {
+      if (rank >= from) visit(packed, at, visitor);
+    }
+  }
+
+  /**
+   * Visits the members scored within {@code range}, lowest score first, skipping the first
+   * {@code offset} of them and stopping after {@code count}, {@code -1} for all.
+   */
+  public void rangeByScore(ScoreRange range, int offset, int count, ObjDoubleConsumer<byte[]> visitor) {
+    if (range.isEmpty()) return;
+    if (dict != null) {
+      for (SkipNode node = skipList.firstInRange(range); node != null && range.belowMax(node.score) && count != 0;
+           node = node.forward[0]) {
+        if (offset > 0) {
+          offset--;
+          continue;
+        }
+        visitor.accept(node.member, node.score);
+        count--;
+      }
+      return;
+    }
+    for (int at = 0; at < used && count != 0; at = skip(packed, at)) {
+      double score = readScore(packed, skip(packed, at) - SCORE_BYTES);
+      if (!range.aboveMin(score)) continue;
+      if (!range.belowMax(score)) break;
+      if (offset > 0) {
+        offset--;
+        continue;
+      }
+      visit(packed, at, visitor);
+      count--;
+    }
+  }
+
+  /**
+   * Visits every member and its score, lowest score first.
+   */
+  public void forEach(ObjDoubleConsumer<byte[]> visitor) {
+    range(0, size() - 1, visitor);
+  }
+
+  @Override
+  public String type() {
+    return "zset";
+  }
+
+  @Override
+  public String encoding() {
+    return dict != null ? "skiplist" : "listpack";
+  }
+
+  @Override
+  public long memoryUsage() {
+    return OBJECT_OVERHEAD + (dict != null ? skipMemory : packed.length);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public ZSetValue copy() {
+    ZSetValue copy = new ZSetValue();
+    if (dict != null) {
+      copy.packed = null;
+      copy.skipList = new SkipList();
+      copy.dict = new HashMap<>(Math.max(16, dict.size() * 2));
+      //members are never changed in place, sharing them is safe
+      forEach(copy::skipPut);
+    } else {
+      copy.packed = Arrays.copyOf(packed, used);
+      copy.used = used;
+      copy.packedSize = packedSize;
+    }
+    return copy;
+  }
+
+  /**
+   * {@code MEMBERS: 4 bytes (int)}, then per member, lowest score first,
+   * {@code LENGTH: 4 bytes (int), BYTES, SCORE: 8 bytes (double)}.
+   */
+  @Override
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size());
+    if (dict != null) {
+      for (SkipNode node = skipList.head.forward[0]; node != null; node = node.forward[0]) {
+        out.writeInt(node.member.length);
+        out.write(node.member);
+        out.writeDouble(node.score);
+      }
+      return;
+    }
+    for (int at = 0; at < used; ) {
+      int length = readLength(packed, at);
+      int start = at + lengthSize(length);
+      out.writeInt(length);
+      out.write(packed, start, length);
+      out.writeDouble(readScore(packed, start + length));
+      at = start + length + SCORE_BYTES;
+    }
+  }
+
+  /**
+   * Restores what {@link #writeTo} wrote, in the encoding its size calls for.
+   */
+  static ZSetValue readFrom(ByteBuffer in) {
+    ZSetValue zset = new ZSetValue();
+    for (int members = in.getInt(); members > 0; members--) {
+      byte[] member = new byte[in.getInt()];
+      in.get(member);
+      zset.put(member, in.getDouble());
+    }
+    return zset;
+  }
+
+  /**
+   * Parses a score the way redis does, {@code inf}, {@code +inf} and {@code -inf} included.
+   *
+   * @throws NumberFormatException if it is not a number, or not a number at all ({@code NaN})
+   */
+  public static double parseScore(String value) {
+    double score = switch (value.toLowerCase(Locale.ROOT)) {
+      case "inf", "+inf" -> Double.POSITIVE_INFINITY;
+      case "-inf" -> Double.NEGATIVE_INFINITY;
+      default -> Double.parseDouble(value);
+    };
+    if (Double.isNaN(score)) throw new NumberFormatException("NaN");
+    return score;
+  }
+
+  /**
+   * @return {@code score} as replied and passed on: integral scores without a fraction, {@code inf} and
+   * {@code -inf} as redis writes them, anything else in a form {@link #parseScore} reads back exactly
+   */
+  public static String formatScore(double score) {
+    if (score == Double.POSITIVE_INFINITY) return "inf";
+    if (score == Double.NEGATIVE_INFINITY) return "-inf";
+    if (score == Math.rint(score) && Math.abs(score) < 1e15) return Long.toString((long) score);
+    return Double.toString(score);
+  }
+
+  private boolean skipPut(byte[] member, double score) {
+    ByteKey key = new ByteKey(member);
+    SkipNode node = dict.get(key);
+    if (node != null) {
+      if (node.score != score) {
+        skipList.delete(node.score, node.member);
+        skipMemory -= nodeMemory(node);
+        node = skipList.insert(score, node.member);
+        skipMemory += nodeMemory(node);
+        dict.put(key, node);
+      }
+      return false;
+    }
+    node = skipList.insert(score, member);
+    dict.put(key, node);
+    skipMemory += nodeMemory(node) + DICT_ENTRY_OVERHEAD;
+    return true;
+  }
+
+  private void convert() {
+    SkipList converted = new SkipList();
+    HashMap<ByteKey, SkipNode> convertedDict = new HashMap<>(Math.max(16, packedSize * 2));
+    skipMemory = 0;
+    forEach((member, score) -> {
+      SkipNode node = converted.insert(score, member);
+      convertedDict.put(new ByteKey(member), node);
+      skipMemory += nodeMemory(node) + DICT_ENTRY_OVERHEAD;
+    });
+    skipList = converted;
+    dict = convertedDict;
+    packed = null;
+    used = 0;
+    packedSize = 0;
+  }
+
+  private static long nodeMemory(SkipNode node) {
+    return NODE_OVERHEAD + (long) LEVEL_OVERHEAD * node.forward.length + node.member.length;
+  }
+
+  private static int compare(double score, byte[] member, double otherScore, byte[] otherMember) {
+    int byScore = Double.compare(score, otherScore);
+    return byScore != 0 ? byScore : Arrays.compareUnsigned(member, otherMember);
+  }
+
+  /* skiplist encoding, after redis' zskiplist */
+
+  private static final class SkipNode {
+    private final byte[] member;
+    private final double score;
+    private SkipNode backward;
+    private final SkipNode[] forward;
+    //how many nodes forward[i] moves ahead
+    private final int[] span;
+
+    private SkipNode(byte[] member, double score, int level) {
+      this.member = member;
+      this.score = score;
+      this.forward = new SkipNode[level];
+      this.span = new int[level];
+    }
+  }
+
+  private static final class SkipList {
+    private final SkipNode head = new SkipNode(null, 0, MAX_LEVEL);
+    private SkipNode tail;
+    private int level = 1;
+    private int length;
+
+    private static boolean before(SkipNode node, double score, byte[] member) {
+      return compare(node.score, node.member, score, member) < 0;
+    }
+
+    SkipNode insert(double score, byte[] member) {
+      SkipNode[] update = new SkipNode[MAX_LEVEL];
+      int[] rank = new int[MAX_LEVEL];
+      SkipNode x = head;
+      for (int i = level - 1; i >= 0; i--) {
+        rank[i] = i == level - 1 ? 0 : rank[i + 1];
+        while (x.forward[i] != null && before(x.forward[i], score, member)) {
+          rank[i] += x.span[i];
+          x = x.forward[i];
+        }
+        update[i] = x;
+      }
+
+      int nodeLevel = randomLevel();
+      if (nodeLevel > level) {
+        for (int i = level; i < nodeLevel; i++) {
+          rank[i] = 0;
+          update[i] = head;
+          head.span[i] = length;
+        }
+        level = nodeLevel;
+      }
+      x = new SkipNode(member, score, nodeLevel);
+      for (int i = 0; i < nodeLevel; i++) {
+        x.forward[i] = update[i].forward[i];
+        update[i].forward[i] = x;
+        x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+        update[i].span[i] = rank[0] - rank[i] + 1;
+      }
+      for (int i = nodeLevel; i < level; i++) {
+        update[i].span[i]++;
+      }
+
+      x.backward = update[0] == head ? null : update[0];
+      if (x.forward[0] != null) {
+        x.forward[0].backward = x;
+      } else {
+        tail = x;
+      }
+      length++;
+      return x;
+    }
+
+    void delete(double score, byte[] member) {
+      SkipNode[] update = new SkipNode[MAX_LEVEL];
+      SkipNode x = head;
+      for (int i = level - 1; i >= 0; i--) {
+        while (x.forward[i] != null && before(x.forward[i], score, member)) {
+          x = x.forward[i];
+        }
+        update[i] = x;
+      }
+      x = x.forward[0];
+      if (x == null || x.score != score || !Arrays.equals(x.member, member)) return;
+
+      for (int i = 0; i < level; i++) {
+        if (update[i].forward[i] == x) {
+          update[i].span[i] += x.span[i] - 1;
+          update[i].forward[i] = x.forward[i];
+        } else {
+          update[i].span[i]--;
+        }
+      }
+      if (x.forward[0] != null) {
+        x.forward[0].backward = x.backward;
+      } else {
+        tail = x.backward;
+      }
+      while (level > 1 && head.forward[level - 1] == null) {
+        level--;
+      }
+      length--;
+    }
+
+    /**
+     * @return the 1 based rank of the member, which must be in the list
+     */
+    int rank(double score, byte[] member) {
+      int rank = 0;
+      SkipNode x = head;
+      for (int i = level - 1; i >= 0; i--) {
+        while (x.forward[i] != null && compare(x.forward[i].score, x.forward[i].member, score, member) <= 0) {
+          rank += x.span[i];
+          x = x.forward[i];
+        }
+        if (x != head && Arrays.equals(x.member, member)) return rank;
+      }
+      return 0;
+    }
+
+    /**
+     * @return the node at the 1 based {@code rank}, {@code null} if out of the list
+     */
+    SkipNode byRank(int rank) {
+      int traversed = 0;
+      SkipNode x = head;
+      for (int i = level - 1; i >= 0; i--) {
+        while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+          traversed += x.span[i];
+          x = x.forward[i];
+        }
+        if (traversed == rank) return x;
+      }
+      return null;
+    }
+
+    /**
+     * @return the first node above the range's minimum, {@code null} if none
+     */
+    SkipNode firstInRange(ScoreRange range) {
+      if (tail == null || !range.aboveMin(tail.score)) return null;
+      SkipNode x = head;
+      for (int i = level - 1; i >= 0; i--) {
+        while (x.forward[i] != null && !range.aboveMin(x.forward[i].score)) {
+          x = x.forward[i];
+        }
+      }
+      return x.forward[0];
+    }
+
+    private static int randomLevel() {
+      int level = 1;
+      //each level a quarter as likely as the one below, as in redis
+      while (level < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0) {
+        level++;
+      }
+      return level;
+    }
+  }
+
+  /* listpack layout: [length varint][member][score, 8 bytes] per member, in order */
+
+  /**
+   * @return offset of the entry holding {@code member}, {@code -1} if absent
+   */
+  private int find(byte[] member) {
+    for (int at = 0; at < used; at = skip(packed, at)) {
+      if (memberEquals(packed, at, member)) return at;
+    }
+    return -1;
+  }
+
+  private void insert(byte[] member, double score) {
+    int at = 0;
+    while (at < used) {
+      int length = readLength(packed, at);
+      int start = at + lengthSize(length);
+      double current = readScore(packed, start + length);
+      int byScore = Double.compare(current, score);
+      if (byScore > 0 || (byScore == 0
+          && Arrays.compareUnsigned(packed, start, start + length, member, 0, member.length) > 0)) {
+        break;
+      }
+      at = start + length + SCORE_BYTES;
+    }
+
+    int needed = lengthSize(member.length) + member.length + SCORE_BYTES;
+    if (used + needed > packed.length) {
+      packed = Arrays.copyOf(packed, Math.max(used + needed, packed.length + (packed.length >> 1)));
+    }
+    System.arraycopy(packed, at, packed, at + needed, used - at);
+    int write = writeLength(packed, at, member.length);
+    System.arraycopy(member, 0, packed, write, member.length);
+    long bits = Double.doubleToLongBits(score);
+    for (int i = 0; i < SCORE_BYTES; i++) {
+      packed[write + member.length + i] = (byte) (bits >>> (56 - 8 * i));
+    }
+    used += needed;
+  }
+
+  private void removeAt(int at) {
+    int end = skip(packed, at);
+    System.arraycopy(packed, end, packed, at, used - end);
+    used -= end - at;
+  }
+
+  private static void visit(byte[] packed, int at, ObjDoubleConsumer<byte[]> visitor) {
+    int length = readLength(packed, at);
+    int start = at + lengthSize(length);
+    visitor.accept(Arrays.copyOfRange(packed, start, start + length), readScore(packed, start + length));
+  }
+
+  private static boolean memberEquals(byte[] packed, int at, byte[] member) {
+    int length = readLength(packed, at);
+    int start = at + lengthSize(length);
+    return length == member.length && Arrays.equals(packed, start, start + length, member, 0, length);
+  }
+
+  /**
+   * @return offset right after the entry at {@code at}
+   */
+  private static int skip(byte[] packed, int at) {
+    int length = readLength(packed, at);
+    return at + lengthSize(length) + length + SCORE_BYTES;
+  }
+
+  private static double readScore(byte[] packed, int at) {
+    long bits = 0;
+    for (int i = 0; i < SCORE_BYTES; i++) {
+      bits = bits << 8 | (packed[at + i] & 0xff);
+    }
+    return Double.longBitsToDouble(bits);
+  }
+
+  private static int readLength(byte[] packed, int at) {
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = packed[at++];
+      length |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return length;
+  }
+
+  private static int writeLength(byte[] packed, int at, int length) {
+    while (length >= 0x80) {
+      packed[at++] = (byte) (length | 0x80);
+      length >>>= 7;
+    }
+    packed[at++] = (byte) length;
+    return at;
+  }
+
+  private static int lengthSize(int length) {
+    int size = 1;
+    while (length >= 0x80) {
+      length >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,24 @@
+package build.your.own.persist;
+
+import java.util.Locale;
+
+/**
+ * When the {@link AppendOnlyFile} is flushed to the disk, selected with {@code --appendfsync}.
+ */
+public enum AppendFsync {
+  /** fsync before a write is acknowledged, concurrent writes share one fsync. */
+  ALWAYS,
+  /** fsync once per second, at most a second of writes is lost on a crash (default). */
+  EVERYSEC,
+  /** Leave flushing to the OS. */
+  NO;
+
+  public static AppendFsync fromConfig(String value) {
+    if (value == null) return EVERYSEC;
+    try {
+      return AppendFsync.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown appendfsync " + value);
+    }
+  }
+}
@@ -0,0 +1,537 @@
+package build.your.own.persist;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.SnapshotView;
+import build.your.own.database.type.HashValue;
+import build.your.own.database.type.ListValue;
+import build.your.own.database.type.SetValue;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespBuffer;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespParser;
+import build.your.own.resp.error.Error;
+import build.your.own.resp.error.ProtocolError;
+import build.your.own.tcp.cmd.CommandRegistry;
+import build.your.own.tcp.cmd.WriteListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <h1>Append only file</h1>
+ * Logs every write command in RESP form ({@code --appendonly yes}, file {@code --appendfilename} under
+ * {@code --dir}), replayed through the {@link CommandRegistry} on startup before the server listens.
+ *
+ * <p>Group commit: client threads only encode their command into a shared pending buffer; a single
+ * {@code aof-writer} thread swaps that buffer out, writes it to the {@link FileChannel} in one call and
+ * flushes according to {@link AppendFsync}:
+ * <ul>
+ *   <li>{@code always}: fsync after each batch, and {@link #beforeReply()} holds the reply until the
+ *   batch holding the write is synced. Writes queued during an fsync share the next one.</li>
+ *   <li>{@code everysec}: fsync at most once per second on the writer thread, clients never wait.</li>
+ *   <li>{@code no}: never fsync.</li>
+ * </ul>
+ * A failed write keeps the batch and is retried every second; under {@code always} clients wait for it.
+ *
+ * <h2>Rewrite</h2>
+ * Overwritten keys make the log grow without bound, so once it doubled ({@code --auto-aof-rewrite-percentage},
+ * past {@code --auto-aof-rewrite-min-size}) or on {@code BGREWRITEAOF}, an {@code aof-rewrite} thread writes
+ * a point-in-time view of the dataset ({@link SnapshotView}) as the commands recreating each key to a temp
+ * file. Writes keep going to the old log and are also copied to a delta buffer, which the rewrite thread
+ * drains into the temp file while it is large. The last bit of delta is written under the lock, then the
+ * temp file is fsynced and atomically renamed over the log and the writer thread switches to it. The
+ * delta starts exactly where the view stands, see {@link DbMap#openSnapshot(Runnable)}, so commands that
+ * are not idempotent, like {@code LPUSH}, are neither lost nor applied twice on replay.
+ */
+public class AppendOnlyFile implements WriteListener {
+  private static final Logger logger = Logger.getInstance(AppendOnlyFile.class);
+  public static final String DEFAULT_FILENAME = "appendonly.aof";
+  private static final long FSYNC_INTERVAL_MILLIS = 1000;
+  private static final int WRITE_CHUNK = 1024 * 1024;
+  //fields per HSET / elements per RPUSH / members per ZADD or SADD when a collection is rewritten, keeps
+  //commands of huge ones reasonably sized
+  private static final int REBUILD_BATCH = 64;
+  //delta left for the final, writer blocking, step of a rewrite
+  private static final int DELTA_FINAL_SIZE = 64 * 1024;
+  private static final int DELTA_DRAIN_ROUNDS = 16;
+  public static final long DEFAULT_REWRITE_PERCENTAGE = 100;
+  public static final String DEFAULT_REWRITE_MIN_SIZE = "64mb";
+
+  private final Path path;
+  private final AppendFsync fsync;
+  private final DbMap map;
+  private final long rewritePercentage;
+  private final long rewriteMinSize;
+  //owned by the writer thread, replaced with nextChannel after a rewrite
+  private FileChannel channel;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasData = lock.newCondition();
+  private final Condition synced = lock.newCondition();
+  //guarded by lock; syncedSeq only advances under appendfsync always
+  private RespBuffer pending = new RespBuffer();
+  private long appendedSeq;
+  private long syncedSeq;
+  //non null while a rewrite runs
+  private RespBuffer rewriteDelta;
+  private FileChannel nextChannel;
+
+  private final ExecutorService rewriter = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "aof-rewrite");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean rewriting = new AtomicBoolean();
+  //size right after the last rewrite, or on startup
+  private volatile long baseSize;
+  private volatile boolean lastRewriteOk = true;
+
+  private volatile boolean lastWriteOk = true;
+  private volatile long size;
+
+  /**
+   * @param rewritePercentage growth over the size after the last rewrite that triggers one, 0 to disable
+   * @param rewriteMinSize    no automatic rewrite below this many bytes
+   */
+  public AppendOnlyFile(Path path, AppendFsync fsync, DbMap map, long rewritePercentage, long rewriteMinSize) {
+    this.path = path;
+    this.fsync = fsync;
+    this.map = map;
+    this.rewritePercentage = rewritePercentage;
+    this.rewriteMinSize = rewriteMinSize;
+  }
+
+  /**
+   * Executes every command of the file against the registry; call before {@link #open()}.
+   * A command cut short by a crash at the end of the file is dropped and the file truncated before it.
+   *
+   * @return commands replayed
+   * @throws IOException if the file cannot be read or is corrupt before its last command
+   */
+  public long replay(CommandRegistry registry) throws IOException {
+    if (!Files.exists(path)) return 0;
+    logger.info(String.format("Replaying append only file %s", path));
+
+    long replayed = 0;
+    RespParser parser = new RespParser();
+    try (InputStream input = Files.newInputStream(path)) {
+      while (parser.readFrom(input) != -1) {
+        List<String> command;
+        while ((command = parser.next()) != null) {
+          RespData reply = registry.dispatchReplicated(command);
+          if (reply instanceof Error error) {
+            logger.warn(String.format("Replayed command %s failed: %s", command.getFirst(), error));
+          }
+          replayed++;
+        }
+      }
+    } catch (ProtocolError e) {
+      throw new IOException(String.format("Corrupt append only file after %d bytes: %s", parser.completedBytes(), e.getMessage()));
+    }
+
+    if (parser.hasPending()) {
+      logger.warn(String.format("Append only file ends with a partial command, truncating to %d bytes", parser.completedBytes()));
+      try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        truncate.truncate(parser.completedBytes());
+      }
+    }
+    logger.info(String.format("Replayed %d commands from the append only file", replayed));
+    return replayed;
+  }
+
+  /**
+   * @return whether there is a file to {@link #replay(CommandRegistry)}
+   */
+  public boolean exists() {
+    return Files.exists(path);
+  }
+
+  /**
+   * Creates the file holding the current content of the map, so turning the AOF on for a dataset loaded
+   * from a snapshot does not lose it on the next restart.
+   */
+  public void create() throws IOException {
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+         SnapshotView view = map.openSnapshot()) {
+      long keys = writeDataset(view, file);
+      file.force(false);
+      logger.info(String.format("Created append only file %s with %d keys", path, keys));
+    }
+  }
+
+  /**
+   * Writes every live key of the view as the commands recreating it, see {@link #rebuildCommands}.
+   *
+   * @return keys written
+   */
+  private long writeDataset(SnapshotView view, FileChannel file) throws IOException {
+    RespBuffer buffer = new RespBuffer();
+    long now = System.currentTimeMillis();
+    long[] keys = new long[1];
+    view.forEach((key, data) -> {
+      if (data.isExpired(now)) return;
+      for (List<String> command : rebuildCommands(key, data)) {
+        buffer.putCommand(command);
+      }
+      keys[0]++;
+      if (buffer.size() >= WRITE_CHUNK) writeFully(buffer, file);
+    });
+    writeFully(buffer, file);
+    return keys[0];
+  }
+
+  /**
+   * @param data the entry, detached from the map if it is not a string, see {@link DbMap#detached}
+   * @return the commands that recreate the entry, what the AOF is rewritten to and what {@code MIGRATE}
+   * sends: a {@code SET} with an absolute {@code pxat} expiry for a string, {@code HSET}s of up to
+   * {@value #REBUILD_BATCH} fields for a hash, {@code RPUSH}es of up to {@value #REBUILD_BATCH} elements
+   * for a list, {@code ZADD}s of up to {@value #REBUILD_BATCH} members for a sorted set, {@code SADD}s of
+   * up to {@value #REBUILD_BATCH} members for a set
+   */
+  public static List<List<String>> rebuildCommands(ByteKey key, DbMap.Data data) {
+    String name = key.toString();
+    if (data.value() instanceof HashValue hash) {
+      List<List<String>> commands = new ArrayList<>();
+      List<String> batch = new ArrayList<>();
+      hash.forEach((field, value) -> {
+        if (batch.isEmpty()) {
+          batch.add("HSET");
+          batch.add(name);
+        }
+        batch.add(new String(field, RESP.CHARSET));
+        batch.add(new String(value, RESP.CHARSET));
+        if (batch.size() == 2 + 2 * REBUILD_BATCH) {
+          commands.add(List.copyOf(batch));
+          batch.clear();
+        }
+      });
+      if (!batch.isEmpty()) commands.add(batch);
+      return commands;
+    }
+    if (data.value() instanceof ListValue list) {
+      List<List<String>> commands = new ArrayList<>();
+      List<String> batch = new ArrayList<>();
+      list.forEach(element -> {
+        if (batch.isEmpty()) {
+          batch.add("RPUSH");
+          batch.add(name);
+        }
+        batch.add(new String(element, RESP.CHARSET));
+        if (batch.size() == 2 + REBUILD_BATCH) {
+          commands.add(List.copyOf(batch));
+          batch.clear();
+        }
+      });
+      if (!batch.isEmpty()) commands.add(batch);
+      return commands;
+    }
+    if (data.value() instanceof ZSetValue zset) {
+      List<List<String>> commands = new ArrayList<>();
+      List<String> batch = new ArrayList<>();
+      zset.forEach((member, score) -> {
+        if (batch.isEmpty()) {
+          batch.add("ZADD");
+          batch.add(name);
+        }
+        batch.add(ZSetValue.formatScore(score));
+        batch.add(new String(member, RESP.CHARSET));
+        if (batch.size() == 2 + 2 * REBUILD_BATCH) {
+          commands.add(List.copyOf(batch));
+          batch.clear();
+        }
+      });
+      if (!batch.isEmpty()) commands.add(batch);
+      return commands;
+    }
+    if (data.value() instanceof SetValue set) {
+      List<List<String>> commands = new ArrayList<>();
+      List<String> batch = new ArrayList<>();
+      set.forEach(member -> {
+        if (batch.isEmpty()) {
+          batch.add("SADD");
+          batch.add(name);
+        }
+        batch.add(new String(member, RESP.CHARSET));
+        if (batch.size() == 2 + REBUILD_BATCH) {
+          commands.add(List.copyOf(batch));
+          batch.clear();
+        }
+      });
+      if (!batch.isEmpty()) commands.add(batch);
+      return commands;
+    }
+    String value = new String(data.data(), RESP.CHARSET);
+    return List.of(data.hasExpiry()
+        ? List.of("SET", name, value, "pxat", String.valueOf(data.expiry()))
+        : List.of("SET", name, value));
+  }
+
+  private void startDelta() {
+    lock.lock();
+    try {
+      rewriteDelta = new RespBuffer();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static void writeFully(RespBuffer buffer, FileChannel file) throws IOException {
+    while (!buffer.writeTo(file)) {
+      //FileChannel writes are blocking, loop only on a short write
+    }
+  }
+
+  /**
+   * Starts a rewrite on the {@code aof-rewrite} thread unless one is already running.
+   *
+   * @return {@code false} if a rewrite was already in flight
+   */
+  public boolean triggerRewrite() {
+    if (!rewriting.compareAndSet(false, true)) return false;
+    rewriter.execute(this::rewrite);
+    return true;
+  }
+
+  private void rewrite() {
+    Path temp = path.resolveSibling(path.getFileName() + ".rewrite.tmp");
+    long start = System.currentTimeMillis();
+    FileChannel file = null;
+    try {
+      file = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.WRITE);
+      long keys;
+      //every write applied from here on is in the delta and not in the view, every earlier one the reverse
+      try (SnapshotView view = map.openSnapshot(this::startDelta)) {
+        keys = writeDataset(view, file);
+      }
+
+      RespBuffer drained = new RespBuffer();
+      for (int round = 0; round < DELTA_DRAIN_ROUNDS; round++) {
+        lock.lock();
+        try {
+          if (rewriteDelta.size() <= DELTA_FINAL_SIZE) break;
+          RespBuffer swap = rewriteDelta;
+          rewriteDelta = drained;
+          drained = swap;
+        } finally {
+          lock.unlock();
+        }
+        writeFully(drained, file);
+      }
+      //sync the bulk now, so the fsync writers wait for below only covers the last delta
+      file.force(false);
+
+      lock.lock();
+      try {
+        writeFully(rewriteDelta, file);
+        file.force(false);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        //pending writes are in the new file already, through the delta
+        pending.clear();
+        if (nextChannel != null) nextChannel.close();
+        nextChannel = file;
+        file = null;
+        syncedSeq = appendedSeq;
+        synced.signalAll();
+        rewriteDelta = null;
+        hasData.signal();
+      } finally {
+        lock.unlock();
+      }
+      size = Files.size(path);
+      baseSize = size;
+      lastRewriteOk = true;
+      logger.info(String.format("Append only file rewritten with %d keys, %d bytes in %d ms",
+          keys, size, System.currentTimeMillis() - start));
+    } catch (IOException | RuntimeException e) {
+      lastRewriteOk = false;
+      logger.error("Append only file rewrite failed: " + e.getMessage());
+      lock.lock();
+      try {
+        rewriteDelta = null;
+      } finally {
+        lock.unlock();
+      }
+      try {
+        if (file != null) file.close();
+        Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+        //nothing more to clean up
+      }
+    } finally {
+      rewriting.set(false);
+    }
+  }
+
+  /**
+   * Opens the file for appending and starts the writer thread.
+   */
+  public void open() throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    size = channel.size();
+    baseSize = size;
+    Thread writer = new Thread(this::writeLoop, "aof-writer");
+    writer.setDaemon(true);
+    writer.start();
+    logger.info(String.format("Append only file %s open, appendfsync %s", path, fsync));
+  }
+
+  @Override
+  public void onWrite(List<String> command) {
+    lock.lock();
+    try {
+      pending.putCommand(command);
+      if (rewriteDelta != null) rewriteDelta.putCommand(command);
+      appendedSeq++;
+      hasData.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void beforeReply() {
+    if (fsync != AppendFsync.ALWAYS) return;
+    lock.lock();
+    try {
+      //our write is at or before appendedSeq, waiting for a later one only means sharing the next fsync
+      long target = appendedSeq;
+      while (syncedSeq < target) {
+        synced.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void writeLoop() {
+    RespBuffer batch = new RespBuffer();
+    long batchSeq = 0;
+    long lastFsync = System.currentTimeMillis();
+    boolean unsynced = false;
+
+    while (true) {
+      if (batch.isEmpty()) {
+        lock.lock();
+        try {
+          if (pending.isEmpty()) {
+            hasData.await(FSYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          if (nextChannel != null) {
+            //a rewrite finished: what we were writing is in the new file already
+            closeQuietly(channel);
+            channel = nextChannel;
+            nextChannel = null;
+            batch.clear();
+            unsynced = false;
+          }
+          RespBuffer swap = pending;
+          pending = batch;
+          batch = swap;
+          batchSeq = appendedSeq;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } finally {
+          lock.unlock();
+        }
+      }
+
+      try {
+        int written = batch.size();
+        while (!batch.writeTo(channel)) {
+          //FileChannel writes are blocking, loop only on a short write
+        }
+        size += written;
+        unsynced |= written > 0;
+
+        long now = System.currentTimeMillis();
+        if (unsynced && (fsync == AppendFsync.ALWAYS
+            || fsync == AppendFsync.EVERYSEC && now - lastFsync >= FSYNC_INTERVAL_MILLIS)) {
+          channel.force(false);
+          lastFsync = now;
+          unsynced = false;
+        }
+        lastWriteOk = true;
+        if (shouldRewrite()) triggerRewrite();
+      } catch (IOException e) {
+        //the unwritten part stays in batch
+        if (lastWriteOk) logger.error("Append only file write failed: " + e.getMessage());
+        lastWriteOk = false;
+        try {
+          Thread.sleep(FSYNC_INTERVAL_MILLIS);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+        continue;
+      }
+
+      if (fsync == AppendFsync.ALWAYS) {
+        lock.lock();
+        try {
+          //a rewrite may have synced further already
+          syncedSeq = Math.max(syncedSeq, batchSeq);
+          synced.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  private boolean shouldRewrite() {
+    long current = size;
+    return rewritePercentage > 0 && current >= rewriteMinSize && !rewriting.get()
+        && (current - baseSize) * 100 >= baseSize * rewritePercentage;
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.warn("Failed to close the previous append only file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return size of the file after the last rewrite, or on startup
+   */
+  public long baseSize() {
+    return baseSize;
+  }
+
+  public boolean isRewriting() {
+    return rewriting.get();
+  }
+
+  public boolean lastRewriteOk() {
+    return lastRewriteOk;
+  }
+
+  public boolean lastWriteOk() {
+    return lastWriteOk;
+  }
+
+  /**
+   * @return bytes written to the file so far, including what was there on startup
+   */
+  public long size() {
+    return size;
+  }
+}
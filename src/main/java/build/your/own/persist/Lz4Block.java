@@ -0,0 +1,152 @@
+package build.your.own.persist;
+
+import java.io.IOException;
+
+/**
+ * A small, dependency free LZ4 block codec for snapshot blocks (the raw block format, no frame).
+ *
+ * <p>Greedy matching over a 64K entry hash of 4 byte sequences within the 64 KiB window: fast rather than
+ * tight, which is the trade-off a snapshot of a busy server wants. Each sequence is a token (literal
+ * length / match length nibbles), the literals, a little endian 2 byte offset and length extensions; the
+ * last sequence is literals only, as the format requires.
+ */
+final class Lz4Block {
+  private static final int MIN_MATCH = 4;
+  //the last 5 bytes are always literals and no match starts in the last 12
+  private static final int LAST_LITERALS = 5;
+  private static final int MATCH_FIND_LIMIT = 12;
+  private static final int HASH_LOG = 16;
+  private static final int MAX_OFFSET = 65535;
+
+  private Lz4Block() {
+  }
+
+  /**
+   * @return worst case size of the compressed form of {@code length} bytes
+   */
+  static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compresses {@code src[0, length)} into {@code dst}, which must hold {@link #maxCompressedLength(int)}.
+   *
+   * @return compressed length
+   */
+  static int compress(byte[] src, int length, byte[] dst) {
+    int[] table = new int[1 << HASH_LOG];
+    int anchor = 0;
+    int ip = 0;
+    int op = 0;
+    int limit = length - MATCH_FIND_LIMIT;
+
+    while (ip < limit) {
+      int sequence = readInt(src, ip);
+      int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+      //table holds position + 1, 0 is empty
+      int ref = table[hash] - 1;
+      table[hash] = ip + 1;
+      if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+        ip++;
+        continue;
+      }
+
+      int matchLength = MIN_MATCH;
+      int matchLimit = length - LAST_LITERALS;
+      while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+        matchLength++;
+      }
+      op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+      ip += matchLength;
+      anchor = ip;
+    }
+    return writeLiterals(src, anchor, length - anchor, dst, op);
+  }
+
+  /**
+   * Decompresses {@code src[0, length)} into {@code dst}.
+   *
+   * @return decompressed length
+   * @throws IOException if the input is not a valid block or does not fit
+   */
+  static int decompress(byte[] src, int length, byte[] dst) throws IOException {
+    int ip = 0;
+    int op = 0;
+    try {
+      while (ip < length) {
+        int token = src[ip++] & 0xFF;
+        int literals = token >>> 4;
+        if (literals == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            literals += b;
+          } while (b == 255);
+        }
+        System.arraycopy(src, ip, dst, op, literals);
+        ip += literals;
+        op += literals;
+        if (ip >= length) break;
+
+        int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+        ip += 2;
+        if (offset == 0 || offset > op) throw new IOException("invalid LZ4 match offset " + offset);
+        int matchLength = token & 15;
+        if (matchLength == 15) {
+          int b;
+          do {
+            b = src[ip++] & 0xFF;
+            matchLength += b;
+          } while (b == 255);
+        }
+        matchLength += MIN_MATCH;
+        if (op + matchLength > dst.length) throw new IOException("LZ4 block larger than declared");
+        //byte by byte, the match may overlap what it produces
+        for (int from = op - offset, end = op + matchLength; op < end; ) {
+          dst[op++] = dst[from++];
+        }
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("truncated LZ4 block");
+    }
+    return op;
+  }
+
+  private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op,
+                                   int offset, int matchLength) {
+    int matchCode = matchLength - MIN_MATCH;
+    int tokenIndex = op++;
+    dst[tokenIndex] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchCode, 15));
+    op = writeLength(literals, dst, op);
+    System.arraycopy(src, literalStart, dst, op, literals);
+    op += literals;
+    dst[op++] = (byte) offset;
+    dst[op++] = (byte) (offset >>> 8);
+    return writeLength(matchCode, dst, op);
+  }
+
+  private static int writeLiterals(byte[] src, int literalStart, int literals, byte[] dst, int op) {
+    dst[op++] = (byte) (Math.min(literals, 15) << 4);
+    op = writeLength(literals, dst, op);
+    System.arraycopy(src, literalStart, dst, op, literals);
+    return op + literals;
+  }
+
+  /**
+   * Writes the extension bytes of a length whose nibble saturated at 15.
+   */
+  private static int writeLength(int length, byte[] dst, int op) {
+    if (length < 15) return op;
+    int remaining = length - 15;
+    while (remaining >= 255) {
+      dst[op++] = (byte) 255;
+      remaining -= 255;
+    }
+    dst[op++] = (byte) remaining;
+    return op;
+  }
+
+  private static int readInt(byte[] src, int at) {
+    return (src[at] & 0xFF) | (src[at + 1] & 0xFF) << 8 | (src[at + 2] & 0xFF) << 16 | (src[at + 3] & 0xFF) << 24;
+  }
+}
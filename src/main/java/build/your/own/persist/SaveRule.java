@@ -0,0 +1,50 @@
+package build.your.own.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A redis {@code save <seconds> <changes>} rule: snapshot once at least {@code changes} writes happened
+ * and {@code seconds} passed since the last successful snapshot.
+ *
+ * @param seconds minimum age of the last snapshot
+ * @param changes minimum number of writes since the last snapshot
+ */
+public record SaveRule(long seconds, long changes) {
+
+  public boolean isDue(long changesSinceSave, long millisSinceSave) {
+    return changesSinceSave >= changes && millisSinceSave >= seconds * 1000L;
+  }
+
+  /**
+   * Parses the {@code --save} argument, pairs of numbers like {@code "3600 1 300 100 60 10000"};
+   * an empty string disables snapshots.
+   *
+   * @throws IllegalArgumentException if the value is not a list of positive number pairs
+   */
+  public static List<SaveRule> parse(String value) {
+    List<SaveRule> rules = new ArrayList<>();
+    if (value == null || value.isBlank()) return rules;
+
+    String[] parts = value.trim().split("\\s+");
+    if (parts.length % 2 != 0) {
+      throw new IllegalArgumentException("save expects <seconds> <changes> pairs, got " + value);
+    }
+    for (int i = 0; i < parts.length; i += 2) {
+      try {
+        long seconds = Long.parseLong(parts[i]);
+        long changes = Long.parseLong(parts[i + 1]);
+        if (seconds <= 0 || changes <= 0) throw new NumberFormatException();
+        rules.add(new SaveRule(seconds, changes));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid save rule " + parts[i] + " " + parts[i + 1]);
+      }
+    }
+    return rules;
+  }
+
+  @Override
+  public String toString() {
+    return seconds + " " + changes;
+  }
+}
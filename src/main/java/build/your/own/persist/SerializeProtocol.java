@@ -1,62 +1,124 @@
 package build.your.own.persist;
 
 import build.your.own.configurations.SystemConfig;
+import build.your.own.database.ByteKey;
 import build.your.own.database.DbMap;
+import build.your.own.database.SnapshotView;
+import build.your.own.database.type.Value;
+import build.your.own.database.type.Values;
 import build.your.own.logger.Logger;
+import build.your.own.utils.ArgumentsUtils;
 
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.util.Map;
-
-//TODO : ADD SUPPORT FOR MULTIPLE DATA TYPES
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
 
 /**
  * The {@code SerializeProtocol} class is responsible for serializing
  * a Redis-like in-memory database into a custom `.rdb`-like binary file format.
  *
  * <p>This format is custom-designed and is identifiable by a magic header ("BYDRDB").
- * It supports serializing key-value entries of type {@code Map<String, DbMap.Entry>},
- * where {@code Entry} consists of:
+ * It supports serializing key-value entries of type {@code Map<ByteKey, DbMap.Data>},
+ * where {@code Data} consists of:
  * <ul>
- *   <li>{@code String data} — the actual value</li>
- *   <li>{@code LocalDateTime expiry} — optional expiration timestamp (can be null)</li>
+ *   <li>{@code byte[] data} or {@code Value value} — the actual value, a string or another type</li>
+ *   <li>{@code long expiry} — optional expiration timestamp in epoch millis ({@link DbMap#NO_EXPIRY} if none)</li>
  * </ul>
  *
- * <p>All strings are encoded in UTF-8. Currently, only string values are supported.
- * Future support for more data types (e.g., integers, lists) can be added via
- * type tagging.
+ * <p>Keys and strings are written as their raw bytes, each entry prefixed with a type tag
+ * ({@link Values}); other types write their own payload, see {@link Value#writeTo}.
  *
- * <h2>Serialization Format</h2>
+ * <h2>Serialization Format (version 2)</h2>
+ * All numbers big endian.
  * <pre>
  * [ MAGIC_HEADER: UTF String ("BYDRDB") ]
- * [ TOTAL_ENTRIES: 4 bytes (int) ]
+ * [ FORMAT: 4 bytes (int, minus the version: -2; version 1 files have their entry count here) ]
+ *
+ * For each block (about 4 MiB of entries):
+ *   [ FLAGS: 1 byte (bit 0 = LZ4 compressed, see --rdbcompression) ]
+ *   [ BLOCK_ENTRIES: 4 bytes (int) ]
+ *   [ RAW_LENGTH: 4 bytes (int, bytes of entries once decompressed) ]
+ *   [ STORED_LENGTH: 4 bytes (int, bytes that follow) ]
+ *   [ CRC32C: 4 bytes (int, of the stored bytes) ]
+ *   [ stored entries ]
+ *
+ * Index:
+ *   [ BLOCK_COUNT: 4 bytes (int) ]
+ *   [ BLOCK_OFFSET: 8 bytes (long), BLOCK_ENTRIES: 4 bytes (int) ] x BLOCK_COUNT
+ *   [ TOTAL_ENTRIES: 8 bytes (long) ]
+ *   [ INDEX_CRC32C: 4 bytes (int, of the index from BLOCK_COUNT to TOTAL_ENTRIES) ]
+ *   [ INDEX_OFFSET: 8 bytes (long) ]
  *
  * For each entry:
+ *   [ TYPE: 1 byte (0 = string, 1 = hash, 2 = list, 3 = sorted set, 4 = set) ]
  *   [ KEY_LENGTH: 4 bytes (int) ]
- *   [ KEY_BYTES: UTF-8 encoded bytes ]
- *   [ VALUE_BYTES: UTF-8 encoded bytes (currently: raw string, no type tag yet) ]
+ *   [ KEY_BYTES: raw key bytes ]
  *   [ EXPIRY_FLAG: 1 byte (0 = no expiry, 1 = has expiry) ]
- *   [ EXPIRY_TIMESTAMP: 8 bytes (long, epoch seconds, only if EXPIRY_FLAG == 1) ]
+ *   [ EXPIRY_TIMESTAMP: 8 bytes (long, epoch millis, only if EXPIRY_FLAG == 1) ]
+ *   [ payload, for a string: VALUE_LENGTH: 4 bytes (int), VALUE_BYTES;
+ *     for a hash: FIELDS: 4 bytes (int), then LENGTH: 4 bytes (int), BYTES for each field and value;
+ *     for a list: ELEMENTS: 4 bytes (int), then LENGTH: 4 bytes (int), BYTES for each element, head first;
+ *     for a sorted set: MEMBERS: 4 bytes (int), then LENGTH: 4 bytes (int), BYTES, SCORE: 8 bytes (double)
+ *     for each member, lowest score first;
+ *     for a set: MEMBERS: 4 bytes (int), then LENGTH: 4 bytes (int), BYTES for each member ]
  * </pre>
  *
  * Example entry with key "foo", value "bar", expiry: 2025-01-01T00:00:00Z:
  * <pre>
+ *   00            // type = string
  *   00 00 00 03   // key length = 3
  *   66 6f 6f      // key bytes = 'f', 'o', 'o'
- *   62 61 72      // value bytes = 'b', 'a', 'r'
  *   01            // expiry flag = 1
- *   00 00 01 89 6D 50 80 00  // epoch seconds
+ *   00 00 01 94 1F 0F 28 00  // epoch millis
+ *   00 00 00 03   // value length = 3
+ *   62 61 72      // value bytes = 'b', 'a', 'r'
  * </pre>
+ *
+ * <p>Version 1 files, the entry count then the entries back to back as key, value, expiry without type
+ * tags, blocks or checksums, are still loaded; their expiry may be in epoch seconds, as written before
+ * expiries were kept in millis.
+ *
+ * <p>Loading fails with an {@link IOException} on a checksum mismatch or a truncated file instead of
+ * starting with part of the data.
  */
 public class SerializeProtocol {
   private final Logger logger = Logger.getInstance(SerializeProtocol.class);
   private static final String MAGIC_HEADER = "BYDRDB";
-  private static final Charset charsets = StandardCharsets.UTF_8;
+  private static final int VERSION = 2;
+  //a version 1 expiry below this is in epoch seconds, see loadVersion1
+  private static final long VERSION1_SECONDS_BELOW = 100_000_000_000L;
+  static final byte TYPE_STRING = Values.STRING;
+  private static final byte FLAG_COMPRESSED = 1;
+  //writeUTF length prefix + the magic bytes + the format int
+  private static final long HEADER_SIZE = 2 + MAGIC_HEADER.length() + Integer.BYTES;
+  private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+  private static final int BLOCK_HEADER_SIZE = 1 + 4 * Integer.BYTES;
+  private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+  //TOTAL_ENTRIES, INDEX_CRC32C, INDEX_OFFSET
+  private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+  //DataOutputStream is big endian, mapped reads must be too
+  private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+  private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
 
   private final SystemConfig systemConfig;
   private final DbMap inMemoryMap;
@@ -67,138 +129,406 @@ public class SerializeProtocol {
     this.inMemoryMap = map;
   }
 
+  /**
+   * @throws FileNotFoundException if there is no snapshot yet
+   */
   public void writeHeadersToCache() throws IOException{
-    try (DataInputStream dataInputStream = new DataInputStream(new FileInputStream(systemConfig.getConfig().get("dbPath")))) {
-      //Only write headers if the specified file is empty
-      if(dataInputStream.readAllBytes().length == 0){
-        try (DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(systemConfig.getConfig().get("dbPath")))) {
-          dataOutputStream.writeUTF(MAGIC_HEADER);
-        }
+    Path path = Path.of(systemConfig.getConfig().get("dbPath"));
+    if (!Files.exists(path)) throw new FileNotFoundException(path.toString());
+    //Only write headers if the specified file is empty
+    if(Files.size(path) == 0){
+      try (DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(path.toFile()))) {
+        dataOutputStream.writeUTF(MAGIC_HEADER);
       }
     }
   }
 
   /**
+   * Writes a point-in-time snapshot of the map, see {@link SnapshotView}, while writers keep going.
+   *
+   * <p>Entries are grouped into blocks of about {@value #BLOCK_SIZE} bytes, each checksummed and LZ4
+   * compressed when {@code --rdbcompression} is on (default) and it pays off, followed by an index of
+   * the block offsets so {@link #loadDbMapFromCacheFile()} can decode the blocks in parallel. The file
+   * is streamed to {@code <dbPath>.tmp}, fsynced and atomically renamed over {@code dbPath}: a crash
+   * mid-way leaves the previous snapshot intact.
    *
-   * @throws IOException
+   * @throws IOException if the snapshot could not be written, the previous file is left in place
    */
   public void saveToFile() throws IOException {
-    logger.info(String.format("Starting database serialization to file: %s", systemConfig.getConfig().get("dbPath")));
-    logger.debug(String.format("Total entries to serialize: %d", this.inMemoryMap.getInMemoryMap().size()));
-
-    try (DataOutputStream dataOutputStream = new DataOutputStream(new FileOutputStream(systemConfig.getConfig().get("dbPath")))) {
-      dataOutputStream.writeUTF(MAGIC_HEADER);
-      dataOutputStream.writeInt(this.inMemoryMap.getInMemoryMap().size());
-      int processedEntries = 0;
-      int skippedEntries = 0;
-
-      for (Map.Entry<String, DbMap.Data> entry : this.inMemoryMap.getEntrySet()) {
-        if (entry.getValue() != null && entry.getValue().data() != null) {
-          if (entry.getValue().expiry() == null) {
-            saveEntryToFile(entry.getKey(), entry.getValue(), dataOutputStream);
-          } else if (entry.getValue().expiry().isAfter(LocalDateTime.now())) {
-            saveEntryToFile(entry.getKey(), entry.getValue(), dataOutputStream);
-          } else {
-            skippedEntries++;
-            logger.debug(String.format("Skipping expired entry for key: %s", entry.getKey()));
-          }
-          processedEntries++;
-        } else {
-          skippedEntries++;
-          logger.debug(String.format("Skipping null entry for key: %s", entry.getKey()));
+    saveToFile(() -> {
+    });
+  }
+
+  /**
+   * {@link #saveToFile()} with {@code atOpen} run as the map view opens, see
+   * {@link DbMap#openSnapshot(Runnable)}.
+   */
+  public void saveToFile(Runnable atOpen) throws IOException {
+    Path target = getPath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    logger.info(String.format("Starting database serialization to file: %s", target));
+
+    try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+      writeSnapshot(new BufferedOutputStream(file, WRITE_BUFFER_SIZE), atOpen);
+      file.getFD().sync();
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch(IOException e){
+      logger.error(String.format("Failed to serialize database to file %s: %s", target, e.getMessage()));
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+  }
+
+  /**
+   * Writes a point-in-time snapshot in the format above to {@code out}, from the same single pass over
+   * the map whether it goes to a file or straight into replica sockets. {@code out} is flushed, not closed.
+   *
+   * @return entries written
+   */
+  public long writeSnapshot(OutputStream out) throws IOException {
+    return writeSnapshot(out, () -> {
+    });
+  }
+
+  /**
+   * {@link #writeSnapshot(OutputStream)} with {@code atOpen} run as the map view opens, see
+   * {@link DbMap#openSnapshot(Runnable)}.
+   */
+  public long writeSnapshot(OutputStream out, Runnable atOpen) throws IOException {
+    long[] skipped = new long[1];
+    try (SnapshotView view = inMemoryMap.openSnapshot(atOpen)) {
+      boolean compress = ArgumentsUtils.isEnabled(systemConfig, "rdbcompression");
+      BlockWriter blocks = new BlockWriter(out, compress);
+      long now = System.currentTimeMillis();
+      view.forEach((key, data) -> {
+        if (data.isExpired(now)) {
+          skipped[0]++;
+          return;
+        }
+        blocks.add(key, data);
+      });
+      blocks.finish();
+      logger.debug(String.format("Keys copied on write during the snapshot: %d", view.preservedKeys()));
+      logger.info(String.format("Serialization complete - Processed: %d in %d blocks (%d compressed), Skipped: %d",
+          blocks.entries, blocks.offsets.size(), blocks.compressed, skipped[0]));
+      return blocks.entries;
+    }
+  }
+
+  /**
+   * Buffers entries into blocks and writes each one with its header, then the block index.
+   */
+  private static final class BlockWriter {
+    private final DataOutputStream out;
+    private final boolean compress;
+    private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+    private final DataOutputStream block = new DataOutputStream(blockBytes);
+    private final CRC32C crc = new CRC32C();
+    private final List<long[]> offsets = new ArrayList<>();
+    private byte[] compressBuffer = new byte[0];
+    private int blockEntries;
+    private long position;
+    private long entries;
+    private int compressed;
+
+    private BlockWriter(OutputStream out, boolean compress) throws IOException {
+      this.out = new DataOutputStream(out);
+      this.compress = compress;
+      this.out.writeUTF(MAGIC_HEADER);
+      this.out.writeInt(-VERSION);
+      position = HEADER_SIZE;
+    }
+
+    private void add(ByteKey key, DbMap.Data data) throws IOException {
+      writeEntry(key, data, block);
+      blockEntries++;
+      entries++;
+      if (blockBytes.size() >= BLOCK_SIZE) flushBlock();
+    }
+
+    private void flushBlock() throws IOException {
+      if (blockEntries == 0) return;
+      byte[] raw = blockBytes.toByteArray();
+      byte[] stored = raw;
+      int storedLength = raw.length;
+      byte flags = 0;
+      if (compress) {
+        int bound = Lz4Block.maxCompressedLength(raw.length);
+        if (compressBuffer.length < bound) compressBuffer = new byte[bound];
+        int compressedLength = Lz4Block.compress(raw, raw.length, compressBuffer);
+        if (compressedLength < raw.length) {
+          stored = compressBuffer;
+          storedLength = compressedLength;
+          flags |= FLAG_COMPRESSED;
+          compressed++;
         }
       }
-        logger.info(String.format("Serialization complete - Processed: %d, Skipped: %d",
-                processedEntries, skippedEntries));
-      } catch(IOException e){
-        logger.error(String.format("Failed to serialize database to file %s: %s", systemConfig.getConfig().get("dbPath"), e.getMessage()));
-        throw e;
-      }
+      crc.reset();
+      crc.update(stored, 0, storedLength);
+
+      offsets.add(new long[]{position, blockEntries});
+      out.writeByte(flags);
+      out.writeInt(blockEntries);
+      out.writeInt(raw.length);
+      out.writeInt(storedLength);
+      out.writeInt((int) crc.getValue());
+      out.write(stored, 0, storedLength);
+      position += BLOCK_HEADER_SIZE + storedLength;
+      blockBytes.reset();
+      blockEntries = 0;
     }
 
-  private void saveEntryToFile(String key, DbMap.Data data, DataOutputStream dos) throws IOException {
-      if(key != null && data.data() != null) {
-        byte[] keyBytes = key.getBytes(charsets);
-        dos.writeInt(keyBytes.length);
-        dos.write(keyBytes);
-        writeValue(data, dos);
-      } else {
-        logger.debug(String.format("Skipping null entry for key: %s", key));
+    private void finish() throws IOException {
+      flushBlock();
+      long indexOffset = position;
+      ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+      DataOutputStream index = new DataOutputStream(indexBytes);
+      index.writeInt(offsets.size());
+      for (long[] offset : offsets) {
+        index.writeLong(offset[0]);
+        index.writeInt((int) offset[1]);
       }
-  }
+      index.writeLong(entries);
+      crc.reset();
+      crc.update(indexBytes.toByteArray());
 
-  private void writeValue(DbMap.Data entry, DataOutputStream dos) throws IOException {
-    assert entry != null;
-    int length = entry.data().length();
-    dos.writeInt(length);
-    byte[] data = entry.data().getBytes(charsets);
-    dos.write(data);
-    writeExpiryForValue(entry.expiry(), dos);
-    logger.debug(String.format("Wrote value with length %d bytes%s",
-        data.length, 
-        entry.expiry() != null ? String.format(", expiry: %s", entry.expiry()) : ""));
+      indexBytes.writeTo(out);
+      out.writeInt((int) crc.getValue());
+      out.writeLong(indexOffset);
+      out.flush();
+    }
   }
 
-  private void writeExpiryForValue(LocalDateTime expiry, DataOutputStream dos) throws IOException {
-    if(expiry != null) {
+  private static void writeEntry(ByteKey key, DbMap.Data data, DataOutputStream dos) throws IOException {
+    Value value = data.value();
+    dos.writeByte(value != null ? Values.tagOf(value) : TYPE_STRING);
+    byte[] keyBytes = key.bytes();
+    dos.writeInt(keyBytes.length);
+    dos.write(keyBytes);
+    if(data.hasExpiry()) {
       dos.writeByte(1);
-      long epochSeconds = expiry.toEpochSecond(ZoneOffset.UTC);
-      dos.writeLong(epochSeconds);
-      logger.debug(String.format("Wrote expiry timestamp: %d", epochSeconds));
+      dos.writeLong(data.expiry());
     } else {
       dos.writeByte(0);
-      logger.debug("Wrote no expiry flag");
     }
+    if (value != null) {
+      value.writeTo(dos);
+      return;
+    }
+    byte[] bytes = data.data();
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
   }
 
+  /**
+   * Loads the snapshot at {@code dbPath} into the map: version 2 files are memory mapped and their
+   * blocks verified, decoded and inserted by {@code --loader-threads} threads (default: one per core);
+   * version 1 files are read sequentially.
+   *
+   * @throws IOException if the file is corrupt or truncated
+   */
   public void loadDbMapFromCacheFile() throws IOException, IllegalAccessError{
-    logger.info(String.format("Trying to search for existing cache file : %s", systemConfig.getConfig().get("dbPath")));
+    loadDbMapFromCacheFile(getPath());
+  }
 
+  /**
+   * {@link #loadDbMapFromCacheFile()} from another file, e.g. a snapshot received from the primary.
+   */
+  public void loadDbMapFromCacheFile(Path path) throws IOException, IllegalAccessError{
+    logger.info(String.format("Trying to search for existing cache file : %s", path));
+
+    long start = System.currentTimeMillis();
+    int format;
     //FileInputStream Just reads raw bytes, DataInputStream reads data in a  structured way from these raw bytes
-    try(DataInputStream dataInputStream = new DataInputStream(new FileInputStream(systemConfig.getConfig().get("dbPath")))) {
-      String magicHeader = dataInputStream.readUTF();
+    try(DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+      String magicHeader = header.readUTF();
       if(!magicHeader.equals(MAGIC_HEADER)){
         logger.error(String.format("Failed to recognize header %s", magicHeader));
         throw new IllegalAccessError("Invalid File for preload caching");
       }
-      else {
-        /*
-         *  * <pre> Serialization protocol
-         *  *   00 00 00 03   // key length = 3
-         *  *   66 6f 6f      // key bytes = 'f', 'o', 'o'
-         *  *   62 61 72      // value bytes = 'b', 'a', 'r'
-         *  *   01            // expiry flag = 1
-         *  *   00 00 01 89 6D 50 80 00  // epoch seconds
-         *  * </pre>
-         */
-
-        int totalEntries = dataInputStream.readInt();
-        logger.info(String.format("Total Entries to process -: %s", totalEntries));
-        while(totalEntries > 0){
-          int keyLength = dataInputStream.readInt();
-
-          byte[] key = dataInputStream.readNBytes(keyLength);
-
-          int valueLength = dataInputStream.readInt();
-          byte[] value = dataInputStream.readNBytes(valueLength);
-
-          boolean isExpiryValid = dataInputStream.readBoolean();
-          LocalDateTime expiry = null;
-          if(isExpiryValid){
-            long epoch = dataInputStream.readLong();
-            expiry = LocalDateTime.ofInstant(
-                    Instant.ofEpochMilli(epoch),
-                    ZoneId.systemDefault()
-            );
-          }
-
-          inMemoryMap.putValue(new String(key), new String(value), expiry);
-          totalEntries--;
+      try {
+        format = header.readInt();
+      } catch (EOFException headerOnly) {
+        logger.info("Cache file holds no entries");
+        return;
+      }
+    }
+
+    long loaded;
+    if (format >= 0) {
+      logger.info(String.format("Version 1 file, total Entries to process -: %s", format));
+      try(DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile()), WRITE_BUFFER_SIZE))) {
+        //the magic header and the entry count, read above
+        dataInputStream.skipNBytes(HEADER_SIZE);
+        loaded = loadVersion1(dataInputStream, format);
+      }
+    } else if (format == -VERSION) {
+      loaded = loadVersion2(path);
+    } else {
+      throw new IOException(String.format("Unsupported snapshot version %d", -format));
+    }
+    logger.info(String.format("Loaded %d entries in %d ms", loaded, System.currentTimeMillis() - start));
+  }
+
+  /**
+   * Reads the original layout: a count and the entries back to back.
+   */
+  private long loadVersion1(DataInputStream dataInputStream, int totalEntries) throws IOException {
+    /*
+     *  * <pre> Serialization protocol
+     *  *   00 00 00 03   // key length = 3
+     *  *   66 6f 6f      // key bytes = 'f', 'o', 'o'
+     *  *   00 00 00 03   // value length = 3
+     *  *   62 61 72      // value bytes = 'b', 'a', 'r'
+     *  *   01            // expiry flag = 1
+     *  *   00 00 01 94 1F 0F 28 00  // epoch millis, or epoch seconds in files written before millis
+     *  * </pre>
+     *
+     * Both units are told apart by size: no expiry in millis is before 1973, none in seconds is after
+     * the year 5000.
+     */
+    int loaded = 0;
+    try {
+      for (; loaded < totalEntries; loaded++) {
+        int keyLength = dataInputStream.readInt();
+        byte[] key = dataInputStream.readNBytes(keyLength);
+
+        int valueLength = dataInputStream.readInt();
+        byte[] value = dataInputStream.readNBytes(valueLength);
+        if (key.length != keyLength || value.length != valueLength) throw new EOFException();
+
+        boolean isExpiryValid = dataInputStream.readBoolean();
+        long expiry = DbMap.NO_EXPIRY;
+        if(isExpiryValid){
+          expiry = dataInputStream.readLong();
+          if (expiry < VERSION1_SECONDS_BELOW) expiry *= 1000;
         }
+
+        inMemoryMap.put(new ByteKey(key), value, expiry);
       }
-    }catch (EOFException endoffile){
-      logger.error("End Of file");
+    } catch (EOFException endoffile) {
+      throw new IOException(String.format("Truncated cache file, %d of %d entries", loaded, totalEntries));
     }
+    return loaded;
+  }
+
+  private long loadVersion2(Path path) throws IOException {
+    int threads = Integer.parseInt(systemConfig.getConfig().getOrDefault("loader-threads",
+        String.valueOf(Runtime.getRuntime().availableProcessors())));
+    ExecutorService loaders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "snapshot-loader-" + count.incrementAndGet());
+      }
+    });
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+         Arena arena = Arena.ofShared()) {
+      if (channel.size() < HEADER_SIZE + TRAILER_SIZE) throw new IOException("Truncated cache file");
+      MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+      long indexOffset = file.get(LONG, file.byteSize() - Long.BYTES);
+      long indexEnd = file.byteSize() - Long.BYTES - Integer.BYTES;
+      if (indexOffset < HEADER_SIZE || indexOffset > indexEnd) throw new IOException("Truncated cache file");
+      if (crc(file.asSlice(indexOffset, indexEnd - indexOffset).toArray(ValueLayout.JAVA_BYTE)) != file.get(INT, indexEnd)) {
+        throw new IOException("Corrupt cache file, index checksum mismatch");
+      }
+      long totalEntries = file.get(LONG, indexEnd - Long.BYTES);
+      int blocks = file.get(INT, indexOffset);
+      logger.info(String.format("Total Entries to process -: %d in %d blocks, %d loader threads", totalEntries, blocks, threads));
+
+      List<Callable<Long>> tasks = new ArrayList<>(blocks);
+      for (int i = 0; i < blocks; i++) {
+        long entry = indexOffset + Integer.BYTES + (long) i * INDEX_ENTRY_SIZE;
+        long offset = file.get(LONG, entry);
+        int entries = file.get(INT, entry + Long.BYTES);
+        tasks.add(() -> loadBlock(file, offset, entries));
+      }
+
+      long loaded = 0;
+      for (Future<Long> result : loaders.invokeAll(tasks)) {
+        loaded += result.get();
+      }
+      return loaded;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Corrupt cache file, offset out of the file: " + e.getMessage());
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException io ? io : new IOException("Corrupt cache file: " + e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading the cache file");
+    } finally {
+      loaders.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies, decompresses if needed, decodes and inserts one block.
+   */
+  private long loadBlock(MemorySegment file, long offset, int entries) throws IOException {
+    byte flags = file.get(ValueLayout.JAVA_BYTE, offset);
+    int blockEntries = file.get(INT, offset + 1);
+    int rawLength = file.get(INT, offset + 1 + Integer.BYTES);
+    int storedLength = file.get(INT, offset + 1 + 2 * Integer.BYTES);
+    int checksum = file.get(INT, offset + 1 + 3 * Integer.BYTES);
+    if (blockEntries != entries) {
+      throw new IOException(String.format("Corrupt cache file, block at %d does not match the index", offset));
+    }
+    //one copy out of the mapping: CRC32C cannot read buffers of a shared arena
+    byte[] stored = file.asSlice(offset + BLOCK_HEADER_SIZE, storedLength).toArray(ValueLayout.JAVA_BYTE);
+    if (crc(stored) != checksum) {
+      throw new IOException(String.format("Corrupt cache file, checksum mismatch in block at %d", offset));
+    }
+
+    ByteBuffer block;
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      byte[] raw = new byte[rawLength];
+      if (Lz4Block.decompress(stored, storedLength, raw) != rawLength) {
+        throw new IOException(String.format("Corrupt cache file, block at %d decompressed to the wrong size", offset));
+      }
+      block = ByteBuffer.wrap(raw);
+    } else {
+      block = ByteBuffer.wrap(stored);
+    }
+
+    try {
+      for (int i = 0; i < entries; i++) {
+        byte type = block.get();
+        if (type != TYPE_STRING && !Values.isKnown(type)) {
+          throw new IOException(String.format("Unknown entry type %d in block at %d", type, offset));
+        }
+        byte[] key = new byte[block.getInt()];
+        block.get(key);
+        long expiry = block.get() != 0 ? block.getLong() : DbMap.NO_EXPIRY;
+        if (type != TYPE_STRING) {
+          inMemoryMap.put(new ByteKey(key), Values.read(type, block), expiry);
+          continue;
+        }
+        byte[] value = new byte[block.getInt()];
+        block.get(value);
+        inMemoryMap.put(new ByteKey(key), value, expiry);
+      }
+    } catch (BufferUnderflowException | NegativeArraySizeException e) {
+      throw new IOException(String.format("Corrupt cache file, block at %d is shorter than its entries", offset));
+    }
+    if (block.hasRemaining()) {
+      throw new IOException(String.format("Corrupt cache file, block at %d has trailing bytes", offset));
+    }
+    return entries;
+  }
+
+  private static int crc(byte[] bytes) {
+    CRC32C crc = new CRC32C();
+    crc.update(bytes);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * @return where snapshots are saved, {@code dbPath}
+   */
+  public Path getPath() {
+    return Path.of(systemConfig.getConfig().get("dbPath"));
   }
 
   public DbMap getInMemoryMap() {
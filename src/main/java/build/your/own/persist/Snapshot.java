@@ -1,41 +1,162 @@
 package build.your.own.persist;
 
-import build.your.own.Main;
 import build.your.own.database.DbMap;
 import build.your.own.logger.Logger;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <h1>Backup Snapshots</h1>
  * Acts as a backup directory by default saved under the path {@link build.your.own.Main} Config DIR
+ *
+ * <p>Snapshots follow the redis {@code save <seconds> <changes>} rules ({@code --save}, see {@link SaveRule}):
+ * writes only bump the change counter of the {@link DbMap}, and a cron thread checks the rules every
+ * {@value #CHECK_MILLIS} ms. A due snapshot is handed to a single writer thread; at most one is in flight,
+ * so every write made while it runs is coalesced into the next one. A failed snapshot is retried no sooner
+ * than {@value #RETRY_DELAY_MILLIS} ms later.
  */
 public class Snapshot {
   private static final Logger logger = Logger.getInstance(Snapshot.class);
+  /** Rules used when {@code --save} is not given, the redis defaults. */
+  public static final String DEFAULT_SAVE_RULES = "3600 1 300 100 60 10000";
+  private static final long CHECK_MILLIS = 100;
+  private static final long RETRY_DELAY_MILLIS = 5000;
 
-  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "snapshot-cron");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "snapshot-writer");
+    thread.setDaemon(true);
+    return thread;
+  });
   private final SerializeProtocol serializeProtocol;
+  private final List<SaveRule> rules;
 
-  public Snapshot(SerializeProtocol serializeProtocol) {
+  private final AtomicBoolean inFlight = new AtomicBoolean();
+  private volatile long lastSaveMillis = System.currentTimeMillis();
+  private volatile long lastAttemptMillis;
+  private volatile boolean lastSaveOk = true;
+
+  public Snapshot(SerializeProtocol serializeProtocol, List<SaveRule> rules) {
     this.serializeProtocol = serializeProtocol;
+    this.rules = List.copyOf(rules);
   }
 
   public void start(){
-    scheduler.scheduleAtFixedRate(this::periodicSnapshots, 5, 10, TimeUnit.SECONDS);
+    if (rules.isEmpty()) {
+      logger.info("No save rules, periodic snapshots disabled");
+      return;
+    }
+    logger.info("Snapshot save rules: " + rules);
+    scheduler.scheduleWithFixedDelay(this::checkRules, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
   }
 
-  private void periodicSnapshots() {
-    try{
-      logger.info("Initiate Periodic Snapshot of Cache at : " + LocalDateTime.now());
-      serializeProtocol.saveToFile();
-      logger.info("Next Snapshot scheduled at : " + LocalDateTime.now().plusHours(24));
-    }catch (IOException e){
-      logger.error("Error occurred while snapshot " + e);
+  private void checkRules() {
+    long changes = serializeProtocol.getInMemoryMap().changesSinceSave();
+    if (changes == 0 || inFlight.get()) return;
 
+    long now = System.currentTimeMillis();
+    if (!lastSaveOk && now - lastAttemptMillis < RETRY_DELAY_MILLIS) return;
+    for (SaveRule rule : rules) {
+      if (rule.isDue(changes, now - lastSaveMillis)) {
+        logger.info(String.format("%d changes in %d seconds, saving", changes, (now - lastSaveMillis) / 1000));
+        trigger();
+        return;
+      }
     }
   }
+
+  /**
+   * Starts a snapshot on the writer thread unless one is already running.
+   *
+   * @return {@code false} if a snapshot was already in flight
+   */
+  public boolean trigger() {
+    if (!inFlight.compareAndSet(false, true)) return false;
+    writer.execute(() -> {
+      try {
+        save();
+      } finally {
+        inFlight.set(false);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Saves a snapshot for a replica's full sync. It runs on the writer thread like any other save, after
+   * the one in flight if any, so snapshots are taken one at a time; it counts as a regular save.
+   *
+   * @param atOpen runs on the writer thread as the map view opens, e.g. to note the replication offset
+   *               the snapshot stands at, see {@link build.your.own.database.DbMap#openSnapshot(Runnable)}
+   * @return the saved file, opened before a later save can replace it
+   */
+  public Future<FileChannel> saveForSync(Runnable atOpen) {
+    return writer.submit(() -> {
+      if (!save(atOpen)) throw new IOException("snapshot for replica sync failed");
+      return FileChannel.open(serializeProtocol.getPath(), StandardOpenOption.READ);
+    });
+  }
+
+  /**
+   * Streams a snapshot for a diskless replica sync into {@code out}, on the writer thread like
+   * {@link #saveForSync(Runnable)}; nothing is written to disk and it does not count as a save.
+   * A slow {@code out} holds up the periodic saves meanwhile.
+   *
+   * @param atOpen runs on the writer thread as the map view opens
+   * @return entries written
+   */
+  public Future<Long> writeForSync(Runnable atOpen, OutputStream out) {
+    return writer.submit(() -> serializeProtocol.writeSnapshot(out, atOpen));
+  }
+
+  private boolean save() {
+    return save(() -> {
+    });
+  }
+
+  private boolean save(Runnable atOpen) {
+    DbMap map = serializeProtocol.getInMemoryMap();
+    //writes landing while we serialize may or may not make it into the file, so they stay counted
+    long changes = map.changesSinceSave();
+    lastAttemptMillis = System.currentTimeMillis();
+    try {
+      serializeProtocol.saveToFile(atOpen);
+      map.markSaved(changes);
+      lastSaveMillis = System.currentTimeMillis();
+      lastSaveOk = true;
+    } catch (IOException | RuntimeException e) {
+      lastSaveOk = false;
+      logger.error("Error occurred while snapshot " + e);
+    }
+    return lastSaveOk;
+  }
+
+  public boolean isInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return epoch millis of the last successful snapshot, or of startup
+   */
+  public long lastSaveMillis() {
+    return lastSaveMillis;
+  }
+
+  public boolean lastSaveOk() {
+    return lastSaveOk;
+  }
 }
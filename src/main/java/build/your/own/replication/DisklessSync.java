@@ -0,0 +1,154 @@
+package build.your.own.replication;
+
+import build.your.own.logger.Logger;
+import build.your.own.persist.Snapshot;
+import build.your.own.resp.RESP;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One diskless full sync: the snapshot encoder writes straight into the sockets of every replica that
+ * joined, from a single pass over the map, without a file.
+ *
+ * <p>Replicas attaching within {@code --repl-diskless-sync-delay} seconds of the first one join the same
+ * pass. As the length is not known up front the snapshot is framed like redis does it,
+ * {@code $EOF:<40 random chars>\r\n}, the snapshot, then the same 40 chars. A replica whose socket fails
+ * is dropped from the pass without holding up the others.
+ */
+final class DisklessSync implements Runnable {
+  private static final Logger logger = Logger.getInstance(DisklessSync.class);
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final ReplicationManager manager;
+  private final Snapshot snapshot;
+  private final long delayMillis;
+  //guarded by this, closed to newcomers once the pass starts
+  private final Map<ReplicaLink, CompletableFuture<Long>> replicas = new LinkedHashMap<>();
+  private boolean started;
+
+  DisklessSync(ReplicationManager manager, Snapshot snapshot, long delayMillis) {
+    this.manager = manager;
+    this.snapshot = snapshot;
+    this.delayMillis = delayMillis;
+  }
+
+  /**
+   * @return completed with the offset the stream continues from once the snapshot is sent, {@code null}
+   * if the pass already started
+   */
+  synchronized CompletableFuture<Long> join(ReplicaLink replica) {
+    if (started) return null;
+    CompletableFuture<Long> streamed = new CompletableFuture<>();
+    replicas.put(replica, streamed);
+    return streamed;
+  }
+
+  @Override
+  public void run() {
+    try {
+      Thread.sleep(delayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    Map<ReplicaLink, CompletableFuture<Long>> batch;
+    synchronized (this) {
+      started = true;
+      batch = new LinkedHashMap<>(replicas);
+    }
+
+    String mark = ReplicationManager.randomId();
+    FanOut fanOut = new FanOut(batch.keySet());
+    long[] startOffset = new long[1];
+    boolean sent = false;
+    try {
+      logger.info(String.format("Diskless sync to %d replicas", batch.size()));
+      OutputStream out = new BufferedOutputStream(fanOut, WRITE_BUFFER_SIZE);
+      long entries = snapshot.writeForSync(() -> {
+        startOffset[0] = manager.beginFullSync();
+        fanOut.begin(("+FULLRESYNC " + manager.replid() + " " + startOffset[0] + RESP.CRLF
+            + "$EOF:" + mark + RESP.CRLF).getBytes(RESP.CHARSET));
+      }, out).get();
+      out.write(mark.getBytes(RESP.CHARSET));
+      out.flush();
+      sent = true;
+      logger.info(String.format("Diskless sync sent %d entries to %d of %d replicas, streaming from offset %d",
+          entries, fanOut.live.size(), batch.size(), startOffset[0]));
+    } catch (IOException | ExecutionException e) {
+      logger.warn(String.format("Diskless sync failed: %s", e.getMessage()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    for (Map.Entry<ReplicaLink, CompletableFuture<Long>> replica : batch.entrySet()) {
+      if (sent && fanOut.live.contains(replica.getKey())) {
+        replica.getValue().complete(startOffset[0]);
+      } else {
+        replica.getValue().completeExceptionally(new IOException("diskless sync failed"));
+      }
+    }
+  }
+
+  /**
+   * Copies every write to the sockets of the replicas still in the pass.
+   */
+  private static final class FanOut extends OutputStream {
+    private final List<ReplicaLink> live;
+    //set by begin(), sent by the first write
+    private byte[] header;
+
+    private FanOut(Iterable<ReplicaLink> replicas) {
+      this.live = new ArrayList<>();
+      replicas.forEach(live::add);
+    }
+
+    /**
+     * Sets what the replicas get ahead of the snapshot, sent with its first bytes: this runs as the map
+     * view opens, while write commands are paused, so it must not wait on a socket.
+     */
+    private void begin(byte[] header) {
+      this.header = header;
+    }
+
+    private void sendHeader() {
+      byte[] pending = header;
+      header = null;
+      live.removeIf(replica -> {
+        try {
+          replica.beginTransfer(pending);
+          return false;
+        } catch (IOException e) {
+          replica.close();
+          return true;
+        }
+      });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (header != null) sendHeader();
+      live.removeIf(replica -> {
+        try {
+          replica.output().write(bytes, offset, length);
+          return false;
+        } catch (IOException e) {
+          replica.close();
+          return true;
+        }
+      });
+      if (live.isEmpty()) throw new IOException("every replica of the pass is gone");
+    }
+  }
+}
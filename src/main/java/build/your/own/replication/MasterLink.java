@@ -0,0 +1,306 @@
+package build.your.own.replication;
+
+import build.your.own.database.DbMap;
+import build.your.own.logger.Logger;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespBuffer;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespParser;
+import build.your.own.resp.error.Error;
+import build.your.own.resp.error.ProtocolError;
+import build.your.own.tcp.cmd.CommandRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The replica's end of the link, run on the {@code replica-link} thread for the life of the process.
+ *
+ * <p>Connects to the primary, {@code PING}s it and asks for {@code PSYNC <replid> <offset + 1>}
+ * ({@code PSYNC ? -1} the first time). On {@code +FULLRESYNC} the snapshot that follows, sent with its
+ * length or {@code $EOF:} framed by a diskless primary, is received into {@code <dbPath>.sync.tmp}, the
+ * keyspace is cleared and the file loaded, then becomes the local snapshot. Either way the stream that follows is applied through
+ * {@link CommandRegistry#dispatchReplicated(List)} and the offset advanced by the bytes of each
+ * applied command, acknowledged every second. When the link drops it reconnects after a second and
+ * resumes with a partial resync if the primary's backlog still covers the offset.
+ */
+final class MasterLink implements Runnable {
+  private static final Logger logger = Logger.getInstance(MasterLink.class);
+  private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+  //redis' repl-timeout, the primary pings every 10 seconds
+  private static final int TIMEOUT_MILLIS = 60_000;
+  private static final int ACK_MILLIS = 1000;
+  private static final long RETRY_MILLIS = 1000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private final ReplicaOf primary;
+  private final int listeningPort;
+  private final CommandRegistry registry;
+  private final SerializeProtocol serializeProtocol;
+  //null when the AOF is off
+  private final AppendOnlyFile appendOnlyFile;
+
+  private volatile String replid = "?";
+  //offset of the last byte of the primary's stream applied, -1 before the first sync
+  private volatile long offset = -1;
+  private volatile boolean up;
+  private volatile boolean syncing;
+  private volatile long lastIoMillis = System.currentTimeMillis();
+
+  MasterLink(ReplicaOf primary, int listeningPort, CommandRegistry registry, SerializeProtocol serializeProtocol,
+             AppendOnlyFile appendOnlyFile) {
+    this.primary = primary;
+    this.listeningPort = listeningPort;
+    this.registry = registry;
+    this.serializeProtocol = serializeProtocol;
+    this.appendOnlyFile = appendOnlyFile;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        connectAndSync();
+      } catch (IOException e) {
+        logger.warn(String.format("Link to primary %s lost: %s", primary, e.getMessage()));
+      } finally {
+        up = false;
+        syncing = false;
+      }
+      try {
+        Thread.sleep(RETRY_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void connectAndSync() throws IOException {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(primary.host(), primary.port()), CONNECT_TIMEOUT_MILLIS);
+      socket.setSoTimeout(TIMEOUT_MILLIS);
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+      OutputStream out = socket.getOutputStream();
+      logger.info(String.format("Connected to primary %s", primary));
+
+      send(out, List.of("PING"));
+      String pong = readLine(in);
+      if (pong.startsWith("-")) throw new IOException("primary refused PING: " + pong);
+
+      send(out, List.of("PSYNC", replid, String.valueOf(offset < 0 ? -1 : offset + 1)));
+      String reply;
+      do {
+        //newlines are keepalives while the primary prepares the snapshot
+        reply = readLine(in);
+      } while (reply.isEmpty());
+      String[] parts = reply.split(" ");
+      if (parts[0].equals("+FULLRESYNC") && parts.length == 3) {
+        long startOffset = Long.parseLong(parts[2]);
+        //a sync that fails half way left nothing to resume from
+        replid = "?";
+        offset = -1;
+        receiveSnapshot(in);
+        replid = parts[1];
+        offset = startOffset;
+      } else if (parts[0].equals("+CONTINUE")) {
+        if (parts.length > 1) replid = parts[1];
+        logger.info(String.format("Partial resync with primary %s from offset %d", primary, offset + 1));
+      } else {
+        throw new IOException("PSYNC refused: " + reply);
+      }
+
+      //the primary only learns where to find us for INFO, the stream needs nothing else
+      send(out, List.of("REPLCONF", "listening-port", String.valueOf(listeningPort)));
+      up = true;
+      stream(socket, in, out);
+    } catch (NumberFormatException e) {
+      throw new IOException("malformed PSYNC reply: " + e.getMessage());
+    }
+  }
+
+  private void receiveSnapshot(InputStream in) throws IOException {
+    syncing = true;
+    String header;
+    do {
+      header = readLine(in);
+    } while (header.isEmpty());
+    if (!header.startsWith("$")) throw new IOException("expected the snapshot, got " + header);
+
+    Path target = serializeProtocol.getPath();
+    Path temp = target.resolveSibling(target.getFileName() + ".sync.tmp");
+    long start = System.currentTimeMillis();
+    long length;
+    try {
+      try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+        length = header.startsWith("$EOF:")
+            ? receiveUntilMark(in, file, header.substring(5).getBytes(RESP.CHARSET))
+            : receive(in, file, Long.parseLong(header.substring(1)));
+        file.getFD().sync();
+      }
+
+      DbMap map = serializeProtocol.getInMemoryMap();
+      map.clear();
+      try {
+        serializeProtocol.loadDbMapFromCacheFile(temp);
+      } catch (IllegalAccessError e) {
+        throw new IOException("the primary sent something else than a snapshot");
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      map.markSaved(map.changesSinceSave());
+      logger.info(String.format("Full resync from primary %s: loaded a %d bytes snapshot in %d ms",
+          primary, length, System.currentTimeMillis() - start));
+    } finally {
+      Files.deleteIfExists(temp);
+      syncing = false;
+    }
+    //the keyspace was replaced behind the AOF's back
+    if (appendOnlyFile != null && !appendOnlyFile.triggerRewrite()) {
+      logger.warn("Append only file rewrite already running, it may miss part of the synced dataset");
+    }
+  }
+
+  /**
+   * Copies a snapshot sent with its length.
+   */
+  private long receive(InputStream in, FileOutputStream file, long length) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    for (long remaining = length; remaining > 0; ) {
+      int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read == -1) throw new EOFException("primary closed the link during the snapshot");
+      file.write(buffer, 0, read);
+      remaining -= read;
+      lastIoMillis = System.currentTimeMillis();
+    }
+    return length;
+  }
+
+  /**
+   * Copies a diskless snapshot, {@code $EOF:<mark>} framed, up to the closing mark. The primary sends
+   * nothing after it until we ack, so the mark always ends a read.
+   *
+   * @return length of the snapshot, without the mark
+   */
+  private long receiveUntilMark(InputStream in, FileOutputStream file, byte[] mark) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    byte[] tail = new byte[mark.length];
+    long total = 0;
+    while (true) {
+      int read = in.read(buffer);
+      if (read == -1) throw new EOFException("primary closed the link during the snapshot");
+      file.write(buffer, 0, read);
+      total += read;
+      lastIoMillis = System.currentTimeMillis();
+      //slide the last mark.length bytes received into tail
+      if (read >= tail.length) {
+        System.arraycopy(buffer, read - tail.length, tail, 0, tail.length);
+      } else {
+        System.arraycopy(tail, read, tail, 0, tail.length - read);
+        System.arraycopy(buffer, 0, tail, tail.length - read, read);
+      }
+      if (total >= mark.length && Arrays.equals(tail, mark)) {
+        file.getChannel().truncate(total - mark.length);
+        return total - mark.length;
+      }
+    }
+  }
+
+  private void stream(Socket socket, InputStream in, OutputStream out) throws IOException {
+    //short reads, so acks go out even when the primary is idle
+    socket.setSoTimeout(ACK_MILLIS);
+    RespParser parser = new RespParser();
+    long base = offset;
+    long lastAck = 0;
+    while (true) {
+      long now = System.currentTimeMillis();
+      if (now - lastAck >= ACK_MILLIS) {
+        //the first one also tells the primary a diskless snapshot is loaded
+        send(out, List.of("REPLCONF", "ACK", String.valueOf(offset)));
+        lastAck = now;
+      }
+
+      int read;
+      try {
+        read = parser.readFrom(in);
+      } catch (SocketTimeoutException idle) {
+        read = 0;
+      }
+      if (read == -1) throw new EOFException("primary closed the link");
+      now = System.currentTimeMillis();
+      if (read > 0) {
+        lastIoMillis = now;
+      } else if (now - lastIoMillis > TIMEOUT_MILLIS) {
+        throw new SocketTimeoutException("nothing from the primary for " + TIMEOUT_MILLIS / 1000 + " seconds");
+      }
+
+      try {
+        List<String> command;
+        while ((command = parser.next()) != null) {
+          RespData reply = registry.dispatchReplicated(command);
+          if (reply instanceof Error error) {
+            logger.warn(String.format("Replicated %s failed: %s", command.getFirst(), error));
+          }
+          offset = base + parser.completedBytes();
+        }
+      } catch (ProtocolError e) {
+        throw new IOException("malformed replication stream: " + e);
+      }
+    }
+  }
+
+  private static void send(OutputStream out, List<String> command) throws IOException {
+    new RespBuffer().putCommand(command).writeTo(out);
+  }
+
+  /**
+   * Reads a {@code \r\n} terminated line of the handshake, without the terminator.
+   */
+  private String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) throw new EOFException("primary closed the link");
+      if (line.size() > MAX_LINE_LENGTH) throw new IOException("handshake line too long");
+      line.write(b);
+    }
+    lastIoMillis = System.currentTimeMillis();
+    String text = line.toString(RESP.CHARSET);
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+
+  boolean isUp() {
+    return up;
+  }
+
+  boolean isSyncing() {
+    return syncing;
+  }
+
+  long lastIoSecondsAgo() {
+    return (System.currentTimeMillis() - lastIoMillis) / 1000;
+  }
+
+  long offset() {
+    return offset;
+  }
+
+  String replid() {
+    return replid;
+  }
+}
@@ -0,0 +1,247 @@
+package build.your.own.replication;
+
+import build.your.own.logger.Logger;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespParser;
+import build.your.own.resp.error.ProtocolError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The primary's end of one replica: a {@code replica-feeder} thread doing the sync and then streaming
+ * the backlog from the replica's offset, and a {@code replica-acks} thread reading the
+ * {@code REPLCONF ACK <offset>} the replica sends back every second.
+ *
+ * <p>A full sync sends a snapshot file ({@code --repl-diskless-sync no}) or joins a {@link DisklessSync}
+ * pass, which writes into the socket from the snapshot writer thread while the feeder waits.
+ */
+final class ReplicaLink {
+  private static final Logger logger = Logger.getInstance(ReplicaLink.class);
+  private static final int CHUNK_SIZE = 64 * 1024;
+  //how long the feeder waits for new writes before checking the link is still open
+  private static final long WAIT_MILLIS = 1000;
+  private static final byte[] KEEPALIVE = {'\n'};
+
+  private enum State {
+    WAIT_BGSAVE,
+    SEND_BULK,
+    ONLINE
+  }
+
+  private final ReplicationManager manager;
+  private final Socket socket;
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private volatile State state = State.WAIT_BGSAVE;
+  private volatile int listeningPort;
+  private volatile long ackOffset;
+  private volatile long lastAckMillis = System.currentTimeMillis();
+  private final CountDownLatch firstAck = new CountDownLatch(1);
+  //keepalives from the feeder must not land inside a diskless transfer
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private boolean transferring;
+
+  ReplicaLink(ReplicationManager manager, Socket socket) {
+    this.manager = manager;
+    this.socket = socket;
+    this.listeningPort = socket.getPort();
+  }
+
+  /**
+   * @param partialFrom first byte of the stream the replica needs, {@code -1} for a full sync
+   */
+  void start(long partialFrom) {
+    Thread feeder = new Thread(() -> feed(partialFrom), "replica-feeder-" + socket.getPort());
+    feeder.setDaemon(true);
+    feeder.start();
+    Thread acks = new Thread(this::readAcks, "replica-acks-" + socket.getPort());
+    acks.setDaemon(true);
+    acks.start();
+  }
+
+  private void feed(long partialFrom) {
+    try {
+      OutputStream out = socket.getOutputStream();
+      long next;
+      if (partialFrom < 0) {
+        next = (manager.isDisklessSync() ? disklessSync(out) : fullSync(out)) + 1;
+      } else {
+        logger.info(String.format("Partial resync of replica %s from offset %d", socket.getRemoteSocketAddress(), partialFrom));
+        out.write(("+CONTINUE " + manager.replid() + RESP.CRLF).getBytes(RESP.CHARSET));
+        next = partialFrom;
+      }
+      state = State.ONLINE;
+
+      byte[] chunk = new byte[CHUNK_SIZE];
+      while (!closed.get()) {
+        int read = manager.read(next, chunk, WAIT_MILLIS);
+        if (read < 0) {
+          logger.warn(String.format("Replica %s fell behind the backlog, dropping it", socket.getRemoteSocketAddress()));
+          break;
+        }
+        if (read > 0) {
+          out.write(chunk, 0, read);
+          next += read;
+        }
+      }
+    } catch (IOException | ExecutionException e) {
+      logger.warn(String.format("Replica %s link lost: %s", socket.getRemoteSocketAddress(), e.getMessage()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Sends {@code +FULLRESYNC <replid> <offset>} and the snapshot as {@code $<length>\r\n<bytes>}, with a
+   * newline every second while it is being saved so the replica does not time out.
+   *
+   * @return the offset the stream continues from
+   */
+  private long fullSync(OutputStream out) throws IOException, ExecutionException, InterruptedException {
+    logger.info(String.format("Full resync of replica %s", socket.getRemoteSocketAddress()));
+    long[] startOffset = new long[1];
+    Future<FileChannel> saving = manager.snapshotForSync(startOffset);
+    FileChannel saved = null;
+    while (saved == null) {
+      try {
+        saved = saving.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        try {
+          out.write(KEEPALIVE);
+        } catch (IOException lost) {
+          //the save goes on regardless, release the file it opens for us
+          saving.get().close();
+          throw lost;
+        }
+      }
+    }
+
+    state = State.SEND_BULK;
+    try (FileChannel file = saved) {
+      long length = file.size();
+      out.write(("+FULLRESYNC " + manager.replid() + " " + startOffset[0] + RESP.CRLF
+          + "$" + length + RESP.CRLF).getBytes(RESP.CHARSET));
+      //a channel of its own when the socket came from the event loop, sendfile then
+      WritableByteChannel target = socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(out);
+      for (long sent = 0; sent < length; ) {
+        sent += file.transferTo(sent, length - sent, target);
+      }
+      logger.info(String.format("Sent a %d bytes snapshot to replica %s, streaming from offset %d",
+          length, socket.getRemoteSocketAddress(), startOffset[0]));
+    }
+    return startOffset[0];
+  }
+
+  /**
+   * Joins the next {@link DisklessSync} pass, with a newline every second until it starts.
+   *
+   * @return the offset the stream continues from
+   */
+  private long disklessSync(OutputStream out) throws IOException, ExecutionException, InterruptedException {
+    logger.info(String.format("Diskless full resync of replica %s", socket.getRemoteSocketAddress()));
+    CompletableFuture<Long> streamed = manager.joinDisklessSync(this);
+    Long startOffset = null;
+    while (startOffset == null) {
+      try {
+        startOffset = streamed.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        writeLock.lock();
+        try {
+          if (!transferring) out.write(KEEPALIVE);
+        } finally {
+          writeLock.unlock();
+        }
+      }
+    }
+    //the replica reads up to the end mark, so nothing may follow it until the snapshot is loaded and acked
+    while (!firstAck.await(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (closed.get()) throw new IOException("replica closed during the sync");
+    }
+    return startOffset;
+  }
+
+  /**
+   * Called by the {@link DisklessSync} pass as it starts writing into the socket.
+   */
+  void beginTransfer(byte[] header) throws IOException {
+    writeLock.lock();
+    try {
+      transferring = true;
+      state = State.SEND_BULK;
+      socket.getOutputStream().write(header);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  OutputStream output() throws IOException {
+    return socket.getOutputStream();
+  }
+
+  private void readAcks() {
+    RespParser parser = new RespParser();
+    try {
+      InputStream in = socket.getInputStream();
+      while (parser.readFrom(in) != -1) {
+        List<String> command;
+        while ((command = parser.next()) != null) {
+          if (command.size() != 3 || !command.get(0).equalsIgnoreCase("REPLCONF")) continue;
+          switch (command.get(1).toLowerCase(Locale.ROOT)) {
+            case "ack" -> {
+              ackOffset = Long.parseLong(command.get(2));
+              lastAckMillis = System.currentTimeMillis();
+              firstAck.countDown();
+            }
+            case "listening-port" -> listeningPort = Integer.parseInt(command.get(2));
+            default -> {
+              //nothing else is expected once streaming
+            }
+          }
+        }
+      }
+    } catch (IOException | ProtocolError | NumberFormatException e) {
+      logger.debug(String.format("Replica %s ack stream ended: %s", socket.getRemoteSocketAddress(), e));
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * @return {@code ip=...,port=...,state=...,offset=...,lag=...} for {@code INFO replication}
+   */
+  String describe() {
+    return "ip=" + socket.getInetAddress().getHostAddress()
+        + ",port=" + listeningPort
+        + ",state=" + state.name().toLowerCase(Locale.ROOT)
+        + ",offset=" + ackOffset
+        + ",lag=" + (System.currentTimeMillis() - lastAckMillis) / 1000;
+  }
+
+  void close() {
+    if (!closed.compareAndSet(false, true)) return;
+    manager.remove(this);
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.debug(String.format("Failed to close replica link: %s", e.getMessage()));
+    }
+    logger.info(String.format("Replica %s disconnected", socket.getRemoteSocketAddress()));
+  }
+}
@@ -0,0 +1,33 @@
+package build.your.own.replication;
+
+import java.util.Locale;
+
+/**
+ * The primary a replica follows, {@code --replicaof "<host> <port>"}.
+ */
+public record ReplicaOf(String host, int port) {
+
+  @Override
+  public String toString() {
+    return host + " " + port;
+  }
+
+  /**
+   * @param value {@code <host> <port>}, {@code null} or {@code no one} for a primary
+   * @return the primary, {@code null} if this server is one
+   * @throws IllegalArgumentException if the value is malformed
+   */
+  public static ReplicaOf parse(String value) {
+    if (value == null || value.trim().toLowerCase(Locale.ROOT).equals("no one")) return null;
+    String[] parts = value.trim().split("\\s+");
+    if (parts.length == 2) {
+      try {
+        int port = Integer.parseInt(parts[1]);
+        if (port > 0 && port <= 65535) return new ReplicaOf(parts[0], port);
+      } catch (NumberFormatException ignored) {
+        //fall through to the error below
+      }
+    }
+    throw new IllegalArgumentException(String.format("Argument replicaof must be \"<host> <port>\", got '%s'", value));
+  }
+}
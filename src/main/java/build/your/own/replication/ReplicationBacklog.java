@@ -0,0 +1,79 @@
+package build.your.own.replication;
+
+import java.io.OutputStream;
+
+/**
+ * Fixed size ring of the most recent bytes of the replication stream, what lets a reconnecting replica
+ * resume with {@code PSYNC} instead of a full sync.
+ *
+ * <p>Bytes are numbered like redis' replication offsets: {@link #offset()} is the number of bytes ever
+ * appended and the first one is byte 1, so the ring holds bytes {@link #firstByteOffset()} to
+ * {@link #offset()}. Writing into it as an {@link OutputStream} lets commands be encoded with
+ * {@link build.your.own.resp.RespBuffer#writeTo(OutputStream)} without an extra copy.
+ *
+ * <p>Not thread safe, guarded by the {@link ReplicationManager}.
+ */
+final class ReplicationBacklog extends OutputStream {
+  private final byte[] ring;
+  private long offset;
+
+  ReplicationBacklog(int size) {
+    this.ring = new byte[size];
+  }
+
+  @Override
+  public void write(int b) {
+    ring[(int) (offset % ring.length)] = (byte) b;
+    offset++;
+  }
+
+  @Override
+  public void write(byte[] bytes, int from, int length) {
+    //only the tail of a write larger than the ring survives
+    if (length > ring.length) {
+      offset += length - ring.length;
+      from += length - ring.length;
+      length = ring.length;
+    }
+    int at = (int) (offset % ring.length);
+    int first = Math.min(length, ring.length - at);
+    System.arraycopy(bytes, from, ring, at, first);
+    System.arraycopy(bytes, from + first, ring, 0, length - first);
+    offset += length;
+  }
+
+  /**
+   * Copies bytes of the stream starting at byte {@code from}, as many as are there and fit.
+   *
+   * @return bytes copied, {@code -1} if byte {@code from} was already overwritten
+   */
+  int read(long from, byte[] target) {
+    if (from < firstByteOffset()) return -1;
+    int length = (int) Math.min(offset - from + 1, target.length);
+    if (length <= 0) return 0;
+    int at = (int) ((from - 1) % ring.length);
+    int first = Math.min(length, ring.length - at);
+    System.arraycopy(ring, at, target, 0, first);
+    System.arraycopy(ring, 0, target, first, length - first);
+    return length;
+  }
+
+  /**
+   * @return bytes ever appended, the offset of the last one
+   */
+  long offset() {
+    return offset;
+  }
+
+  long firstByteOffset() {
+    return offset - historyLength() + 1;
+  }
+
+  long historyLength() {
+    return Math.min(offset, ring.length);
+  }
+
+  int size() {
+    return ring.length;
+  }
+}
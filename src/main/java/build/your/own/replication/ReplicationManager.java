@@ -1,12 +1,296 @@
 package build.your.own.replication;
 
+import build.your.own.configurations.SystemConfig;
 import build.your.own.logger.Logger;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.persist.Snapshot;
+import build.your.own.resp.RespBuffer;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.InvalidCommandError;
+import build.your.own.tcp.ConnectionHandoff;
+import build.your.own.tcp.cmd.CommandRegistry;
+import build.your.own.tcp.cmd.WriteListener;
+import build.your.own.utils.ArgumentsUtils;
 
-public class ReplicationManager {
-
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * <h1>Primary / replica replication</h1>
+ * Started with {@code --replicaof "<host> <port>"} a server is a read only replica of that primary,
+ * otherwise it is a primary that replicas can attach to.
+ *
+ * <p>On a primary this is a {@link WriteListener}: every write, as propagated by the
+ * {@link CommandRegistry}, is encoded once into a {@link ReplicationBacklog} ({@code --repl-backlog-size},
+ * default {@value #DEFAULT_BACKLOG_SIZE}) and each attached replica has a {@link ReplicaLink} thread
+ * streaming the backlog from its own offset, so a write costs the same however many replicas there are.
+ * The stream is identified by a random replication id and byte offsets, redis style. A replica sends
+ * {@code PSYNC <replid> <offset>}: if the id matches and the offset is still in the backlog it gets
+ * {@code +CONTINUE} and the missing bytes (partial resync), otherwise {@code +FULLRESYNC <replid> <offset>},
+ * a snapshot and the stream from that offset. The snapshot is either streamed from memory to every replica
+ * attaching at about the same time ({@code --repl-diskless-sync yes}, the default, see {@link DisklessSync})
+ * or saved and sent as a bulk string. A replica falling further behind than the backlog is dropped and
+ * resyncs. Until the first replica attaches writes are not encoded at all.
+ *
+ * <p>On a replica a {@link MasterLink} thread syncs from the primary, applies its stream and reconnects
+ * with a partial resync when the link drops; clients get {@code -READONLY} for writes.
+ */
+public class ReplicationManager implements WriteListener {
   private static final Logger logger = Logger.getInstance(ReplicationManager.class);
+  public static final String DEFAULT_BACKLOG_SIZE = "1mb";
+  public static final String DEFAULT_DISKLESS_SYNC_DELAY = "5";
+  //redis' floor for repl-backlog-size
+  private static final int MIN_BACKLOG_SIZE = 16 * 1024;
+  //the primary pings through the stream, so an idle link is told from a dead one
+  private static final long PING_PERIOD_SECONDS = 10;
+  private static final List<String> PING = List.of("PING");
+
+  private final ServerState state;
+  private final ReplicaOf replicaOf;
+  private final SystemConfig systemConfig;
+  private final SerializeProtocol serializeProtocol;
+  private final Snapshot snapshot;
+  //null when the AOF is off
+  private final AppendOnlyFile appendOnlyFile;
+  private final String replid = randomId();
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition appended = lock.newCondition();
+  private final ReplicationBacklog backlog;
+  private final RespBuffer encoded = new RespBuffer();
+  //set by the first full sync, see beginFullSync()
+  private volatile boolean active;
+
+  private final List<ReplicaLink> replicas = new CopyOnWriteArrayList<>();
+  private final boolean disklessSync;
+  private final long disklessSyncDelayMillis;
+  //the pass replicas attaching now join, guarded by this
+  private DisklessSync nextDisklessSync;
+  private MasterLink masterLink;
+
+  public ReplicationManager(SystemConfig systemConfig, SerializeProtocol serializeProtocol, Snapshot snapshot,
+                            AppendOnlyFile appendOnlyFile) {
+    this.systemConfig = systemConfig;
+    this.serializeProtocol = serializeProtocol;
+    this.snapshot = snapshot;
+    this.appendOnlyFile = appendOnlyFile;
+    this.replicaOf = ReplicaOf.parse(systemConfig.getConfig().get("replicaof"));
+    this.state = new ServerState(replicaOf == null ? ServerRole.MASTER : ServerRole.SLAVE);
+    long size = ArgumentsUtils.parseMemory(systemConfig.getConfig().getOrDefault("repl-backlog-size", DEFAULT_BACKLOG_SIZE));
+    this.backlog = new ReplicationBacklog((int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_BACKLOG_SIZE, size)));
+    this.disklessSync = ArgumentsUtils.isEnabled(systemConfig, "repl-diskless-sync");
+    this.disklessSyncDelayMillis = 1000L * Integer.parseInt(
+        systemConfig.getConfig().getOrDefault("repl-diskless-sync-delay", DEFAULT_DISKLESS_SYNC_DELAY));
+  }
+
+  /**
+   * Starts following the primary on a replica, or starts taking writes for the backlog on a primary.
+   * Called once the dataset is loaded.
+   */
+  public void start(CommandRegistry registry) {
+    if (isReplica()) {
+      logger.info(String.format("Replica of %s", replicaOf));
+      registry.setReadOnly(true);
+      serializeProtocol.getInMemoryMap().getEviction().setIgnoreMaxMemory(true);
+      masterLink = new MasterLink(replicaOf, Integer.parseInt(systemConfig.getConfig().get("port")),
+          registry, serializeProtocol, appendOnlyFile);
+      Thread thread = new Thread(masterLink, "replica-link");
+      thread.setDaemon(true);
+      thread.start();
+      return;
+    }
+    logger.info(String.format("Primary, replication id %s, backlog %d bytes", replid, backlog.size()));
+    registry.addWriteListener(this);
+    ScheduledExecutorService cron = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "replication-cron");
+      thread.setDaemon(true);
+      return thread;
+    });
+    cron.scheduleWithFixedDelay(() -> {
+      if (!replicas.isEmpty()) onWrite(PING);
+    }, PING_PERIOD_SECONDS, PING_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public boolean isReplica() {
+    return state.getRole() == ServerRole.SLAVE;
+  }
+
+  @Override
+  public void onWrite(List<String> command) {
+    if (!active) return;
+    lock.lock();
+    try {
+      encoded.putCommand(command);
+      encoded.writeTo(backlog);
+      appended.signalAll();
+    } catch (IOException e) {
+      //the backlog is in memory and does not throw
+      throw new IllegalStateException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * {@code PSYNC <replid> <offset>}: takes the connection over as a replica, with a partial resync from
+   * byte {@code offset} when the backlog still has it.
+   */
+  public RespData psync(String requestedReplid, String requestedOffset) {
+    if (isReplica()) {
+      return new InvalidCommandError("this server is a replica, replicas can only attach to a primary");
+    }
+    long from;
+    try {
+      from = Long.parseLong(requestedOffset);
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("offset is not an integer");
+    }
+    boolean partial;
+    lock.lock();
+    try {
+      partial = active && replid.equals(requestedReplid)
+          && from >= backlog.firstByteOffset() && from <= backlog.offset() + 1;
+    } finally {
+      lock.unlock();
+    }
+    long partialFrom = partial ? from : -1;
+    return new ConnectionHandoff(socket -> {
+      ReplicaLink replica = new ReplicaLink(this, socket);
+      replicas.add(replica);
+      replica.start(partialFrom);
+    });
+  }
+
+  /**
+   * Saves the snapshot for a full sync, see {@link Snapshot#saveForSync(Runnable)}.
+   *
+   * @param startOffset receives the offset the snapshot is consistent with, valid once the result is
+   */
+  Future<FileChannel> snapshotForSync(long[] startOffset) {
+    return snapshot.saveForSync(() -> startOffset[0] = beginFullSync());
+  }
+
+  /**
+   * @return whether full syncs stream the snapshot from memory, {@code --repl-diskless-sync}
+   */
+  boolean isDisklessSync() {
+    return disklessSync;
+  }
+
+  /**
+   * Adds the replica to the diskless pass that has not started yet, starting one if needed.
+   */
+  synchronized CompletableFuture<Long> joinDisklessSync(ReplicaLink replica) {
+    CompletableFuture<Long> streamed = nextDisklessSync != null ? nextDisklessSync.join(replica) : null;
+    if (streamed == null) {
+      nextDisklessSync = new DisklessSync(this, snapshot, disklessSyncDelayMillis);
+      streamed = nextDisklessSync.join(replica);
+      Thread thread = new Thread(nextDisklessSync, "repl-diskless-sync");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    return streamed;
+  }
+
+  /**
+   * Starts the backlog if needed and returns its offset, called right before the snapshot view opens.
+   * A write whose propagation comes later is either applied after this point, so not in the snapshot
+   * view, or is both in the snapshot and the stream; propagated writes are absolute, replaying one
+   * twice in order gives the same result.
+   */
+  long beginFullSync() {
+    lock.lock();
+    try {
+      active = true;
+      return backlog.offset();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Copies the stream from byte {@code from}, waiting up to {@code timeoutMillis} for it to be written.
+   *
+   * @return bytes copied, {@code 0} on timeout, {@code -1} if the backlog no longer has byte {@code from}
+   */
+  int read(long from, byte[] target, long timeoutMillis) throws InterruptedException {
+    lock.lock();
+    try {
+      if (backlog.offset() < from) appended.await(timeoutMillis, TimeUnit.MILLISECONDS);
+      return backlog.read(from, target);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void remove(ReplicaLink replica) {
+    replicas.remove(replica);
+  }
+
+  String replid() {
+    return replid;
+  }
 
+  /**
+   * @return the {@code INFO replication} section
+   */
+  public String info() {
+    StringBuilder info = new StringBuilder("# Replication\r\n");
+    if (isReplica()) {
+      MasterLink link = masterLink;
+      info.append("role:slave\r\n")
+          .append("master_host:").append(replicaOf.host()).append("\r\n")
+          .append("master_port:").append(replicaOf.port()).append("\r\n");
+      if (link != null) {
+        info.append("master_link_status:").append(link.isUp() ? "up" : "down").append("\r\n")
+            .append("master_last_io_seconds_ago:").append(link.lastIoSecondsAgo()).append("\r\n")
+            .append("master_sync_in_progress:").append(link.isSyncing() ? 1 : 0).append("\r\n")
+            .append("slave_repl_offset:").append(link.offset()).append("\r\n")
+            .append("master_replid:").append(link.replid()).append("\r\n")
+            .append("master_repl_offset:").append(link.offset()).append("\r\n");
+      }
+      return info.toString();
+    }
 
+    info.append("role:master\r\n")
+        .append("connected_slaves:").append(replicas.size()).append("\r\n");
+    int index = 0;
+    for (ReplicaLink replica : replicas) {
+      info.append("slave").append(index++).append(':').append(replica.describe()).append("\r\n");
+    }
+    lock.lock();
+    try {
+      info.append("master_replid:").append(replid).append("\r\n")
+          .append("master_repl_offset:").append(backlog.offset()).append("\r\n")
+          .append("repl_backlog_active:").append(active ? 1 : 0).append("\r\n")
+          .append("repl_backlog_size:").append(backlog.size()).append("\r\n")
+          .append("repl_backlog_first_byte_offset:").append(backlog.firstByteOffset()).append("\r\n")
+          .append("repl_backlog_histlen:").append(backlog.historyLength()).append("\r\n");
+    } finally {
+      lock.unlock();
+    }
+    return info.toString();
+  }
 
+  /**
+   * @return 40 random hex chars, a replication id or a diskless end mark
+   */
+  static String randomId() {
+    byte[] id = new byte[20];
+    ThreadLocalRandom.current().nextBytes(id);
+    return HexFormat.of().formatHex(id);
+  }
 }
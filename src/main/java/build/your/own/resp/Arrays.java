@@ -34,7 +34,15 @@ public class Arrays<K extends RespData> implements RespData{
 
   @Override
   public byte[] serialize() {
-    return toString().getBytes();
+    return toString().getBytes(RESP.CHARSET);
+  }
+
+  @Override
+  public void encode(RespBuffer out) {
+    out.putArrayHeader(data.size());
+    for (RespData element : data) {
+      element.encode(out);
+    }
   }
 
   public void add(K e){
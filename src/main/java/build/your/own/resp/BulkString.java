@@ -4,13 +4,23 @@ import static build.your.own.resp.RESP.CRLF;
 
 public class BulkString implements RespData{
   public String data;
+  //Raw value straight from the keyspace, encoded without a String round trip
+  private final byte[] bytes;
 
   public BulkString(String data) {
     this.data = data;
+    this.bytes = null;
+  }
+
+  public BulkString(byte[] bytes) {
+    this.bytes = bytes;
   }
 
   @Override
   public String toString(){
+    if (bytes != null && data == null) {
+      data = new String(bytes, RESP.CHARSET);
+    }
     StringBuilder sb = new StringBuilder();
     //$<length>\r\n<data>\r\n
     sb.append("$");
@@ -28,7 +38,23 @@ public class BulkString implements RespData{
 
   @Override
   public byte[] serialize() {
-    return toString().getBytes();
+    return toString().getBytes(RESP.CHARSET);
+  }
 
+  @Override
+  public void encode(RespBuffer out) {
+    if (bytes != null) {
+      out.putBulkHeader(bytes.length);
+      out.put(bytes);
+      out.putCrlf();
+      return;
+    }
+    if (data == null) {
+      out.putBulkHeader(-1);
+      return;
+    }
+    out.putBulkHeader(data.length());
+    out.putString(data);
+    out.putCrlf();
   }
 }
@@ -0,0 +1,29 @@
+package build.your.own.resp;
+
+import static build.your.own.resp.RESP.CRLF;
+
+//*-1\r\n
+
+/**
+ * The null array, what RESP2 replies for an array that does not exist, e.g. {@code LPOP key count} on a
+ * missing key. Use the shared {@link RESP#NULL_ARRAY}.
+ */
+public final class NullArray implements RespData {
+  NullArray() {
+  }
+
+  @Override
+  public String toString() {
+    return "*-1" + CRLF;
+  }
+
+  @Override
+  public byte[] serialize() {
+    return toString().getBytes(RESP.CHARSET);
+  }
+
+  @Override
+  public void encode(RespBuffer out) {
+    out.putArrayHeader(-1);
+  }
+}
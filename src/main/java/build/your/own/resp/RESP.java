@@ -1,8 +1,22 @@
 package build.your.own.resp;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 /**
  * RESP is a redis serialization protocol which clients implement
  */
 public abstract class RESP {
-  public static final String CRLF = "\\r\\n";
+  public static final String CRLF = "\r\n";
+  /**
+   * Charset used between wire bytes and {@code String} arguments/values. ISO-8859-1 maps every byte
+   * to exactly one char, so binary values survive the round trip and {@code length()} equals the byte count.
+   */
+  public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+  //Shared replies, encoded once
+  public static final SimpleString OK = new SimpleString("OK");
+  public static final SimpleString PONG = new SimpleString("PONG");
+  public static final BulkString NULL_BULK = new BulkString((String) null);
+  public static final NullArray NULL_ARRAY = new NullArray();
 }
@@ -0,0 +1,196 @@
+package build.your.own.resp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Growable reply sink, one instance per connection and reused for its whole lifetime.
+ *
+ * <p>{@link RespData#encode(RespBuffer)} writes replies straight into the backing array, headers for
+ * small lengths come from precomputed tables and numbers are written digit by digit, so encoding a
+ * reply allocates nothing once the buffer has grown to the connection's working size.
+ */
+public class RespBuffer {
+  private static final int INITIAL_CAPACITY = 16 * 1024;
+  private static final int MAX_IDLE_CAPACITY = 1024 * 1024;
+  private static final int SHARED_HEADERS = 128;
+  private static final byte[] CRLF = {'\r', '\n'};
+  //"$<n>\r\n" and "*<n>\r\n" for n < SHARED_HEADERS, like redis' shared.bulkhdr / shared.mbulkhdr
+  private static final byte[][] BULK_HEADERS = headers('$');
+  private static final byte[][] ARRAY_HEADERS = headers('*');
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private ByteBuffer view = ByteBuffer.wrap(buffer);
+  private int readIndex;
+  private int writeIndex;
+
+  public RespBuffer put(byte b) {
+    ensureCapacity(1);
+    buffer[writeIndex++] = b;
+    return this;
+  }
+
+  public RespBuffer put(byte[] bytes) {
+    return put(bytes, 0, bytes.length);
+  }
+
+  public RespBuffer put(byte[] bytes, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(bytes, offset, buffer, writeIndex, length);
+    writeIndex += length;
+    return this;
+  }
+
+  /**
+   * Writes each char of {@code s} as one byte, see {@link RESP#CHARSET}.
+   */
+  public RespBuffer putString(String s) {
+    int length = s.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      buffer[writeIndex++] = (byte) s.charAt(i);
+    }
+    return this;
+  }
+
+  public RespBuffer putCrlf() {
+    return put(CRLF, 0, 2);
+  }
+
+  /**
+   * Writes {@code $<length>\r\n}.
+   */
+  public RespBuffer putBulkHeader(long length) {
+    return putHeader(BULK_HEADERS, (byte) '$', length);
+  }
+
+  /**
+   * Writes {@code *<count>\r\n}.
+   */
+  public RespBuffer putArrayHeader(long count) {
+    return putHeader(ARRAY_HEADERS, (byte) '*', count);
+  }
+
+  /**
+   * Writes a command as a multi bulk array, the framing clients send, also used by the AOF.
+   */
+  public RespBuffer putCommand(List<String> command) {
+    putArrayHeader(command.size());
+    for (String arg : command) {
+      putBulkHeader(arg.length()).putString(arg).putCrlf();
+    }
+    return this;
+  }
+
+  /**
+   * Writes {@code <prefix><value>\r\n}, e.g. {@code :42\r\n}.
+   */
+  public RespBuffer putNumberLine(byte prefix, long value) {
+    put(prefix);
+    putLong(value);
+    return putCrlf();
+  }
+
+  public RespBuffer putLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      return putString(Long.toString(value));
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[writeIndex++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) digits++;
+    for (int i = writeIndex + digits - 1; i >= writeIndex; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    writeIndex += digits;
+    return this;
+  }
+
+  public boolean isEmpty() {
+    return readIndex == writeIndex;
+  }
+
+  public int size() {
+    return writeIndex - readIndex;
+  }
+
+  /**
+   * Writes all buffered bytes with a single {@link OutputStream#write(byte[], int, int)} and clears.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (isEmpty()) return;
+    out.write(buffer, readIndex, writeIndex - readIndex);
+    clear();
+  }
+
+  /**
+   * Writes as much as the (non-blocking) channel accepts.
+   *
+   * @return {@code true} once everything buffered has been written
+   */
+  public boolean writeTo(WritableByteChannel channel) throws IOException {
+    if (isEmpty()) return true;
+    view.limit(writeIndex).position(readIndex);
+    readIndex += channel.write(view);
+    if (readIndex < writeIndex) return false;
+    clear();
+    return true;
+  }
+
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[size()];
+    System.arraycopy(buffer, readIndex, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  public void clear() {
+    readIndex = 0;
+    writeIndex = 0;
+    //give back the memory of an exceptionally large reply
+    if (buffer.length > MAX_IDLE_CAPACITY) {
+      buffer = new byte[INITIAL_CAPACITY];
+      view = ByteBuffer.wrap(buffer);
+    }
+  }
+
+  private RespBuffer putHeader(byte[][] shared, byte prefix, long value) {
+    if (value >= 0 && value < SHARED_HEADERS) {
+      byte[] header = shared[(int) value];
+      return put(header, 0, header.length);
+    }
+    return putNumberLine(prefix, value);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (buffer.length - writeIndex >= extra) return;
+
+    int pending = writeIndex - readIndex;
+    int capacity = buffer.length;
+    while (capacity - pending < extra) {
+      capacity *= 2;
+    }
+    byte[] target = capacity == buffer.length ? buffer : new byte[capacity];
+    System.arraycopy(buffer, readIndex, target, 0, pending);
+    if (target != buffer) {
+      buffer = target;
+      view = ByteBuffer.wrap(buffer);
+    }
+    readIndex = 0;
+    writeIndex = pending;
+  }
+
+  private static byte[][] headers(char prefix) {
+    byte[][] headers = new byte[SHARED_HEADERS][];
+    for (int i = 0; i < SHARED_HEADERS; i++) {
+      headers[i] = (prefix + Integer.toString(i) + "\r\n").getBytes(RESP.CHARSET);
+    }
+    return headers;
+  }
+}
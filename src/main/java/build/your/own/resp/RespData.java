@@ -3,5 +3,14 @@ package build.your.own.resp;
 public interface RespData{
   public byte[] serialize();
   public String toString();
-}
 
+  /**
+   * Writes the wire form of this reply into {@code out}. Implementations write their parts directly
+   * instead of building an intermediate {@code String}; the default falls back to {@link #serialize()}.
+   *
+   * @param out the connection's reply buffer
+   */
+  public default void encode(RespBuffer out) {
+    out.put(serialize());
+  }
+}
@@ -0,0 +1,31 @@
+package build.your.own.resp;
+
+import static build.your.own.resp.RESP.CRLF;
+
+//:<value>\r\n
+
+/**
+ * A colon (:) as the first byte, a signed base-10 64 bit integer and the CRLF terminator.
+ */
+public class RespInteger implements RespData {
+  public final long value;
+
+  public RespInteger(long value) {
+    this.value = value;
+  }
+
+  @Override
+  public String toString() {
+    return ":" + value + CRLF;
+  }
+
+  @Override
+  public byte[] serialize() {
+    return toString().getBytes(RESP.CHARSET);
+  }
+
+  @Override
+  public void encode(RespBuffer out) {
+    out.putNumberLine((byte) ':', value);
+  }
+}
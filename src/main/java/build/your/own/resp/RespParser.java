@@ -0,0 +1,235 @@
+package build.your.own.resp;
+
+import build.your.own.resp.error.ProtocolError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental request decoder over a single reusable byte buffer, one instance per connection.
+ *
+ * <p>Understands the two request framings clients send (identical in RESP2 and RESP3):
+ * <ul>
+ *   <li>multi bulk: {@code *<n>\r\n$<len>\r\n<bytes>\r\n...}, binary safe</li>
+ *   <li>inline: {@code PING\r\n}, whitespace separated, as typed into telnet</li>
+ * </ul>
+ *
+ * <p>Bytes are appended with {@link #readFrom(InputStream)} or {@link #readFrom(ReadableByteChannel)}
+ * and complete commands are pulled with {@link #next()} until it returns {@code null}. A command split
+ * across reads keeps its decoding state, so nothing is re-scanned when the rest arrives.
+ *
+ * <p>Arguments are decoded as {@link RESP#CHARSET} (one char per byte), which round-trips arbitrary
+ * binary values through {@code String} without loss.
+ */
+public class RespParser {
+  private static final int INITIAL_CAPACITY = 16 * 1024;
+  private static final int MAX_IDLE_CAPACITY = 1024 * 1024;
+  private static final int MAX_INLINE_LENGTH = 64 * 1024;
+  private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+  private static final int MAX_MULTI_BULK_LENGTH = 1024 * 1024;
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private ByteBuffer view = ByteBuffer.wrap(buffer);
+  private int readIndex;
+  private int writeIndex;
+  //stream offset of buffer[0], and of the end of the last complete command
+  private long discarded;
+  private long completed;
+
+  //State of a partially received multi bulk command
+  private List<String> args;
+  private int multiBulkRemaining;
+  private int bulkLength = -1;
+
+  /**
+   * Appends whatever the stream has available, blocking until at least one byte arrives.
+   *
+   * @return bytes read, {@code -1} at end of stream
+   */
+  public int readFrom(InputStream in) throws IOException {
+    ensureWritable();
+    int read = in.read(buffer, writeIndex, buffer.length - writeIndex);
+    if (read > 0) writeIndex += read;
+    return read;
+  }
+
+  /**
+   * Appends whatever the (non-blocking) channel has available.
+   *
+   * @return bytes read, {@code -1} at end of stream
+   */
+  public int readFrom(ReadableByteChannel channel) throws IOException {
+    ensureWritable();
+    view.limit(buffer.length).position(writeIndex);
+    int read = channel.read(view);
+    if (read > 0) writeIndex += read;
+    return read;
+  }
+
+  /**
+   * Decodes the next complete command from the buffer.
+   *
+   * @return the command name followed by its arguments, {@code null} if more bytes are needed
+   * @throws ProtocolError on malformed input, the connection should be closed after replying
+   */
+  public List<String> next() throws ProtocolError {
+    while (args == null) {
+      if (readIndex == writeIndex) return null;
+      if (buffer[readIndex] != '*') {
+        List<String> inline = nextInline();
+        if (inline == null) return null;
+        completed = discarded + readIndex;
+        if (!inline.isEmpty()) return inline;
+        continue;
+      }
+
+      int lineEnd = findCrlf(MAX_INLINE_LENGTH);
+      if (lineEnd == -1) return null;
+      int count = parseLength(readIndex + 1, lineEnd, MAX_MULTI_BULK_LENGTH, true, "multibulk length");
+      readIndex = lineEnd + 2;
+      //*0 and *-1 are valid no-ops
+      if (count > 0) {
+        args = new ArrayList<>(count);
+        multiBulkRemaining = count;
+      }
+    }
+
+    while (multiBulkRemaining > 0) {
+      if (bulkLength == -1) {
+        if (readIndex == writeIndex) return null;
+        if (buffer[readIndex] != '$') {
+          throw new ProtocolError(String.format("expected '$', got '%c'", (char) (buffer[readIndex] & 0xFF)));
+        }
+        int lineEnd = findCrlf(MAX_INLINE_LENGTH);
+        if (lineEnd == -1) return null;
+        bulkLength = parseLength(readIndex + 1, lineEnd, MAX_BULK_LENGTH, false, "bulk length");
+        readIndex = lineEnd + 2;
+      }
+
+      if (writeIndex - readIndex < bulkLength + 2) return null;
+      args.add(new String(buffer, readIndex, bulkLength, RESP.CHARSET));
+      readIndex += bulkLength + 2;
+      bulkLength = -1;
+      multiBulkRemaining--;
+    }
+
+    List<String> command = args;
+    args = null;
+    completed = discarded + readIndex;
+    return command;
+  }
+
+  /**
+   * @return whether unparsed bytes are left, i.e. a command is still incomplete
+   */
+  public boolean hasPending() {
+    return readIndex != writeIndex;
+  }
+
+  /**
+   * @return bytes of the stream taken by the commands returned so far, where a truncated tail starts
+   */
+  public long completedBytes() {
+    return completed;
+  }
+
+  private List<String> nextInline() throws ProtocolError {
+    int newline = -1;
+    for (int i = readIndex; i < writeIndex; i++) {
+      if (buffer[i] == '\n') {
+        newline = i;
+        break;
+      }
+    }
+    if (newline == -1) {
+      if (writeIndex - readIndex > MAX_INLINE_LENGTH) {
+        throw new ProtocolError("too big inline request");
+      }
+      return null;
+    }
+
+    List<String> tokens = new ArrayList<>();
+    int tokenStart = -1;
+    for (int i = readIndex; i <= newline; i++) {
+      boolean space = buffer[i] == ' ' || buffer[i] == '\t' || buffer[i] == '\r' || buffer[i] == '\n';
+      if (!space && tokenStart == -1) {
+        tokenStart = i;
+      } else if (space && tokenStart != -1) {
+        tokens.add(new String(buffer, tokenStart, i - tokenStart, RESP.CHARSET));
+        tokenStart = -1;
+      }
+    }
+    readIndex = newline + 1;
+    return tokens;
+  }
+
+  /**
+   * @return index of the '\r' of the next CRLF from {@code readIndex}, {@code -1} if not buffered yet
+   */
+  private int findCrlf(int maxLineLength) throws ProtocolError {
+    for (int i = readIndex; i < writeIndex - 1; i++) {
+      if (buffer[i] == '\r' && buffer[i + 1] == '\n') return i;
+    }
+    if (writeIndex - readIndex > maxLineLength) {
+      throw new ProtocolError("too big length line");
+    }
+    return -1;
+  }
+
+  private int parseLength(int from, int to, int max, boolean allowNull, String what) throws ProtocolError {
+    if (from == to) throw new ProtocolError("invalid " + what);
+    boolean negative = buffer[from] == '-';
+    long value = 0;
+    for (int i = negative ? from + 1 : from; i < to; i++) {
+      int digit = buffer[i] - '0';
+      if (digit < 0 || digit > 9 || value > max) throw new ProtocolError("invalid " + what);
+      value = value * 10 + digit;
+    }
+    if (negative) {
+      //only the null marker -1 is tolerated
+      if (value != 1 || !allowNull) throw new ProtocolError("invalid " + what);
+      return -1;
+    }
+    if (value > max) throw new ProtocolError("invalid " + what);
+    return (int) value;
+  }
+
+  /**
+   * Makes room for the next read: drops consumed bytes and grows when a pending bulk value
+   * does not fit, so a single argument is always contiguous.
+   */
+  private void ensureWritable() {
+    if (readIndex == writeIndex) {
+      discarded += readIndex;
+      readIndex = 0;
+      writeIndex = 0;
+      //give back the memory of an exceptionally large value
+      if (buffer.length > MAX_IDLE_CAPACITY && bulkLength == -1) {
+        buffer = new byte[INITIAL_CAPACITY];
+        view = ByteBuffer.wrap(buffer);
+      }
+    }
+    //bytes that must fit after readIndex: the whole pending bulk value plus its CRLF
+    int required = bulkLength >= 0 ? bulkLength + 2 : 0;
+    if (writeIndex < buffer.length && buffer.length - readIndex >= required) return;
+
+    int pending = writeIndex - readIndex;
+    int capacity = buffer.length;
+    while (capacity <= pending || capacity < required) {
+      capacity *= 2;
+    }
+    byte[] target = capacity == buffer.length ? buffer : new byte[capacity];
+    System.arraycopy(buffer, readIndex, target, 0, pending);
+    if (target != buffer) {
+      buffer = target;
+      view = ByteBuffer.wrap(buffer);
+    }
+    discarded += readIndex;
+    readIndex = 0;
+    writeIndex = pending;
+  }
+}
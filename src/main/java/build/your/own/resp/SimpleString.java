@@ -0,0 +1,34 @@
+package build.your.own.resp;
+
+import static build.your.own.resp.RESP.CRLF;
+
+//+<data>\r\n
+
+/**
+ * A plus (+) as the first byte, followed by a string that cannot contain CR or LF and the CRLF terminator.
+ * The encoded form is computed once, so shared instances like {@link RESP#OK} cost nothing per reply.
+ */
+public class SimpleString implements RespData {
+  public final String data;
+  private final byte[] encoded;
+
+  public SimpleString(String data) {
+    this.data = data;
+    this.encoded = ("+" + data + CRLF).getBytes(RESP.CHARSET);
+  }
+
+  @Override
+  public String toString() {
+    return "+" + data + CRLF;
+  }
+
+  @Override
+  public byte[] serialize() {
+    return encoded.clone();
+  }
+
+  @Override
+  public void encode(RespBuffer out) {
+    out.put(encoded);
+  }
+}
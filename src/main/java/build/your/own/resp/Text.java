@@ -9,6 +9,11 @@ public class Text implements RespData{
 
   @Override
   public byte[] serialize() {
-    return data.getBytes();
+    return data.getBytes(RESP.CHARSET);
+  }
+
+  @Override
+  public void encode(RespBuffer out) {
+    out.putString(data);
   }
 }
@@ -0,0 +1,13 @@
+package build.your.own.resp.error;
+
+/**
+ * {@code -ASK <slot> <host>:<port>}, the key is being migrated: retry this one command there, after {@code ASKING}.
+ */
+public class AskError extends Error{
+  private static final int code = 10009;
+  private static final String error = "ASK";
+
+  public AskError(int slot, String host, int port) {
+    super(slot + " " + host + ":" + port, error, code);
+  }
+}
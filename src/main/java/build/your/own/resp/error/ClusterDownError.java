@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class ClusterDownError extends Error{
+  private static final int code = 10010;
+  private static final String error = "CLUSTERDOWN";
+
+  public ClusterDownError(String message) {
+    super(message, error, code);
+  }
+}
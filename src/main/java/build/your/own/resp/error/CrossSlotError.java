@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class CrossSlotError extends Error{
+  private static final int code = 10011;
+  private static final String error = "CROSSSLOT";
+
+  public CrossSlotError(String message) {
+    super(message, error, code);
+  }
+}
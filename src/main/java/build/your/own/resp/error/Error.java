@@ -1,5 +1,6 @@
 package build.your.own.resp.error;
 
+import build.your.own.resp.RespBuffer;
 import build.your.own.resp.RespData;
 
 import java.time.LocalDateTime;
@@ -24,6 +25,13 @@ public abstract class Error extends Throwable implements RespData {
     return text.getBytes();
   }
 
+  @Override
+  public void encode(RespBuffer out) {
+    out.put((byte) '-').putString(error).put((byte) ' ');
+    if (message != null) out.putString(message);
+    out.putCrlf();
+  }
+
   @Override
   public String toString() {
     return "-" + error + (message != null ? " " + message : "");
@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class InProgressError extends Error{
+  private static final int code = 10006;
+  private static final String error = "ERR IN PROGRESS";
+
+  public InProgressError(String message) {
+    super(message, error, code);
+  }
+}
@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class IoError extends Error{
+  private static final int code = 10013;
+  private static final String error = "IOERR";
+
+  public IoError(String message) {
+    super(message, error, code);
+  }
+}
@@ -0,0 +1,13 @@
+package build.your.own.resp.error;
+
+/**
+ * {@code -MOVED <slot> <host>:<port>}, the slot of the key is served by another cluster node for good.
+ */
+public class MovedError extends Error{
+  private static final int code = 10008;
+  private static final String error = "MOVED";
+
+  public MovedError(int slot, String host, int port) {
+    super(slot + " " + host + ":" + port, error, code);
+  }
+}
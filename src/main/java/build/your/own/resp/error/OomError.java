@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class OomError extends Error{
+  private static final int code = 10005;
+  private static final String error = "OOM command not allowed when used memory > 'maxmemory'";
+
+  public OomError(String message) {
+    super(message, error, code);
+  }
+}
@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class ProtocolError extends Error{
+  private static final int code = 10004;
+  private static final String error = "ERR PROTOCOL ERROR";
+
+  public ProtocolError(String message) {
+    super(message, error, code);
+  }
+}
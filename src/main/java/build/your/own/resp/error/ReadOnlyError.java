@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class ReadOnlyError extends Error{
+  private static final int code = 10007;
+  private static final String error = "READONLY";
+
+  public ReadOnlyError(String message) {
+    super(message, error, code);
+  }
+}
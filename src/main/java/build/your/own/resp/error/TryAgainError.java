@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class TryAgainError extends Error{
+  private static final int code = 10012;
+  private static final String error = "TRYAGAIN";
+
+  public TryAgainError(String message) {
+    super(message, error, code);
+  }
+}
@@ -0,0 +1,10 @@
+package build.your.own.resp.error;
+
+public class WrongTypeError extends Error{
+  private static final int code = 10014;
+  private static final String error = "WRONGTYPE";
+
+  public WrongTypeError() {
+    super("Operation against a key holding the wrong kind of value", error, code);
+  }
+}
@@ -0,0 +1,65 @@
+package build.your.own.tcp;
+
+import build.your.own.resp.RespData;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A reply that is not known yet, e.g. {@code BLPOP} on empty lists: the client waits until the command
+ * can go on, without a thread of its own.
+ *
+ * <p>The front end flushes the replies before it and executes nothing else of the connection meanwhile.
+ * The event loop keeps the connection registered and gets {@link #onReady} to schedule {@link #resume()}
+ * back on its thread; the blocking loop parks its thread until {@link #onReady}, which only costs memory
+ * on a virtual thread, reading the socket meanwhile to notice the client closing. {@link #resume()} gives the reply, or another
+ * {@code BlockedReply} if the wait goes on. A connection closing while blocked calls {@link #cancel()}.
+ */
+public final class BlockedReply implements RespData {
+  private static final byte[] NOTHING = new byte[0];
+
+  private final CompletableFuture<?> ready;
+  private final Supplier<RespData> resume;
+  private final Runnable cancel;
+
+  /**
+   * @param ready  completes when the command can go on
+   * @param resume what to do then, on the connection's thread
+   * @param cancel drops the wait of a connection that went away
+   */
+  public BlockedReply(CompletableFuture<?> ready, Supplier<RespData> resume, Runnable cancel) {
+    this.ready = ready;
+    this.resume = resume;
+    this.cancel = cancel;
+  }
+
+  /**
+   * Runs {@code action} once {@link #resume()} would not wait, on whichever thread got there: it should
+   * only hand the connection back to its own thread.
+   */
+  public void onReady(Runnable action) {
+    ready.whenComplete((result, failure) -> action.run());
+  }
+
+  /**
+   * Waits until ready and goes on with the command.
+   */
+  public RespData resume() {
+    ready.join();
+    return resume.get();
+  }
+
+  public void cancel() {
+    cancel.run();
+  }
+
+  @Override
+  public byte[] serialize() {
+    return NOTHING;
+  }
+
+  @Override
+  public String toString() {
+    return "";
+  }
+}
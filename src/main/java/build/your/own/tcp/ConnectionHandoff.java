@@ -0,0 +1,38 @@
+package build.your.own.tcp;
+
+import build.your.own.resp.RespData;
+
+import java.net.Socket;
+import java.util.function.Consumer;
+
+/**
+ * A reply that takes the connection over instead of writing to it, e.g. {@code PSYNC} turning a client
+ * into a replication stream.
+ *
+ * <p>The front end flushes the replies before it, stops reading and passes the socket, in blocking mode,
+ * to {@link #takeOver(Socket)}; from then on the new owner reads, writes and closes it. Commands
+ * pipelined after the one that returned this are dropped.
+ */
+public final class ConnectionHandoff implements RespData {
+  private static final byte[] NOTHING = new byte[0];
+
+  private final Consumer<Socket> owner;
+
+  public ConnectionHandoff(Consumer<Socket> owner) {
+    this.owner = owner;
+  }
+
+  public void takeOver(Socket socket) {
+    owner.accept(socket);
+  }
+
+  @Override
+  public byte[] serialize() {
+    return NOTHING;
+  }
+
+  @Override
+  public String toString() {
+    return "";
+  }
+}
@@ -1,28 +1,57 @@
 package build.your.own.tcp;
 
-import build.your.own.resp.RESP;
+import build.your.own.resp.RespBuffer;
 import build.your.own.resp.RespData;
-import build.your.own.resp.error.InvalidCommandError;
+import build.your.own.resp.RespParser;
+import build.your.own.resp.error.ProtocolError;
 import build.your.own.resp.error.UnexpectedError;
 import build.your.own.tcp.cmd.CommandRegistry;
+import build.your.own.tcp.cmd.Session;
 import build.your.own.logger.Logger;
 
 import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Blocking request loop for one connection.
+ *
+ * <p>Runs on a platform thread ({@code --server-mode thread}) or a virtual thread
+ * ({@code --server-mode virtual}). Everything this loop blocks on — socket streams, the
+ * {@code java.util.concurrent} primitives behind {@link build.your.own.database.DbMap} — parks
+ * rather than holding a monitor, so a virtual thread unmounts from its carrier while it waits.
+ * Do not introduce {@code synchronized} blocks around I/O on this path. A client blocked by a command,
+ * see {@link BlockedReply}, parks this thread too, while a virtual thread watches its socket.
+ */
 public class Process implements Runnable, AutoCloseable {
+  //how often the socket watcher of a blocked client checks whether the wait is over, see await
+  private static final int WATCH_POLL_MILLIS = 100;
+
   private final Logger logger = Logger.getInstance(Process.class);
 
   private final UUID processId = UUID.randomUUID();
-  private final BufferedReader input;
+  private final InputStream input;
   private final OutputStream outputStream;
+  private final RespParser parser = new RespParser();
+  private final Session session = new Session();
+  private final RespBuffer replies = new RespBuffer();
   private final Client client;
   private final CommandRegistry cmdRegistry;
+  //set once a command took the connection over, see ConnectionHandoff
+  private ConnectionHandoff handoff;
+  //set once the client closed while blocked, see await
+  private boolean disconnected;
 
   public Process(Client client, CommandRegistry commandRegistry) throws IOException {
     this.cmdRegistry = commandRegistry;
-    this.input = new BufferedReader(new InputStreamReader(client.getSocket().getInputStream()));
-    this.outputStream = new BufferedOutputStream(client.getSocket().getOutputStream());
+    //RespParser does its own buffering, reads go straight into its buffer
+    this.input = client.getSocket().getInputStream();
+    //Replies are batched in RespBuffer and written with one call per batch, no extra stream buffer needed
+    this.outputStream = client.getSocket().getOutputStream();
     this.client = client;
     logger.debug(String.format("Process initialized - Process ID: %s, Client ID: %s", processId, client.getClientId()));
   }
@@ -31,7 +60,7 @@ public class Process implements Runnable, AutoCloseable {
     return this.processId;
   }
 
-  public BufferedReader getInput() {
+  public InputStream getInput() {
     return this.input;
   }
 
@@ -45,50 +74,142 @@ public class Process implements Runnable, AutoCloseable {
 
   @Override
   public void run() {
-    String cmd;
     logger.info(String.format("Process started - Process ID: %s, Client ID: %s", processId, client.getClientId()));
     try {
-      while ((cmd = this.getInput().readLine()) != null) {
-        try {
-          if(cmd.isEmpty()) {
-            logger.debug("Empty command received, skipping");
-            continue;
-          }
-          
-          logger.debug(String.format("Processing command: '%s'", cmd));
-          CommandRegistry.CommandMatchResult cmdMatch = cmdRegistry.commandMatchResult(cmd);
-          RespData exec = null;
-
-          if(cmdMatch != null) {
-            logger.debug(String.format("Executing command: %s with args: %s", 
-                cmdMatch.cmd().getClass().getSimpleName(), 
-                String.join(", ", cmdMatch.args())));
-            exec = cmdMatch.cmd().execute(cmdMatch.args());
-          } else {
-            logger.warn(String.format("Unknown command received: '%s'", cmd));
-            exec = new InvalidCommandError("command not found, everyone needs help at some point");
-          }
-
-          outputStream.write(exec.serialize());
-          outputStream.flush();
-          logger.debug("Command execution completed successfully");
-
-        } catch (Exception e) {
-          logger.error(String.format("Error processing command '%s': %s", cmd, e.getMessage()));
-          e.printStackTrace();
+      while (parser.readFrom(getInput()) != -1) {
+        //Execute every complete command of a pipelined batch, then flush once
+        List<String> cmd;
+        while (handoff == null && !disconnected && (cmd = parser.next()) != null) {
+          execute(cmd);
+        }
+        if (disconnected) {
+          logger.debug(String.format("Client closed while blocked - Client ID: %s", client.getClientId()));
+          return;
+        }
+        replies.writeTo(outputStream);
+        if (handoff != null) {
+          logger.info(String.format("Connection handed over - Client ID: %s", client.getClientId()));
+          handoff.takeOver(client.getSocket());
+          return;
         }
       }
+    } catch (ProtocolError e) {
+      logger.warn(String.format("Protocol error - Client ID: %s, Error: %s", client.getClientId(), e.getMessage()));
+      try {
+        e.encode(replies);
+        replies.writeTo(outputStream);
+      } catch (IOException ignored) {
+        //closing anyway
+      }
     } catch (IOException e) {
       logger.error(String.format("Connection interrupted - Client ID: %s, Process ID: %s, Error: %s", 
           getClient().getClientId(), getProcessId(), e.getMessage()));
       e.printStackTrace();
+    } finally {
+      try {
+        //a handed over socket belongs to its new owner
+        if (handoff == null) close();
+      } catch (Exception e) {
+        logger.debug(String.format("Failed to close process %s: %s", processId, e.getMessage()));
+      }
+    }
+  }
+
+  private void execute(List<String> cmd) throws IOException {
+    RespData exec;
+    try {
+      exec = cmdRegistry.dispatch(cmd, session);
+      if (exec instanceof BlockedReply blocked) {
+        await(blocked);
+        return;
+      }
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      logger.error(String.format("Error processing command '%s': %s", cmd.getFirst(), e.getMessage()));
+      //still one reply per command, or every later reply of a pipeline goes to the wrong request
+      exec = new UnexpectedError(e.getClass().getSimpleName());
+    }
+    if (exec instanceof ConnectionHandoff takeOver) {
+      handoff = takeOver;
+      return;
+    }
+    exec.encode(replies);
+  }
+
+  /**
+   * Sends the replies so far, parks until {@code blocked} can go on, then sends its reply. Meanwhile a
+   * second thread reads the socket, so a client closing is noticed and its wait dropped before it takes
+   * anything, and commands pipelined after the blocking one are kept for later.
+   */
+  private void await(BlockedReply blocked) throws IOException {
+    try {
+      replies.writeTo(outputStream);
+    } catch (IOException e) {
+      blocked.cancel();
+      throw e;
+    }
+
+    Socket socket = client.getSocket();
+    int timeout = socket.getSoTimeout();
+    socket.setSoTimeout(WATCH_POLL_MILLIS);
+    AtomicBoolean done = new AtomicBoolean();
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    Thread watcher = Thread.ofVirtual().name("blocked-watch-" + processId).start(() -> watch(done, closed));
+    try {
+      RespData reply = blocked;
+      while (reply instanceof BlockedReply waiting) {
+        CompletableFuture<Void> wake = new CompletableFuture<>();
+        waiting.onReady(() -> wake.complete(null));
+        closed.thenRun(() -> wake.complete(null));
+        wake.join();
+        if (closed.isDone()) {
+          waiting.cancel();
+          disconnected = true;
+          return;
+        }
+        reply = waiting.resume();
+      }
+      //before stopping the watcher, which may take up to a poll
+      reply.encode(replies);
+      replies.writeTo(outputStream);
+    } finally {
+      done.set(true);
+      try {
+        watcher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (!socket.isClosed()) socket.setSoTimeout(timeout);
+    }
+  }
+
+  /**
+   * Reads the socket into the parser until {@code done}, completing {@code closed} at end of stream or
+   * on an I/O error. The read times out every {@value #WATCH_POLL_MILLIS} ms to look at {@code done}.
+   */
+  private void watch(AtomicBoolean done, CompletableFuture<Void> closed) {
+    try {
+      while (!done.get()) {
+        try {
+          if (parser.readFrom(input) == -1) {
+            closed.complete(null);
+            return;
+          }
+        } catch (SocketTimeoutException e) {
+          //nothing came, look at done again
+        }
+      }
+    } catch (IOException e) {
+      closed.complete(null);
     }
   }
 
   @Override
   public void close() throws Exception {
     logger.info(String.format("Closing process - Process ID: %s, Client ID: %s", processId, client.getClientId()));
-    getInput().close();
     getOutput().close();
+    getInput().close();
+    client.getSocket().close();
   }
 }
@@ -0,0 +1,24 @@
+package build.your.own.tcp;
+
+import java.util.Locale;
+
+/**
+ * How the server front end maps connections onto threads, selected with {@code --server-mode}.
+ */
+public enum ServerMode {
+  /** One platform thread per connection, blocking socket I/O (default). */
+  THREAD,
+  /** One virtual thread per connection running {@link Process} directly, blocking socket I/O. */
+  VIRTUAL,
+  /** A fixed set of selector-based reactor threads, see {@link build.your.own.tcp.nio.EventLoopServer}. */
+  NIO;
+
+  public static ServerMode fromConfig(String value) {
+    if (value == null) return THREAD;
+    try {
+      return ServerMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown server-mode " + value);
+    }
+  }
+}
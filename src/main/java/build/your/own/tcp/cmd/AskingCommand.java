@@ -0,0 +1,31 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.InvalidCommandError;
+
+import java.util.List;
+
+/**
+ * {@code ASKING}: the next command of the connection may touch a slot this node is importing, see
+ * {@link build.your.own.cluster.ClusterManager}.
+ */
+public class AskingCommand implements CommandHandler {
+  private final boolean clusterEnabled;
+
+  public AskingCommand(boolean clusterEnabled) {
+    this.clusterEnabled = clusterEnabled;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    return execute(args, new Session());
+  }
+
+  @Override
+  public RespData execute(List<String> args, Session session) {
+    if (!clusterEnabled) return new InvalidCommandError("This instance has cluster support disabled");
+    session.setAsking();
+    return RESP.OK;
+  }
+}
@@ -0,0 +1,37 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.logger.Logger;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.resp.RespData;
+import build.your.own.resp.SimpleString;
+import build.your.own.resp.error.InProgressError;
+import build.your.own.resp.error.InvalidCommandError;
+
+import java.util.List;
+
+/**
+ * Starts a background rewrite of the append only file, see {@link AppendOnlyFile}.
+ */
+public class BgRewriteAofCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(BgRewriteAofCommand.class);
+  private static final SimpleString STARTED = new SimpleString("Background append only file rewriting started");
+
+  //null when the AOF is off
+  private final AppendOnlyFile appendOnlyFile;
+
+  public BgRewriteAofCommand(AppendOnlyFile appendOnlyFile) {
+    this.appendOnlyFile = appendOnlyFile;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    if (appendOnlyFile == null) {
+      return new InvalidCommandError("append only file is disabled, start with --appendonly yes");
+    }
+    if (!appendOnlyFile.triggerRewrite()) {
+      return new InProgressError("Background append only file rewriting already in progress");
+    }
+    logger.info("Background append only file rewrite requested");
+    return STARTED;
+  }
+}
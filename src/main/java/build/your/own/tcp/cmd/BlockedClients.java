@@ -0,0 +1,127 @@
+package build.your.own.tcp.cmd;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clients blocked on keys by {@code BLPOP} / {@code BRPOP}, queued per key in the order they blocked.
+ *
+ * <p>A push wakes the first waiter of its key by completing its future; nothing polls and no thread waits
+ * per client, a waiter is a few objects and its timeout a task of the JDK's shared delay scheduler. Only
+ * one waiter per key is awake at a time: it pops on its own thread, then {@link #release}s the key and
+ * wakes the next one if elements are left, so clients are served in the order they blocked. One that
+ * finds the element gone blocks again with its old ticket and keeps its place in line.
+ */
+public class BlockedClients {
+  private final ConcurrentHashMap<String, Line> waiting = new ConcurrentHashMap<>();
+  private final AtomicLong tickets = new AtomicLong();
+
+  /**
+   * One client blocked on one or more keys, in the line of each. Completes with the key it was woken for,
+   * or {@code null} on timeout or cancellation, whichever comes first.
+   */
+  static final class Waiter {
+    final List<String> keys;
+    final long ticket;
+    final CompletableFuture<String> woken = new CompletableFuture<>();
+
+    private Waiter(List<String> keys, long ticket) {
+      this.keys = keys;
+      this.ticket = ticket;
+    }
+  }
+
+  //the waiters of one key by ticket, only touched inside the map's compute functions
+  private static final class Line {
+    private final TreeMap<Long, Waiter> waiters = new TreeMap<>();
+    //a woken waiter has yet to release the key
+    private boolean serving;
+
+    private boolean isIdle() {
+      return waiters.isEmpty() && !serving;
+    }
+  }
+
+  /**
+   * @return whether clients are blocked on {@code key}, which a new client then lines up behind
+   */
+  boolean isBlocked(String key) {
+    return waiting.containsKey(key);
+  }
+
+  /**
+   * Lines a waiter up on every key.
+   *
+   * @param ticket  the place in line of a client blocking again, {@code -1} to join at the end
+   * @param timeout milliseconds until the waiter completes {@code null}, {@code 0} for never
+   */
+  Waiter block(List<String> keys, long ticket, long timeout) {
+    Waiter waiter = new Waiter(keys, ticket != -1 ? ticket : tickets.getAndIncrement());
+    for (String key : keys) {
+      waiting.compute(key, (k, line) -> {
+        if (line == null) line = new Line();
+        line.waiters.put(waiter.ticket, waiter);
+        return line;
+      });
+    }
+    if (timeout > 0) waiter.woken.completeOnTimeout(null, timeout, TimeUnit.MILLISECONDS);
+    return waiter;
+  }
+
+  /**
+   * Takes a completed waiter out of the lines it is still in.
+   */
+  void unblock(Waiter waiter) {
+    for (String key : waiter.keys) {
+      waiting.computeIfPresent(key, (k, line) -> {
+        line.waiters.remove(waiter.ticket, waiter);
+        return line.isIdle() ? null : line;
+      });
+    }
+  }
+
+  /**
+   * Drops a waiter whose client went away. If it was woken meanwhile the key is released and the next
+   * waiter woken, the element may still be there.
+   */
+  void cancel(Waiter waiter) {
+    String wokenBy = waiter.woken.complete(null) ? null : waiter.woken.join();
+    unblock(waiter);
+    if (wokenBy != null) {
+      release(wokenBy);
+      signal(wokenBy);
+    }
+  }
+
+  /**
+   * Wakes the first client waiting on {@code key}, unless one woken before has not released it yet.
+   * Waiters already completed through another key or their timeout are dropped on the way.
+   */
+  void signal(String key) {
+    waiting.computeIfPresent(key, (k, line) -> {
+      Iterator<Waiter> waiters = line.waiters.values().iterator();
+      while (!line.serving && waiters.hasNext()) {
+        Waiter waiter = waiters.next();
+        waiters.remove();
+        line.serving = waiter.woken.complete(key);
+      }
+      return line.isIdle() ? null : line;
+    });
+  }
+
+  /**
+   * Ends the turn of the waiter woken for {@code key}; the caller then {@link #signal}s if elements are
+   * left.
+   */
+  void release(String key) {
+    waiting.computeIfPresent(key, (k, line) -> {
+      line.serving = false;
+      return line.isIdle() ? null : line;
+    });
+  }
+}
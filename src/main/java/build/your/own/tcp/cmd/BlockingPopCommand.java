@@ -0,0 +1,120 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.logger.Logger;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.Error;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.tcp.BlockedReply;
+
+import java.util.List;
+
+/**
+ * {@code BLPOP key [key ...] timeout} and {@code BRPOP key [key ...] timeout}: pops from the first of the
+ * keys holding a non empty list and replies the key and the element. If none does the client blocks, see
+ * {@link BlockedClients}, until a push to one of them or {@code timeout} seconds, {@code 0} meaning
+ * forever, then replies a null array. Lists other clients are blocked on are left to them.
+ *
+ * <p>Every pop is an {@code LPOP} / {@code RPOP} dispatched through the registry, so it is ordered after
+ * the push it takes from and passed on to the AOF and replicas as such; the blocking command itself
+ * writes nothing.
+ */
+public class BlockingPopCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(BlockingPopCommand.class);
+
+  private final CommandRegistry commandRegistry;
+  private final BlockedClients blockedClients;
+  private final String name;
+  private final String pop;
+
+  public BlockingPopCommand(CommandRegistry commandRegistry, BlockedClients blockedClients, boolean atHead) {
+    this.commandRegistry = commandRegistry;
+    this.blockedClients = blockedClients;
+    this.name = atHead ? "BLPOP" : "BRPOP";
+    this.pop = atHead ? "LPOP" : "RPOP";
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing %s command with args: %s", name, args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for " + name);
+    }
+    double timeout;
+    try {
+      timeout = Double.parseDouble(args.getLast());
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("timeout is not a float or out of range");
+    }
+    if (Double.isNaN(timeout) || Double.isInfinite(timeout)) {
+      return new IllegalArgumentError("timeout is not a float or out of range");
+    }
+    if (timeout < 0) return new IllegalArgumentError("timeout is negative");
+
+    List<String> keys = List.copyOf(args.subList(0, args.size() - 1));
+    for (String key : keys) {
+      //lists clients wait on are theirs first
+      if (blockedClients.isBlocked(key)) continue;
+      RespData popped = pop(key);
+      if (popped != null) return popped;
+    }
+    //at least a millisecond, 0 is forever
+    long deadline = timeout == 0 ? 0 : System.currentTimeMillis() + Math.max(1, (long) (timeout * 1000));
+    return block(keys, -1, deadline);
+  }
+
+  @Override
+  public List<String> keys(List<String> args) {
+    return args.isEmpty() ? List.of() : args.subList(0, args.size() - 1);
+  }
+
+  /**
+   * @return the key and the element popped from its list, an error such as {@code WRONGTYPE},
+   * {@code null} if the list is empty
+   */
+  private RespData pop(String key) {
+    RespData element = commandRegistry.dispatch(List.of(pop, key));
+    if (element instanceof Error) return element;
+    if (element == RESP.NULL_BULK) return null;
+    Arrays<RespData> reply = new Arrays<>();
+    reply.add(new BulkString(key));
+    reply.add(element);
+    return reply;
+  }
+
+  private RespData block(List<String> keys, long ticket, long deadline) {
+    long timeout = 0;
+    if (deadline != 0) {
+      timeout = deadline - System.currentTimeMillis();
+      if (timeout <= 0) return RESP.NULL_ARRAY;
+    }
+    BlockedClients.Waiter waiter = blockedClients.block(keys, ticket, timeout);
+    //a push since the lists were found empty had no one to wake
+    for (String key : keys) {
+      if (hasElements(key)) blockedClients.signal(key);
+    }
+    return new BlockedReply(waiter.woken, () -> resume(waiter, deadline), () -> blockedClients.cancel(waiter));
+  }
+
+  private RespData resume(BlockedClients.Waiter waiter, long deadline) {
+    blockedClients.unblock(waiter);
+    String wokenBy = waiter.woken.join();
+    if (wokenBy == null) return RESP.NULL_ARRAY;
+    try {
+      RespData popped = pop(wokenBy);
+      if (popped != null) return popped;
+      //another client got there first, wait on in the same place
+      return block(waiter.keys, waiter.ticket, deadline);
+    } finally {
+      blockedClients.release(wokenBy);
+      if (hasElements(wokenBy)) blockedClients.signal(wokenBy);
+    }
+  }
+
+  private boolean hasElements(String key) {
+    return commandRegistry.dispatch(List.of("LLEN", key)) instanceof RespInteger length && length.value > 0;
+  }
+}
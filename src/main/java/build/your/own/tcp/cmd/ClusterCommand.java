@@ -0,0 +1,121 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.cluster.ClusterManager;
+import build.your.own.cluster.HashSlot;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.InvalidCommandError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code CLUSTER <subcommand>}, see {@link ClusterManager}: {@code INFO}, {@code MYID}, {@code NODES},
+ * {@code SLOTS}, {@code KEYSLOT}, {@code COUNTKEYSINSLOT}, {@code GETKEYSINSLOT}, {@code ADDSLOTS},
+ * {@code ADDSLOTSRANGE}, {@code DELSLOTS}, {@code MEET}, {@code FORGET}, {@code SETSLOT} and
+ * {@code SAVECONFIG}.
+ */
+public class ClusterCommand implements CommandHandler {
+  //null when cluster mode is off
+  private final ClusterManager cluster;
+
+  public ClusterCommand(ClusterManager cluster) {
+    this.cluster = cluster;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    if (cluster == null) return new InvalidCommandError("This instance has cluster support disabled");
+    if (args.isEmpty()) return new IllegalArgumentError("CLUSTER needs a subcommand");
+    List<String> rest = args.subList(1, args.size());
+    try {
+      return switch (args.getFirst().toUpperCase(Locale.ROOT)) {
+        case "INFO" -> cluster.info();
+        case "MYID" -> cluster.myId();
+        case "NODES" -> cluster.nodes();
+        case "SLOTS" -> cluster.slots();
+        case "KEYSLOT" -> rest.size() == 1 ? cluster.keySlot(rest.getFirst()) : arity("KEYSLOT");
+        case "COUNTKEYSINSLOT" -> rest.size() == 1 ? cluster.countKeysInSlot(slot(rest.getFirst())) : arity("COUNTKEYSINSLOT");
+        case "GETKEYSINSLOT" -> rest.size() == 2
+            ? cluster.getKeysInSlot(slot(rest.get(0)), count(rest.get(1)))
+            : arity("GETKEYSINSLOT");
+        case "ADDSLOTS" -> rest.isEmpty() ? arity("ADDSLOTS") : cluster.addSlots(slots(rest));
+        case "ADDSLOTSRANGE" -> rest.isEmpty() || rest.size() % 2 != 0 ? arity("ADDSLOTSRANGE") : cluster.addSlots(ranges(rest));
+        case "DELSLOTS" -> rest.isEmpty() ? arity("DELSLOTS") : cluster.delSlots(slots(rest));
+        case "MEET" -> rest.size() == 2 ? cluster.meet(rest.get(0), port(rest.get(1))) : arity("MEET");
+        case "FORGET" -> rest.size() == 1 ? cluster.forget(rest.getFirst()) : arity("FORGET");
+        case "SETSLOT" -> setSlot(rest);
+        case "SAVECONFIG" -> cluster.saveConfig();
+        default -> new InvalidCommandError("unknown CLUSTER subcommand " + args.getFirst());
+      };
+    } catch (IllegalArgumentError e) {
+      return e;
+    }
+  }
+
+  private RespData setSlot(List<String> args) throws IllegalArgumentError {
+    if (args.size() < 2) return arity("SETSLOT");
+    String action = args.get(1).toUpperCase(Locale.ROOT);
+    boolean needsNode = !action.equals("STABLE");
+    if (args.size() != (needsNode ? 3 : 2)) return arity("SETSLOT");
+    return cluster.setSlot(slot(args.get(0)), action, needsNode ? args.get(2) : null);
+  }
+
+  private static List<Integer> slots(List<String> args) throws IllegalArgumentError {
+    List<Integer> slots = new ArrayList<>(args.size());
+    for (String arg : args) {
+      int slot = slot(arg);
+      if (slots.contains(slot)) throw new IllegalArgumentError("Slot " + slot + " specified multiple times");
+      slots.add(slot);
+    }
+    return slots;
+  }
+
+  private static List<Integer> ranges(List<String> args) throws IllegalArgumentError {
+    List<Integer> slots = new ArrayList<>();
+    for (int i = 0; i < args.size(); i += 2) {
+      int start = slot(args.get(i));
+      int end = slot(args.get(i + 1));
+      if (start > end) throw new IllegalArgumentError("start slot number " + start + " is greater than end slot number " + end);
+      for (int slot = start; slot <= end; slot++) {
+        slots.add(slot);
+      }
+    }
+    return slots;
+  }
+
+  private static int slot(String arg) throws IllegalArgumentError {
+    try {
+      int slot = Integer.parseInt(arg);
+      if (slot >= 0 && slot < HashSlot.SLOTS) return slot;
+    } catch (NumberFormatException ignored) {
+      //fall through to the error below
+    }
+    throw new IllegalArgumentError("Invalid or out of range slot");
+  }
+
+  private static int count(String arg) throws IllegalArgumentError {
+    try {
+      int count = Integer.parseInt(arg);
+      if (count >= 0) return count;
+    } catch (NumberFormatException ignored) {
+      //fall through to the error below
+    }
+    throw new IllegalArgumentError("Invalid number of keys");
+  }
+
+  private static int port(String arg) throws IllegalArgumentError {
+    try {
+      int port = Integer.parseInt(arg);
+      if (port > 0 && port <= 65535) return port;
+    } catch (NumberFormatException ignored) {
+      //fall through to the error below
+    }
+    throw new IllegalArgumentError("Invalid node address specified");
+  }
+
+  private static RespData arity(String subcommand) {
+    return new IllegalArgumentError("wrong number of arguments for CLUSTER " + subcommand);
+  }
+}
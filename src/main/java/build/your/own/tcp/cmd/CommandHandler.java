@@ -15,4 +15,53 @@ public interface CommandHandler {
    * @return what needs to be printed to the outputStream
    */
   public RespData execute(List<String> args);
+
+  /**
+   * {@link #execute(List)} for commands that need the state of the client's connection.
+   */
+  default RespData execute(List<String> args, Session session) {
+    return execute(args);
+  }
+
+  /**
+   * @return whether the command modifies the keyspace, so it is handed to the {@link WriteListener}s
+   */
+  default boolean isWrite() {
+    return false;
+  }
+
+  /**
+   * @return whether the command only touches the key in its first argument, so it may run on the thread
+   * owning that key, see {@link build.your.own.database.Storage#execute}
+   */
+  default boolean isSingleKey() {
+    return false;
+  }
+
+  /**
+   * @param args arguments for the command
+   * @return the keys the command touches, which must all be served by this node in cluster mode
+   */
+  default List<String> keys(List<String> args) {
+    return isSingleKey() && !args.isEmpty() ? args.subList(0, 1) : List.of();
+  }
+
+  /**
+   * @param command the full command as received, name first
+   * @return the form passed to the {@link WriteListener}s, with relative times made absolute so a
+   * replay gives the same result, {@code null} if the command changed nothing worth passing on
+   */
+  default List<String> propagated(List<String> command) {
+    return command;
+  }
+
+  /**
+   * {@link #propagated(List)} for commands whose replay form depends on their result, e.g. an increment
+   * passed on as the value it set.
+   *
+   * @param reply what {@link #execute} returned, never an error
+   */
+  default List<String> propagated(List<String> command, RespData reply) {
+    return propagated(command);
+  }
 }
@@ -1,19 +1,55 @@
 package build.your.own.tcp.cmd;
 
+import build.your.own.cluster.ClusterManager;
 import build.your.own.configurations.SystemConfig;
+import build.your.own.database.ByteKey;
+import build.your.own.database.Storage;
 import build.your.own.logger.Logger;
+import build.your.own.persist.AppendOnlyFile;
 import build.your.own.persist.SerializeProtocol;
+import build.your.own.persist.Snapshot;
+import build.your.own.replication.ReplicationManager;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.Error;
+import build.your.own.resp.error.InvalidCommandError;
+import build.your.own.resp.error.ReadOnlyError;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 public class CommandRegistry {
   private final Logger logger = Logger.getInstance(CommandRegistry.class);
   public record CommandMatchResult(CommandHandler cmd, List<String> args){}
 
+  private static final int WRITE_LOCK_STRIPES = 256;
+
   private final Map<String, CommandHandler> registry = new HashMap<>();
+  private final BlockedClients blockedClients = new BlockedClients();
+  private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+  //orders execution and propagation of writes to the same key, only taken while someone listens
+  private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+  //set on a replica, only the primary's stream may write
+  private volatile boolean readOnly;
+  private final Storage storage;
+  //null unless --cluster-enabled yes
+  private final ClusterManager cluster;
 
-  public CommandRegistry(SystemConfig systemConfig, SerializeProtocol serializeProtocol) {
+  /**
+   * @param appendOnlyFile the AOF, {@code null} unless {@code --appendonly yes}
+   * @param cluster        {@code null} unless {@code --cluster-enabled yes}
+   */
+  public CommandRegistry(SystemConfig systemConfig, SerializeProtocol serializeProtocol, Snapshot snapshot,
+                         AppendOnlyFile appendOnlyFile, ReplicationManager replication, ClusterManager cluster) {
 
+    this.storage = serializeProtocol.getInMemoryMap().getStorage();
+    this.cluster = cluster;
+    for (int i = 0; i < writeLocks.length; i++) {
+      writeLocks[i] = new ReentrantLock();
+    }
+    serializeProtocol.getInMemoryMap().setWriteBarrier(this::pauseWrites);
+    serializeProtocol.getInMemoryMap().setRemovalBarrier(this::propagateRemoval);
     logger.info("Initializing CommandRegistry with default commands");
     register("PING", new PingCommand());
     register("ECHO", new EchoCommand());
@@ -21,6 +57,46 @@ public class CommandRegistry {
     register("GET", new GetCommand(serializeProtocol));
     register("CONFIG", new ConfigCommand(systemConfig));
     register("KEYS", new KeysCommand(serializeProtocol));
+    register("SCAN", new ScanCommand(serializeProtocol));
+    register("INFO", new InfoCommand(serializeProtocol, snapshot, appendOnlyFile, replication, cluster != null));
+    register("BGREWRITEAOF", new BgRewriteAofCommand(appendOnlyFile));
+    register("PSYNC", new PsyncCommand(replication));
+    register("REPLCONF", new ReplconfCommand());
+    register("DEL", new DelCommand(serializeProtocol));
+    register("CLUSTER", new ClusterCommand(cluster));
+    register("ASKING", new AskingCommand(cluster != null));
+    register("MIGRATE", new MigrateCommand(serializeProtocol, this));
+    register("TYPE", new TypeCommand(serializeProtocol));
+    register("OBJECT", new ObjectCommand(serializeProtocol));
+    register("HSET", new HSetCommand(serializeProtocol));
+    register("HGET", new HGetCommand(serializeProtocol));
+    register("HMGET", new HMGetCommand(serializeProtocol));
+    register("HDEL", new HDelCommand(serializeProtocol));
+    register("HINCRBY", new HIncrByCommand(serializeProtocol));
+    register("HGETALL", new HGetAllCommand(serializeProtocol));
+    register("LPUSH", new PushCommand(serializeProtocol, blockedClients, true));
+    register("RPUSH", new PushCommand(serializeProtocol, blockedClients, false));
+    register("LPOP", new PopCommand(serializeProtocol, true));
+    register("RPOP", new PopCommand(serializeProtocol, false));
+    register("LRANGE", new LRangeCommand(serializeProtocol));
+    register("LLEN", new LLenCommand(serializeProtocol));
+    register("BLPOP", new BlockingPopCommand(this, blockedClients, true));
+    register("BRPOP", new BlockingPopCommand(this, blockedClients, false));
+    register("ZADD", new ZAddCommand(serializeProtocol));
+    register("ZREM", new ZRemCommand(serializeProtocol));
+    register("ZSCORE", new ZScoreCommand(serializeProtocol));
+    register("ZRANK", new ZRankCommand(serializeProtocol));
+    register("ZRANGE", new ZRangeCommand(serializeProtocol));
+    register("ZRANGEBYSCORE", new ZRangeByScoreCommand(serializeProtocol));
+    register("ZINCRBY", new ZIncrByCommand(serializeProtocol));
+    register("SADD", new SAddCommand(serializeProtocol));
+    register("SREM", new SRemCommand(serializeProtocol));
+    register("SISMEMBER", new SIsMemberCommand(serializeProtocol));
+    register("SCARD", new SCardCommand(serializeProtocol));
+    register("SMEMBERS", new SMembersCommand(serializeProtocol));
+    register("SINTER", new SetAlgebraCommand(serializeProtocol, SetAlgebraCommand.Operation.INTER));
+    register("SUNION", new SetAlgebraCommand(serializeProtocol, SetAlgebraCommand.Operation.UNION));
+    register("SDIFF", new SetAlgebraCommand(serializeProtocol, SetAlgebraCommand.Operation.DIFF));
     logger.info("CommandRegistry initialization complete with " + registry.size() + " commands");
   }
 
@@ -29,6 +105,64 @@ public class CommandRegistry {
     this.registry.put(cmd, handler);
   }
 
+  /**
+   * Registers a listener for successful writes, e.g. the AOF. Writes dispatched before the call are not seen.
+   */
+  public void addWriteListener(WriteListener listener){
+    this.writeListeners.add(listener);
+  }
+
+  /**
+   * Rejects writes from clients with {@code -READONLY}, see {@link #dispatchReplicated(List)}.
+   */
+  public void setReadOnly(boolean readOnly){
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Runs {@code action} while no write command is between its execution and its propagation to the
+   * {@link WriteListener}s, see {@link build.your.own.database.DbMap#openSnapshot(Runnable)}. Writes
+   * started meanwhile wait.
+   */
+  private void pauseWrites(Runnable action){
+    for (ReentrantLock lock : writeLocks) {
+      lock.lock();
+    }
+    try {
+      action.run();
+    } finally {
+      for (int i = writeLocks.length - 1; i >= 0; i--) {
+        writeLocks[i].unlock();
+      }
+    }
+  }
+
+  /**
+   * Runs an eviction or an active expiry of {@code key} under its write lock and passes it on to the
+   * {@link WriteListener}s as a {@code DEL}, so replicas and the AOF drop the key too. An eviction runs
+   * in a write holding its own locks, maybe on a shard thread, and does not {@code wait}: a victim
+   * locked by another writer is left alone.
+   */
+  private boolean propagateRemoval(ByteKey key, boolean wait, BooleanSupplier removal){
+    if(writeListeners.isEmpty()) return removal.getAsBoolean();
+    ReentrantLock lock = writeLocks[writeStripe(key.toString())];
+    if(wait){
+      lock.lock();
+    } else if(!lock.tryLock()){
+      return false;
+    }
+    try {
+      if(!removal.getAsBoolean()) return false;
+      List<String> command = List.of("DEL", key.toString());
+      for(WriteListener listener : writeListeners){
+        listener.onWrite(command);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   public CommandHandler getHandler(String cmd){
     CommandHandler handler = this.registry.get(cmd);
     if (handler == null) {
@@ -37,22 +171,125 @@ public class CommandRegistry {
     return handler;
   }
 
+  /**
+   * Resolves and executes a single decoded command, shared by every server front end.
+   *
+   * @param parts command name followed by its arguments
+   * @return the reply, an {@link InvalidCommandError} if no command matched; a client's command may also
+   * return a {@link build.your.own.tcp.ConnectionHandoff} or a {@link build.your.own.tcp.BlockedReply}
+   */
+  public RespData dispatch(List<String> parts){
+    return dispatch(parts, new Session(), false);
+  }
+
+  /**
+   * {@link #dispatch(List)} for a client connection keeping state between its commands.
+   */
+  public RespData dispatch(List<String> parts, Session session){
+    return dispatch(parts, session, false);
+  }
+
+  /**
+   * {@link #dispatch(List)} for a command of the primary's replication stream, which may write on a read
+   * only replica and is never redirected to another cluster node. Also for a command issued on behalf of
+   * one already let through, e.g. the {@code DEL} finishing a {@code MIGRATE}.
+   */
+  public RespData dispatchReplicated(List<String> parts){
+    return dispatch(parts, new Session(), true);
+  }
+
+  private RespData dispatch(List<String> parts, Session session, boolean replicated){
+    CommandMatchResult cmdMatch = commandMatchResult(parts);
+    if(cmdMatch == null) {
+      return new InvalidCommandError("command not found, everyone needs help at some point");
+    }
+    CommandHandler handler = cmdMatch.cmd();
+    boolean asking = session.takeAsking();
+    if(readOnly && !replicated && handler.isWrite()){
+      return new ReadOnlyError("You can't write against a read only replica.");
+    }
+    if(cluster != null && !replicated){
+      RespData redirect = cluster.redirect(handler.keys(cmdMatch.args()), asking);
+      if(redirect != null) return redirect;
+    }
+    if(!handler.isWrite() || writeListeners.isEmpty()){
+      return execute(handler, cmdMatch.args(), session);
+    }
+
+    RespData reply;
+    int[] stripes = writeStripes(handler.keys(cmdMatch.args()));
+    for(int stripe : stripes){
+      writeLocks[stripe].lock();
+    }
+    try {
+      //taken here, not on the shard: a shard thread never waits for anything but its own queue
+      reply = execute(handler, cmdMatch.args(), session);
+      List<String> propagated = reply instanceof Error ? null : handler.propagated(parts, reply);
+      if(propagated != null){
+        for(WriteListener listener : writeListeners){
+          listener.onWrite(propagated);
+        }
+      }
+    } finally {
+      for(int i = stripes.length - 1; i >= 0; i--){
+        writeLocks[stripes[i]].unlock();
+      }
+    }
+    for(WriteListener listener : writeListeners){
+      listener.beforeReply();
+    }
+    return reply;
+  }
+
+  /**
+   * @return the write locks of {@code keys}, distinct and ascending, the order every writer takes them in
+   */
+  private static int[] writeStripes(List<String> keys){
+    return keys.stream()
+        .mapToInt(CommandRegistry::writeStripe)
+        .distinct()
+        .sorted()
+        .toArray();
+  }
+
+  private static int writeStripe(String key){
+    return Math.floorMod(key.hashCode(), WRITE_LOCK_STRIPES);
+  }
+
+  /**
+   * Runs a single key command on the thread owning its key when the keyspace is sharded, any other one
+   * on the calling thread, which then reaches shards through their queues.
+   */
+  private RespData execute(CommandHandler handler, List<String> args, Session session){
+    if(!handler.isSingleKey() || args.isEmpty()) return handler.execute(args, session);
+    return storage.execute(ByteKey.of(args.getFirst()), () -> handler.execute(args, session));
+  }
+
   public CommandMatchResult commandMatchResult(String cmd){
-    String[] parts = cmd.trim().split(" ");
-    logger.debug(String.format("Attempting to match command: '%s'", cmd));
+    return commandMatchResult(Arrays.asList(cmd.trim().split(" ")));
+  }
+
+  public CommandMatchResult commandMatchResult(List<String> parts){
+    if(parts.isEmpty()) return null;
+
+    //Fast path, every registered command is a single word: one map lookup and no joined strings
+    CommandHandler handler = registry.get(parts.getFirst().toUpperCase(Locale.ROOT));
+    if(handler != null){
+      return new CommandMatchResult(handler, parts.subList(1, parts.size()));
+    }
 
-    for(int i = parts.length - 1; i >= 0; i--){
+    for(int i = parts.size() - 1; i >= 1; i--){
       //Reverse check for command identification o(n^2) - considering no collisions
       //Trie is a better and scalable solution as the application grows in terms of users, sessions and commands - AUTO complete intuition solution to match the longest prefix
-      String maybeCmd = String.join(" ", Arrays.copyOfRange(parts, 0, i+1)).toUpperCase();
+      String maybeCmd = String.join(" ", parts.subList(0, i+1)).toUpperCase(Locale.ROOT);
       if(registry.containsKey(maybeCmd)){
-        List<String> args = new ArrayList<>(Arrays.asList(parts).subList(i+1, parts.length));
-        logger.info(String.format("Command matched: '%s' with args: %s", maybeCmd, args));
+        List<String> args = parts.subList(i+1, parts.size());
+        logger.debug(String.format("Command matched: '%s' with args: %s", maybeCmd, args));
         return new CommandMatchResult(this.registry.get(maybeCmd), args);
       }
     }
 
-    logger.warn(String.format("No matching command found for input: '%s'", cmd));
+    logger.warn(String.format("No matching command found for input: '%s'", parts.getFirst()));
     return null;
   }
 }
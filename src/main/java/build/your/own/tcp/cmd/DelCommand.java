@@ -0,0 +1,46 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+
+import java.util.List;
+
+/**
+ * {@code DEL key [key ...]}: removes the keys, replies how many existed.
+ */
+public class DelCommand implements CommandHandler {
+  private final SerializeProtocol serializeProtocol;
+
+  public DelCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    if (args.isEmpty()) {
+      return new IllegalArgumentError("wrong number of arguments for DEL");
+    }
+    DbMap map = serializeProtocol.getInMemoryMap();
+    long deleted = 0;
+    for (String key : args) {
+      ByteKey byteKey = ByteKey.of(key);
+      //exists() drops an expired key on its own, it does not count
+      if (map.exists(byteKey) && map.delete(byteKey)) deleted++;
+    }
+    return new RespInteger(deleted);
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public List<String> keys(List<String> args) {
+    return args;
+  }
+}
@@ -2,6 +2,7 @@ package build.your.own.tcp.cmd;
 
 import build.your.own.logger.Logger;
 import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
 import build.your.own.resp.RespData;
 
 import java.util.List;
@@ -18,6 +19,6 @@ public class EchoCommand implements CommandHandler {
     }
 
     logger.warn("ECHO command called without arguments");
-    return new BulkString(null);
+    return RESP.NULL_BULK;
   }
 }
@@ -1,11 +1,14 @@
 package build.your.own.tcp.cmd;
 
-import build.your.own.database.DbMap;
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
 import build.your.own.logger.Logger;
 import build.your.own.persist.SerializeProtocol;
 import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
 import build.your.own.resp.RespData;
 import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
 
 import java.util.List;
 
@@ -29,8 +32,18 @@ public class GetCommand implements CommandHandler {
     }
     
     String key = args.getFirst();
-    String value = serializeProtocol.getInMemoryMap().getValue(key);
+    byte[] value;
+    try {
+      value = serializeProtocol.getInMemoryMap().get(ByteKey.of(key));
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
     logger.debug(String.format("GET operation - Key: '%s', Value found: %s", key, value != null));
-    return new BulkString(value);
+    return value != null ? new BulkString(value) : RESP.NULL_BULK;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
   }
 }
@@ -0,0 +1,61 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HDEL key field [field ...]}: removes fields from the hash at {@code key}, replies how many
+ * existed. Removing the last field removes the key.
+ */
+public class HDelCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HDelCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HDelCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HDEL command with args: %s", args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for HDEL");
+    }
+
+    try {
+      long removed = serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), HashValue.class,
+          null, 0, hash -> {
+            if (hash == null) return 0L;
+            long existed = 0;
+            for (String field : args.subList(1, args.size())) {
+              if (hash.remove(field.getBytes(RESP.CHARSET))) existed++;
+            }
+            return existed;
+          });
+      return new RespInteger(removed);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
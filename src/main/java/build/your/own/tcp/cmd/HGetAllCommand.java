@@ -0,0 +1,56 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HGETALL key}: every field of the hash at {@code key} followed by its value, empty if the key is
+ * missing.
+ */
+public class HGetAllCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HGetAllCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HGetAllCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HGETALL command with args: %s", args));
+    if (args.size() != 1) {
+      return new IllegalArgumentError("wrong number of arguments for HGETALL");
+    }
+
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), HashValue.class, hash -> {
+        Arrays<BulkString> reply = new Arrays<>();
+        if (hash != null) {
+          hash.forEach((field, value) -> {
+            reply.add(new BulkString(field));
+            reply.add(new BulkString(value));
+          });
+        }
+        return reply;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
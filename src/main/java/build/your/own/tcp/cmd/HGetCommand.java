@@ -0,0 +1,49 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HGET key field}: the value of {@code field} in the hash at {@code key}, nil if either is missing.
+ */
+public class HGetCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HGetCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HGetCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HGET command with args: %s", args));
+    if (args.size() != 2) {
+      return new IllegalArgumentError("wrong number of arguments for HGET");
+    }
+
+    byte[] field = args.get(1).getBytes(RESP.CHARSET);
+    try {
+      byte[] value = serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), HashValue.class,
+          hash -> hash != null ? hash.get(field) : null);
+      return value != null ? new BulkString(value) : RESP.NULL_BULK;
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
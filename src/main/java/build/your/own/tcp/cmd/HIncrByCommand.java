@@ -0,0 +1,88 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HINCRBY key field increment}: adds {@code increment} to the integer in {@code field} of the hash
+ * at {@code key}, a missing field or key counting as {@code 0}, replies the new value.
+ */
+public class HIncrByCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HIncrByCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HIncrByCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HINCRBY command with args: %s", args));
+    if (args.size() != 3) {
+      return new IllegalArgumentError("wrong number of arguments for HINCRBY");
+    }
+    long increment;
+    try {
+      increment = Long.parseLong(args.get(2));
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("value is not an integer or out of range");
+    }
+
+    byte[] field = args.get(1).getBytes(RESP.CHARSET);
+    try {
+      return serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), HashValue.class,
+          HashValue::new, field.length + 20, hash -> {
+            byte[] current = hash.get(field);
+            long value;
+            try {
+              value = current != null ? Long.parseLong(new String(current, RESP.CHARSET)) : 0;
+            } catch (NumberFormatException e) {
+              return new IllegalArgumentError("hash value is not an integer");
+            }
+            try {
+              value = Math.addExact(value, increment);
+            } catch (ArithmeticException e) {
+              return new IllegalArgumentError("increment or decrement would overflow");
+            }
+            hash.put(field, Long.toString(value).getBytes(RESP.CHARSET));
+            return new RespInteger(value);
+          });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    } catch (StorageFullException e) {
+      logger.warn("HINCRBY command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+
+  /**
+   * Passed on as the {@code HSET} of the result, a replay then sets the same value.
+   */
+  @Override
+  public List<String> propagated(List<String> command, RespData reply) {
+    return List.of("HSET", command.get(1), command.get(2), String.valueOf(((RespInteger) reply).value));
+  }
+}
@@ -0,0 +1,55 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HMGET key field [field ...]}: the values of the fields in the hash at {@code key}, in order, nil
+ * for each missing one.
+ */
+public class HMGetCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HMGetCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HMGetCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HMGET command with args: %s", args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for HMGET");
+    }
+
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), HashValue.class, hash -> {
+        Arrays<BulkString> values = new Arrays<>();
+        for (String field : args.subList(1, args.size())) {
+          byte[] value = hash != null ? hash.get(field.getBytes(RESP.CHARSET)) : null;
+          values.add(value != null ? new BulkString(value) : RESP.NULL_BULK);
+        }
+        return values;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,69 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.HashValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code HSET key field value [field value ...]}: sets fields of the hash at {@code key}, creating it if
+ * needed, replies how many fields are new.
+ */
+public class HSetCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(HSetCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public HSetCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing HSET command with args: %s", args));
+    if (args.size() < 3 || args.size() % 2 == 0) {
+      return new IllegalArgumentError("wrong number of arguments for HSET");
+    }
+
+    long incoming = 0;
+    for (String arg : args) {
+      incoming += arg.length();
+    }
+    try {
+      long added = serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), HashValue.class,
+          HashValue::new, incoming, hash -> {
+            long created = 0;
+            for (int i = 1; i < args.size(); i += 2) {
+              if (hash.put(args.get(i).getBytes(RESP.CHARSET), args.get(i + 1).getBytes(RESP.CHARSET))) created++;
+            }
+            return created;
+          });
+      return new RespInteger(added);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    } catch (StorageFullException e) {
+      logger.warn("HSET command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -1,29 +1,70 @@
 package build.your.own.tcp.cmd;
 
+import build.your.own.database.ActiveExpiry;
+import build.your.own.database.DbMap;
+import build.your.own.database.Eviction;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.persist.Snapshot;
+import build.your.own.replication.ReplicationManager;
 import build.your.own.resp.BulkString;
 import build.your.own.resp.RespData;
-import build.your.own.resp.Text;
 
 import java.util.List;
+import java.util.Locale;
 
 public class InfoCommand implements CommandHandler{
   private enum InfoArgs{
-    REPLICATION
+    REPLICATION,
+    MEMORY,
+    PERSISTENCE,
+    STATS,
+    CLUSTER
+  }
+
+  private final SerializeProtocol serializeProtocol;
+  private final Snapshot snapshot;
+  //null when the AOF is off
+  private final AppendOnlyFile appendOnlyFile;
+  private final ReplicationManager replication;
+  private final boolean clusterEnabled;
+
+  public InfoCommand(SerializeProtocol serializeProtocol, Snapshot snapshot, AppendOnlyFile appendOnlyFile,
+                     ReplicationManager replication, boolean clusterEnabled) {
+    this.serializeProtocol = serializeProtocol;
+    this.snapshot = snapshot;
+    this.appendOnlyFile = appendOnlyFile;
+    this.replication = replication;
+    this.clusterEnabled = clusterEnabled;
   }
 
   @Override
   public RespData execute(List<String> args) {
     if(args.isEmpty()){
-      throw new IllegalArgumentException("missing argument for INFO");
+      //no section: everything, like redis
+      StringBuilder all = new StringBuilder();
+      for (InfoArgs section : InfoArgs.values()) {
+        all.append(getInfo(section)).append("\r\n");
+      }
+      return new BulkString(all.toString());
     }
 
-    String whichInfo = args.getFirst();
+    String whichInfo = args.getFirst().toLowerCase(Locale.ROOT);
 
     switch (whichInfo){
       case "replication":
         return new BulkString(getInfo(InfoArgs.REPLICATION));
+      case "memory":
+        return new BulkString(getInfo(InfoArgs.MEMORY));
+      case "persistence":
+        return new BulkString(getInfo(InfoArgs.PERSISTENCE));
+      case "stats":
+        return new BulkString(getInfo(InfoArgs.STATS));
+      case "cluster":
+        return new BulkString(getInfo(InfoArgs.CLUSTER));
       default:
-        throw new IllegalArgumentException("Invalid argument for INFO");
+        //unknown sections are empty in redis as well
+        return new BulkString("");
     }
   }
 
@@ -32,12 +73,59 @@ public class InfoCommand implements CommandHandler{
       case REPLICATION -> {
         return getReplicationInfo();
       }
+      case MEMORY -> {
+        return getMemoryInfo();
+      }
+      case PERSISTENCE -> {
+        return getPersistenceInfo();
+      }
+      case STATS -> {
+        return getStatsInfo();
+      }
+      case CLUSTER -> {
+        return "# Cluster\r\ncluster_enabled:" + (clusterEnabled ? 1 : 0) + "\r\n";
+      }
     }
     //unreachable block as will be blocked by caller function
     return null;
   }
 
   private String getReplicationInfo() {
-    return "role:master";
+    return replication.info();
+  }
+
+  private String getMemoryInfo() {
+    DbMap map = serializeProtocol.getInMemoryMap();
+    Eviction eviction = map.getEviction();
+    return "# Memory\r\n"
+        + "used_memory:" + map.getStorage().usedMemory() + "\r\n"
+        + "maxmemory:" + eviction.getMaxMemory() + "\r\n"
+        + "maxmemory_policy:" + eviction.getPolicy().getConfigName() + "\r\n";
+  }
+
+  private String getPersistenceInfo() {
+    return "# Persistence\r\n"
+        + "rdb_changes_since_last_save:" + serializeProtocol.getInMemoryMap().changesSinceSave() + "\r\n"
+        + "rdb_bgsave_in_progress:" + (snapshot.isInFlight() ? 1 : 0) + "\r\n"
+        + "rdb_last_save_time:" + snapshot.lastSaveMillis() / 1000 + "\r\n"
+        + "rdb_last_bgsave_status:" + (snapshot.lastSaveOk() ? "ok" : "err") + "\r\n"
+        + "aof_enabled:" + (appendOnlyFile != null ? 1 : 0) + "\r\n"
+        + (appendOnlyFile == null ? "" : "aof_current_size:" + appendOnlyFile.size() + "\r\n"
+            + "aof_base_size:" + appendOnlyFile.baseSize() + "\r\n"
+            + "aof_rewrite_in_progress:" + (appendOnlyFile.isRewriting() ? 1 : 0) + "\r\n"
+            + "aof_last_bgrewrite_status:" + (appendOnlyFile.lastRewriteOk() ? "ok" : "err") + "\r\n"
+            + "aof_last_write_status:" + (appendOnlyFile.lastWriteOk() ? "ok" : "err") + "\r\n");
+  }
+
+  private String getStatsInfo() {
+    ActiveExpiry expiry = serializeProtocol.getInMemoryMap().getActiveExpiry();
+    return "# Stats\r\n"
+        + "keys:" + serializeProtocol.getInMemoryMap().size() + "\r\n"
+        + "expired_keys:" + expiry.expiredKeys() + "\r\n"
+        + "evicted_keys:" + serializeProtocol.getInMemoryMap().getEviction().evictedKeys() + "\r\n"
+        + "expire_cycles:" + expiry.cycles() + "\r\n"
+        + "expire_cycle_last_expired:" + expiry.lastCycleExpired() + "\r\n"
+        + "expire_cycle_last_time_us:" + expiry.lastCycleMicros() + "\r\n"
+        + "expire_index_pending:" + expiry.pendingKeys() + "\r\n";
   }
 }
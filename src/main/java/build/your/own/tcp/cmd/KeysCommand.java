@@ -1,15 +1,22 @@
 package build.your.own.tcp.cmd;
 
+import build.your.own.database.ByteKey;
 import build.your.own.database.DbMap;
 import build.your.own.logger.Logger;
 import build.your.own.persist.SerializeProtocol;
 import build.your.own.resp.Arrays;
 import build.your.own.resp.BulkString;
 import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.utils.GlobPattern;
 
 import java.util.List;
 import java.util.Map;
 
+/**
+ * {@code KEYS pattern}: every live key matching the glob {@code pattern}, see {@link GlobPattern}. Walks
+ * the whole keyspace in one go, {@link ScanCommand} is the incremental alternative.
+ */
 public class KeysCommand implements CommandHandler{
   private final Logger logger = Logger.getInstance(KeysCommand.class);
 
@@ -22,19 +29,20 @@ public class KeysCommand implements CommandHandler{
   @Override
   public RespData execute(List<String> args) {
     logger.debug(String.format("Executing KEYS command with args: %s", args));
-    if(args.getFirst().equals("*")){
-      logger.debug("Fetching all keys from: inMemoryDB");
-      Arrays<BulkString> arrays = new Arrays<>();
+    if(args.size() != 1){
+      return new IllegalArgumentError("wrong number of arguments for KEYS");
+    }
+    GlobPattern pattern = GlobPattern.compile(args.getFirst());
+    long now = System.currentTimeMillis();
+    Arrays<BulkString> arrays = new Arrays<>();
 
-      serializeProtocol.getInMemoryMap().getEntrySet().forEach(
-              (Map.Entry<String, DbMap.Data> entry) -> {
-                arrays.add(new BulkString(entry.getKey()));
+    serializeProtocol.getInMemoryMap().entries().forEach(
+            (Map.Entry<ByteKey, DbMap.Data> entry) -> {
+              if (!entry.getValue().isExpired(now) && pattern.matches(entry.getKey().bytes())) {
+                arrays.add(new BulkString(entry.getKey().bytes()));
               }
-      );
-      return arrays;
-    }
-    else{
-      return new BulkString("null");
-    }
+            }
+    );
+    return arrays;
   }
 }
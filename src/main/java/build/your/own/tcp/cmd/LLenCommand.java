@@ -0,0 +1,47 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ListValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code LLEN key}: the length of the list at {@code key}, {@code 0} if the key is missing.
+ */
+public class LLenCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(LLenCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public LLenCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing LLEN command with args: %s", args));
+    if (args.size() != 1) {
+      return new IllegalArgumentError("wrong number of arguments for LLEN");
+    }
+
+    try {
+      int length = serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ListValue.class,
+          list -> list != null ? list.size() : 0);
+      return new RespInteger(length);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,64 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ListValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code LRANGE key start stop}: the elements of the list at {@code key} from {@code start} to
+ * {@code stop}, both inclusive. A negative index counts from the tail, {@code -1} being the last element;
+ * indexes out of the list are clamped, empty if the key is missing.
+ */
+public class LRangeCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(LRangeCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public LRangeCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing LRANGE command with args: %s", args));
+    if (args.size() != 3) {
+      return new IllegalArgumentError("wrong number of arguments for LRANGE");
+    }
+    long start;
+    long stop;
+    try {
+      start = Long.parseLong(args.get(1));
+      stop = Long.parseLong(args.get(2));
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("value is not an integer or out of range");
+    }
+
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ListValue.class, list -> {
+        Arrays<BulkString> reply = new Arrays<>();
+        if (list == null) return reply;
+        int size = list.size();
+        long from = Math.max(0, start < 0 ? size + start : start);
+        long to = Math.min(size - 1, stop < 0 ? size + stop : stop);
+        if (from <= to) list.range((int) from, (int) to, element -> reply.add(new BulkString(element)));
+        return reply;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
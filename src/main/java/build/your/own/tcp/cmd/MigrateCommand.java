@@ -0,0 +1,178 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.logger.Logger;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespBuffer;
+import build.your.own.resp.RespData;
+import build.your.own.resp.SimpleString;
+import build.your.own.resp.error.Error;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.IoError;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code MIGRATE host port key|"" destination-db timeout [COPY] [REPLACE] [KEYS key ...]}: moves keys to
+ * another node while a slot is resharded. The keys are sent as {@code ASKING} followed by the command
+ * rebuilding each of them, pipelined on one connection, and removed here once the target accepted all of
+ * them. The target always replaces existing keys, {@code REPLACE} is accepted for compatibility.
+ *
+ * <p>No write lock is held during the transfer: the keys are removed afterwards by a {@code DEL} dispatched
+ * as a command of its own, so it is ordered with other writes to those keys and passed on to replicas and
+ * the AOF as such.
+ */
+public class MigrateCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(MigrateCommand.class);
+  private static final SimpleString NOKEY = new SimpleString("NOKEY");
+
+  private final SerializeProtocol serializeProtocol;
+  private final CommandRegistry commandRegistry;
+
+  public MigrateCommand(SerializeProtocol serializeProtocol, CommandRegistry commandRegistry) {
+    this.serializeProtocol = serializeProtocol;
+    this.commandRegistry = commandRegistry;
+  }
+
+  private record Request(String host, int port, int timeout, boolean copy, List<String> keys) {
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    Request request;
+    try {
+      request = parse(args);
+    } catch (IllegalArgumentError e) {
+      return e;
+    }
+
+    DbMap map = serializeProtocol.getInMemoryMap();
+    long now = System.currentTimeMillis();
+    List<ByteKey> found = new ArrayList<>(request.keys().size());
+    RespBuffer commands = new RespBuffer();
+    int sent = 0;
+    for (String key : request.keys()) {
+      ByteKey byteKey = ByteKey.of(key);
+      DbMap.Data data = map.getStorage().get(byteKey);
+      if (data == null || data.isExpired(now)) continue;
+      found.add(byteKey);
+      for (List<String> command : AppendOnlyFile.rebuildCommands(byteKey, map.detached(byteKey, data))) {
+        commands.putCommand(List.of("ASKING"));
+        commands.putCommand(command);
+        sent++;
+      }
+    }
+    if (found.isEmpty()) return NOKEY;
+
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(request.host(), request.port()), request.timeout());
+      socket.setSoTimeout(request.timeout());
+      commands.writeTo(socket.getOutputStream());
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      //two replies per command, all read so an error for any of them is seen
+      for (int i = 0; i < sent * 2; i++) {
+        String reply = readLine(in);
+        if (reply.startsWith("-")) {
+          logger.warn(String.format("MIGRATE to %s:%d failed: %s", request.host(), request.port(), reply));
+          return new IllegalArgumentError("Target instance replied with error: " + reply.substring(1));
+        }
+      }
+    } catch (IOException e) {
+      logger.warn(String.format("MIGRATE to %s:%d failed: %s", request.host(), request.port(), e.getMessage()));
+      return new IoError("error or timeout connecting to the client");
+    }
+
+    if (!request.copy()) {
+      List<String> del = new ArrayList<>(found.size() + 1);
+      del.add("DEL");
+      for (ByteKey key : found) {
+        del.add(key.toString());
+      }
+      RespData deleted = commandRegistry.dispatchReplicated(del);
+      if (deleted instanceof Error error) return error;
+    }
+    logger.debug(String.format("Migrated %d keys to %s:%d", found.size(), request.host(), request.port()));
+    return RESP.OK;
+  }
+
+  private static Request parse(List<String> args) throws IllegalArgumentError {
+    if (args.size() < 5) throw new IllegalArgumentError("wrong number of arguments for MIGRATE");
+    int port;
+    int timeout;
+    try {
+      port = Integer.parseInt(args.get(1));
+      Integer.parseInt(args.get(3));
+      timeout = Integer.parseInt(args.get(4));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentError("value is not an integer or out of range");
+    }
+    if (port <= 0 || port > 65535) throw new IllegalArgumentError("Invalid target port");
+    //0 would block forever, redis uses a second
+    if (timeout <= 0) timeout = 1000;
+
+    boolean copy = false;
+    List<String> keys = null;
+    for (int i = 5; i < args.size() && keys == null; i++) {
+      switch (args.get(i).toUpperCase(Locale.ROOT)) {
+        case "COPY" -> copy = true;
+        case "REPLACE" -> {
+          //the target always overwrites
+        }
+        case "KEYS" -> {
+          if (!args.get(2).isEmpty()) {
+            throw new IllegalArgumentError("When using MIGRATE KEYS option, the key argument must be set to the empty string");
+          }
+          keys = args.subList(i + 1, args.size());
+        }
+        default -> throw new IllegalArgumentError("syntax error");
+      }
+    }
+    if (keys == null) keys = List.of(args.get(2));
+    if (keys.isEmpty()) throw new IllegalArgumentError("wrong number of arguments for MIGRATE");
+    return new Request(args.get(0), port, timeout, copy, keys);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) throw new EOFException("target closed the connection");
+      line.write(b);
+    }
+    String text = line.toString(RESP.CHARSET);
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  /**
+   * The keys may already be gone to the target, MIGRATE is never redirected.
+   */
+  @Override
+  public List<String> keys(List<String> args) {
+    return List.of();
+  }
+
+  /**
+   * Replicas and the AOF see the keys leave through the {@code DEL} it dispatches.
+   */
+  @Override
+  public List<String> propagated(List<String> command) {
+    return null;
+  }
+}
@@ -0,0 +1,46 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code OBJECT ENCODING key}: how the value of {@code key} is stored, e.g. {@code listpack} or
+ * {@code hashtable} for a hash; strings are always {@code raw}. Nil if the key does not exist.
+ */
+public class ObjectCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ObjectCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ObjectCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing OBJECT command with args: %s", args));
+    if (args.size() != 2) {
+      return new IllegalArgumentError("wrong number of arguments for OBJECT");
+    }
+    if (!"ENCODING".equals(args.getFirst().toUpperCase(Locale.ROOT))) {
+      return new IllegalArgumentError("unknown subcommand, only OBJECT ENCODING is supported");
+    }
+    String encoding = serializeProtocol.getInMemoryMap().inspect(ByteKey.of(args.get(1)), data ->
+        data == null ? null : data.value() == null ? "raw" : data.value().encoding());
+    return encoding != null ? new BulkString(encoding) : RESP.NULL_BULK;
+  }
+
+  //the key is not the first argument, so not isSingleKey(): the map routes the lookup itself
+  @Override
+  public List<String> keys(List<String> args) {
+    return args.size() == 2 ? args.subList(1, 2) : List.of();
+  }
+}
@@ -1,7 +1,7 @@
 package build.your.own.tcp.cmd;
 
 import build.your.own.persist.SerializeProtocol;
-import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
 import build.your.own.resp.RespData;
 import build.your.own.tcp.cmd.CommandHandler;
 import build.your.own.logger.Logger;
@@ -15,6 +15,6 @@ public class PingCommand implements CommandHandler {
   @Override
   public RespData execute(List<String> args) {
     logger.debug("Executing PING command");
-    return new BulkString("PONG");
+    return RESP.PONG;
   }
 }
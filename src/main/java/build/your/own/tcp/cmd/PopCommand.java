@@ -0,0 +1,88 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ListValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code LPOP key [count]} and {@code RPOP key [count]}: removes and replies the element at the head or the
+ * tail of the list at {@code key}, a nil bulk if there is none. With {@code count}, up to that many
+ * elements as an array, a null array if the key is missing.
+ */
+public class PopCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(PopCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+  private final boolean atHead;
+  private final String name;
+
+  public PopCommand(SerializeProtocol serializeProtocol, boolean atHead) {
+    this.serializeProtocol = serializeProtocol;
+    this.atHead = atHead;
+    this.name = atHead ? "LPOP" : "RPOP";
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing %s command with args: %s", name, args));
+    if (args.isEmpty() || args.size() > 2) {
+      return new IllegalArgumentError("wrong number of arguments for " + name);
+    }
+    int count = 1;
+    if (args.size() == 2) {
+      try {
+        count = Integer.parseInt(args.get(1));
+      } catch (NumberFormatException e) {
+        return new IllegalArgumentError("value is not an integer or out of range");
+      }
+      if (count < 0) return new IllegalArgumentError("value is out of range, must be positive");
+    }
+
+    boolean single = args.size() == 1;
+    int popping = count;
+    try {
+      return serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), ListValue.class, null, 0,
+          list -> {
+            if (list == null) return single ? RESP.NULL_BULK : RESP.NULL_ARRAY;
+            if (single) return new BulkString(list.pop(atHead));
+            Arrays<BulkString> popped = new Arrays<>();
+            for (int i = 0; i < popping && !list.isEmpty(); i++) {
+              popped.add(new BulkString(list.pop(atHead)));
+            }
+            return popped;
+          });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+
+  /**
+   * Passed on only if it popped something.
+   */
+  @Override
+  public List<String> propagated(List<String> command, RespData reply) {
+    if (reply == RESP.NULL_BULK || reply == RESP.NULL_ARRAY) return null;
+    if (reply instanceof Arrays<?> popped && popped.data.isEmpty()) return null;
+    return command;
+  }
+}
@@ -0,0 +1,27 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.replication.ReplicationManager;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+
+import java.util.List;
+
+/**
+ * {@code PSYNC <replid> <offset>}, sent by a replica to start or resume replication, see
+ * {@link ReplicationManager}. The connection becomes the replication stream.
+ */
+public class PsyncCommand implements CommandHandler {
+  private final ReplicationManager replication;
+
+  public PsyncCommand(ReplicationManager replication) {
+    this.replication = replication;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    if (args.size() != 2) {
+      return new IllegalArgumentError("PSYNC takes a replication id and an offset");
+    }
+    return replication.psync(args.get(0), args.get(1));
+  }
+}
@@ -0,0 +1,76 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ListValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code LPUSH key element [element ...]} and {@code RPUSH key element [element ...]}: adds the elements,
+ * one after the other, at the head or the tail of the list at {@code key}, creating it if needed, replies
+ * the new length. Wakes the first client blocked on the key, see {@link BlockedClients}.
+ */
+public class PushCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(PushCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+  private final BlockedClients blockedClients;
+  private final boolean atHead;
+  private final String name;
+
+  public PushCommand(SerializeProtocol serializeProtocol, BlockedClients blockedClients, boolean atHead) {
+    this.serializeProtocol = serializeProtocol;
+    this.blockedClients = blockedClients;
+    this.atHead = atHead;
+    this.name = atHead ? "LPUSH" : "RPUSH";
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing %s command with args: %s", name, args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for " + name);
+    }
+
+    long incoming = 0;
+    for (String arg : args) {
+      incoming += arg.length();
+    }
+    try {
+      int length = serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), ListValue.class,
+          ListValue::new, incoming, list -> {
+            for (int i = 1; i < args.size(); i++) {
+              list.push(args.get(i).getBytes(RESP.CHARSET), atHead);
+            }
+            return list.size();
+          });
+      blockedClients.signal(args.getFirst());
+      return new RespInteger(length);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    } catch (StorageFullException e) {
+      logger.warn(name + " command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,19 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+
+import java.util.List;
+
+/**
+ * {@code REPLCONF <option> <value>}, the settings a replica announces during the handshake. Once the
+ * connection is a replication stream they are read by the replication link instead, so here they are
+ * only acknowledged.
+ */
+public class ReplconfCommand implements CommandHandler {
+
+  @Override
+  public RespData execute(List<String> args) {
+    return RESP.OK;
+  }
+}
@@ -0,0 +1,47 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.SetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code SCARD key}: the number of members of the set at {@code key}, {@code 0} if the key is missing.
+ */
+public class SCardCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(SCardCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public SCardCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing SCARD command with args: %s", args));
+    if (args.size() != 1) {
+      return new IllegalArgumentError("wrong number of arguments for SCARD");
+    }
+
+    try {
+      int size = serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), SetValue.class,
+          set -> set != null ? set.size() : 0);
+      return new RespInteger(size);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
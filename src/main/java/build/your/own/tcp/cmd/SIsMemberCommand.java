@@ -0,0 +1,49 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.SetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code SISMEMBER key member}: {@code 1} if {@code member} is in the set at {@code key}, else {@code 0}.
+ */
+public class SIsMemberCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(SIsMemberCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public SIsMemberCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing SISMEMBER command with args: %s", args));
+    if (args.size() != 2) {
+      return new IllegalArgumentError("wrong number of arguments for SISMEMBER");
+    }
+
+    byte[] member = args.get(1).getBytes(RESP.CHARSET);
+    try {
+      boolean found = serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), SetValue.class,
+          set -> set != null && set.contains(member));
+      return new RespInteger(found ? 1 : 0);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,50 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.SetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code SMEMBERS key}: every member of the set at {@code key}, empty if the key is missing.
+ */
+public class SMembersCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(SMembersCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public SMembersCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing SMEMBERS command with args: %s", args));
+    if (args.size() != 1) {
+      return new IllegalArgumentError("wrong number of arguments for SMEMBERS");
+    }
+
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), SetValue.class, set -> {
+        Arrays<BulkString> reply = new Arrays<>();
+        if (set != null) set.forEach(member -> reply.add(new BulkString(member)));
+        return reply;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,61 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.SetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code SREM key member [member ...]}: removes members of the set at {@code key}, replies how many
+ * existed. A set left empty is removed.
+ */
+public class SRemCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(SRemCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public SRemCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing SREM command with args: %s", args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for SREM");
+    }
+
+    try {
+      long removed = serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), SetValue.class,
+          null, 0, set -> {
+            if (set == null) return 0L;
+            long count = 0;
+            for (int i = 1; i < args.size(); i++) {
+              if (set.remove(args.get(i).getBytes(RESP.CHARSET))) count++;
+            }
+            return count;
+          });
+      return new RespInteger(removed);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,78 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.utils.GlobPattern;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code SCAN cursor [MATCH pattern] [COUNT count]}: walks the keyspace a few buckets per call, see
+ * {@link build.your.own.database.ScanCursor}. A scan starts at cursor {@code 0} and is complete when the
+ * reply's cursor is {@code 0} again; keys present the whole time are returned at least once.
+ *
+ * <p>{@code COUNT} (default {@value #DEFAULT_COUNT}) is how many keys to look at, a hint: whole buckets
+ * are returned, and {@code MATCH} filters after the lookup, so a reply may hold fewer keys or none.
+ */
+public class ScanCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ScanCommand.class);
+  private static final int DEFAULT_COUNT = 10;
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ScanCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing SCAN command with args: %s", args));
+    if (args.isEmpty()) {
+      return new IllegalArgumentError("wrong number of arguments for SCAN");
+    }
+
+    long cursor;
+    try {
+      cursor = Long.parseUnsignedLong(args.getFirst());
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("invalid cursor");
+    }
+
+    GlobPattern pattern = null;
+    int count = DEFAULT_COUNT;
+    for (int i = 1; i < args.size(); i += 2) {
+      if (i + 1 == args.size()) return new IllegalArgumentError("syntax error");
+      String option = args.get(i).toUpperCase(Locale.ROOT);
+      switch (option) {
+        case "MATCH" -> pattern = GlobPattern.compile(args.get(i + 1));
+        case "COUNT" -> {
+          try {
+            count = Integer.parseInt(args.get(i + 1));
+          } catch (NumberFormatException e) {
+            return new IllegalArgumentError("value is not an integer or out of range");
+          }
+          if (count < 1) return new IllegalArgumentError("syntax error");
+        }
+        default -> {
+          return new IllegalArgumentError("syntax error");
+        }
+      }
+    }
+
+    GlobPattern match = pattern;
+    Arrays<BulkString> keys = new Arrays<>();
+    long next = serializeProtocol.getInMemoryMap().scan(cursor, count, key -> {
+      if (match == null || match.matches(key.bytes())) keys.add(new BulkString(key.bytes()));
+    });
+
+    Arrays<RespData> reply = new Arrays<>();
+    reply.add(new BulkString(Long.toUnsignedString(next)));
+    reply.add(keys);
+    return reply;
+  }
+}
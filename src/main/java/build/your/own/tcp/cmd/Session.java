@@ -0,0 +1,23 @@
+package build.your.own.tcp.cmd;
+
+/**
+ * State one client connection keeps between its commands, owned by the front end serving it and only
+ * touched from the thread executing that connection's commands.
+ */
+public class Session {
+  //set by ASKING, good for the next command only
+  private boolean asking;
+
+  void setAsking() {
+    asking = true;
+  }
+
+  /**
+   * @return whether the previous command was {@code ASKING}, clearing the flag
+   */
+  boolean takeAsking() {
+    boolean was = asking;
+    asking = false;
+    return was;
+  }
+}
@@ -0,0 +1,142 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.DbMap;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.SetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * {@code SINTER key [key ...]}, {@code SUNION key [key ...]} and {@code SDIFF key [key ...]}: the members
+ * of every set, of any set, or of the first set and none of the others. A missing key is an empty set.
+ *
+ * <p>The sets are read one after the other, each under its own lock. An intersection starts from the
+ * smallest set and checks what is left of it against the others, smallest first, so it costs the size of
+ * the smallest set rather than of the largest. A difference likewise walks whichever is smaller, the
+ * members left or the set they are taken from.
+ */
+public class SetAlgebraCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(SetAlgebraCommand.class);
+
+  public enum Operation {
+    INTER, UNION, DIFF
+  }
+
+  private final SerializeProtocol serializeProtocol;
+  private final Operation operation;
+  private final String name;
+
+  public SetAlgebraCommand(SerializeProtocol serializeProtocol, Operation operation) {
+    this.serializeProtocol = serializeProtocol;
+    this.operation = operation;
+    this.name = "S" + operation.name();
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing %s command with args: %s", name, args));
+    if (args.isEmpty()) {
+      return new IllegalArgumentError("wrong number of arguments for " + name);
+    }
+
+    DbMap map = serializeProtocol.getInMemoryMap();
+    try {
+      //also fails on any key of another type before reading members
+      int[] sizes = new int[args.size()];
+      for (int i = 0; i < args.size(); i++) {
+        sizes[i] = map.read(ByteKey.of(args.get(i)), SetValue.class, set -> set != null ? set.size() : 0);
+      }
+      Collection<ByteKey> members = switch (operation) {
+        case INTER -> intersection(map, args, sizes);
+        case UNION -> union(map, args);
+        case DIFF -> difference(map, args, sizes);
+      };
+
+      Arrays<BulkString> reply = new Arrays<>();
+      for (ByteKey member : members) {
+        reply.add(new BulkString(member.bytes()));
+      }
+      return reply;
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  private static Collection<ByteKey> intersection(DbMap map, List<String> args, int[] sizes) {
+    List<Integer> order = bySize(sizes, 0);
+    if (sizes[order.getFirst()] == 0) return List.of();
+
+    List<ByteKey> members = new ArrayList<>(sizes[order.getFirst()]);
+    read(map, args.get(order.getFirst()), members);
+    for (int i = 1; i < order.size() && !members.isEmpty(); i++) {
+      map.read(ByteKey.of(args.get(order.get(i))), SetValue.class, set -> {
+        if (set == null) members.clear();
+        else members.removeIf(member -> !set.contains(member.bytes()));
+        return null;
+      });
+    }
+    return members;
+  }
+
+  private static Collection<ByteKey> union(DbMap map, List<String> args) {
+    LinkedHashSet<ByteKey> members = new LinkedHashSet<>();
+    for (String key : args) {
+      read(map, key, members);
+    }
+    return members;
+  }
+
+  private static Collection<ByteKey> difference(DbMap map, List<String> args, int[] sizes) {
+    LinkedHashSet<ByteKey> members = new LinkedHashSet<>();
+    read(map, args.getFirst(), members);
+    List<Integer> order = bySize(sizes, 1);
+    for (int i = 0; i < order.size() && !members.isEmpty(); i++) {
+      map.read(ByteKey.of(args.get(order.get(i))), SetValue.class, set -> {
+        if (set == null) return null;
+        if (set.size() < members.size()) {
+          set.forEach(member -> members.remove(new ByteKey(member)));
+        } else {
+          members.removeIf(member -> set.contains(member.bytes()));
+        }
+        return null;
+      });
+    }
+    return members;
+  }
+
+  /**
+   * @return indexes of the keys from {@code from} on, smallest set first
+   */
+  private static List<Integer> bySize(int[] sizes, int from) {
+    List<Integer> order = new ArrayList<>(sizes.length - from);
+    for (int i = from; i < sizes.length; i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparingInt(i -> sizes[i]));
+    return order;
+  }
+
+  private static void read(DbMap map, String key, Collection<ByteKey> into) {
+    map.read(ByteKey.of(key), SetValue.class, set -> {
+      if (set != null) set.forEach(member -> into.add(new ByteKey(member)));
+      return null;
+    });
+  }
+
+  @Override
+  public List<String> keys(List<String> args) {
+    return args;
+  }
+}
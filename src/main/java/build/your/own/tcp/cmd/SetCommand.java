@@ -1,21 +1,22 @@
 package build.your.own.tcp.cmd;
 
 import build.your.own.database.DbMap;
+import build.your.own.database.StorageFullException;
 import build.your.own.logger.Logger;
 import build.your.own.persist.SerializeProtocol;
-import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
 import build.your.own.resp.RespData;
 import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
 import build.your.own.resp.error.UnexpectedError;
 
-import java.io.IOException;
-import java.time.DateTimeException;
-import java.time.LocalDateTime;
 import java.util.List;
 
 public class SetCommand implements CommandHandler {
   private final Logger logger = Logger.getInstance(SetCommand.class);
   private static final String PX_OPTION = "px";
+  //absolute epoch millis, what SET ... px is logged as
+  private static final String PXAT_OPTION = "pxat";
 
   private final SerializeProtocol serializeProtocol;
 
@@ -36,37 +37,55 @@ public class SetCommand implements CommandHandler {
     String value = args.get(1);
 
     try {
-      LocalDateTime expiry = parseExpiry(args);
+      long expiry = parseExpiry(args);
+      //Persistence is picked up by the Snapshot save rules through the map's change counter
       serializeProtocol.getInMemoryMap().putValue(key, value, expiry);
 
-      // Offload serialization to a virtual thread
-      Thread.startVirtualThread(() -> {
-        try {
-          serializeProtocol.saveToFile();
-        } catch (IOException e) {
-          e.printStackTrace();
-          logger.error("Background serialization failed");
-        }
-      });
-
-      logger.debug(String.format("Set key '%s' with%s expiry", key, expiry != null ? "" : "out"));
-      return new BulkString("OK");
+      logger.debug(String.format("Set key '%s' with%s expiry", key, expiry != DbMap.NO_EXPIRY ? "" : "out"));
+      return RESP.OK;
 
     } catch (IllegalArgumentError e) {
       logger.warn("SET command failed due to bad arguments: " + e.getMessage());
       return e;
-    } catch (DateTimeException e) {
-      logger.error("DateTime error: " + e.getMessage());
-      return new IllegalArgumentError("date time exception");
+    } catch (StorageFullException e) {
+      logger.warn("SET command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
     } catch (Exception e) {
       logger.error("Unexpected error in SET command: " + e.getMessage());
       return new UnexpectedError("Unexpected error");
     }
   }
 
-  private LocalDateTime parseExpiry(List<String> args) throws IllegalArgumentError {
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+
+  @Override
+  public List<String> propagated(List<String> command) {
+    //SET key value px <seconds>
+    if (command.size() != 5 || !PX_OPTION.equals(command.get(3))) return command;
+    long expireAt = System.currentTimeMillis() + Long.parseLong(command.get(4)) * 1000L;
+    return List.of(command.get(0), command.get(1), command.get(2), PXAT_OPTION, String.valueOf(expireAt));
+  }
+
+  private long parseExpiry(List<String> args) throws IllegalArgumentError {
+    int pxatIndex = args.indexOf(PXAT_OPTION);
+    if (pxatIndex == 2 && args.size() > 3) {
+      try {
+        return Long.parseLong(args.get(3));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentError("pxat expiry must be a valid number");
+      }
+    }
+
     int expiryIndex = args.indexOf(PX_OPTION);
-    if (expiryIndex == -1) return null;
+    if (expiryIndex == -1) return DbMap.NO_EXPIRY;
 
     // Ensure px is at the right index (e.g., SET key value px 1000)
     if (expiryIndex != 2) {
@@ -80,7 +99,7 @@ public class SetCommand implements CommandHandler {
     String expiryStr = args.get(expiryIndex + 1);
     try {
       int expirySeconds = Integer.parseInt(expiryStr);
-      return LocalDateTime.now().plusSeconds(expirySeconds);
+      return System.currentTimeMillis() + expirySeconds * 1000L;
     } catch (NumberFormatException e) {
       throw new IllegalArgumentError("px expiry must be a valid number");
     }
@@ -0,0 +1,39 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RespData;
+import build.your.own.resp.SimpleString;
+import build.your.own.resp.error.IllegalArgumentError;
+
+import java.util.List;
+
+/**
+ * {@code TYPE key}: {@code string}, {@code hash}, ... or {@code none} if the key does not exist.
+ */
+public class TypeCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(TypeCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public TypeCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing TYPE command with args: %s", args));
+    if (args.size() != 1) {
+      return new IllegalArgumentError("wrong number of arguments for TYPE");
+    }
+    String type = serializeProtocol.getInMemoryMap().inspect(ByteKey.of(args.getFirst()), data ->
+        data == null ? "none" : data.value() == null ? "string" : data.value().type());
+    return new SimpleString(type);
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,22 @@
+package build.your.own.tcp.cmd;
+
+import java.util.List;
+
+/**
+ * Receives every write command the {@link CommandRegistry} executed successfully, as returned by
+ * {@link CommandHandler#propagated(List)}.
+ */
+public interface WriteListener {
+  /**
+   * Called right after the command executed, under the registry's per key ordering lock, so two writes
+   * to the same key arrive in the order they were applied. Must not block.
+   */
+  void onWrite(List<String> command);
+
+  /**
+   * Called once the ordering lock is released and before the client gets its reply, e.g. to wait until
+   * the write is durable.
+   */
+  default void beforeReply() {
+  }
+}
@@ -0,0 +1,154 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code ZADD key [NX|XX] [GT|LT] [CH] [INCR] score member [score member ...]}: sets the scores of members
+ * of the sorted set at {@code key}, creating it if needed, replies how many members are new, or also
+ * changed with {@code CH}.
+ * <ul>
+ *   <li>{@code NX} only adds new members, {@code XX} only updates existing ones;</li>
+ *   <li>{@code GT} / {@code LT} only update a score to a greater / lower one, new members are added;</li>
+ *   <li>{@code INCR} adds {@code score} to the single member's score like {@code ZINCRBY} and replies the
+ *   new score, nil if an option prevented it.</li>
+ * </ul>
+ */
+public class ZAddCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZAddCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZAddCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZADD command with args: %s", args));
+    if (args.size() < 3) {
+      return new IllegalArgumentError("wrong number of arguments for ZADD");
+    }
+
+    boolean nx = false;
+    boolean xx = false;
+    boolean gt = false;
+    boolean lt = false;
+    boolean ch = false;
+    boolean incr = false;
+    int first = 1;
+    options:
+    for (; first < args.size(); first++) {
+      switch (args.get(first).toUpperCase(Locale.ROOT)) {
+        case "NX" -> nx = true;
+        case "XX" -> xx = true;
+        case "GT" -> gt = true;
+        case "LT" -> lt = true;
+        case "CH" -> ch = true;
+        case "INCR" -> incr = true;
+        default -> {
+          //the first score ends the options
+          break options;
+        }
+      }
+    }
+    int pairs = (args.size() - first) / 2;
+    if (pairs == 0 || (args.size() - first) % 2 != 0) return new IllegalArgumentError("syntax error");
+    if (nx && xx) return new IllegalArgumentError("XX and NX options at the same time are not compatible");
+    if ((gt && lt) || ((gt || lt) && nx)) {
+      return new IllegalArgumentError("GT, LT, and/or NX options at the same time are not compatible");
+    }
+    if (incr && pairs > 1) return new IllegalArgumentError("INCR option supports a single increment-element pair");
+
+    double[] scores = new double[pairs];
+    byte[][] members = new byte[pairs][];
+    long incoming = 0;
+    for (int i = 0; i < pairs; i++) {
+      try {
+        scores[i] = ZSetValue.parseScore(args.get(first + 2 * i));
+      } catch (NumberFormatException e) {
+        return new IllegalArgumentError("value is not a valid float");
+      }
+      members[i] = args.get(first + 2 * i + 1).getBytes(RESP.CHARSET);
+      incoming += members[i].length + 8;
+    }
+
+    boolean onlyNew = nx;
+    boolean onlyExisting = xx;
+    boolean greater = gt;
+    boolean lower = lt;
+    boolean changes = ch;
+    boolean increment = incr;
+    try {
+      return serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), ZSetValue.class,
+          onlyExisting ? null : ZSetValue::new, incoming, zset -> {
+            if (zset == null) return increment ? RESP.NULL_BULK : new RespInteger(0);
+            long added = 0;
+            long changed = 0;
+            double result = 0;
+            for (int i = 0; i < pairs; i++) {
+              Double current = zset.score(members[i]);
+              if (current == null ? onlyExisting : onlyNew) {
+                if (increment) return RESP.NULL_BULK;
+                continue;
+              }
+              double score = increment && current != null ? current + scores[i] : scores[i];
+              if (Double.isNaN(score)) return new IllegalArgumentError("resulting score is not a number (NaN)");
+              if (current != null && ((greater && score <= current) || (lower && score >= current))) {
+                if (increment) return RESP.NULL_BULK;
+                continue;
+              }
+              if (current == null) {
+                added++;
+              } else if (score != current) {
+                changed++;
+              }
+              zset.put(members[i], score);
+              result = score;
+            }
+            if (increment) return new BulkString(ZSetValue.formatScore(result));
+            return new RespInteger(changes ? added + changed : added);
+          });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    } catch (StorageFullException e) {
+      logger.warn("ZADD command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+
+  /**
+   * With {@code INCR}, passed on as a plain {@code ZADD} of the resulting score, a replay then sets the
+   * same score; not at all if an option prevented it.
+   */
+  @Override
+  public List<String> propagated(List<String> command, RespData reply) {
+    if (!(reply instanceof BulkString score)) return command;
+    if (reply == RESP.NULL_BULK) return null;
+    return List.of("ZADD", command.get(1), score.data, command.getLast());
+  }
+}
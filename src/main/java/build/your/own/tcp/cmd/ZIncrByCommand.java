@@ -0,0 +1,79 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.StorageFullException;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.OomError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code ZINCRBY key increment member}: adds {@code increment} to the score of {@code member}, a missing
+ * member counting as {@code 0}, replies the new score.
+ */
+public class ZIncrByCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZIncrByCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZIncrByCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZINCRBY command with args: %s", args));
+    if (args.size() != 3) {
+      return new IllegalArgumentError("wrong number of arguments for ZINCRBY");
+    }
+    double increment;
+    try {
+      increment = ZSetValue.parseScore(args.get(1));
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("value is not a valid float");
+    }
+
+    byte[] member = args.get(2).getBytes(RESP.CHARSET);
+    try {
+      return serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), ZSetValue.class,
+          ZSetValue::new, member.length + 8, zset -> {
+            Double current = zset.score(member);
+            double score = current != null ? current + increment : increment;
+            if (Double.isNaN(score)) return new IllegalArgumentError("resulting score is not a number (NaN)");
+            zset.put(member, score);
+            return new BulkString(ZSetValue.formatScore(score));
+          });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    } catch (StorageFullException e) {
+      logger.warn("ZINCRBY command rejected: " + e.getMessage());
+      return new OomError(e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+
+  /**
+   * Passed on as the {@code ZADD} of the result, a replay then sets the same score.
+   */
+  @Override
+  public List<String> propagated(List<String> command, RespData reply) {
+    return List.of("ZADD", command.get(1), ((BulkString) reply).data, command.get(3));
+  }
+}
@@ -0,0 +1,96 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count]}: the members of the sorted set at
+ * {@code key} scored from {@code min} to {@code max}, lowest score first, each followed by its score with
+ * {@code WITHSCORES}. A bound is inclusive unless prefixed with {@code (}, {@code -inf} and {@code +inf}
+ * leave it open. {@code LIMIT} skips {@code offset} members and returns at most {@code count}, all if
+ * negative. Finding the first member is O(log n) once the set is a skip list.
+ */
+public class ZRangeByScoreCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZRangeByScoreCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZRangeByScoreCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZRANGEBYSCORE command with args: %s", args));
+    if (args.size() < 3) {
+      return new IllegalArgumentError("wrong number of arguments for ZRANGEBYSCORE");
+    }
+
+    ZSetValue.ScoreRange range;
+    try {
+      String min = args.get(1);
+      String max = args.get(2);
+      boolean minExclusive = min.startsWith("(");
+      boolean maxExclusive = max.startsWith("(");
+      range = new ZSetValue.ScoreRange(
+          ZSetValue.parseScore(minExclusive ? min.substring(1) : min), minExclusive,
+          ZSetValue.parseScore(maxExclusive ? max.substring(1) : max), maxExclusive);
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("min or max is not a float");
+    }
+
+    boolean withScores = false;
+    int offset = 0;
+    int count = -1;
+    for (int i = 3; i < args.size(); i++) {
+      String option = args.get(i).toUpperCase(Locale.ROOT);
+      if (option.equals("WITHSCORES")) {
+        withScores = true;
+      } else if (option.equals("LIMIT") && i + 2 < args.size()) {
+        try {
+          offset = Integer.parseInt(args.get(i + 1));
+          count = Integer.parseInt(args.get(i + 2));
+        } catch (NumberFormatException e) {
+          return new IllegalArgumentError("value is not an integer or out of range");
+        }
+        i += 2;
+      } else {
+        return new IllegalArgumentError("syntax error");
+      }
+    }
+
+    boolean scores = withScores;
+    int skip = offset;
+    int limit = count < 0 ? -1 : count;
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ZSetValue.class, zset -> {
+        Arrays<BulkString> reply = new Arrays<>();
+        //a negative offset matches nothing, as in redis
+        if (zset == null || skip < 0) return reply;
+        zset.rangeByScore(range, skip, limit, (member, score) -> {
+          reply.add(new BulkString(member));
+          if (scores) reply.add(new BulkString(ZSetValue.formatScore(score)));
+        });
+        return reply;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
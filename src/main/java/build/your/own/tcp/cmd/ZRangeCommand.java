@@ -0,0 +1,74 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.Arrays;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@code ZRANGE key start stop [WITHSCORES]}: the members of the sorted set at {@code key} ranked
+ * {@code start} to {@code stop}, both inclusive, lowest score first, each followed by its score with
+ * {@code WITHSCORES}. A negative rank counts from the highest score, {@code -1} being the last member;
+ * ranks out of the set are clamped, empty if the key is missing.
+ */
+public class ZRangeCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZRangeCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZRangeCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZRANGE command with args: %s", args));
+    if (args.size() != 3 && args.size() != 4) {
+      return new IllegalArgumentError("wrong number of arguments for ZRANGE");
+    }
+    long start;
+    long stop;
+    try {
+      start = Long.parseLong(args.get(1));
+      stop = Long.parseLong(args.get(2));
+    } catch (NumberFormatException e) {
+      return new IllegalArgumentError("value is not an integer or out of range");
+    }
+    boolean withScores = args.size() == 4;
+    if (withScores && !args.get(3).toUpperCase(Locale.ROOT).equals("WITHSCORES")) {
+      return new IllegalArgumentError("syntax error");
+    }
+
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ZSetValue.class, zset -> {
+        Arrays<BulkString> reply = new Arrays<>();
+        if (zset == null) return reply;
+        int size = zset.size();
+        long from = Math.max(0, start < 0 ? size + start : start);
+        long to = Math.min(size - 1, stop < 0 ? size + stop : stop);
+        if (from > to) return reply;
+        zset.range((int) from, (int) to, (member, score) -> {
+          reply.add(new BulkString(member));
+          if (withScores) reply.add(new BulkString(ZSetValue.formatScore(score)));
+        });
+        return reply;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
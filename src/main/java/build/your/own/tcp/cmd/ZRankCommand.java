@@ -0,0 +1,51 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code ZRANK key member}: the 0 based rank of {@code member} in the sorted set at {@code key}, lowest
+ * score first, nil if either is missing. O(log n) once the set is a skip list.
+ */
+public class ZRankCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZRankCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZRankCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZRANK command with args: %s", args));
+    if (args.size() != 2) {
+      return new IllegalArgumentError("wrong number of arguments for ZRANK");
+    }
+
+    byte[] member = args.get(1).getBytes(RESP.CHARSET);
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ZSetValue.class, zset -> {
+        int rank = zset != null ? zset.rank(member) : -1;
+        return rank != -1 ? new RespInteger(rank) : RESP.NULL_BULK;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,61 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespInteger;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code ZREM key member [member ...]}: removes members of the sorted set at {@code key}, replies how many
+ * existed. A sorted set left empty is removed.
+ */
+public class ZRemCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZRemCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZRemCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZREM command with args: %s", args));
+    if (args.size() < 2) {
+      return new IllegalArgumentError("wrong number of arguments for ZREM");
+    }
+
+    try {
+      long removed = serializeProtocol.getInMemoryMap().update(ByteKey.of(args.getFirst()), ZSetValue.class,
+          null, 0, zset -> {
+            if (zset == null) return 0L;
+            long count = 0;
+            for (int i = 1; i < args.size(); i++) {
+              if (zset.remove(args.get(i).getBytes(RESP.CHARSET))) count++;
+            }
+            return count;
+          });
+      return new RespInteger(removed);
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isWrite() {
+    return true;
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
@@ -0,0 +1,51 @@
+package build.your.own.tcp.cmd;
+
+import build.your.own.database.ByteKey;
+import build.your.own.database.WrongTypeException;
+import build.your.own.database.type.ZSetValue;
+import build.your.own.logger.Logger;
+import build.your.own.persist.SerializeProtocol;
+import build.your.own.resp.BulkString;
+import build.your.own.resp.RESP;
+import build.your.own.resp.RespData;
+import build.your.own.resp.error.IllegalArgumentError;
+import build.your.own.resp.error.WrongTypeError;
+
+import java.util.List;
+
+/**
+ * {@code ZSCORE key member}: the score of {@code member} in the sorted set at {@code key}, nil if either
+ * is missing.
+ */
+public class ZScoreCommand implements CommandHandler {
+  private final Logger logger = Logger.getInstance(ZScoreCommand.class);
+
+  private final SerializeProtocol serializeProtocol;
+
+  public ZScoreCommand(SerializeProtocol serializeProtocol) {
+    this.serializeProtocol = serializeProtocol;
+  }
+
+  @Override
+  public RespData execute(List<String> args) {
+    logger.debug(String.format("Executing ZSCORE command with args: %s", args));
+    if (args.size() != 2) {
+      return new IllegalArgumentError("wrong number of arguments for ZSCORE");
+    }
+
+    byte[] member = args.get(1).getBytes(RESP.CHARSET);
+    try {
+      return serializeProtocol.getInMemoryMap().read(ByteKey.of(args.getFirst()), ZSetValue.class, zset -> {
+        Double score = zset != null ? zset.score(member) : null;
+        return score != null ? new BulkString(ZSetValue.formatScore(score)) : RESP.NULL_BULK;
+      });
+    } catch (WrongTypeException e) {
+      return new WrongTypeError();
+    }
+  }
+
+  @Override
+  public boolean isSingleKey() {
+    return true;
+  }
+}
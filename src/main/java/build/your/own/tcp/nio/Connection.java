@@ -0,0 +1,175 @@
+package build.your.own.tcp.nio;
+
+import build.your.own.logger.Logger;
+import build.your.own.resp.RespBuffer;
+import build.your.own.resp.RespData;
+import build.your.own.resp.RespParser;
+import build.your.own.resp.error.ProtocolError;
+import build.your.own.resp.error.UnexpectedError;
+import build.your.own.tcp.BlockedReply;
+import build.your.own.tcp.ConnectionHandoff;
+import build.your.own.tcp.cmd.CommandRegistry;
+import build.your.own.tcp.cmd.Session;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per client state of the event loop: the channel, a {@link RespParser} holding not yet complete
+ * commands and a {@link RespBuffer} holding replies the socket could not take yet.
+ *
+ * <p>Only ever touched by the owning {@link Reactor} thread. A client blocked by a command, see
+ * {@link BlockedReply}, stays registered: its input is read and buffered, so a close is noticed, but not
+ * executed until the reactor resumes it.
+ */
+public class Connection {
+  private static final Logger logger = Logger.getInstance(Connection.class);
+
+  private final UUID clientId = UUID.randomUUID();
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  private final Reactor reactor;
+  private final CommandRegistry commandRegistry;
+
+  private final RespParser parser = new RespParser();
+  private final Session session = new Session();
+  private final RespBuffer output = new RespBuffer();
+  //set once a command took the connection over, see ConnectionHandoff
+  private ConnectionHandoff handoff;
+  //set while a command waits, see BlockedReply
+  private BlockedReply blocked;
+
+  public Connection(SocketChannel channel, SelectionKey key, Reactor reactor, CommandRegistry commandRegistry) {
+    this.channel = channel;
+    this.key = key;
+    this.reactor = reactor;
+    this.commandRegistry = commandRegistry;
+  }
+
+  public UUID getClientId() {
+    return clientId;
+  }
+
+  /**
+   * Reads what is available and, unless a command is blocked, executes every complete command and
+   * writes all replies in one go.
+   */
+  void onReadable() throws IOException {
+    if (parser.readFrom(channel) == -1) {
+      throw new EOFException("end of stream");
+    }
+    if (blocked == null) executeAll();
+  }
+
+  /**
+   * Goes on with the command {@code waited} blocked, then with the commands buffered meanwhile. Called by
+   * the reactor once the command is ready; does nothing if the connection closed in between.
+   */
+  void onResumed(BlockedReply waited) throws IOException {
+    if (blocked != waited) return;
+    blocked = null;
+    RespData reply;
+    try {
+      reply = waited.resume();
+    } catch (Exception e) {
+      logger.error(String.format("Error resuming command - Client ID: %s, Error: %s", clientId, e.getMessage()));
+      reply = null;
+    }
+    if (reply != null) reply(reply);
+    if (blocked == null) executeAll();
+  }
+
+  private void executeAll() throws IOException {
+    try {
+      List<String> cmd;
+      while (handoff == null && blocked == null && (cmd = parser.next()) != null) {
+        execute(cmd);
+      }
+    } catch (ProtocolError e) {
+      logger.warn(String.format("Protocol error - Client ID: %s, Error: %s", clientId, e.getMessage()));
+      e.encode(output);
+      flush();
+      throw new EOFException("protocol error");
+    }
+
+    //the Reactor deregisters the channel and calls handOver()
+    if (handoff != null) return;
+    flush();
+  }
+
+  /**
+   * @return whether a command asked to take the connection over, see {@link #handOver()}
+   */
+  boolean isHandedOff() {
+    return handoff != null;
+  }
+
+  /**
+   * Writes the pending replies and passes the channel's socket to its new owner. The key must be
+   * cancelled and flushed from the selector already, the channel is switched to blocking mode.
+   */
+  void handOver() throws IOException {
+    channel.configureBlocking(true);
+    while (!output.writeTo(channel)) {
+      //blocking writes only return early on a short write
+    }
+    logger.info(String.format("Connection handed over - Client ID: %s", clientId));
+    handoff.takeOver(channel.socket());
+  }
+
+  void cancelKey() {
+    key.cancel();
+  }
+
+  void onWritable() throws IOException {
+    flush();
+  }
+
+  private void execute(List<String> cmd) {
+    RespData reply;
+    try {
+      reply = commandRegistry.dispatch(cmd, session);
+    } catch (Exception e) {
+      logger.error(String.format("Error processing command '%s': %s", cmd.getFirst(), e.getMessage()));
+      //still one reply per command, or every later reply of a pipeline goes to the wrong request
+      reply = new UnexpectedError(e.getClass().getSimpleName());
+    }
+    reply(reply);
+  }
+
+  private void reply(RespData reply) {
+    if (reply instanceof ConnectionHandoff takeOver) {
+      handoff = takeOver;
+      return;
+    }
+    if (reply instanceof BlockedReply waiting) {
+      blocked = waiting;
+      waiting.onReady(() -> reactor.submit(() -> reactor.resume(this, waiting)));
+      return;
+    }
+    reply.encode(output);
+  }
+
+  private void flush() throws IOException {
+    boolean drained = output.writeTo(channel);
+    //Only ask for OP_WRITE while the kernel buffer is full, otherwise the selector spins
+    key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+  }
+
+  void close() {
+    if (blocked != null) {
+      blocked.cancel();
+      blocked = null;
+    }
+    key.cancel();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.debug(String.format("Failed to close connection %s: %s", clientId, e.getMessage()));
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package build.your.own.tcp.nio;
+
+import build.your.own.logger.Logger;
+import build.your.own.tcp.cmd.CommandRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <h1>Event loop server</h1>
+ * Selector based front end: one acceptor (the calling thread) hands accepted connections round-robin
+ * to a fixed set of {@link Reactor} threads, each multiplexing many {@link SocketChannel}s on its own
+ * {@link java.nio.channels.Selector}. Thread count stays at {@code reactors + 1} no matter how many
+ * clients are connected.
+ */
+public class EventLoopServer {
+  private static final Logger logger = Logger.getInstance(EventLoopServer.class);
+
+  private final int port;
+  private final Reactor[] reactors;
+  private int next;
+
+  public EventLoopServer(int port, int reactorCount, CommandRegistry commandRegistry) throws IOException {
+    this.port = port;
+    this.reactors = new Reactor[reactorCount];
+    for (int i = 0; i < reactorCount; i++) {
+      reactors[i] = new Reactor(i, commandRegistry);
+    }
+  }
+
+  /**
+   * Starts the reactor threads and blocks accepting connections until the server socket fails.
+   */
+  public void start() throws IOException {
+    for (Reactor reactor : reactors) {
+      Thread thread = new Thread(reactor, "reactor-" + reactor.getId());
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.bind(new InetSocketAddress(port), 1024);
+      logger.info(String.format("Event loop server started on port %d with %d reactors", port, reactors.length));
+
+      while (true) {
+        try {
+          SocketChannel channel = serverChannel.accept();
+          logger.debug("New client connected from: " + channel.getRemoteAddress());
+          nextReactor().register(channel);
+        } catch (IOException e) {
+          if (!serverChannel.isOpen()) throw e;
+          logger.error("Failed to accept client connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private Reactor nextReactor() {
+    Reactor reactor = reactors[next];
+    next = (next + 1) % reactors.length;
+    return reactor;
+  }
+}
@@ -0,0 +1,165 @@
+package build.your.own.tcp.nio;
+
+import build.your.own.logger.Logger;
+import build.your.own.tcp.BlockedReply;
+import build.your.own.tcp.cmd.CommandRegistry;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single event loop thread. Owns a {@link Selector} and every {@link Connection} registered on it;
+ * all reads, command execution and writes for those connections happen on this thread.
+ */
+public class Reactor implements Runnable {
+  private static final Logger logger = Logger.getInstance(Reactor.class);
+
+  private final int id;
+  private final Selector selector;
+  private final CommandRegistry commandRegistry;
+  //Channels accepted by the acceptor thread, registered by the loop itself (Selector keys are not thread safe)
+  private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+  //Connections a command took over, their keys are cancelled and released at the end of the round
+  private final List<Connection> handoffs = new ArrayList<>();
+  //Work other threads hand to the loop, e.g. resuming a blocked client
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+  public Reactor(int id, CommandRegistry commandRegistry) throws IOException {
+    this.id = id;
+    this.commandRegistry = commandRegistry;
+    this.selector = Selector.open();
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Hands a freshly accepted channel to this reactor, callable from any thread.
+   */
+  public void register(SocketChannel channel) {
+    pending.add(channel);
+    selector.wakeup();
+  }
+
+  /**
+   * Runs {@code task} on the loop thread, callable from any thread.
+   */
+  void submit(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    logger.info(String.format("Reactor %d started", id));
+    while (selector.isOpen()) {
+      try {
+        selector.select();
+        registerPending();
+        runTasks();
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          handle(key);
+        }
+        if (!handoffs.isEmpty()) handOver();
+      } catch (IOException e) {
+        logger.error(String.format("Reactor %d select failed: %s", id, e.getMessage()));
+      }
+    }
+  }
+
+  private void registerPending() {
+    SocketChannel channel;
+    while ((channel = pending.poll()) != null) {
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key, this, commandRegistry));
+      } catch (IOException e) {
+        logger.error("Failed to register client connection: " + e.getMessage());
+        closeQuietly(channel);
+      }
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  private void handle(SelectionKey key) {
+    Connection connection = (Connection) key.attachment();
+    try {
+      if (key.isReadable()) {
+        connection.onReadable();
+      }
+      if (connection.isHandedOff()) {
+        key.cancel();
+        handoffs.add(connection);
+        return;
+      }
+      if (key.isValid() && key.isWritable()) {
+        connection.onWritable();
+      }
+    } catch (IOException | CancelledKeyException e) {
+      logger.debug(String.format("Connection %s closed: %s", connection.getClientId(), e.getMessage()));
+      connection.close();
+    }
+  }
+
+  /**
+   * Goes on with a connection whose blocked command is ready, see {@link Connection#onResumed}.
+   */
+  void resume(Connection connection, BlockedReply blocked) {
+    try {
+      connection.onResumed(blocked);
+      if (connection.isHandedOff()) {
+        connection.cancelKey();
+        handoffs.add(connection);
+      }
+    } catch (IOException | CancelledKeyException e) {
+      logger.debug(String.format("Connection %s closed: %s", connection.getClientId(), e.getMessage()));
+      connection.close();
+    }
+  }
+
+  private void handOver() throws IOException {
+    //a channel can only be put back in blocking mode once the selector dropped its cancelled key
+    selector.selectNow();
+    for (Connection connection : handoffs) {
+      try {
+        connection.handOver();
+      } catch (IOException e) {
+        logger.debug(String.format("Connection %s closed during hand over: %s", connection.getClientId(), e.getMessage()));
+        connection.close();
+      }
+    }
+    handoffs.clear();
+    //selectNow() may have consumed the wakeup of a register() or submit() call
+    registerPending();
+    runTasks();
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+      //already closing
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package build.your.own.utils;
+
+import build.your.own.cluster.ClusterManager;
+import build.your.own.configurations.SystemConfig;
+import build.your.own.database.EvictionPolicy;
+import build.your.own.database.StorageEngine;
+import build.your.own.database.type.Encodings;
+import build.your.own.logger.Logger;
+import build.your.own.persist.AppendFsync;
+import build.your.own.persist.AppendOnlyFile;
+import build.your.own.persist.SaveRule;
+import build.your.own.persist.Snapshot;
+import build.your.own.replication.ReplicaOf;
+import build.your.own.replication.ReplicationManager;
+import build.your.own.tcp.ServerMode;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Parses the process arguments into {@link SystemConfig}.
+ *
+ * <p>Arguments are read as {@code --name value} pairs, e.g.
+ * <pre>
+ *   --port 6380 --dir /tmp/redis --dbfilename dump.bydrdb --server-mode nio --reactors 8
+ * </pre>
+ * Every pair is stored as-is under {@code name}; {@code dir} and {@code dbfilename} are additionally
+ * joined into {@code dbPath}, which is what the persistence layer reads. The {@code maxmemory*} and
+ * {@code save} settings always get a value so {@code CONFIG GET} can report them; {@code --save ""}
+ * disables snapshots. {@code dir} and {@code appendfilename} likewise give {@code aofPath}.
+ * {@code --replicaof "<host> <port>"} starts the server as a replica of that primary.
+ * {@code --storage-engine sharded --shards 8} splits the keyspace between 8 single threaded shards.
+ * {@code --cluster-enabled yes} makes the server a cluster node, see {@code CLUSTER MEET}.
+ * {@code --hash-max-listpack-entries} / {@code --hash-max-listpack-value} bound the compact hash encoding,
+ * {@code --list-max-listpack-size} the elements per node of a list, {@code --zset-max-listpack-entries} /
+ * {@code --zset-max-listpack-value} the compact sorted set encoding, {@code --set-max-intset-entries} the
+ * integer array encoding of sets.
+ */
+public final class ArgumentsUtils {
+  private static final Logger logger = Logger.getInstance(ArgumentsUtils.class);
+  private static final String DEFAULT_DB_FILENAME = "dump.bydrdb";
+  private static final String DEFAULT_MAXMEMORY = "0";
+  private static final String DEFAULT_MAXMEMORY_SAMPLES = "5";
+
+  private ArgumentsUtils() {
+  }
+
+  /**
+   * Loads and validates the system arguments.
+   *
+   * @param args   raw process arguments
+   * @param config config to populate
+   * @throws IllegalArgumentException if an argument is malformed, startup should stop
+   */
+  public static void loadSystemArgs(String[] args, SystemConfig config) {
+    for (int i = 0; i < args.length; i++) {
+      String name = args[i];
+      if (!name.startsWith("--") || i + 1 >= args.length) {
+        logger.error(String.format("Malformed argument '%s', expected --name value", name));
+        throw new IllegalArgumentException("Malformed argument " + name);
+      }
+      String value = args[++i];
+      config.setConfig(name.substring(2), value);
+      logger.info(String.format("Loaded argument %s = %s", name.substring(2), value));
+    }
+
+    String dir = config.getConfig().get("dir");
+    String dbFilename = config.getConfig().getOrDefault("dbfilename", DEFAULT_DB_FILENAME);
+    if (!config.getConfig().containsKey("dbPath")) {
+      config.setConfig("dbPath", dir != null ? Path.of(dir, dbFilename).toString() : dbFilename);
+    }
+    String aofFilename = config.getConfig().getOrDefault("appendfilename", AppendOnlyFile.DEFAULT_FILENAME);
+    if (!config.getConfig().containsKey("aofPath")) {
+      config.setConfig("aofPath", dir != null ? Path.of(dir, aofFilename).toString() : aofFilename);
+    }
+
+    config.getConfig().putIfAbsent("maxmemory", DEFAULT_MAXMEMORY);
+    config.getConfig().putIfAbsent("maxmemory-policy", EvictionPolicy.NOEVICTION.getConfigName());
+    config.getConfig().putIfAbsent("maxmemory-samples", DEFAULT_MAXMEMORY_SAMPLES);
+    config.getConfig().putIfAbsent("save", Snapshot.DEFAULT_SAVE_RULES);
+    config.getConfig().putIfAbsent("rdbcompression", "yes");
+    config.getConfig().putIfAbsent("appendonly", "no");
+    config.getConfig().putIfAbsent("appendfsync", "everysec");
+    config.getConfig().putIfAbsent("auto-aof-rewrite-percentage", String.valueOf(AppendOnlyFile.DEFAULT_REWRITE_PERCENTAGE));
+    config.getConfig().putIfAbsent("auto-aof-rewrite-min-size", AppendOnlyFile.DEFAULT_REWRITE_MIN_SIZE);
+    config.getConfig().putIfAbsent("repl-backlog-size", ReplicationManager.DEFAULT_BACKLOG_SIZE);
+    config.getConfig().putIfAbsent("repl-diskless-sync", "yes");
+    config.getConfig().putIfAbsent("repl-diskless-sync-delay", ReplicationManager.DEFAULT_DISKLESS_SYNC_DELAY);
+    config.getConfig().putIfAbsent("cluster-enabled", "no");
+    config.getConfig().putIfAbsent("cluster-node-timeout", ClusterManager.DEFAULT_NODE_TIMEOUT);
+    config.getConfig().putIfAbsent("hash-max-listpack-entries", Encodings.DEFAULT_HASH_MAX_LISTPACK_ENTRIES);
+    config.getConfig().putIfAbsent("hash-max-listpack-value", Encodings.DEFAULT_HASH_MAX_LISTPACK_VALUE);
+    config.getConfig().putIfAbsent("list-max-listpack-size", Encodings.DEFAULT_LIST_MAX_LISTPACK_SIZE);
+    config.getConfig().putIfAbsent("zset-max-listpack-entries", Encodings.DEFAULT_ZSET_MAX_LISTPACK_ENTRIES);
+    config.getConfig().putIfAbsent("zset-max-listpack-value", Encodings.DEFAULT_ZSET_MAX_LISTPACK_VALUE);
+    config.getConfig().putIfAbsent("set-max-intset-entries", Encodings.DEFAULT_SET_MAX_INTSET_ENTRIES);
+
+    requirePositiveInt(config, "port");
+    requirePositiveInt(config, "reactors");
+    requirePositiveInt(config, "loader-threads");
+    requirePositiveInt(config, "shards");
+    requirePositiveInt(config, "maxmemory-samples");
+    requirePositiveInt(config, "cluster-node-timeout");
+    requirePositiveInt(config, "hash-max-listpack-entries");
+    requirePositiveInt(config, "hash-max-listpack-value");
+    requirePositiveInt(config, "list-max-listpack-size");
+    requirePositiveInt(config, "zset-max-listpack-entries");
+    requirePositiveInt(config, "zset-max-listpack-value");
+    requirePositiveInt(config, "set-max-intset-entries");
+    parseMemory(config.getConfig().get("maxmemory"));
+    parseMemory(config.getConfig().get("auto-aof-rewrite-min-size"));
+    parseMemory(config.getConfig().get("repl-backlog-size"));
+    //0 turns automatic rewrites off
+    requireInt(config, "auto-aof-rewrite-percentage", 0);
+    requireInt(config, "repl-diskless-sync-delay", 0);
+    try {
+      ServerMode.fromConfig(config.getConfig().get("server-mode"));
+      StorageEngine.fromConfig(config.getConfig().get("storage-engine"));
+      EvictionPolicy.fromConfig(config.getConfig().get("maxmemory-policy"));
+      SaveRule.parse(config.getConfig().get("save"));
+      AppendFsync.fromConfig(config.getConfig().get("appendfsync"));
+      isEnabled(config, "appendonly");
+      isEnabled(config, "rdbcompression");
+      isEnabled(config, "repl-diskless-sync");
+      isEnabled(config, "cluster-enabled");
+      ReplicaOf.parse(config.getConfig().get("replicaof"));
+    } catch (IllegalArgumentException e) {
+      logger.error(e.getMessage());
+      throw e;
+    }
+    if (config.getConfig().containsKey("offheap-size")) {
+      parseMemory(config.getConfig().get("offheap-size"));
+    }
+  }
+
+  /**
+   * Parses a memory amount the way redis.conf does: a plain byte count or a number with a
+   * {@code kb}/{@code mb}/{@code gb} suffix (powers of 1024, case insensitive).
+   *
+   * @throws IllegalArgumentException if the value is not a valid amount
+   */
+  public static long parseMemory(String value) {
+    String normalized = value.trim().toLowerCase(Locale.ROOT);
+    long unit = 1;
+    if (normalized.endsWith("gb")) unit = 1L << 30;
+    else if (normalized.endsWith("mb")) unit = 1L << 20;
+    else if (normalized.endsWith("kb")) unit = 1L << 10;
+    if (unit != 1) normalized = normalized.substring(0, normalized.length() - 2);
+    else if (normalized.endsWith("b")) normalized = normalized.substring(0, normalized.length() - 1);
+    try {
+      long amount = Long.parseLong(normalized.trim());
+      if (amount >= 0) return Math.multiplyExact(amount, unit);
+    } catch (NumberFormatException | ArithmeticException ignored) {
+      //fall through to the error below
+    }
+    logger.error(String.format("Invalid memory amount '%s'", value));
+    throw new IllegalArgumentException("Invalid memory amount " + value);
+  }
+
+  /**
+   * Reads a redis style {@code yes}/{@code no} flag.
+   *
+   * @throws IllegalArgumentException if the value is neither
+   */
+  public static boolean isEnabled(SystemConfig config, String key) {
+    String value = config.getConfig().getOrDefault(key, "no").trim().toLowerCase(Locale.ROOT);
+    return switch (value) {
+      case "yes" -> true;
+      case "no" -> false;
+      default -> throw new IllegalArgumentException(String.format("Argument %s must be yes or no, got '%s'", key, value));
+    };
+  }
+
+  private static void requirePositiveInt(SystemConfig config, String key) {
+    requireInt(config, key, 1);
+  }
+
+  private static void requireInt(SystemConfig config, String key, int min) {
+    String value = config.getConfig().get(key);
+    if (value == null) return;
+    try {
+      if (Integer.parseInt(value) >= min) return;
+    } catch (NumberFormatException ignored) {
+      //fall through to the error below
+    }
+    logger.error(String.format("Argument %s must be an integer >= %d, got '%s'", key, min, value));
+    throw new IllegalArgumentException("Invalid " + key);
+  }
+}
@@ -0,0 +1,101 @@
+package build.your.own.utils;
+
+import build.your.own.resp.RESP;
+
+/**
+ * Glob style patterns as {@code KEYS} and {@code SCAN ... MATCH} take them, redis' {@code stringmatchlen}:
+ * {@code *} any run of bytes, {@code ?} a single byte, {@code [abc]}, {@code [^abc]} and {@code [a-z]}
+ * classes, and {@code \} to match the next byte literally.
+ *
+ * <p>Matching backtracks only to the last {@code *}: each retry moves the key position after the star on
+ * by one and may re-scan the pattern up to the next star, so the worst case is O(key x pattern), e.g.
+ * {@code *aaaaab} against a long run of {@code a}s, rather than exponential like a recursive matcher.
+ * Patterns without a star, or with a single trailing one, stay linear in the key.
+ */
+public final class GlobPattern {
+  private final byte[] pattern;
+  private final boolean matchAll;
+
+  private GlobPattern(byte[] pattern) {
+    this.pattern = pattern;
+    this.matchAll = pattern.length == 1 && pattern[0] == '*';
+  }
+
+  /**
+   * @param pattern the pattern as decoded by the request parser, one char per byte
+   */
+  public static GlobPattern compile(String pattern) {
+    return new GlobPattern(pattern.getBytes(RESP.CHARSET));
+  }
+
+  public boolean matches(byte[] key) {
+    if (matchAll) return true;
+    int p = 0;
+    int k = 0;
+    //where to resume after the last star: the pattern right after it, and the key byte it swallows next
+    int starPattern = -1;
+    int starKey = -1;
+    while (k < key.length) {
+      if (p < pattern.length && pattern[p] == '*') {
+        while (p < pattern.length && pattern[p] == '*') p++;
+        if (p == pattern.length) return true;
+        starPattern = p;
+        starKey = k;
+        continue;
+      }
+      int next = p < pattern.length ? matchOne(p, key[k]) : -1;
+      if (next != -1) {
+        p = next;
+        k++;
+        continue;
+      }
+      if (starPattern == -1) return false;
+      p = starPattern;
+      k = ++starKey;
+    }
+    while (p < pattern.length && pattern[p] == '*') p++;
+    return p == pattern.length;
+  }
+
+  /**
+   * @return the index after the pattern token at {@code p} if it matches {@code b}, otherwise {@code -1}
+   */
+  private int matchOne(int p, byte b) {
+    switch (pattern[p]) {
+      case '?':
+        return p + 1;
+      case '\\':
+        //a trailing backslash matches itself
+        if (p + 1 < pattern.length) return pattern[p + 1] == b ? p + 2 : -1;
+        return b == '\\' ? p + 1 : -1;
+      case '[':
+        return matchClass(p + 1, b);
+      default:
+        return pattern[p] == b ? p + 1 : -1;
+    }
+  }
+
+  private int matchClass(int p, byte b) {
+    int c = b & 0xff;
+    boolean negate = p < pattern.length && pattern[p] == '^';
+    if (negate) p++;
+    boolean match = false;
+    //an unterminated class runs to the end of the pattern, like redis
+    while (p < pattern.length && pattern[p] != ']') {
+      if (pattern[p] == '\\' && p + 1 < pattern.length) {
+        if ((pattern[p + 1] & 0xff) == c) match = true;
+        p += 2;
+      } else if (p + 2 < pattern.length && pattern[p + 1] == '-' && pattern[p + 2] != ']') {
+        int start = pattern[p] & 0xff;
+        int end = pattern[p + 2] & 0xff;
+        if (c >= Math.min(start, end) && c <= Math.max(start, end)) match = true;
+        p += 3;
+      } else {
+        if ((pattern[p] & 0xff) == c) match = true;
+        p++;
+      }
+    }
+    if (p < pattern.length) p++;
+    return match != negate ? p : -1;
+  }
+}